@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+package ca.sqlpower.architect.ddl;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+import ca.sqlpower.architect.ddl.DDLStatement.StatementType;
+import ca.sqlpower.sql.JDBCDataSource;
+import ca.sqlpower.sql.PlDotIni;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLObjectException;
+import ca.sqlpower.sqlobject.SQLTable;
+
+public class ConflictResolverTest extends TestCase {
+
+    private SQLDatabase db;
+    private Connection con;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        PlDotIni plini = new PlDotIni();
+        plini.read(new File("pl.regression.ini"));
+        db = new SQLDatabase(plini.getDataSource("regression_test", JDBCDataSource.class));
+        con = db.getConnection();
+        Statement stmt = con.createStatement();
+        for (String table : new String[] { "CONFLICT_CHILD", "CONFLICT_PARENT" }) {
+            try {
+                stmt.executeUpdate("DROP TABLE " + table);
+            } catch (SQLException ex) {
+                // the table didn't exist
+            }
+        }
+        stmt.executeUpdate("CREATE TABLE CONFLICT_PARENT (ID INTEGER PRIMARY KEY)");
+        stmt.executeUpdate("CREATE TABLE CONFLICT_CHILD (ID INTEGER, PARENT_ID INTEGER," +
+                " CONSTRAINT CONFLICT_FK FOREIGN KEY (PARENT_ID) REFERENCES CONFLICT_PARENT (ID))");
+        stmt.close();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        con.close();
+        db.disconnect();
+        super.tearDown();
+    }
+
+    private List<DDLStatement> createStatement(String tableName) throws Exception {
+        SQLTable t = new SQLTable(null, tableName, null, "TABLE", true);
+        t.setPhysicalName(tableName);
+        return Collections.singletonList(
+                new DDLStatement(t, StatementType.CREATE, "CREATE TABLE " + tableName, ";", null, null));
+    }
+
+    public void testFindsTableAndReferencingKey() throws Exception {
+        ConflictResolver cr = new ConflictResolver(db, new GenericDDLGenerator(false),
+                createStatement("CONFLICT_PARENT"));
+        cr.findConflicting();
+        assertFalse(cr.isEmpty());
+        assertTrue(cr.toConflictTree().contains("CONFLICT_PARENT"));
+        assertTrue(cr.toConflictTree().contains("FOREIGN KEY"));
+        assertTrue(cr.toConflictTree().contains("CONFLICT_FK"));
+    }
+
+    public void testNoConflictForNewTable() throws Exception {
+        ConflictResolver cr = new ConflictResolver(db, new GenericDDLGenerator(false),
+                createStatement("CONFLICT_NOT_THERE"));
+        cr.findConflicting();
+        assertTrue(cr.isEmpty());
+    }
+
+    public void testCacheReusesIndexUntilInvalidated() throws Exception {
+        SchemaMetadataCache cache = new SchemaMetadataCache();
+        SchemaMetadataIndex index = cache.getIndex(db, con.getMetaData(), null, null);
+        assertSame(index, cache.getIndex(db, con.getMetaData(), null, null));
+        assertFalse(index.getTables("CONFLICT_CHILD").isEmpty());
+
+        Statement stmt = con.createStatement();
+        stmt.executeUpdate("DROP TABLE CONFLICT_CHILD");
+        stmt.close();
+        cache.invalidate(db);
+
+        SchemaMetadataIndex reloaded = cache.getIndex(db, con.getMetaData(), null, null);
+        assertNotSame(index, reloaded);
+        assertTrue(reloaded.getTables("CONFLICT_CHILD").isEmpty());
+    }
+
+    /**
+     * A resolver made without a cache should still read each target schema
+     * only once, however many tables it checks.
+     */
+    public void testSchemaIsReadOncePerResolver() throws Exception {
+        final int[] getTablesCalls = new int[1];
+        SQLDatabase countingDb = new SQLDatabase(db.getDataSource()) {
+            @Override
+            public Connection getConnection() throws SQLObjectException {
+                return countingGetTables(super.getConnection(), getTablesCalls);
+            }
+        };
+        List<DDLStatement> statements = new ArrayList<DDLStatement>();
+        statements.addAll(createStatement("CONFLICT_PARENT"));
+        statements.addAll(createStatement("CONFLICT_CHILD"));
+        statements.addAll(createStatement("CONFLICT_NOT_THERE"));
+        try {
+            ConflictResolver cr = new ConflictResolver(countingDb, new GenericDDLGenerator(false), statements);
+            cr.findConflicting();
+            assertFalse(cr.isEmpty());
+        } finally {
+            countingDb.disconnect();
+        }
+        assertEquals(1, getTablesCalls[0]);
+    }
+
+    /**
+     * Returns a connection whose metadata counts its getTables calls in the
+     * given counter.
+     */
+    private static Connection countingGetTables(final Connection con, final int[] calls) {
+        final InvocationHandler metadataHandler = new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("getTables")) {
+                    calls[0]++;
+                }
+                try {
+                    return method.invoke(con.getMetaData(), args);
+                } catch (InvocationTargetException ex) {
+                    throw ex.getCause();
+                }
+            }
+        };
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("getMetaData")) {
+                    return Proxy.newProxyInstance(DatabaseMetaData.class.getClassLoader(),
+                            new Class<?>[] { DatabaseMetaData.class }, metadataHandler);
+                }
+                try {
+                    return method.invoke(con, args);
+                } catch (InvocationTargetException ex) {
+                    throw ex.getCause();
+                }
+            }
+        });
+    }
+
+    public void testChildTableConflictHasItsOwnKey() throws Exception {
+        ConflictResolver cr = new ConflictResolver(db, new GenericDDLGenerator(false),
+                createStatement("CONFLICT_CHILD"));
+        cr.findConflicting();
+        assertFalse(cr.isEmpty());
+        String tree = cr.toConflictTree();
+        assertTrue(tree, tree.contains("CONFLICT_FK"));
+    }
+}
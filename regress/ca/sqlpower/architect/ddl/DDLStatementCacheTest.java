@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+package ca.sqlpower.architect.ddl;
+
+import java.sql.DatabaseMetaData;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLRelationship;
+import ca.sqlpower.sqlobject.SQLTable;
+import ca.sqlpower.sqlobject.UserDefinedSQLType;
+
+public class DDLStatementCacheTest extends TestCase {
+
+    private SQLDatabase db;
+    private List<SQLTable> tables;
+    private DDLStatementCache cache;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        db = new SQLDatabase();
+        tables = new ArrayList<SQLTable>();
+        for (int i = 0; i < 3; i++) {
+            SQLTable table = new SQLTable(db, "cached_" + i, null, "TABLE", true);
+            table.addColumn(new SQLColumn(table, "id", Types.INTEGER, 0, 0));
+            table.addColumn(new SQLColumn(table, "name", Types.VARCHAR, 50, 0));
+            db.addChild(table);
+            tables.add(table);
+        }
+        new SQLRelationship().attachRelationship(tables.get(0), tables.get(1), false);
+        cache = new DDLStatementCache(db);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        cache.cleanup();
+        super.tearDown();
+    }
+
+    private DDLStatement findStatement(List<DDLStatement> statements, Object object) {
+        for (DDLStatement stmt : statements) {
+            if (stmt.getObject() == object) return stmt;
+        }
+        fail("No statement for " + object);
+        return null;
+    }
+
+    public void testUnchangedTablesAreReused() throws Exception {
+        GenericDDLGenerator ddlg = new GenericDDLGenerator(false);
+        ddlg.setStatementCache(cache);
+        List<DDLStatement> first = new ArrayList<DDLStatement>(ddlg.generateDDLStatements(tables));
+        assertEquals(3, cache.size(ddlg));
+
+        List<DDLStatement> second = ddlg.generateDDLStatements(tables);
+        assertEquals(first.size(), second.size());
+        for (int i = 0; i < first.size(); i++) {
+            assertSame(first.get(i), second.get(i));
+        }
+    }
+
+    public void testCachedStatementsMatchFullGeneration() throws Exception {
+        GenericDDLGenerator ddlg = new GenericDDLGenerator(false);
+        ddlg.setStatementCache(cache);
+        ddlg.generateDDLStatements(tables);
+        tables.get(2).getColumn(1).setPhysicalName("renamed");
+        List<DDLStatement> cached = ddlg.generateDDLStatements(tables);
+
+        List<DDLStatement> expected = new GenericDDLGenerator(false).generateDDLStatements(tables);
+        assertEquals(expected.size(), cached.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getSQLText(), cached.get(i).getSQLText());
+        }
+    }
+
+    public void testColumnChangeRegeneratesOnlyItsTable() throws Exception {
+        GenericDDLGenerator ddlg = new GenericDDLGenerator(false);
+        ddlg.setStatementCache(cache);
+        List<DDLStatement> first = new ArrayList<DDLStatement>(ddlg.generateDDLStatements(tables));
+
+        tables.get(2).getColumn(1).setPhysicalName("renamed");
+        List<DDLStatement> second = ddlg.generateDDLStatements(tables);
+
+        assertNotSame(findStatement(first, tables.get(2)), findStatement(second, tables.get(2)));
+        assertTrue(findStatement(second, tables.get(2)).getSQLText().contains("renamed"));
+        assertSame(findStatement(first, tables.get(0)), findStatement(second, tables.get(0)));
+        assertSame(findStatement(first, tables.get(1)), findStatement(second, tables.get(1)));
+    }
+
+    public void testFkTableChangeRegeneratesRelationship() throws Exception {
+        GenericDDLGenerator ddlg = new GenericDDLGenerator(false);
+        ddlg.setStatementCache(cache);
+        SQLRelationship r = tables.get(0).getExportedKeys().get(0);
+        List<DDLStatement> first = new ArrayList<DDLStatement>(ddlg.generateDDLStatements(tables));
+
+        tables.get(1).setPhysicalName("renamed_child");
+        List<DDLStatement> second = ddlg.generateDDLStatements(tables);
+
+        assertNotSame(findStatement(first, r), findStatement(second, r));
+        assertTrue(findStatement(second, r).getSQLText().contains("renamed_child"));
+        assertSame(findStatement(first, tables.get(2)), findStatement(second, tables.get(2)));
+    }
+
+    public void testGeneratorsAreKeptApart() throws Exception {
+        GenericDDLGenerator generic = new GenericDDLGenerator(false);
+        generic.setStatementCache(cache);
+        generic.generateDDLStatements(tables);
+        GenericDDLGenerator otherSchema = new GenericDDLGenerator(false);
+        otherSchema.setTargetSchema("other");
+        assertEquals(0, cache.size(otherSchema));
+    }
+
+    public void testGeneratorSettingsAreKeptApart() throws Exception {
+        LiquibaseDDLGenerator liquibase = new LiquibaseDDLGenerator();
+        liquibase.setUseSeparateChangeSets(true);
+        liquibase.setAuthor("first_author");
+        liquibase.setStatementCache(cache);
+        liquibase.generateDDLStatements(tables);
+        assertEquals(3, cache.size(liquibase));
+
+        liquibase.setAuthor("second_author");
+        assertEquals(0, cache.size(liquibase));
+        List<DDLStatement> statements = liquibase.generateDDLStatements(tables);
+        assertTrue(findStatement(statements, tables.get(0)).getSQLText().contains("second_author"));
+    }
+
+    public void testTypeMapsAreKeptApart() throws Exception {
+        GenericDDLGenerator ddlg = new GenericDDLGenerator(false);
+        ddlg.setStatementCache(cache);
+        ddlg.generateDDLStatements(tables);
+        assertEquals(3, cache.size(ddlg));
+
+        GenericDDLGenerator otherTypes = new GenericDDLGenerator(false);
+        Map<Integer, GenericTypeDescriptor> typeMap = 
+            new HashMap<Integer, GenericTypeDescriptor>(otherTypes.getTypeMap());
+        typeMap.put(Types.VARCHAR, new GenericTypeDescriptor("VARCHAR2", Types.VARCHAR, 4000, "'", "'", 
+                DatabaseMetaData.columnNullable, true, false));
+        otherTypes.setTypeMap(typeMap);
+        assertEquals(0, cache.size(otherTypes));
+        
+        otherTypes.setTypeMap(new HashMap<Integer, GenericTypeDescriptor>(ddlg.getTypeMap()));
+        assertEquals(3, cache.size(otherTypes));
+    }
+
+    public void testDomainChangeRegeneratesTablesUsingIt() throws Exception {
+        UserDefinedSQLType baseType = new UserDefinedSQLType();
+        baseType.setName("VARCHAR");
+        baseType.setType(Types.VARCHAR);
+        UserDefinedSQLType domain = new UserDefinedSQLType();
+        domain.setName("NAME_DOMAIN");
+        domain.setType(Types.VARCHAR);
+        domain.setUpstreamType(baseType);
+        UserDefinedSQLType unusedType = new UserDefinedSQLType();
+        unusedType.setName("UNUSED");
+        tables.get(2).getColumn(1).getUserDefinedSQLType().setUpstreamType(domain);
+
+        GenericDDLGenerator ddlg = new GenericDDLGenerator(false);
+        ddlg.setStatementCache(cache);
+        ddlg.generateDDLStatements(tables);
+        assertEquals(3, cache.size(ddlg));
+
+        unusedType.setName("STILL_UNUSED");
+        assertEquals(3, cache.size(ddlg));
+
+        domain.setName("RENAMED_DOMAIN");
+        assertEquals(2, cache.size(ddlg));
+
+        ddlg.generateDDLStatements(tables);
+        assertEquals(3, cache.size(ddlg));
+        baseType.setName("VARCHAR2");
+        assertEquals(2, cache.size(ddlg));
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+package ca.sqlpower.architect.ddl;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import ca.sqlpower.architect.ddl.DDLStatement.StatementType;
+import ca.sqlpower.sql.JDBCDataSource;
+import ca.sqlpower.sql.PlDotIni;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLObject;
+import ca.sqlpower.sqlobject.SQLObjectException;
+import ca.sqlpower.sqlobject.SQLRelationship;
+import ca.sqlpower.sqlobject.SQLTable;
+
+public class DDLStatementExecutorTest extends TestCase {
+
+    private SQLDatabase db;
+    private Connection con;
+    private SQLTable parent;
+    private SQLTable child;
+    private SQLTable other;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        PlDotIni plini = new PlDotIni();
+        plini.read(new File("pl.regression.ini"));
+        db = new SQLDatabase(plini.getDataSource("regression_test", JDBCDataSource.class));
+        con = db.getConnection();
+        Statement stmt = con.createStatement();
+        for (String table : new String[] { "EXEC_CHILD", "EXEC_PARENT", "EXEC_OTHER" }) {
+            try {
+                stmt.executeUpdate("DROP TABLE " + table);
+            } catch (SQLException ex) {
+                // the table didn't exist
+            }
+        }
+        stmt.close();
+
+        parent = new SQLTable(null, "EXEC_PARENT", null, "TABLE", true);
+        child = new SQLTable(null, "EXEC_CHILD", null, "TABLE", true);
+        other = new SQLTable(null, "EXEC_OTHER", null, "TABLE", true);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        con.close();
+        db.disconnect();
+        super.tearDown();
+    }
+
+    private static DDLStatement statement(SQLObject object, StatementType type, String sql) {
+        return new DDLStatement(object, type, sql, ";", null, null);
+    }
+
+    /**
+     * Returns a statement that runs its batches one statement at a time on
+     * the given statement and, like the drivers that keep going after a
+     * failure, reports the outcome of every statement of the batch.
+     */
+    private static Statement reportingEveryBatchStatement(final Statement stmt) {
+        final List<String> batch = new ArrayList<String>();
+        return (Statement) Proxy.newProxyInstance(Statement.class.getClassLoader(),
+                new Class<?>[] { Statement.class }, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("addBatch")) {
+                    batch.add((String) args[0]);
+                    return null;
+                } else if (method.getName().equals("clearBatch")) {
+                    batch.clear();
+                    return null;
+                } else if (method.getName().equals("executeBatch")) {
+                    int[] counts = new int[batch.size()];
+                    boolean failed = false;
+                    for (int i = 0; i < counts.length; i++) {
+                        try {
+                            counts[i] = stmt.executeUpdate(batch.get(i));
+                        } catch (SQLException ex) {
+                            counts[i] = Statement.EXECUTE_FAILED;
+                            failed = true;
+                        }
+                    }
+                    if (failed) throw new BatchUpdateException(counts);
+                    return counts;
+                }
+                try {
+                    return method.invoke(stmt, args);
+                } catch (InvocationTargetException ex) {
+                    throw ex.getCause();
+                }
+            }
+        });
+    }
+
+    private static Connection reportingEveryBatchStatement(final Connection con) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                try {
+                    Object result = method.invoke(con, args);
+                    if (method.getName().equals("createStatement")) {
+                        return reportingEveryBatchStatement((Statement) result);
+                    }
+                    return result;
+                } catch (InvocationTargetException ex) {
+                    throw ex.getCause();
+                }
+            }
+        });
+    }
+
+    private boolean tableExists(String name) throws SQLException {
+        ResultSet rs = con.getMetaData().getTables(null, null, name, null);
+        try {
+            return rs.next();
+        } finally {
+            rs.close();
+        }
+    }
+
+    private List<DDLStatement> makeScript() throws Exception {
+        SQLRelationship r = new SQLRelationship();
+        r.setName("EXEC_FK");
+        r.attachRelationship(parent, child, false);
+
+        List<DDLStatement> statements = new ArrayList<DDLStatement>();
+        statements.add(statement(parent, StatementType.CREATE, "CREATE TABLE EXEC_PARENT (ID INTEGER NOT NULL)"));
+        statements.add(statement(parent, StatementType.ADD_PK, "ALTER TABLE EXEC_PARENT ADD PRIMARY KEY (ID)"));
+        statements.add(statement(child, StatementType.CREATE, "CREATE TABLE EXEC_CHILD (ID INTEGER NOT NULL, PARENT_ID INTEGER)"));
+        statements.add(statement(child, StatementType.ADD_PK, "ALTER TABLE EXEC_CHILD ADD PRIMARY KEY (ID)"));
+        statements.add(statement(other, StatementType.CREATE, "CREATE TABLE EXEC_OTHER (ID INTEGER NOT NULL)"));
+        statements.add(statement(r, StatementType.CREATE,
+                "ALTER TABLE EXEC_CHILD ADD CONSTRAINT EXEC_FK FOREIGN KEY (PARENT_ID) REFERENCES EXEC_PARENT (ID)"));
+        return statements;
+    }
+
+    public void testExecutesAllStatements() throws Exception {
+        DDLStatementExecutor executor = new DDLStatementExecutor(makeScript());
+        executor.setMaxConnections(3);
+        executor.execute(db);
+
+        assertTrue(executor.getFailures().isEmpty());
+        assertEquals(6, executor.getExecutedCount());
+        assertEquals(6, executor.getProcessedCount());
+        assertTrue(tableExists("EXEC_PARENT"));
+        assertTrue(tableExists("EXEC_CHILD"));
+        assertTrue(tableExists("EXEC_OTHER"));
+    }
+
+    /**
+     * A failed statement should skip the statements that depend on it
+     * without stopping the unrelated ones.
+     */
+    public void testFailureSkipsDependents() throws Exception {
+        List<DDLStatement> statements = makeScript();
+        statements.set(0, statement(parent, StatementType.CREATE, "CREATE TABLE EXEC_PARENT (ID NOT_A_TYPE)"));
+        DDLStatementExecutor executor = new DDLStatementExecutor(statements);
+        executor.setMaxConnections(2);
+        executor.execute(db);
+
+        List<DDLStatementExecutor.Failure> failures = executor.getFailures();
+        assertEquals(3, failures.size());
+        assertEquals(0, failures.get(0).getIndex());
+        assertFalse(failures.get(0).isSkipped());
+        assertNotNull(failures.get(0).getException());
+        assertEquals(1, failures.get(1).getIndex());
+        assertTrue(failures.get(1).isSkipped());
+        assertEquals(5, failures.get(2).getIndex());
+        assertTrue(failures.get(2).isSkipped());
+
+        assertEquals(3, executor.getExecutedCount());
+        assertTrue(tableExists("EXEC_CHILD"));
+        assertTrue(tableExists("EXEC_OTHER"));
+    }
+
+    /**
+     * A failed comment should not skip the keys of its table or the foreign
+     * keys that refer to them.
+     */
+    public void testFailedCommentSkipsNothing() throws Exception {
+        List<DDLStatement> statements = makeScript();
+        statements.add(1, statement(parent, StatementType.COMMENT, "COMMENT ON TABLE EXEC_PARENT IS NOT_A_STRING"));
+        DDLStatementExecutor executor = new DDLStatementExecutor(statements);
+        executor.setMaxConnections(2);
+        executor.execute(db);
+
+        List<DDLStatementExecutor.Failure> failures = executor.getFailures();
+        assertEquals(1, failures.size());
+        assertEquals(1, failures.get(0).getIndex());
+        assertFalse(failures.get(0).isSkipped());
+        assertEquals(6, executor.getExecutedCount());
+        assertEquals(7, executor.getProcessedCount());
+    }
+
+    /**
+     * When the driver reports every statement of a failed batch, the
+     * statements after the failed one ran and should not be reported as
+     * skipped.
+     */
+    public void testStatementsThatRanAfterAFailureInABatchAreNotSkipped() throws Exception {
+        SQLDatabase reportingDb = new SQLDatabase(db.getDataSource()) {
+            @Override
+            public Connection getConnection() throws SQLObjectException {
+                return reportingEveryBatchStatement(super.getConnection());
+            }
+        };
+        List<DDLStatement> statements = new ArrayList<DDLStatement>();
+        statements.add(statement(parent, StatementType.CREATE, "CREATE TABLE EXEC_PARENT (ID INTEGER NOT NULL)"));
+        statements.add(statement(parent, StatementType.ALTER, "ALTER TABLE EXEC_PARENT ADD COLUMN A INTEGER"));
+        statements.add(statement(parent, StatementType.ALTER, "ALTER TABLE EXEC_PARENT ADD COLUMN B NOT_A_TYPE"));
+        statements.add(statement(parent, StatementType.ALTER, "ALTER TABLE EXEC_PARENT ADD COLUMN C INTEGER"));
+        DDLStatementExecutor executor = new DDLStatementExecutor(statements);
+        executor.setMaxConnections(1);
+        try {
+            executor.execute(reportingDb);
+        } finally {
+            reportingDb.disconnect();
+        }
+
+        List<DDLStatementExecutor.Failure> failures = executor.getFailures();
+        assertEquals(1, failures.size());
+        assertEquals(2, failures.get(0).getIndex());
+        assertFalse(failures.get(0).isSkipped());
+        assertEquals(3, executor.getExecutedCount());
+        assertEquals(4, executor.getProcessedCount());
+
+        ResultSet rs = con.getMetaData().getColumns(null, null, "EXEC_PARENT", "C");
+        try {
+            assertTrue(rs.next());
+        } finally {
+            rs.close();
+        }
+    }
+
+    public void testStatementsAboutOtherObjectsWaitForEverything() throws Exception {
+        List<DDLStatement> statements = makeScript();
+        statements.add(3, statement(null, StatementType.COMMENT, "CREATE TABLE EXEC_OTHER_2 (ID INTEGER)"));
+        statements.add(statement(null, StatementType.COMMENT, "DROP TABLE EXEC_OTHER_2"));
+        DDLStatementExecutor executor = new DDLStatementExecutor(statements);
+        executor.execute(db);
+
+        assertTrue(executor.getFailures().isEmpty());
+        assertFalse(tableExists("EXEC_OTHER_2"));
+    }
+}
@@ -19,14 +19,22 @@
 
 package ca.sqlpower.architect.ddl;
 
+import java.beans.PropertyChangeEvent;
+import java.io.StringWriter;
 import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import junit.framework.TestCase;
+import ca.sqlpower.object.AbstractSPListener;
 import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLRelationship;
 import ca.sqlpower.sqlobject.SQLTable;
 import ca.sqlpower.sqlobject.SQLType;
 import ca.sqlpower.sqlobject.SQLTypePhysicalPropertiesProvider.PropertyType;
+import ca.sqlpower.util.SQLPowerUtils;
 
 public class GenericDDLGeneratorTest extends TestCase {
 
@@ -59,6 +67,94 @@ public class GenericDDLGeneratorTest extends TestCase {
 		assertEquals("COMMENT ON COLUMN test_table.name IS 'The person''s name'", sql);
 	}
 
+	public void testWriteDDLScriptMatchesGeneratedScript() throws Exception {
+		SQLTable tbl = new SQLTable();
+		tbl.initFolders(true);
+		tbl.setPhysicalName("test_table");
+		tbl.setRemarks("Streamed table");
+		tbl.addColumn(new SQLColumn(tbl, "id", Types.INTEGER, 0, 0));
+		tbl.addColumn(new SQLColumn(tbl, "name", Types.VARCHAR, 50, 0));
+
+		String script = new GenericDDLGenerator(false).generateDDLScript(Collections.singletonList(tbl));
+
+		GenericDDLGenerator ddl = new GenericDDLGenerator(false);
+		StringWriter out = new StringWriter();
+		ddl.writeDDLScript(Collections.singletonList(tbl), out);
+		assertEquals(script, out.toString());
+		assertTrue(ddl.getDdlStatements().isEmpty());
+	}
+
+	public void testParallelGenerationKeepsOrder() throws Exception {
+		SQLDatabase db = new SQLDatabase();
+		List<SQLTable> tables = new ArrayList<SQLTable>();
+		for (int i = 0; i < 6; i++) {
+			SQLTable tbl = new SQLTable(db, "table_" + i, null, "TABLE", true);
+			tbl.addColumn(new SQLColumn(tbl, "id", Types.INTEGER, 0, 0));
+			tbl.addColumn(new SQLColumn(tbl, "name_" + i, Types.VARCHAR, 50, 0));
+			db.addChild(tbl);
+			tables.add(tbl);
+		}
+		for (int i = 1; i < tables.size(); i++) {
+			new SQLRelationship().attachRelationship(tables.get(i - 1), tables.get(i), false);
+		}
+
+		GenericDDLGenerator sequential = new GenericDDLGenerator(false);
+		List<DDLStatement> expected = sequential.generateDDLStatements(tables);
+
+		GenericDDLGenerator parallel = new GenericDDLGenerator(false);
+		parallel.setGenerationThreads(4);
+		List<DDLStatement> actual = parallel.generateDDLStatements(tables);
+
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).getSQLText(), actual.get(i).getSQLText());
+			assertSame(expected.get(i).getObject(), actual.get(i).getObject());
+		}
+	}
+
+	/**
+	 * The tables generated in parallel must not change the model from the
+	 * worker threads, since that fires events off the calling thread.
+	 */
+	public void testParallelGenerationChangesModelOnCallingThreadOnly() throws Exception {
+		SQLDatabase db = new SQLDatabase();
+		List<SQLTable> tables = new ArrayList<SQLTable>();
+		for (int i = 0; i < 6; i++) {
+			SQLTable tbl = new SQLTable(db, "table " + i, null, "TABLE", true);
+			tbl.addColumn(new SQLColumn(tbl, "id", Types.INTEGER, 0, 0));
+			db.addChild(tbl);
+			tables.add(tbl);
+		}
+		List<SQLRelationship> relationships = new ArrayList<SQLRelationship>();
+		for (int i = 1; i < tables.size(); i++) {
+			SQLRelationship r = new SQLRelationship();
+			r.attachRelationship(tables.get(i - 1), tables.get(i), true);
+			relationships.add(r);
+		}
+
+		final Thread callingThread = Thread.currentThread();
+		final List<String> foreignEvents = Collections.synchronizedList(new ArrayList<String>());
+		SQLPowerUtils.listenToHierarchy(db, new AbstractSPListener() {
+			public void propertyChanged(PropertyChangeEvent evt) {
+				if (Thread.currentThread() != callingThread) {
+					foreignEvents.add(evt.getPropertyName() + " of " + evt.getSource());
+				}
+			}
+		});
+
+		GenericDDLGenerator parallel = new GenericDDLGenerator(false);
+		parallel.setGenerationThreads(4);
+		parallel.generateDDLStatements(tables);
+
+		assertEquals(Collections.emptyList(), foreignEvents);
+		for (SQLTable t : tables) {
+			assertEquals(t.getName().replace(' ', '_'), t.getPhysicalName());
+		}
+		for (SQLRelationship r : relationships) {
+			assertEquals(r.getName().replace(' ', '_'), r.getPhysicalName());
+		}
+	}
+
 	public void testNewTypes() throws Exception {
 		GenericDDLGenerator ddl = new GenericDDLGenerator(false);
 		SQLTable tbl = new SQLTable();
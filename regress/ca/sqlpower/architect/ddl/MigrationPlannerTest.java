@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+package ca.sqlpower.architect.ddl;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import ca.sqlpower.architect.ddl.DDLStatement.StatementType;
+import ca.sqlpower.architect.ddl.MigrationPlanner.Phase;
+import ca.sqlpower.architect.ddl.MigrationPlanner.Step;
+import ca.sqlpower.architect.ddl.MigrationPlanner.TableLock;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLObject;
+import ca.sqlpower.sqlobject.SQLRelationship;
+import ca.sqlpower.sqlobject.SQLTable;
+
+public class MigrationPlannerTest extends TestCase {
+
+    private SQLTable table;
+    private SQLColumn col;
+    private SQLRelationship rel;
+    private List<DDLStatement> statements;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        table = new SQLTable(null, "orders", null, "TABLE", true);
+        col = new SQLColumn(table, "total", Types.DECIMAL, 10, 2);
+        table.addColumn(col);
+        rel = new SQLRelationship();
+        statements = new ArrayList<DDLStatement>();
+    }
+
+    private void add(SQLObject object, StatementType type, String sql) {
+        statements.add(new DDLStatement(object, type, "\n" + sql, ";\n", null, null));
+    }
+
+    public void testMySqlChangesToOneTableAreMerged() throws Exception {
+        add(col, StatementType.CREATE, "ALTER TABLE orders ADD COLUMN total DECIMAL(10,2)");
+        add(rel, StatementType.DROP, "ALTER TABLE orders DROP FOREIGN KEY orders_fk");
+        add(col, StatementType.MODIFY, "ALTER TABLE orders MODIFY COLUMN status VARCHAR(20)");
+        add(col, StatementType.DROP, "ALTER TABLE orders DROP COLUMN old_total");
+        add(col, StatementType.CREATE, "ALTER TABLE customers ADD COLUMN vip CHAR(1)");
+
+        List<Step> plan = new MigrationPlanner(new MySqlDDLGenerator()).plan(statements);
+        assertEquals(3, plan.size());
+
+        assertEquals(Phase.DROP_CONSTRAINTS, plan.get(0).getPhase());
+        assertEquals(TableLock.METADATA, plan.get(0).getLock());
+
+        Step orders = plan.get(1);
+        assertEquals(Phase.ALTER_COLUMNS, orders.getPhase());
+        assertEquals(3, orders.getMergedCount());
+        assertEquals(TableLock.REBUILD, orders.getLock());
+        assertEquals("\nALTER TABLE orders DROP COLUMN old_total, MODIFY COLUMN status VARCHAR(20), " +
+                "ADD COLUMN total DECIMAL(10,2)", orders.getStatement().getSQLText());
+        assertEquals(";\n", orders.getStatement().getSqlTerminator());
+
+        assertEquals(1, plan.get(2).getMergedCount());
+        assertTrue(plan.get(2).getStatement().getSQLText().contains("customers"));
+    }
+
+    public void testOrderOfPhases() throws Exception {
+        add(rel, StatementType.CREATE, "ALTER TABLE orders ADD CONSTRAINT orders_fk FOREIGN KEY (cust_id) REFERENCES customers (id)");
+        add(table, StatementType.CREATE, "CREATE TABLE customers (id INTEGER)");
+        add(col, StatementType.ALTER, "ALTER TABLE orders RENAME COLUMN tot TO total");
+        add(table, StatementType.DROP, "DROP TABLE old_orders");
+        add(rel, StatementType.DROP, "ALTER TABLE orders DROP CONSTRAINT old_fk");
+        add(col, StatementType.COMMENT, "COMMENT ON COLUMN orders.total IS 'Sum'");
+
+        List<Step> plan = new MigrationPlanner(new GenericDDLGenerator(false)).plan(statements);
+        assertEquals(6, plan.size());
+        assertEquals(Phase.DROP_CONSTRAINTS, plan.get(0).getPhase());
+        assertEquals(Phase.DROP_TABLES, plan.get(1).getPhase());
+        assertEquals(Phase.RENAMES, plan.get(2).getPhase());
+        assertEquals(Phase.CREATE_TABLES, plan.get(3).getPhase());
+        assertEquals(TableLock.NONE, plan.get(3).getLock());
+        assertEquals(Phase.ADD_FOREIGN_KEYS, plan.get(4).getPhase());
+        assertEquals(Phase.COMMENTS, plan.get(5).getPhase());
+    }
+
+    public void testAlterColumnRenameIsARename() throws Exception {
+        add(rel, StatementType.CREATE, "ALTER TABLE orders ADD CONSTRAINT orders_fk FOREIGN KEY (total) REFERENCES totals (id)");
+        add(table, StatementType.ADD_PK, "ALTER TABLE orders ADD CONSTRAINT orders_pk PRIMARY KEY (total)");
+        add(col, StatementType.ALTER, "ALTER TABLE orders ALTER COLUMN tot RENAME TO total");
+
+        List<Step> plan = new MigrationPlanner(new H2DDLGenerator()).plan(statements);
+        assertEquals(3, plan.size());
+        assertEquals(Phase.RENAMES, plan.get(0).getPhase());
+        assertSame(statements.get(2), plan.get(0).getStatement());
+        assertEquals(TableLock.METADATA, plan.get(0).getLock());
+        assertEquals(Phase.ADD_CONSTRAINTS, plan.get(1).getPhase());
+        assertEquals(Phase.ADD_FOREIGN_KEYS, plan.get(2).getPhase());
+
+        assertEquals(MigrationPlanner.ClauseKind.RENAME,
+                MigrationPlanner.classifyClause("ALTER COLUMN \"Tot\" RENAME TO total"));
+        assertEquals(MigrationPlanner.ClauseKind.MODIFY_COLUMN,
+                MigrationPlanner.classifyClause("ALTER COLUMN tot SET DEFAULT 0"));
+    }
+
+    public void testOracleMergesSameKindOfChange() throws Exception {
+        add(col, StatementType.CREATE, "ALTER TABLE orders ADD total NUMBER(10,2)");
+        add(col, StatementType.CREATE, "ALTER TABLE orders ADD status VARCHAR2(20)");
+        add(col, StatementType.MODIFY, "ALTER TABLE orders MODIFY note VARCHAR2(200)");
+
+        List<Step> plan = new MigrationPlanner(new OracleDDLGenerator()).plan(statements);
+        assertEquals(2, plan.size());
+        assertEquals("\nALTER TABLE orders MODIFY note VARCHAR2(200)", plan.get(0).getStatement().getSQLText());
+        assertEquals("\nALTER TABLE orders ADD (total NUMBER(10,2), status VARCHAR2(20))",
+                plan.get(1).getStatement().getSQLText());
+        assertEquals(TableLock.METADATA, plan.get(1).getLock());
+    }
+
+    public void testPostgresLocks() throws Exception {
+        add(col, StatementType.CREATE, "ALTER TABLE orders ADD COLUMN note VARCHAR(20)");
+        add(col, StatementType.CREATE, "ALTER TABLE customers ADD COLUMN vip CHAR(1) DEFAULT 'N'");
+
+        List<Step> plan = new MigrationPlanner(new PostgresDDLGenerator()).plan(statements);
+        assertEquals(TableLock.METADATA, plan.get(0).getLock());
+        assertEquals(TableLock.REBUILD, plan.get(1).getLock());
+    }
+
+    public void testForeignKeysThatReferenceEachOtherAreDroppedBeforeTheirPrimaryKeys() throws Exception {
+        SQLTable other = new SQLTable(null, "customers", null, "TABLE", true);
+        add(rel, StatementType.DROP, "ALTER TABLE orders DROP CONSTRAINT orders_customers_fk");
+        add(table, StatementType.DROP, "ALTER TABLE orders DROP CONSTRAINT orders_pk");
+        add(rel, StatementType.DROP, "ALTER TABLE customers DROP CONSTRAINT customers_orders_fk");
+        add(other, StatementType.DROP, "ALTER TABLE customers DROP CONSTRAINT customers_pk");
+        add(rel, StatementType.DROP, "ALTER TABLE orders DROP CONSTRAINT orders_region_fk");
+
+        List<Step> plan = new MigrationPlanner(new PostgresDDLGenerator()).plan(statements);
+        assertEquals(4, plan.size());
+        assertEquals("\nALTER TABLE orders DROP CONSTRAINT orders_customers_fk, DROP CONSTRAINT orders_region_fk",
+                plan.get(0).getStatement().getSQLText());
+        assertEquals(2, plan.get(0).getMergedCount());
+        assertSame(statements.get(2), plan.get(1).getStatement());
+        assertSame(statements.get(1), plan.get(2).getStatement());
+        assertSame(statements.get(3), plan.get(3).getStatement());
+    }
+
+    public void testQuotedTablesAreNotMerged() throws Exception {
+        add(col, StatementType.CREATE, "ALTER TABLE \"Orders\" ADD COLUMN a INTEGER");
+        add(col, StatementType.CREATE, "ALTER TABLE \"Orders\" ADD COLUMN b INTEGER");
+
+        List<Step> plan = new MigrationPlanner(new MySqlDDLGenerator()).plan(statements);
+        assertEquals(2, plan.size());
+        assertSame(statements.get(0), plan.get(0).getStatement());
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+package ca.sqlpower.architect.ddl;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import ca.sqlpower.architect.ddl.SchemaMetadataIndex.ForeignKeyEntry;
+import ca.sqlpower.architect.ddl.SchemaMetadataIndex.TableEntry;
+
+/**
+ * Tests the index against metadata that behaves like drivers which can't
+ * list every foreign key of a schema at once.
+ */
+public class SchemaMetadataIndexTest extends TestCase {
+
+    /**
+     * Serves the rows of one metadata result set, each row mapping column
+     * names to values.
+     */
+    private static ResultSet resultSet(final List<Map<String, String>> rows) {
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+                new Class<?>[] { ResultSet.class }, new InvocationHandler() {
+            private int row = -1;
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("next")) {
+                    row++;
+                    return row < rows.size();
+                } else if (method.getName().equals("getString")) {
+                    return rows.get(row).get(args[0]);
+                }
+                return null;
+            }
+        });
+    }
+
+    private static Map<String, String> table(String schema, String name) {
+        Map<String, String> row = new HashMap<String, String>();
+        row.put("TABLE_TYPE", "TABLE");
+        row.put("TABLE_SCHEM", schema);
+        row.put("TABLE_NAME", name);
+        return row;
+    }
+
+    private static Map<String, String> key(String fkSchema, String fkTable, String name,
+            String pkSchema, String pkTable) {
+        Map<String, String> row = new HashMap<String, String>();
+        row.put("FKTABLE_SCHEM", fkSchema);
+        row.put("FKTABLE_NAME", fkTable);
+        row.put("FK_NAME", name);
+        row.put("PKTABLE_SCHEM", pkSchema);
+        row.put("PKTABLE_NAME", pkTable);
+        return row;
+    }
+
+    /**
+     * The foreign keys of the metadata, in the order they are listed.
+     */
+    private final List<Map<String, String>> keys = new ArrayList<Map<String, String>>();
+
+    /**
+     * Set to make the metadata list no foreign keys when asked for all of a
+     * schema's keys at once, like many drivers do.
+     */
+    private boolean bulkKeysEmpty;
+
+    private final List<String> calls = new ArrayList<String>();
+
+    private DatabaseMetaData createMetaData() {
+        return (DatabaseMetaData) Proxy.newProxyInstance(DatabaseMetaData.class.getClassLoader(),
+                new Class<?>[] { DatabaseMetaData.class }, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+                calls.add(name + (args != null && args.length > 2 ? " " + args[2] : ""));
+                if (name.equals("getTables")) {
+                    List<Map<String, String>> tables = new ArrayList<Map<String, String>>();
+                    tables.add(table("SALES", "ORDERS"));
+                    tables.add(table("SALES", "CUSTOMERS"));
+                    return resultSet(tables);
+                } else if (name.equals("getImportedKeys") || name.equals("getExportedKeys")) {
+                    String prefix = name.equals("getImportedKeys") ? "FK" : "PK";
+                    List<Map<String, String>> rows = new ArrayList<Map<String, String>>();
+                    if (args[2] == null && bulkKeysEmpty) return resultSet(rows);
+                    for (Map<String, String> row : keys) {
+                        if ((args[1] == null || args[1].equals(row.get(prefix + "TABLE_SCHEM")))
+                                && (args[2] == null || args[2].equals(row.get(prefix + "TABLE_NAME")))) {
+                            rows.add(row);
+                        }
+                    }
+                    return resultSet(rows);
+                }
+                return null;
+            }
+        });
+    }
+
+    private static List<String> names(List<ForeignKeyEntry> fks) {
+        List<String> names = new ArrayList<String>();
+        for (ForeignKeyEntry fk : fks) {
+            names.add(fk.getFkSchema() + "." + fk.getName());
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    private static TableEntry findTable(SchemaMetadataIndex index, String name) {
+        return index.getTables(name).get(0);
+    }
+
+    public void testKeysFromOtherSchemasAreFound() throws Exception {
+        keys.add(key("SALES", "ORDERS", "ORDERS_CUSTOMER_FK", "SALES", "CUSTOMERS"));
+        keys.add(key("BILLING", "INVOICES", "INVOICES_CUSTOMER_FK", "SALES", "CUSTOMERS"));
+        DatabaseMetaData dbmd = createMetaData();
+        SchemaMetadataIndex index = new SchemaMetadataIndex(dbmd, null, "SALES");
+
+        assertEquals("[BILLING.INVOICES_CUSTOMER_FK, SALES.ORDERS_CUSTOMER_FK]",
+                names(index.getForeignKeys(findTable(index, "CUSTOMERS"), dbmd)).toString());
+        assertEquals("[SALES.ORDERS_CUSTOMER_FK]",
+                names(index.getForeignKeys(findTable(index, "ORDERS"), dbmd)).toString());
+    }
+
+    public void testEmptyBulkKeysAreReadTableByTable() throws Exception {
+        keys.add(key("SALES", "ORDERS", "ORDERS_CUSTOMER_FK", "SALES", "CUSTOMERS"));
+        bulkKeysEmpty = true;
+        DatabaseMetaData dbmd = createMetaData();
+        SchemaMetadataIndex index = new SchemaMetadataIndex(dbmd, null, "SALES");
+
+        assertEquals("[SALES.ORDERS_CUSTOMER_FK]",
+                names(index.getForeignKeys(findTable(index, "ORDERS"), dbmd)).toString());
+        assertTrue(calls.toString(), calls.contains("getImportedKeys ORDERS"));
+    }
+
+    public void testSelfReferencingKeyIsListedOnce() throws Exception {
+        keys.add(key("SALES", "CUSTOMERS", "CUSTOMERS_REFERRER_FK", "SALES", "CUSTOMERS"));
+        DatabaseMetaData dbmd = createMetaData();
+        SchemaMetadataIndex index = new SchemaMetadataIndex(dbmd, null, "SALES");
+
+        TableEntry customers = findTable(index, "CUSTOMERS");
+        assertEquals(1, index.getForeignKeys(customers, dbmd).size());
+
+        calls.clear();
+        index.getForeignKeys(customers, dbmd);
+        assertTrue("Keys should be remembered: " + calls, calls.isEmpty());
+    }
+}
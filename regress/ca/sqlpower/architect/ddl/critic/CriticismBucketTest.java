@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2009, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+package ca.sqlpower.architect.ddl.critic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+import ca.sqlpower.architect.ddl.critic.CriticAndSettings.Severity;
+import ca.sqlpower.architect.ddl.critic.impl.PrimaryKeyCritic;
+
+public class CriticismBucketTest extends TestCase {
+
+    private CriticismBucket bucket;
+    private CriticAndSettings critic;
+    private final List<CriticismEvent> events = new ArrayList<CriticismEvent>();
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        bucket = new CriticismBucket();
+        critic = new PrimaryKeyCritic();
+        bucket.addCriticismListener(new CriticismListener() {
+            public void criticismsChanged(CriticismEvent e) {
+                events.add(e);
+            }
+        });
+    }
+
+    public void testIndexes() throws Exception {
+        Criticism first = new Criticism("a", "first", critic);
+        Criticism second = new Criticism("a", "second", critic);
+        Criticism third = new Criticism("b", "third", critic);
+        bucket.updateCriticismsToMatch(Arrays.asList(first, second, third));
+
+        assertEquals(Arrays.asList(first, second), bucket.getCriticismsByObject("a"));
+        assertEquals(Arrays.asList(third), bucket.getCriticismsByObject("b"));
+        assertTrue(bucket.getCriticismsByObject("c").isEmpty());
+        assertEquals(2, bucket.getCriticismSubjects().size());
+        assertEquals(3, bucket.getCriticismsBySeverity(Severity.ERROR).size());
+        assertTrue(bucket.getCriticismsBySeverity(Severity.WARNING).isEmpty());
+    }
+
+    public void testOneEventPerUpdate() throws Exception {
+        Criticism kept = new Criticism("a", "kept", critic);
+        Criticism dropped = new Criticism("b", "dropped", critic);
+        bucket.updateCriticismsToMatch(Arrays.asList(kept, dropped));
+        assertEquals(1, events.size());
+        assertEquals(2, events.get(0).getAdded().size());
+
+        Criticism added = new Criticism("c", "added", critic);
+        bucket.updateCriticismsToMatch(Arrays.asList(kept, added));
+        assertEquals(2, events.size());
+        CriticismEvent e = events.get(1);
+        assertEquals(Arrays.asList(added), e.getAdded());
+        assertEquals(Arrays.asList(dropped), e.getRemoved());
+        assertEquals(Arrays.asList(kept), e.getUnchanged());
+        assertEquals(Arrays.asList(kept, added), bucket.getCriticisms());
+        assertTrue(bucket.getCriticismsByObject("b").isEmpty());
+    }
+
+    public void testEquivalentCriticismIsUnchanged() throws Exception {
+        Criticism original = new Criticism("a", "same", critic);
+        bucket.updateCriticismsToMatch(Arrays.asList(original));
+        bucket.updateCriticismsToMatch(Arrays.asList(new Criticism("a", "same", critic)));
+        assertEquals(1, events.size());
+        assertSame(original, bucket.getCriticisms().get(0));
+
+        critic.setSeverity(Severity.WARNING);
+        bucket.updateCriticismsToMatch(Arrays.asList(new Criticism("a", "same", critic)));
+        assertEquals(2, events.size());
+        assertEquals(1, bucket.getCriticismsBySeverity(Severity.WARNING).size());
+        assertTrue(bucket.getCriticismsBySeverity(Severity.ERROR).isEmpty());
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2009, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+package ca.sqlpower.architect.ddl.critic;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+import ca.sqlpower.architect.ddl.critic.impl.DuplicateNameCritic;
+import ca.sqlpower.architect.ddl.critic.impl.PrimaryKeyCritic;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLTable;
+
+public class CriticizerTest extends TestCase {
+
+    private SQLDatabase db;
+    private List<Critic> critics;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        db = new SQLDatabase();
+        for (int i = 0; i < 20; i++) {
+            SQLTable table = new SQLTable(db, "table_" + i, null, "TABLE", true);
+            // every fifth table reuses the name of the table before it
+            table.setPhysicalName(i % 5 == 4 ? "table_" + (i - 1) : "table_" + i);
+            table.addColumn(new SQLColumn(table, "id", Types.INTEGER, 10, 0));
+            table.addColumn(new SQLColumn(table, i % 3 == 0 ? "id" : "name", Types.VARCHAR, 10, 0));
+            if (i % 2 == 0) {
+                table.addToPK(table.getColumn(0));
+            }
+            db.addChild(table);
+        }
+        critics = Arrays.<Critic>asList(new PrimaryKeyCritic(), new DuplicateNameCritic());
+    }
+
+    private static List<String> describe(List<Criticism> criticisms) {
+        List<String> descriptions = new ArrayList<String>();
+        for (Criticism criticism : criticisms) {
+            descriptions.add(criticism.getSubject() + ": " + criticism.getDescription());
+        }
+        Collections.sort(descriptions);
+        return descriptions;
+    }
+
+    public void testParallelMatchesSerial() throws Exception {
+        List<String> serial = describe(new Criticizer(critics).criticize(db));
+        List<String> parallel = describe(new Criticizer(critics, 4).criticize(db));
+        assertFalse(serial.isEmpty());
+        assertEquals(serial, parallel);
+    }
+
+    public void testUnitsKeepTheirOrder() throws Exception {
+        List<SQLTable> tables = db.getChildren(SQLTable.class);
+        Criticizer.UnitCriticisms results = new Criticizer(
+                Collections.<Critic>singletonList(new PrimaryKeyCritic()), 4).criticizeUnits(tables);
+        assertEquals(tables.size(), results.getUnitCriticisms().size());
+        for (int i = 0; i < tables.size(); i++) {
+            List<Criticism> unitCriticisms = results.getUnitCriticisms().get(i);
+            assertEquals(i % 2 == 0 ? 0 : 1, unitCriticisms.size());
+            for (Criticism criticism : unitCriticisms) {
+                assertSame(tables.get(i), criticism.getSubject());
+            }
+        }
+        assertTrue(results.getMergedCriticisms().isEmpty());
+    }
+}
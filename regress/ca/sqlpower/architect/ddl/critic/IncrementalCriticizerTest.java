@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2009, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+package ca.sqlpower.architect.ddl.critic;
+
+import java.sql.Types;
+import java.util.List;
+
+import junit.framework.TestCase;
+import ca.sqlpower.architect.ddl.critic.impl.DuplicateNameCritic;
+import ca.sqlpower.architect.ddl.critic.impl.PrimaryKeyCritic;
+import ca.sqlpower.architect.swingui.ArchitectSwingSession;
+import ca.sqlpower.architect.swingui.TestingArchitectSwingSessionContext;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLTable;
+import ca.sqlpower.util.MonitorableImpl;
+
+public class IncrementalCriticizerTest extends TestCase {
+
+    private ArchitectSwingSession session;
+    private IncrementalCriticizer criticizer;
+    private SQLDatabase db;
+    private SQLTable first;
+    private SQLTable second;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        session = new TestingArchitectSwingSessionContext().createSession();
+        criticizer = session.getWorkspace().getCriticManager().getIncrementalCriticizer();
+        db = session.getTargetDatabase();
+        first = new SQLTable(db, "first", null, "TABLE", true);
+        first.addColumn(new SQLColumn(first, "id", Types.INTEGER, 10, 0));
+        db.addChild(first);
+        second = new SQLTable(db, "second", null, "TABLE", true);
+        second.addColumn(new SQLColumn(second, "id", Types.INTEGER, 10, 0));
+        db.addChild(second);
+    }
+
+    private Criticism findCriticism(Object subject, Class<? extends Critic> criticClass) {
+        for (Criticism criticism : criticizer.getCriticismsByObject(subject)) {
+            if (criticClass.isInstance(criticism.getCritic())) {
+                return criticism;
+            }
+        }
+        return null;
+    }
+
+    public void testChangedTableIsCriticizedAgain() throws Exception {
+        criticizer.criticize(null);
+        assertNotNull(findCriticism(first, PrimaryKeyCritic.class));
+
+        first.addToPK(first.getColumn(0));
+        criticizer.criticize(null);
+        assertNull(findCriticism(first, PrimaryKeyCritic.class));
+    }
+
+    public void testUnchangedTableKeepsItsCriticisms() throws Exception {
+        criticizer.criticize(null);
+        Criticism firstCriticism = findCriticism(first, PrimaryKeyCritic.class);
+        Criticism secondCriticism = findCriticism(second, PrimaryKeyCritic.class);
+
+        first.setName("renamed");
+        criticizer.criticize(null);
+        assertNotSame(firstCriticism, findCriticism(first, PrimaryKeyCritic.class));
+        assertSame(secondCriticism, findCriticism(second, PrimaryKeyCritic.class));
+    }
+
+    public void testRemovedTableLosesItsCriticisms() throws Exception {
+        criticizer.criticize(null);
+        db.removeChild(second);
+        List<Criticism> criticisms = criticizer.criticize(null);
+        assertTrue(criticizer.getCriticismsByObject(second).isEmpty());
+        for (Criticism criticism : criticisms) {
+            assertNotSame(second, criticism.getSubject());
+        }
+    }
+
+    public void testCrossObjectCriticsSeeTheWholeModel() throws Exception {
+        first.setPhysicalName("first_table");
+        second.setPhysicalName("second_table");
+        criticizer.criticize(null);
+        assertNull(findCriticism(second, DuplicateNameCritic.class));
+
+        second.setPhysicalName("first_table");
+        criticizer.criticize(null);
+        assertNotNull(findCriticism(second, DuplicateNameCritic.class));
+    }
+
+    public void testCrossObjectCriticismsOfUnchangedTablesAreKept() throws Exception {
+        second.addColumn(new SQLColumn(second, "id", Types.INTEGER, 10, 0));
+        criticizer.criticize(null);
+        Criticism duplicateColumn = findCriticism(second.getColumn(1), DuplicateNameCritic.class);
+        assertNotNull(duplicateColumn);
+
+        first.setName("renamed");
+        criticizer.criticize(null);
+        assertSame(duplicateColumn, findCriticism(second.getColumn(1), DuplicateNameCritic.class));
+    }
+
+    public void testRemovedTableIsNotMergedWithTheOthers() throws Exception {
+        first.setPhysicalName("same_name");
+        second.setPhysicalName("same_name");
+        criticizer.criticize(null);
+        assertNotNull(findCriticism(second, DuplicateNameCritic.class));
+
+        db.removeChild(first);
+        criticizer.criticize(null);
+        assertNull(findCriticism(second, DuplicateNameCritic.class));
+    }
+
+    public void testCancelledPassIsFinishedByTheNextPass() throws Exception {
+        MonitorableImpl monitor = new MonitorableImpl();
+        monitor.setCancelled(true);
+        assertNull(criticizer.criticize(null, 1, null, monitor));
+        assertNull(findCriticism(first, PrimaryKeyCritic.class));
+
+        assertNotNull(criticizer.criticize(null, 1, null, new MonitorableImpl()));
+        assertNotNull(findCriticism(first, PrimaryKeyCritic.class));
+        assertNotNull(findCriticism(second, PrimaryKeyCritic.class));
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2009, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+package ca.sqlpower.architect.ddl.critic.impl;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import junit.framework.TestCase;
+import ca.sqlpower.architect.ddl.critic.CriticManager;
+
+public class NamingRulesTest extends TestCase {
+
+    public void testReservedWordsOfEachRuleAreKeptApart() throws Exception {
+        NamingRules rules = new NamingRules();
+        Set<String> first = new HashSet<String>(Arrays.asList("SELECT", "NAMING_RULES_ONE"));
+        Set<String> second = new HashSet<String>(Arrays.asList("SELECT", "NAMING_RULES_TWO"));
+        NamingRules.Rule firstRule = NamingRules.reservedWordsRule(first);
+        NamingRules.Rule secondRule = NamingRules.reservedWordsRule(second);
+
+        assertTrue(rules.isReservedWord("select", firstRule));
+        assertTrue(rules.isReservedWord("Select", secondRule));
+        assertTrue(rules.isReservedWord("naming_rules_one", firstRule));
+        assertFalse(rules.isReservedWord("naming_rules_one", secondRule));
+        assertFalse(rules.isReservedWord("naming_rules_two", firstRule));
+        assertFalse(rules.isReservedWord(null, firstRule));
+    }
+
+    public void testPatternsWithTheSameExpressionShareARule() throws Exception {
+        NamingRules rules = new NamingRules();
+        NamingRules.Rule rule = NamingRules.nameRule(NamingRules.ALPHANUMERIC_PATTERN, Integer.MAX_VALUE);
+        NamingRules.Rule sameRule = NamingRules.nameRule(
+                Pattern.compile(NamingRules.ALPHANUMERIC_PATTERN.pattern(), Pattern.CASE_INSENSITIVE), 30);
+        NamingRules.Rule digitsRule = NamingRules.nameRule(Pattern.compile("^[0-9]+$"), Integer.MAX_VALUE);
+
+        assertTrue(rules.isLegalName("123", digitsRule));
+        assertFalse(rules.isLegalName("123", rule));
+        assertFalse(rules.isLegalName("123", sameRule));
+        assertTrue(rules.isLegalName("name_1", rule));
+        assertTrue(rules.isLegalName("name_1", sameRule));
+        assertFalse(rules.isLegalName("name_1", digitsRule));
+    }
+
+    public void testNameLengthIsCheckedAgainstTheRule() throws Exception {
+        NamingRules rules = new NamingRules();
+        NamingRules.Rule rule = NamingRules.nameRule(NamingRules.ALPHANUMERIC_PATTERN, 5);
+        assertFalse(rules.isTooLong("abcde", rule));
+        assertTrue(rules.isTooLong("abcdef", rule));
+        assertFalse(rules.isTooLong(null, rule));
+        assertTrue(rules.isLegalName("abcdef", rule));
+    }
+
+    /**
+     * Critics come and go over a long session, so using more rules than
+     * there are bits must drop the old rules instead of failing, and the
+     * rules still in use must keep giving the right answers.
+     */
+    public void testRulesPastTheLimitDoNotFail() throws Exception {
+        NamingRules rules = new NamingRules();
+        NamingRules.Rule first = NamingRules.reservedWordsRule(Arrays.asList("WORD_0"));
+        assertTrue(rules.isReservedWord("word_0", first));
+        for (int i = 1; i < 100; i++) {
+            Collection<String> words = Arrays.asList("WORD_" + i);
+            NamingRules.Rule rule = NamingRules.reservedWordsRule(words);
+            assertTrue(rules.isReservedWord("word_" + i, rule));
+            assertFalse(rules.isReservedWord("word_0", rule));
+
+            NamingRules.Rule pattern = NamingRules.nameRule(Pattern.compile("^x{" + i + "}$"), Integer.MAX_VALUE);
+            StringBuilder name = new StringBuilder();
+            for (int j = 0; j < i; j++) {
+                name.append('x');
+            }
+            assertTrue(rules.isLegalName(name.toString(), pattern));
+            assertFalse(rules.isLegalName(name.toString() + "x", pattern));
+        }
+        assertTrue(rules.isReservedWord("word_0", first));
+        assertFalse(rules.isReservedWord("word_1", first));
+    }
+
+    public void testEachCriticManagerHasItsOwnRules() throws Exception {
+        CriticManager manager = new CriticManager();
+        AlphaNumericNameCritic critic = new AlphaNumericNameCritic();
+        assertNotSame(manager.getNamingRules(), NamingRules.forCritic(critic));
+
+        manager.registerCritic(critic);
+        assertSame(manager.getNamingRules(), NamingRules.forCritic(critic));
+        assertNotSame(manager.getNamingRules(), new CriticManager().getNamingRules());
+    }
+
+    public void testAlphanumericScanMatchesPattern() throws Exception {
+        String[] names = { "", "a", "_", "1a", "a1", "A_b_9", "has space", "dash-ed", "\u00e9t\u00e9", "Z" };
+        for (String name : names) {
+            assertEquals(name, NamingRules.ALPHANUMERIC_PATTERN.matcher(name).matches(),
+                    NamingRules.isAlphanumeric(name));
+        }
+    }
+}
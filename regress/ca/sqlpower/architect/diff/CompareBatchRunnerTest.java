@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.sqlpower.architect.diff;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+import ca.sqlpower.architect.ArchitectSession;
+import ca.sqlpower.architect.ArchitectSessionContextImpl;
+import ca.sqlpower.architect.ArchitectSessionImpl;
+import ca.sqlpower.architect.diff.CompareBatchRunner.OutputFormat;
+import ca.sqlpower.sql.PlDotIni;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLObjectUtils;
+import ca.sqlpower.sqlobject.SQLTable;
+
+public class CompareBatchRunnerTest extends TestCase {
+
+    private static final String PROJECT =
+        "<?xml version='1.0'?>" +
+        "<architect-project version='0.1'>" +
+        " <project-name>CompareBatchRunnerTest</project-name>" +
+        " <project-data-sources>" +
+        "  <data-source id='DS0'>" +
+        "   <property key='Logical' value='Not Configured' />" +
+        "  </data-source>" +
+        " </project-data-sources>" +
+        " <source-databases>" +
+        " </source-databases>" +
+        " <target-database dbcs-ref='DS0'>" +
+        "  <table id='TAB0' populated='true' primaryKeyName='id' remarks='' name='Customers' >" +
+        "   <folder id='FOL1' populated='true' name='Columns' type='1' >" +
+        "    <column id='COL2' populated='true' autoIncrement='false' name='id' defaultValue='' nullable='0' precision='10' primaryKeySeq='0' referenceCount='1' remarks='' scale='0' type='4' />" +
+        "    <column id='COL3' populated='true' autoIncrement='false' name='name' defaultValue='' nullable='0' precision='10' referenceCount='1' remarks='' scale='0' type='12' />" +
+        "   </folder>" +
+        "   <folder id='FOL4' populated='true' name='Exported Keys' type='3' >" +
+        "   </folder>" +
+        "   <folder id='FOL5' populated='true' name='Imported Keys' type='2' >" +
+        "   </folder>" +
+        "   <folder id='FOL6' populated='true' name='Indices' type='4' >" +
+        "   </folder>" +
+        "  </table>" +
+        " </target-database>" +
+        "</architect-project>";
+
+    private File directory;
+    private File projectFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        directory = File.createTempFile("compare", "");
+        directory.delete();
+        directory.mkdirs();
+        projectFile = new File(directory, "project.architect");
+        OutputStream out = new FileOutputStream(projectFile);
+        try {
+            out.write(PROJECT.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        directory.delete();
+        super.tearDown();
+    }
+
+    /**
+     * Writes a snapshot of the project's own tables, with the given column
+     * added to its only table if it is not null.
+     */
+    private File writeSnapshot(String name, SQLColumn extraColumn) throws Exception {
+        ArchitectSession session = new ArchitectSessionImpl(
+                new ArchitectSessionContextImpl("pl.regression.ini", false), "snapshot");
+        try {
+            PlDotIni plDotIni = new PlDotIni();
+            plDotIni.read(new File("pl.regression.ini"));
+            session.getProjectLoader().load(new ByteArrayInputStream(PROJECT.getBytes("UTF-8")), plDotIni);
+            List<SQLTable> tables = new ArrayList<SQLTable>();
+            SQLObjectUtils.findDescendentsByClass(session.getTargetDatabase(), SQLTable.class, tables);
+            if (extraColumn != null) {
+                tables.get(0).addColumn(extraColumn);
+            }
+            File file = new File(directory, name);
+            OutputStream out = new FileOutputStream(file);
+            try {
+                SchemaSnapshot.write(tables, name, out);
+            } finally {
+                out.close();
+            }
+            return file;
+        } finally {
+            session.close();
+        }
+    }
+
+    private int run(String... args) throws Exception {
+        List<String> allArgs = new ArrayList<String>(Arrays.asList(
+                "-plini", "pl.regression.ini", "-output", directory.getPath()));
+        allArgs.addAll(Arrays.asList(args));
+        allArgs.add(projectFile.getPath());
+        CompareBatchRunner runner = new CompareBatchRunner();
+        runner.setProgress(new PrintStream(new ByteArrayOutputStream()));
+        runner.parseArguments(allArgs.toArray(new String[allArgs.size()]));
+        return runner.run();
+    }
+
+    public void testParseArguments() throws Exception {
+        CompareBatchRunner runner = new CompareBatchRunner();
+        runner.parseArguments(new String[] {
+                "-database", "prod", "-snapshot", "prod.snapshot", "-format", "sql",
+                "-threads", "4", "-match", "logical_name", "-indices", "project.architect" });
+        assertEquals(new File("project.architect"), runner.getProjectFile());
+        assertEquals(Arrays.asList("prod"), runner.getDatabaseNames());
+        assertEquals(Arrays.asList(new File("prod.snapshot")), runner.getSnapshotFiles());
+        assertEquals(OutputFormat.SQL, runner.getFormat());
+        assertEquals(4, runner.getThreads());
+        assertEquals(MatchStrategy.LOGICAL_NAME, runner.getMatchStrategy());
+        assertTrue(runner.isComparingIndices());
+    }
+
+    public void testBadArgumentsAreRejected() throws Exception {
+        String[][] badArguments = {
+                { "-snapshot", "a.snapshot" },
+                { "project.architect" },
+                { "-snapshot", "a.snapshot", "-unknown", "project.architect" },
+                { "-snapshot", "a.snapshot", "-format", "pdf", "project.architect" },
+                { "-snapshot", "a.snapshot", "-match", "uuid", "project.architect" },
+                { "-snapshot", "a.snapshot", "-threads", "0", "project.architect" },
+                { "-snapshot", "a.snapshot", "-saveSnapshot", "dir", "project.architect" },
+                { "-snapshot", "a.snapshot", "one.architect", "two.architect" },
+        };
+        for (String[] args : badArguments) {
+            try {
+                new CompareBatchRunner().parseArguments(args);
+                fail("Accepted " + Arrays.asList(args));
+            } catch (IllegalArgumentException ex) {
+                // expected
+            }
+        }
+    }
+
+    public void testNoDifferencesExitsWithZero() throws Exception {
+        File snapshot = writeSnapshot("same.snapshot", null);
+        assertEquals(0, run("-snapshot", snapshot.getPath()));
+    }
+
+    public void testDifferencesExitWithDifferencesFound() throws Exception {
+        File snapshot = writeSnapshot("changed.snapshot", new SQLColumn(null, "extra", Types.INTEGER, 10, 0));
+        assertEquals(CompareBatchRunner.DIFFERENCES_FOUND, run("-snapshot", snapshot.getPath()));
+        assertEquals(CompareBatchRunner.DIFFERENCES_FOUND,
+                run("-snapshot", snapshot.getPath(), "-format", "sql"));
+    }
+
+    public void testFailedComparisonExitsWithOne() throws Exception {
+        File same = writeSnapshot("same.snapshot", null);
+        File missing = new File(directory, "missing.snapshot");
+        assertEquals(1, run("-snapshot", same.getPath(), "-snapshot", missing.getPath()));
+    }
+}
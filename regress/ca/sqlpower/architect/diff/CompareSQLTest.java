@@ -21,6 +21,7 @@ package ca.sqlpower.architect.diff;
 import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import junit.framework.TestCase;
@@ -857,6 +858,50 @@ public class CompareSQLTest extends TestCase {
 	private SQLTable makeTable(int i) throws SQLObjectException {
 		return makeTable(i,i);
 	}
+	public void testParallelComparisonMatchesSequential() throws SQLObjectException {
+		List<SQLTable> left = new ArrayList<SQLTable>();
+		List<SQLTable> right = new ArrayList<SQLTable>();
+		for (int i = 0; i < 12; i++) {
+			if (i % 4 != 3) left.add(makeTable(i, i % 3 + 1));
+			if (i % 5 != 4) right.add(makeTable(i, i % 2 + 1));
+		}
+
+		CompareSQL sequential = new CompareSQL(left, right, false);
+		List<DiffChunk<SQLObject>> expected = sequential.generateTableDiffs();
+
+		CompareSQL parallel = new CompareSQL(left, right, false);
+		parallel.setComparisonThreads(3);
+		List<DiffChunk<SQLObject>> actual = parallel.generateTableDiffs();
+
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).getType(), actual.get(i).getType());
+			assertSame(expected.get(i).getData(), actual.get(i).getData());
+		}
+		assertTrue(parallel.isFinished());
+	}
+
+	public void testMatchByLogicalName() throws SQLObjectException {
+		SQLTable left = makeTable(1, 2);
+		left.setPhysicalName("old_physical");
+		SQLTable right = makeTable(1, 2);
+		right.setPhysicalName("new_physical");
+
+		CompareSQL byPhysicalName = new CompareSQL(Collections.singletonList(left),
+				Collections.singletonList(right), true, MatchStrategy.PHYSICAL_NAME);
+		List<DiffChunk<SQLObject>> diffs = byPhysicalName.generateTableDiffs();
+		assertEquals(2, diffs.size());
+		assertEquals(DiffType.RIGHTONLY, diffs.get(0).getType());
+		assertEquals(DiffType.LEFTONLY, diffs.get(1).getType());
+
+		CompareSQL byLogicalName = new CompareSQL(Collections.singletonList(left),
+				Collections.singletonList(right), true, MatchStrategy.LOGICAL_NAME);
+		diffs = byLogicalName.generateTableDiffs();
+		assertEquals(1, diffs.size());
+		assertEquals(DiffType.NAME_CHANGED, diffs.get(0).getType());
+		assertSame(right, diffs.get(0).getData());
+	}
+
 	private SQLTable makeTable(int tableNumber, int columnCount) throws SQLObjectException {
 		SQLTable t = new SQLTable(null, "table_"+tableNumber, "remark on this", "TABLE", true);
 		for (int j = 0; j < columnCount; j++) {
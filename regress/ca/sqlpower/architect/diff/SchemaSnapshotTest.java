@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.sqlpower.architect.diff;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import ca.sqlpower.diff.DiffChunk;
+import ca.sqlpower.diff.DiffType;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLIndex;
+import ca.sqlpower.sqlobject.SQLIndex.AscendDescend;
+import ca.sqlpower.sqlobject.SQLObject;
+import ca.sqlpower.sqlobject.SQLRelationship;
+import ca.sqlpower.sqlobject.SQLTable;
+
+public class SchemaSnapshotTest extends TestCase {
+
+    private List<SQLTable> tables;
+    private SQLTable parent;
+    private SQLTable child;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        parent = new SQLTable(null, "parent", "the parent table", "TABLE", true);
+        SQLColumn id = new SQLColumn(parent, "id", Types.INTEGER, 10, 0);
+        parent.addColumn(id);
+        parent.addColumn(new SQLColumn(parent, "name", Types.VARCHAR, 50, 0));
+        parent.addToPK(id);
+
+        child = new SQLTable(null, "child", null, "TABLE", true);
+        child.addColumn(new SQLColumn(child, "child_id", Types.INTEGER, 10, 0));
+        SQLColumn parentId = new SQLColumn(child, "parent_id", Types.INTEGER, 10, 0);
+        parentId.setRemarks("refers to the parent");
+        child.addColumn(parentId);
+        child.addToPK(child.getColumn(0));
+        SQLIndex index = new SQLIndex("child_parent_idx", false, null, null, null);
+        index.addIndexColumn(parentId, AscendDescend.DESCENDING);
+        child.addIndex(index);
+
+        SQLRelationship r = new SQLRelationship();
+        r.setName("child_parent_fk");
+        r.addMapping(id, parentId);
+        r.attachRelationship(parent, child, false);
+
+        tables = new ArrayList<SQLTable>();
+        tables.add(parent);
+        tables.add(child);
+    }
+
+    private SQLDatabase roundTrip() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SchemaSnapshot.write(tables, "test", out);
+        return SchemaSnapshot.read(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    public void testRoundTrip() throws Exception {
+        SQLDatabase db = roundTrip();
+        List<SQLTable> read = db.getChildren(SQLTable.class);
+        assertEquals(2, read.size());
+
+        SQLTable readParent = read.get(0);
+        assertEquals("parent", readParent.getName());
+        assertEquals("the parent table", readParent.getRemarks());
+        assertEquals(2, readParent.getColumns().size());
+        assertEquals(Types.VARCHAR, readParent.getColumn(1).getType());
+        assertEquals(50, readParent.getColumn(1).getPrecision());
+        assertEquals(1, readParent.getPkSize());
+
+        SQLTable readChild = read.get(1);
+        assertEquals("refers to the parent", readChild.getColumn(1).getRemarks());
+        SQLIndex readIndex = readChild.getIndexByName("child_parent_idx");
+        assertNotNull(readIndex);
+        assertSame(readChild.getColumn(1), readIndex.getChildren(SQLIndex.Column.class).get(0).getColumn());
+        assertEquals(AscendDescend.DESCENDING, readIndex.getChildren(SQLIndex.Column.class).get(0).getAscendingOrDescending());
+
+        assertEquals(1, readChild.getImportedKeys().size());
+        SQLRelationship readRel = readChild.getImportedKeys().get(0).getRelationship();
+        assertEquals("child_parent_fk", readRel.getName());
+        assertSame(readParent, readRel.getPkTable());
+        assertSame(readParent.getColumn(0), readRel.getChildren(SQLRelationship.ColumnMapping.class).get(0).getPkColumn());
+    }
+
+    public void testPrimaryKeyKeepsItsColumnOrder() throws Exception {
+        SQLTable orderLine = new SQLTable(null, "order_line", null, "TABLE", true);
+        SQLColumn lineNumber = new SQLColumn(orderLine, "line_number", Types.INTEGER, 10, 0);
+        SQLColumn product = new SQLColumn(orderLine, "product", Types.VARCHAR, 20, 0);
+        SQLColumn orderId = new SQLColumn(orderLine, "order_id", Types.INTEGER, 10, 0);
+        orderLine.addColumn(lineNumber);
+        orderLine.addColumn(product);
+        orderLine.addColumn(orderId);
+        orderLine.getPrimaryKeyIndex().addIndexColumn(orderId, AscendDescend.DESCENDING);
+        orderLine.getPrimaryKeyIndex().addIndexColumn(lineNumber, AscendDescend.ASCENDING);
+        tables.add(orderLine);
+
+        SQLTable read = roundTrip().getChildren(SQLTable.class).get(2);
+        List<SQLIndex.Column> pkColumns = read.getPrimaryKeyIndex().getChildren(SQLIndex.Column.class);
+        assertEquals(2, pkColumns.size());
+        assertSame(read.getColumnByName("order_id"), pkColumns.get(0).getColumn());
+        assertEquals(AscendDescend.DESCENDING, pkColumns.get(0).getAscendingOrDescending());
+        assertSame(read.getColumnByName("line_number"), pkColumns.get(1).getColumn());
+        assertEquals(AscendDescend.ASCENDING, pkColumns.get(1).getAscendingOrDescending());
+        assertFalse(read.getColumnByName("product").isPrimaryKey());
+    }
+
+    public void testCompareAgainstSnapshot() throws Exception {
+        SQLDatabase db = roundTrip();
+        CompareSQL compare = new CompareSQL(tables, db.getChildren(SQLTable.class), false);
+        for (DiffChunk<SQLObject> chunk : compare.generateTableDiffs()) {
+            assertNotSame(DiffType.LEFTONLY, chunk.getType());
+            assertNotSame(DiffType.RIGHTONLY, chunk.getType());
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.sqlpower.architect.profile;
+
+import junit.framework.TestCase;
+
+public class ColumnProfileAccumulatorTest extends TestCase {
+
+    private ProfileSettings settings;
+
+    @Override
+    protected void setUp() throws Exception {
+        settings = new ProfileSettings();
+    }
+
+    public void testDistinctCountIsEstimatedByDefault() throws Exception {
+        ColumnProfileAccumulator acc = new ColumnProfileAccumulator(settings);
+        acc.add("a");
+        assertFalse(acc.isDistinctCountExact());
+    }
+
+    public void testExactDistinctCountWhenAsked() throws Exception {
+        settings.setUsingApproximateCounts(false);
+        ColumnProfileAccumulator acc = new ColumnProfileAccumulator(settings);
+        for (int i = 0; i < 1000; i++) {
+            acc.add(Integer.valueOf(i % 10));
+        }
+        assertTrue(acc.isDistinctCountExact());
+    }
+
+    public void testExactDistinctCountGivesWayToSketchPastLimit() throws Exception {
+        settings.setUsingApproximateCounts(false);
+        ColumnProfileAccumulator acc = new ColumnProfileAccumulator(settings);
+        for (int i = 0; i <= ColumnProfileAccumulator.MAX_EXACT_DISTINCT_VALUES; i++) {
+            acc.add(Integer.valueOf(i));
+        }
+        assertFalse(acc.isDistinctCountExact());
+    }
+
+    public void testMergeOfExactIntoEstimatedIsEstimated() throws Exception {
+        settings.setUsingApproximateCounts(false);
+        ColumnProfileAccumulator exact = new ColumnProfileAccumulator(settings);
+        ColumnProfileAccumulator big = new ColumnProfileAccumulator(settings);
+        exact.add("a");
+        for (int i = 0; i <= ColumnProfileAccumulator.MAX_EXACT_DISTINCT_VALUES; i++) {
+            big.add(Integer.valueOf(i));
+        }
+        exact.merge(big);
+        assertFalse(exact.isDistinctCountExact());
+        assertEquals(ColumnProfileAccumulator.MAX_EXACT_DISTINCT_VALUES + 2, exact.getValueCount());
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.sqlpower.architect.profile;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import junit.framework.TestCase;
+
+public class HyperLogLogTest extends TestCase {
+
+    public void testEmptySketchEstimatesZero() throws Exception {
+        assertEquals(0, new HyperLogLog().estimate());
+    }
+
+    public void testSmallCardinalityIsNearlyExact() throws Exception {
+        HyperLogLog hll = new HyperLogLog();
+        for (int rep = 0; rep < 3; rep++) {
+            for (int i = 0; i < 100; i++) {
+                hll.offer("value " + i);
+            }
+        }
+        hll.offer(null);
+        assertTrue("Estimate was " + hll.estimate(), Math.abs(hll.estimate() - 101) <= 1);
+    }
+
+    public void testLargeCardinalityWithinErrorBound() throws Exception {
+        HyperLogLog hll = new HyperLogLog();
+        int n = 500000;
+        for (int i = 0; i < n; i++) {
+            hll.offer(Long.valueOf(i * 31L));
+        }
+        long estimate = hll.estimate();
+        assertTrue("Estimate " + estimate + " +/- " + hll.getErrorBound() + " misses " + n,
+                Math.abs(estimate - n) <= hll.getErrorBound());
+    }
+
+    public void testMergeEqualsUnion() throws Exception {
+        HyperLogLog a = new HyperLogLog(12);
+        HyperLogLog b = new HyperLogLog(12);
+        HyperLogLog all = new HyperLogLog(12);
+        for (int i = 0; i < 20000; i++) {
+            String v = "v" + i;
+            if (i % 3 == 0) {
+                a.offer(v);
+            } else {
+                b.offer(v);
+            }
+            if (i % 5 == 0) {
+                a.offer(v);
+            }
+            all.offer(v);
+        }
+        a.merge(b);
+        assertEquals(all.estimate(), a.estimate());
+    }
+
+    public void testMergeRejectsDifferentPrecision() throws Exception {
+        try {
+            new HyperLogLog(10).merge(new HyperLogLog(11));
+            fail("Sketches of different precision should not merge");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+    public void testEqualNumbersHashTheSame() throws Exception {
+        assertEquals(HyperLogLog.hash(Long.valueOf(42)), HyperLogLog.hash(BigDecimal.valueOf(42)));
+        assertEquals(HyperLogLog.hash(Integer.valueOf(42)), HyperLogLog.hash(new BigDecimal("42.00")));
+        assertEquals(HyperLogLog.hash(Long.valueOf(4200)), HyperLogLog.hash(new BigDecimal("4.2E+3")));
+        assertEquals(HyperLogLog.hash(Long.valueOf(0)), HyperLogLog.hash(new BigDecimal("0.000")));
+        assertEquals(HyperLogLog.hash(Long.valueOf(-7)), HyperLogLog.hash(BigInteger.valueOf(-7)));
+        assertEquals(HyperLogLog.hash(new BigDecimal("1.5")), HyperLogLog.hash(new BigDecimal("1.50")));
+        assertFalse(HyperLogLog.hash(Long.valueOf(15)) == HyperLogLog.hash(new BigDecimal("1.5")));
+    }
+
+    public void testByteArraysHashByContents() throws Exception {
+        assertEquals(HyperLogLog.hash(new byte[] { 1, 2, 3 }), HyperLogLog.hash(new byte[] { 1, 2, 3 }));
+        assertFalse(HyperLogLog.hash(new byte[] { 1, 2, 3 }) == HyperLogLog.hash(new byte[] { 1, 2, 4 }));
+    }
+
+    public void testMixedNumericTypesCountOnce() throws Exception {
+        HyperLogLog hll = new HyperLogLog();
+        for (int i = 0; i < 1000; i++) {
+            hll.offer(Long.valueOf(i));
+            hll.offer(new BigDecimal(i).setScale(2));
+            hll.offer(BigInteger.valueOf(i));
+        }
+        assertTrue("Estimate was " + hll.estimate(), Math.abs(hll.estimate() - 1000) <= 10);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.sqlpower.architect.profile;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class LongSeriesTest extends TestCase {
+
+    public void testRoundTrip() throws Exception {
+        long[] values = { 0, 5, 3, -7, Long.MAX_VALUE, Long.MIN_VALUE, 1234567890123L, 1234567890124L };
+        LongSeries series = new LongSeries();
+        for (long v : values) {
+            series.add(v);
+        }
+        assertEquals(values.length, series.size());
+        assertEquals(1234567890124L, series.getLast());
+        assertTrue(Arrays.equals(values, series.toArray()));
+    }
+
+    public void testSlowlyChangingValuesAreSmall() throws Exception {
+        LongSeries series = new LongSeries();
+        long time = 1230000000000L;
+        for (int i = 0; i < 365; i++) {
+            series.add(100000 + i * 10);
+        }
+        // three bytes for the first value, one for each delta after it
+        assertEquals(3 + 364, series.getEncodedLength());
+        series = new LongSeries();
+        series.add(time);
+        int first = series.getEncodedLength();
+        for (int i = 1; i < 100; i++) {
+            series.add(time + i * 86400000L);
+        }
+        assertTrue(series.getEncodedLength() - first <= 99 * 4);
+    }
+
+    public void testWriteAndRead() throws Exception {
+        LongSeries series = new LongSeries();
+        for (int i = 0; i < 1000; i++) {
+            series.add(i * i);
+        }
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        series.write(new DataOutputStream(buffer));
+        LongSeries read = LongSeries.read(new DataInputStream(new ByteArrayInputStream(buffer.toByteArray())));
+        assertTrue(Arrays.equals(series.toArray(), read.toArray()));
+
+        read.add(-1);
+        assertEquals(-1, read.toArray()[1000]);
+    }
+
+    public void testDoubleSeries() throws Exception {
+        double[] values = { 0.0, 1.5, 1.5, Double.NaN, Double.NaN, -3.25, 1e300, Double.MIN_VALUE };
+        DoubleSeries series = new DoubleSeries();
+        for (double v : values) {
+            series.add(v);
+        }
+        assertTrue(Arrays.equals(values, series.toArray()));
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        series.write(new DataOutputStream(buffer));
+        DoubleSeries read = DoubleSeries.read(new DataInputStream(new ByteArrayInputStream(buffer.toByteArray())));
+        assertTrue(Arrays.equals(values, read.toArray()));
+    }
+
+    public void testRepeatedDoublesTakeOneByte() throws Exception {
+        DoubleSeries series = new DoubleSeries();
+        series.add(42.5);
+        int first = series.getEncodedLength();
+        for (int i = 0; i < 50; i++) {
+            series.add(42.5);
+        }
+        assertEquals(first + 50, series.getEncodedLength());
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+package ca.sqlpower.architect.profile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import ca.sqlpower.architect.profile.ProfileBatchRunner.OutputFormat;
+import ca.sqlpower.architect.profile.ProfileSettings.SamplingMode;
+import ca.sqlpower.architect.profile.output.StreamingProfileFormat;
+import ca.sqlpower.sqlobject.SQLTable;
+
+public class ProfileBatchRunnerTest extends TestProfileBase {
+
+    /**
+     * A format that records the tables it was given and whether it was
+     * started and finished around them.
+     */
+    private static class RecordingFormat implements StreamingProfileFormat {
+
+        private final List<String> calls = new ArrayList<String>();
+
+        public void startFormat(OutputStream out) {
+            calls.add("start");
+        }
+
+        public void formatTable(TableProfileResult tableResult, List<ColumnProfileResult> columnResults) {
+            assertTrue(tableResult.getProgressMonitor().isFinished());
+            assertFalse(columnResults.isEmpty());
+            calls.add(tableResult.getProfiledObject().getName());
+        }
+
+        public void finishFormat() {
+            calls.add("finish");
+        }
+    }
+
+    private ProfileBatchRunner runner;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        runner = new ProfileBatchRunner();
+        runner.setProgress(new PrintStream(new ByteArrayOutputStream()));
+    }
+
+    public void testParseArguments() throws Exception {
+        runner.parseArguments(new String[] {
+                "-database", "one", "-database", "two", "-format", "jsonl", "-output", "out.jsonl",
+                "-threads", "4", "-threadsPerDatabase", "2", "-sample", "1000", "-recordHistory",
+                "project.architect" });
+        assertEquals(new File("project.architect"), runner.getProjectFile());
+        assertEquals(Arrays.asList("one", "two"), runner.getDatabaseNames());
+        assertEquals(OutputFormat.JSONL, runner.getFormat());
+        assertEquals(new File("out.jsonl"), runner.getOutputFile());
+        assertEquals(4, runner.getThreads());
+        assertEquals(2, runner.getThreadsPerDatabase());
+        assertEquals(SamplingMode.FIXED_ROWS, runner.getSamplingMode());
+        assertEquals(1000, runner.getSampleRows());
+        assertTrue(runner.isRecordingHistory());
+    }
+
+    public void testDefaultArguments() throws Exception {
+        runner.parseArguments(new String[] { "project.architect" });
+        assertEquals(OutputFormat.CSV, runner.getFormat());
+        assertNull(runner.getOutputFile());
+        assertEquals(0, runner.getThreads());
+        assertNull(runner.getSamplingMode());
+        assertFalse(runner.isRecordingHistory());
+    }
+
+    public void testBadArgumentsAreRejected() throws Exception {
+        String[][] badArguments = {
+                {},
+                { "-unknown", "project.architect" },
+                { "-format", "xml", "project.architect" },
+                { "-threads", "0", "project.architect" },
+                { "-threads", "many", "project.architect" },
+                { "project.architect", "-output" },
+                { "one.architect", "two.architect" },
+        };
+        for (String[] args : badArguments) {
+            try {
+                new ProfileBatchRunner().parseArguments(args);
+                fail("Accepted " + Arrays.asList(args));
+            } catch (IllegalArgumentException ex) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     * Every table should be written once, between the start and the finish
+     * of the format, as its profile is done.
+     */
+    public void testEachTableIsWrittenWhenItIsDone() throws Exception {
+        RecordingFormat format = new RecordingFormat();
+        List<SQLTable> tables = Arrays.asList(t1, t2, t3);
+        int failures = runner.profile(pm, tables, format, new ByteArrayOutputStream());
+
+        assertEquals(0, failures);
+        assertEquals(5, format.calls.size());
+        assertEquals("start", format.calls.get(0));
+        assertEquals("finish", format.calls.get(4));
+        for (SQLTable table : tables) {
+            assertTrue(format.calls.contains(table.getName()));
+        }
+    }
+}
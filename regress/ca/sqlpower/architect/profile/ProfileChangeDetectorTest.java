@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.sqlpower.architect.profile;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.Statement;
+
+import junit.framework.TestCase;
+import ca.sqlpower.architect.profile.ProfileSettings.SamplingMode;
+import ca.sqlpower.sql.DataSourceCollection;
+import ca.sqlpower.sql.JDBCDataSource;
+import ca.sqlpower.sql.PlDotIni;
+import ca.sqlpower.sql.SPDataSource;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLTable;
+
+public class ProfileChangeDetectorTest extends TestCase {
+
+    private SQLDatabase db;
+    private ProfileSettings settings;
+
+    @Override
+    protected void setUp() throws Exception {
+        DataSourceCollection<SPDataSource> plini = new PlDotIni();
+        plini.read(new File("pl.regression.ini"));
+        db = new SQLDatabase(plini.getDataSource("regression_test", JDBCDataSource.class));
+        settings = new ProfileSettings();
+        settings.setScanningForChanges(true);
+        execute("DROP TABLE CHANGE_TEST IF EXISTS");
+        execute("DROP TABLE UNTRACKED_TEST IF EXISTS");
+        execute("CREATE TABLE CHANGE_TEST (ID INTEGER, NAME VARCHAR(20), LAST_UPDATED TIMESTAMP)");
+        execute("INSERT INTO CHANGE_TEST VALUES (1, 'one', {ts '2010-01-01 00:00:00'})");
+        execute("CREATE TABLE UNTRACKED_TEST (ID INTEGER, NAME VARCHAR(20))");
+        execute("INSERT INTO UNTRACKED_TEST VALUES (1, 'one')");
+    }
+
+    private void execute(String sql) throws Exception {
+        Connection con = db.getConnection();
+        try {
+            Statement stmt = con.createStatement();
+            stmt.executeUpdate(sql);
+            stmt.close();
+        } finally {
+            con.close();
+        }
+    }
+
+    public void testUpdateOfTrackingColumnChangesSignature() throws Exception {
+        SQLTable table = db.getTableByName("CHANGE_TEST");
+        ProfileChangeDetector detector = new ProfileChangeDetector(settings);
+        String before = detector.computeTableSignature(table);
+        assertNotNull(before);
+        assertEquals(before, detector.computeTableSignature(table));
+
+        execute("UPDATE CHANGE_TEST SET NAME = 'uno', LAST_UPDATED = {ts '2010-01-02 00:00:00'}");
+        assertFalse(before.equals(detector.computeTableSignature(table)));
+    }
+
+    public void testTableWithoutChangeTrackingHasNoSignature() throws Exception {
+        SQLTable table = db.getTableByName("UNTRACKED_TEST");
+        ProfileChangeDetector.TableSignature signature =
+            new ProfileChangeDetector(settings).findTableSignature(table);
+        assertNull(signature.getValue());
+        assertEquals(1, signature.getRowCount());
+    }
+
+    /**
+     * HSQLDB keeps no modification statistics, so without scanning the
+     * table there is nothing to see changes by.
+     */
+    public void testTableIsOnlyScannedWhenAsked() throws Exception {
+        settings.setScanningForChanges(false);
+        ProfileChangeDetector.TableSignature signature =
+            new ProfileChangeDetector(settings).findTableSignature(db.getTableByName("CHANGE_TEST"));
+        assertNull(signature.getValue());
+        assertEquals(-1, signature.getRowCount());
+    }
+
+    public void testSettingsChangeSignature() throws Exception {
+        SQLTable table = db.getTableByName("CHANGE_TEST");
+        String before = new ProfileChangeDetector(settings).computeTableSignature(table);
+
+        settings.setTopNCount(settings.getTopNCount() + 1);
+        String afterTopN = new ProfileChangeDetector(settings).computeTableSignature(table);
+        assertFalse(before.equals(afterTopN));
+
+        settings.setUsingApproximateCounts(!settings.isUsingApproximateCounts());
+        String afterApproximate = new ProfileChangeDetector(settings).computeTableSignature(table);
+        assertFalse(afterTopN.equals(afterApproximate));
+
+        settings.setFindingDistinctCount(!settings.isFindingDistinctCount());
+        String afterDistinct = new ProfileChangeDetector(settings).computeTableSignature(table);
+        assertFalse(afterApproximate.equals(afterDistinct));
+
+        settings.setSamplingMode(SamplingMode.NONE);
+        String afterSampling = new ProfileChangeDetector(settings).computeTableSignature(table);
+        assertFalse(afterDistinct.equals(afterSampling));
+
+        settings.setSamplingMode(SamplingMode.FIXED_ROWS);
+        String afterFixedRows = new ProfileChangeDetector(settings).computeTableSignature(table);
+        settings.setSampleRows(settings.getSampleRows() + 1);
+        assertFalse(afterFixedRows.equals(new ProfileChangeDetector(settings).computeTableSignature(table)));
+    }
+
+    public void testPlatformChangeTracking() throws Exception {
+        assertEquals("ORA_ROWSCN", ProfileChangeDetector.getRowVersionExpression("Oracle"));
+        assertTrue(ProfileChangeDetector.getModificationQuery("Oracle").indexOf("ALL_TAB_MODIFICATIONS") >= 0);
+        assertTrue(ProfileChangeDetector.getModificationQuery("DB2/LINUXX8664").indexOf("MON_GET_TABLE") >= 0);
+        assertNotNull(ProfileChangeDetector.getModificationQuery("PostgreSQL"));
+        assertNull(ProfileChangeDetector.getRowVersionExpression("HSQL Database Engine"));
+        assertNull(ProfileChangeDetector.getModificationQuery("HSQL Database Engine"));
+        assertNull(ProfileChangeDetector.getModificationQuery(null));
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.sqlpower.architect.profile;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.List;
+
+import junit.framework.TestCase;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLTable;
+import ca.sqlpower.util.MonitorableImpl;
+
+public class ProfileResultStoreTest extends TestCase {
+
+    private File dataFile;
+    private ProfileResultStore store;
+    private SQLTable table;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        dataFile = File.createTempFile("profiles", ".test");
+        ProfileResultStore.delete(dataFile);
+        store = new ProfileResultStore(dataFile, 2);
+        table = new SQLTable(null, "profiled_table", null, "TABLE", true);
+        table.addColumn(new SQLColumn(table, "id", Types.INTEGER, 10, 0));
+        table.addColumn(new SQLColumn(table, "name", Types.VARCHAR, 50, 0));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        store.close();
+        ProfileResultStore.delete(dataFile);
+        super.tearDown();
+    }
+
+    private TableProfileResult makeResult() throws Exception {
+        TableProfileResult tpr = new TableProfileResult(table, new ProfileSettings());
+        ColumnProfileResult idResult = new ColumnProfileResult(table.getColumn(0));
+        idResult.setNullCount(3);
+        idResult.setMinValue(new BigDecimal("1.5"));
+        idResult.setMaxValue(new Timestamp(123456789L));
+        idResult.addValueCount(Integer.valueOf(7), 12);
+        idResult.addValueCount(ColumnValueCount.OTHER_VALUE_OBJECT, 30);
+        tpr.addColumnProfileResult(idResult);
+        ColumnProfileResult nameResult = new ColumnProfileResult(table.getColumn(1));
+        nameResult.setMaxValue("zebra");
+        nameResult.setException(new IllegalStateException("broken"));
+        tpr.addColumnProfileResult(nameResult);
+        ((MonitorableImpl) tpr.getProgressMonitor()).setFinished(true);
+        return tpr;
+    }
+
+    public void testRoundTrip() throws Exception {
+        TableProfileResult tpr = makeResult();
+        store.write(tpr);
+        assertTrue(store.contains(tpr));
+
+        List<ColumnProfileResult> read = store.read(tpr);
+        assertEquals(2, read.size());
+        ColumnProfileResult idResult = read.get(0);
+        assertSame(table.getColumn(0), idResult.getProfiledObject());
+        assertEquals(tpr.getColumnProfileResults().get(0).getUUID(), idResult.getUUID());
+        assertEquals(3, idResult.getNullCount());
+        assertEquals(new BigDecimal("1.5"), idResult.getMinValue());
+        assertEquals(new Timestamp(123456789L), idResult.getMaxValue());
+        assertEquals(2, idResult.getValueCount().size());
+        assertEquals(Integer.valueOf(7), idResult.getValueCount().get(0).getValue());
+        assertEquals(12, idResult.getValueCount().get(0).getCount());
+        assertTrue(idResult.getValueCount().get(1).isOtherValues());
+        assertEquals("zebra", read.get(1).getMaxValue());
+        assertNotNull(read.get(1).getException());
+    }
+
+    public void testReopen() throws Exception {
+        TableProfileResult tpr = makeResult();
+        store.write(tpr);
+        store.write(tpr);
+        store.compact();
+        store.close();
+
+        store = new ProfileResultStore(dataFile, 2);
+        assertTrue(store.contains(tpr));
+        assertEquals(2, store.read(tpr).size());
+    }
+
+    public void testLeastRecentlyUsedIsEvicted() throws Exception {
+        TableProfileResult first = makeResult();
+        TableProfileResult second = makeResult();
+        TableProfileResult third = makeResult();
+        first.setResultStore(store);
+        second.setResultStore(store);
+        third.setResultStore(store);
+
+        first.getColumnProfileResults();
+        second.getColumnProfileResults();
+        assertFalse(first.isColumnResultsInStore());
+        third.getColumnProfileResults();
+        assertTrue(first.isColumnResultsInStore());
+        assertFalse(second.isColumnResultsInStore());
+
+        assertEquals(2, first.getColumnProfileResults().size());
+        assertFalse(first.isColumnResultsInStore());
+        assertTrue(second.isColumnResultsInStore());
+    }
+
+    public void testLongNotesAreKept() throws Exception {
+        TableProfileResult tpr = makeResult();
+        StringBuilder notes = new StringBuilder();
+        while (notes.length() <= 70000) {
+            notes.append("long notes ");
+        }
+        tpr.getColumnProfileResults().get(0).setNotes(notes.toString());
+        store.write(tpr);
+        assertEquals(notes.toString(), store.read(tpr).get(0).getNotes());
+    }
+
+    /**
+     * If the compacted data file can't take the place of the original, the
+     * store must go on reading the original.
+     */
+    public void testFailedCompactKeepsOriginal() throws Exception {
+        TableProfileResult tpr = makeResult();
+        store.write(tpr);
+        store.write(tpr);
+        store.write(tpr);
+        File blocker = new File(dataFile.getPath() + ".old");
+        assertTrue(blocker.mkdir());
+        File blockerContents = new File(blocker, "contents");
+        assertTrue(blockerContents.createNewFile());
+        try {
+            store.compact();
+            fail("The data file can't be moved aside");
+        } catch (IOException ex) {
+            // expected
+        } finally {
+            blockerContents.delete();
+            blocker.delete();
+        }
+        assertEquals(2, store.read(tpr).size());
+        assertFalse(new File(dataFile.getPath() + ".tmp").exists());
+
+        store.compact();
+        assertEquals(2, store.read(tpr).size());
+    }
+
+    public void testRemove() throws Exception {
+        TableProfileResult tpr = makeResult();
+        store.write(tpr);
+        store.remove(tpr);
+        assertFalse(store.contains(tpr));
+        assertTrue(store.read(tpr).isEmpty());
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.sqlpower.architect.profile;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+import ca.sqlpower.util.MonitorableImpl;
+
+public class ProfileTaskSchedulerTest extends TestCase {
+
+    /**
+     * A job that records how many jobs were running at once, globally and
+     * against its own data source, then waits for the test to release it.
+     */
+    private class BlockingJob implements Callable<String> {
+
+        private final String name;
+        private final AtomicInteger dsRunning;
+
+        BlockingJob(String name, AtomicInteger dsRunning) {
+            this.name = name;
+            this.dsRunning = dsRunning;
+        }
+
+        public String call() throws Exception {
+            int now = running.incrementAndGet();
+            int dsNow = dsRunning.incrementAndGet();
+            synchronized (ProfileTaskSchedulerTest.this) {
+                maxRunning = Math.max(maxRunning, now);
+                maxDsRunning = Math.max(maxDsRunning, dsNow);
+                startOrder.add(name);
+            }
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } finally {
+                dsRunning.decrementAndGet();
+                running.decrementAndGet();
+            }
+            return name;
+        }
+    }
+
+    private ProfileTaskScheduler scheduler;
+    private final AtomicInteger running = new AtomicInteger();
+    private int maxRunning;
+    private int maxDsRunning;
+    private final List<String> startOrder = Collections.synchronizedList(new ArrayList<String>());
+    private CountDownLatch release;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        release = new CountDownLatch(1);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        release.countDown();
+        scheduler.shutdown();
+        super.tearDown();
+    }
+
+    public void testLimitsAreRespected() throws Exception {
+        scheduler = new ProfileTaskScheduler(3, 2);
+        AtomicInteger dsA = new AtomicInteger();
+        AtomicInteger dsB = new AtomicInteger();
+        List<Future<String>> futures = new ArrayList<Future<String>>();
+        for (int i = 0; i < 5; i++) {
+            futures.add(scheduler.submit("A", new BlockingJob("A" + i, dsA), null));
+            futures.add(scheduler.submit("B", new BlockingJob("B" + i, dsB), null));
+        }
+
+        Thread.sleep(200);
+        assertEquals(3, scheduler.getRunningCount());
+        assertEquals(7, scheduler.getPendingCount());
+
+        release.countDown();
+        for (Future<String> f : futures) {
+            f.get(10, TimeUnit.SECONDS);
+        }
+        assertTrue(maxRunning <= 3);
+        assertTrue(maxDsRunning <= 2);
+        
+        // the slot is handed back just after the result is made available
+        for (int i = 0; i < 100 && scheduler.getRunningCount() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, scheduler.getRunningCount());
+        assertEquals(0, scheduler.getPendingCount());
+    }
+
+    public void testDataSourcesAreServicedInTurn() throws Exception {
+        scheduler = new ProfileTaskScheduler(1, 1);
+        AtomicInteger dsA = new AtomicInteger();
+        AtomicInteger dsB = new AtomicInteger();
+        List<Future<String>> futures = new ArrayList<Future<String>>();
+        futures.add(scheduler.submit("C", new BlockingJob("C", new AtomicInteger()), null));
+        for (int i = 0; i < 3; i++) {
+            futures.add(scheduler.submit("A", new BlockingJob("A" + i, dsA), null));
+        }
+        for (int i = 0; i < 3; i++) {
+            futures.add(scheduler.submit("B", new BlockingJob("B" + i, dsB), null));
+        }
+        release.countDown();
+        for (Future<String> f : futures) {
+            f.get(10, TimeUnit.SECONDS);
+        }
+        assertEquals("[C, A0, B0, A1, B1, A2, B2]", startOrder.toString());
+    }
+
+    public void testCancelPendingJobFreesQueueAndCancelsMonitor() throws Exception {
+        scheduler = new ProfileTaskScheduler(1, 1);
+        AtomicInteger ds = new AtomicInteger();
+        Future<String> first = scheduler.submit("A", new BlockingJob("first", ds), null);
+        MonitorableImpl monitor = new MonitorableImpl();
+        Future<String> second = scheduler.submit("A", new BlockingJob("second", ds), monitor);
+        Future<String> third = scheduler.submit("A", new BlockingJob("third", ds), null);
+
+        assertTrue(second.cancel(false));
+        assertTrue(monitor.isCancelled());
+        assertEquals(1, scheduler.getPendingCount());
+
+        release.countDown();
+        assertEquals("first", first.get(10, TimeUnit.SECONDS));
+        assertEquals("third", third.get(10, TimeUnit.SECONDS));
+        assertEquals("[first, third]", startOrder.toString());
+    }
+
+    public void testExtraConnectionsCountAgainstDataSourceLimit() throws Exception {
+        scheduler = new ProfileTaskScheduler(4, 3);
+        final CountDownLatch acquired = new CountDownLatch(1);
+        final CountDownLatch releaseExtra = new CountDownLatch(1);
+        AtomicInteger ds = new AtomicInteger();
+        Future<Integer> first = scheduler.submit("A", new Callable<Integer>() {
+            public Integer call() throws Exception {
+                int granted = ProfileTaskScheduler.acquireExtraConnections(5);
+                acquired.countDown();
+                releaseExtra.await(10, TimeUnit.SECONDS);
+                ProfileTaskScheduler.releaseExtraConnections(granted);
+                release.await(10, TimeUnit.SECONDS);
+                return granted;
+            }
+        }, null);
+        assertTrue(acquired.await(10, TimeUnit.SECONDS));
+        Future<String> second = scheduler.submit("A", new BlockingJob("second", ds), null);
+        Future<String> other = scheduler.submit("B", new BlockingJob("other", new AtomicInteger()), null);
+
+        Thread.sleep(200);
+        assertEquals("[other]", startOrder.toString());
+        assertEquals(1, scheduler.getPendingCount());
+
+        releaseExtra.countDown();
+        for (int i = 0; i < 100 && scheduler.getPendingCount() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, scheduler.getPendingCount());
+
+        release.countDown();
+        assertEquals(2, first.get(10, TimeUnit.SECONDS).intValue());
+        assertEquals("second", second.get(10, TimeUnit.SECONDS));
+        assertEquals("other", other.get(10, TimeUnit.SECONDS));
+    }
+
+    public void testExtraConnectionsAreReleasedWhenJobReturns() throws Exception {
+        scheduler = new ProfileTaskScheduler(1, 2);
+        Future<Integer> first = scheduler.submit("A", new Callable<Integer>() {
+            public Integer call() throws Exception {
+                return ProfileTaskScheduler.acquireExtraConnections(1);
+            }
+        }, null);
+        assertEquals(1, first.get(10, TimeUnit.SECONDS).intValue());
+        Future<Integer> second = scheduler.submit("A", new Callable<Integer>() {
+            public Integer call() throws Exception {
+                return ProfileTaskScheduler.acquireExtraConnections(1);
+            }
+        }, null);
+        assertEquals(1, second.get(10, TimeUnit.SECONDS).intValue());
+    }
+
+    public void testExtraConnectionsOutsideASchedulerAreNotLimited() throws Exception {
+        scheduler = new ProfileTaskScheduler(1, 1);
+        assertEquals(3, ProfileTaskScheduler.acquireExtraConnections(3));
+        ProfileTaskScheduler.releaseExtraConnections(3);
+    }
+
+    public void testCompletionQueueGetsJobsInTheOrderTheyFinish() throws Exception {
+        scheduler = new ProfileTaskScheduler(2, 2);
+        BlockingQueue<Future<String>> completed = new LinkedBlockingQueue<Future<String>>();
+        Future<String> slow = scheduler.submit("A", new BlockingJob("slow", new AtomicInteger()), null, completed);
+        Future<String> fast = scheduler.submit("B", new Callable<String>() {
+            public String call() {
+                return "fast";
+            }
+        }, null, completed);
+
+        assertSame(fast, completed.poll(10, TimeUnit.SECONDS));
+        assertNull(completed.poll(100, TimeUnit.MILLISECONDS));
+        release.countDown();
+        assertSame(slow, completed.poll(10, TimeUnit.SECONDS));
+    }
+
+    public void testShutdownCancelsPendingJobs() throws Exception {
+        scheduler = new ProfileTaskScheduler(1, 1);
+        AtomicInteger ds = new AtomicInteger();
+        Future<String> first = scheduler.submit("A", new BlockingJob("first", ds), null);
+        Future<String> second = scheduler.submit("A", new BlockingJob("second", ds), null);
+        scheduler.shutdown();
+        assertTrue(second.isCancelled());
+        release.countDown();
+        assertEquals("first", first.get(10, TimeUnit.SECONDS));
+    }
+}
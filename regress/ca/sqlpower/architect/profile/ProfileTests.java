@@ -27,9 +27,20 @@ public class ProfileTests {
         TestSuite suite = new TestSuite("Test for ca.sqlpower.architect.profile");
         //$JUnit-BEGIN$
         suite.addTestSuite(TestProfileCSV.class);
+        suite.addTestSuite(TestProfileJSONLines.class);
         suite.addTestSuite(TableProfileManagerTest.class);
         suite.addTestSuite(AbstractProfileResultTest.class);
         suite.addTestSuite(TestProfileManager.class);
+        suite.addTestSuite(ProfileTaskSchedulerTest.class);
+        suite.addTestSuite(ProfileBatchRunnerTest.class);
+        suite.addTestSuite(TopNValueCounterTest.class);
+        suite.addTestSuite(HyperLogLogTest.class);
+        suite.addTestSuite(ColumnProfileAccumulatorTest.class);
+        suite.addTestSuite(SampleEstimateTest.class);
+        suite.addTestSuite(RowSamplerTest.class);
+        suite.addTestSuite(ProfileChangeDetectorTest.class);
+        suite.addTestSuite(ProfileResultStoreTest.class);
+        suite.addTestSuite(LongSeriesTest.class);
         //$JUnit-END$
         return suite;
     }
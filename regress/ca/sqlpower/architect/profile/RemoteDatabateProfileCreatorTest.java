@@ -33,9 +33,20 @@
 package ca.sqlpower.architect.profile;
 
 import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.Statement;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import junit.framework.TestCase;
 import ca.sqlpower.architect.ArchitectProject;
@@ -46,6 +57,7 @@ import ca.sqlpower.sql.JDBCDataSourceType;
 import ca.sqlpower.sql.PlDotIni;
 import ca.sqlpower.sql.SPDataSource;
 import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLObjectException;
 import ca.sqlpower.sqlobject.SQLTable;
 
 /**
@@ -134,6 +146,274 @@ public class RemoteDatabateProfileCreatorTest extends TestCase {
         
     }
 
+    public void testApproximateCountDistinctFunctions() throws Exception {
+        assertEquals("APPROX_COUNT_DISTINCT(", 
+                RemoteDatabaseProfileCreator.approximateCountDistinctFunction("Oracle", 19, 0));
+        assertEquals("APPROX_COUNT_DISTINCT(", 
+                RemoteDatabaseProfileCreator.approximateCountDistinctFunction("Oracle", 12, 2));
+        assertNull(RemoteDatabaseProfileCreator.approximateCountDistinctFunction("Oracle", 11, 2));
+        assertEquals("APPROX_COUNT_DISTINCT(", 
+                RemoteDatabaseProfileCreator.approximateCountDistinctFunction("Microsoft SQL Server", 15, 0));
+        assertNull(RemoteDatabaseProfileCreator.approximateCountDistinctFunction("Microsoft SQL Server", 14, 0));
+        assertEquals("APPROXIMATE_COUNT_DISTINCT(", 
+                RemoteDatabaseProfileCreator.approximateCountDistinctFunction("Vertica Analytic Database", 9, 0));
+        assertNull(RemoteDatabaseProfileCreator.approximateCountDistinctFunction("PostgreSQL", 15, 0));
+        assertNull(RemoteDatabaseProfileCreator.approximateCountDistinctFunction("HSQL Database Engine", 1, 8));
+    }
+
+    /**
+     * HSQLDB has no approximate distinct count, so approximate remote
+     * profiles count its distinct values with a local sketch.
+     */
+    public void testApproximateDistinctCountIsSketched() throws Exception {
+        ProfileSettings settings = new ProfileSettings();
+        settings.setUsingApproximateCounts(true);
+        ColumnProfileResult cpr = profileFirstColumn("approx_table", 20, 7, settings);
+        assertNull(cpr.getException());
+        assertEquals(7, cpr.getDistinctValueCount());
+        assertTrue(cpr.getDistinctValueCountError() > 0);
+        
+        settings.setUsingApproximateCounts(false);
+        cpr = profileFirstColumn("exact_table", 20, 7, settings);
+        assertNull(cpr.getException());
+        assertEquals(7, cpr.getDistinctValueCount());
+        assertEquals(0, cpr.getDistinctValueCountError());
+    }
+
+    /**
+     * The local sketch of a table larger than the sample only reads the
+     * sample's rows.
+     */
+    public void testSketchedDistinctCountReadsOnlyTheSample() throws Exception {
+        ProfileSettings settings = new ProfileSettings();
+        settings.setUsingApproximateCounts(true);
+        settings.setSamplingMode(ProfileSettings.SamplingMode.FIXED_ROWS);
+        settings.setSampleRows(5);
+        ColumnProfileResult cpr = profileFirstColumn("sampled_table", 20, 20, settings);
+        assertNull(cpr.getException());
+        assertEquals(5, cpr.getDistinctValueCount());
+        
+        settings.setSamplingMode(ProfileSettings.SamplingMode.NONE);
+        cpr = profileFirstColumn("unsampled_table", 20, 20, settings);
+        assertNull(cpr.getException());
+        assertEquals(20, cpr.getDistinctValueCount());
+    }
+
+    /**
+     * Creates a table with one integer column holding <tt>rows</tt> rows of
+     * <tt>distinct</tt> different values, profiles it remotely with the given
+     * settings and returns the profile of the column.
+     */
+    private ColumnProfileResult profileFirstColumn(String tableName, int rows, int distinct, 
+            ProfileSettings settings) throws Exception {
+        Connection con = null;
+        Statement stmt = null;
+        try {
+            con = ds.createConnection();
+            stmt = con.createStatement();
+            stmt.execute("create table " + tableName + " (col1 integer)");
+            for (int i = 0; i < rows; i++) {
+                stmt.execute("insert into " + tableName + " (col1) values (" + (i % distinct) + ")");
+            }
+            TableProfileResult tpr = profileTable(tableName, new RemoteDatabaseProfileCreator(settings), settings);
+            SQLTable table = tpr.getProfiledObject();
+            Collection<ColumnProfileResult> cprCollection = tpr.getColumnProfileResult(table.getColumn(0));
+            assertEquals(1, cprCollection.size());
+            return cprCollection.iterator().next();
+        } finally {
+            if (con != null) {
+                con.close();
+            }
+        }
+    }
+
+    /**
+     * Profiles the existing table of the given name with the given creator
+     * and settings, in a project of its own.
+     */
+    private TableProfileResult profileTable(String tableName, RemoteDatabaseProfileCreator creator, 
+            ProfileSettings settings) throws Exception {
+        SQLDatabase db = new SQLDatabase(ds);
+        SQLTable table = db.getTableByName(tableName);
+
+        final ArchitectProject project = new ArchitectProject();
+        StubArchitectSession session = new StubArchitectSession() {
+            @Override
+            public ArchitectProject getWorkspace() {
+                return project;
+            }
+            @Override
+            public void runInForeground(Runnable runner) {
+                runner.run();
+            }
+        };
+        project.setSession(session);
+        ProfileManager profileManager = new ProfileManagerImpl();
+        project.setProfileManager(profileManager);
+        TableProfileResult tpr = new TableProfileResult(table, settings);
+        profileManager.addChild(tpr, 0);
+        project.getRootObject().addDatabase(db, 0);
+        
+        creator.doProfile(tpr);
+        return tpr;
+    }
+
+    /**
+     * Creates a table with an integer primary key from 0 to rows - 1, a
+     * double column that is null for every seventh row and a varchar column.
+     */
+    private void createKeyedTable(String tableName, int rows) throws Exception {
+        Connection con = null;
+        try {
+            con = ds.createConnection();
+            Statement stmt = con.createStatement();
+            stmt.execute("create table " + tableName + 
+                    " (id integer primary key, amount double, label varchar(20))");
+            for (int i = 0; i < rows; i++) {
+                stmt.execute("insert into " + tableName + " (id, amount, label) values (" + i + ", " + 
+                        (i % 7 == 0 ? "null" : String.valueOf(i % 10)) + ", 'label" + (i * 37) + "')");
+            }
+            stmt.close();
+        } finally {
+            if (con != null) {
+                con.close();
+            }
+        }
+    }
+
+    public void testKeyRangesCoverTheTable() throws Exception {
+        createKeyedTable("ranged_table", 100);
+        ProfileSettings settings = new ProfileSettings();
+        settings.setRemotePartitionCount(4);
+        settings.setRemotePartitionMinRows(10);
+        RemoteDatabaseProfileCreator creator = new RemoteDatabaseProfileCreator(settings);
+        SQLTable table = new SQLDatabase(ds).getTableByName("ranged_table");
+        
+        Connection con = null;
+        try {
+            con = ds.createConnection();
+            List<String> ranges = creator.findPartitions(table, con, 100);
+            assertEquals(4, ranges.size());
+            int total = 0;
+            Statement stmt = con.createStatement();
+            for (String range : ranges) {
+                ResultSet rs = stmt.executeQuery("select count(*) from ranged_table where " + range);
+                assertTrue(rs.next());
+                int count = rs.getInt(1);
+                assertTrue(range + " selects no rows", count > 0);
+                total += count;
+                rs.close();
+            }
+            stmt.close();
+            assertEquals(100, total);
+            
+            assertEquals(Collections.singletonList(null), creator.findPartitions(table, con, 9));
+            settings.setRemotePartitionCount(1);
+            assertEquals(Collections.singletonList(null), creator.findPartitions(table, con, 100));
+        } finally {
+            if (con != null) {
+                con.close();
+            }
+        }
+    }
+
+    /**
+     * The aggregates of each key range merged together must match those of
+     * the whole table.
+     */
+    public void testMergedKeyRangesMatchWholeTable() throws Exception {
+        createKeyedTable("merged_table", 100);
+        ProfileSettings wholeSettings = new ProfileSettings();
+        wholeSettings.setRemoteColumnsPerQuery(3);
+        TableProfileResult whole = profileTable("merged_table", 
+                new RemoteDatabaseProfileCreator(wholeSettings), wholeSettings);
+        
+        ProfileSettings rangeSettings = new ProfileSettings();
+        rangeSettings.setRemoteColumnsPerQuery(3);
+        rangeSettings.setRemotePartitionCount(4);
+        rangeSettings.setRemotePartitionMinRows(10);
+        TableProfileResult ranged = profileTable("merged_table", 
+                new RemoteDatabaseProfileCreator(rangeSettings), rangeSettings);
+        
+        assertEquals(whole.getRowCount(), ranged.getRowCount());
+        for (int i = 0; i < 3; i++) {
+            ColumnProfileResult expected = whole.getColumnProfileResults().get(i);
+            ColumnProfileResult actual = ranged.getColumnProfileResults().get(i);
+            String name = expected.getProfiledObject().getName();
+            assertNull(name, actual.getException());
+            assertEquals(name, expected.getNullCount(), actual.getNullCount());
+            assertEquals(name, expected.getDistinctValueCount(), actual.getDistinctValueCount());
+            assertEquals(name, expected.getMinValue(), actual.getMinValue());
+            assertEquals(name, expected.getMaxValue(), actual.getMaxValue());
+            assertEquals(name, expected.getMinLength(), actual.getMinLength());
+            assertEquals(name, expected.getMaxLength(), actual.getMaxLength());
+            assertEquals(name, expected.getAvgLength(), actual.getAvgLength(), 1e-9);
+            if (expected.getAvgValue() == null) {
+                assertNull(name, actual.getAvgValue());
+            } else {
+                assertEquals(name, ((Number) expected.getAvgValue()).doubleValue(), 
+                        ((Number) actual.getAvgValue()).doubleValue(), 1e-9);
+            }
+        }
+        assertTrue(ranged.getColumnProfileResults().get(1).getNullCount() > 0);
+    }
+
+    /**
+     * A table profiled through the scheduler may ask for more connections
+     * than its data source is allowed, but only gets what the per data
+     * source limit leaves.
+     */
+    public void testExtraConnectionsStayWithinDataSourceLimit() throws Exception {
+        createKeyedTable("limited_table", 50);
+        final ProfileSettings settings = new ProfileSettings();
+        settings.setRemoteColumnsPerQuery(1);
+        settings.setRemoteConnectionsPerTable(8);
+        settings.setRemotePartitionCount(4);
+        settings.setRemotePartitionMinRows(10);
+        final AtomicInteger open = new AtomicInteger();
+        final AtomicInteger maxOpen = new AtomicInteger();
+        final RemoteDatabaseProfileCreator creator = new RemoteDatabaseProfileCreator(settings) {
+            @Override
+            Connection openQueryConnection(SQLDatabase db) throws SQLObjectException {
+                final Connection con = super.openQueryConnection(db);
+                int now = open.incrementAndGet();
+                synchronized (maxOpen) {
+                    maxOpen.set(Math.max(maxOpen.get(), now));
+                }
+                return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), 
+                        new Class<?>[] { Connection.class }, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (method.getName().equals("close")) {
+                            open.decrementAndGet();
+                        }
+                        try {
+                            return method.invoke(con, args);
+                        } catch (InvocationTargetException ex) {
+                            throw ex.getCause();
+                        }
+                    }
+                });
+            }
+        };
+        
+        ProfileTaskScheduler scheduler = new ProfileTaskScheduler(4, 2);
+        try {
+            Future<TableProfileResult> future = scheduler.submit(ds.getName(), new Callable<TableProfileResult>() {
+                public TableProfileResult call() throws Exception {
+                    return profileTable("limited_table", creator, settings);
+                }
+            }, null);
+            TableProfileResult tpr = future.get(60, TimeUnit.SECONDS);
+            assertEquals(3, tpr.getColumnProfileResults().size());
+            assertNull(tpr.getColumnProfileResults().get(0).getException());
+        } finally {
+            scheduler.shutdown();
+        }
+        assertTrue(maxOpen.get() > 0);
+        assertTrue("At most " + maxOpen.get() + " connections were open", maxOpen.get() <= 2);
+        assertEquals(0, open.get());
+    }
+
     /**
      * Removes all ProfileFunctionDescriptor entries from the given database type.
      */
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.sqlpower.architect.profile;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class RowSamplerTest extends TestCase {
+
+    /**
+     * Every row of the scan must be equally likely to end up in the
+     * reservoir, not just the first rows.
+     */
+    public void testReservoirIsUniform() throws Exception {
+        final int rows = 100;
+        final int reservoirSize = 10;
+        final int trials = 5000;
+        int[] picked = new int[rows];
+        Random random = new Random(42);
+        for (int t = 0; t < trials; t++) {
+            int[] reservoir = new int[reservoirSize];
+            RowSampler sampler = RowSampler.reservoir(reservoirSize, random);
+            for (int row = 0; row < rows; row++) {
+                int slot = sampler.nextRow();
+                if (slot >= 0) {
+                    reservoir[slot] = row;
+                }
+            }
+            assertEquals(rows, sampler.getRowsSeen());
+            for (int row : reservoir) {
+                picked[row]++;
+            }
+        }
+        // each row is expected in 500 of the reservoirs
+        for (int row = 0; row < rows; row++) {
+            assertTrue("Row " + row + " was picked " + picked[row] + " times", 
+                    picked[row] > 400 && picked[row] < 600);
+        }
+    }
+
+    public void testReservoirKeepsEverythingFromSmallScans() throws Exception {
+        RowSampler sampler = RowSampler.reservoir(10, new Random(42));
+        for (int row = 0; row < 5; row++) {
+            assertEquals(row, sampler.nextRow());
+        }
+    }
+
+    public void testBernoulliKeepsTheFraction() throws Exception {
+        RowSampler sampler = RowSampler.bernoulli(0.1, new Random(42));
+        int kept = 0;
+        int keptFromFirstHalf = 0;
+        for (int row = 0; row < 100000; row++) {
+            if (sampler.nextRow() >= 0) {
+                kept++;
+                if (row < 50000) keptFromFirstHalf++;
+            }
+        }
+        assertTrue("Kept " + kept, kept > 9700 && kept < 10300);
+        assertTrue("Kept " + keptFromFirstHalf + " from the first half", 
+                keptFromFirstHalf > 4700 && keptFromFirstHalf < 5300);
+    }
+}
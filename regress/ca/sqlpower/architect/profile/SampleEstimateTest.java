@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.sqlpower.architect.profile;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class SampleEstimateTest extends TestCase {
+
+    public void testNoScalingWithoutSample() throws Exception {
+        assertEquals(42, SampleEstimate.scale(42, 1000, 1000));
+        assertEquals(0, SampleEstimate.errorBound(42, 1000, 1000));
+        assertEquals(42, SampleEstimate.scale(42, 0, 1000));
+    }
+
+    public void testScaling() throws Exception {
+        assertEquals(5000, SampleEstimate.scale(50, 1000, 100000));
+        assertTrue(SampleEstimate.errorBound(50, 1000, 100000) > 0);
+    }
+
+    public void testZeroCountStillHasAnInterval() throws Exception {
+        assertEquals(0, SampleEstimate.scale(0, 1000, 100000));
+        // rule of three: up to 3/1000 of the table, less the finite population correction
+        long error = SampleEstimate.errorBound(0, 1000, 100000);
+        assertTrue("Error was " + error, error > 290 && error <= 300);
+    }
+
+    /**
+     * Draws many samples from a table with a known number of nulls and checks
+     * that about 95% of the intervals contain the true count.
+     */
+    public void testIntervalCoverage() throws Exception {
+        final int population = 20000;
+        final int nulls = 3000;
+        final int sampleSize = 500;
+        boolean[] isNull = new boolean[population];
+        for (int i = 0; i < nulls; i++) {
+            isNull[i] = true;
+        }
+        Random r = new Random(42);
+        int covered = 0;
+        final int trials = 1000;
+        for (int t = 0; t < trials; t++) {
+            // partial Fisher-Yates shuffle picks a sample without replacement
+            int count = 0;
+            for (int i = 0; i < sampleSize; i++) {
+                int j = i + r.nextInt(population - i);
+                boolean tmp = isNull[i];
+                isNull[i] = isNull[j];
+                isNull[j] = tmp;
+                if (isNull[i]) count++;
+            }
+            long estimate = SampleEstimate.scale(count, sampleSize, population);
+            long error = SampleEstimate.errorBound(count, sampleSize, population);
+            if (Math.abs(estimate - nulls) <= error) covered++;
+        }
+        assertTrue("Coverage was " + covered, covered > 920 && covered < 985);
+    }
+}
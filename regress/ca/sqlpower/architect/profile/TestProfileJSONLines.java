@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+package ca.sqlpower.architect.profile;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import ca.sqlpower.architect.profile.output.ProfileJSONLinesFormat;
+import ca.sqlpower.sqlobject.SQLTable;
+
+public class TestProfileJSONLines extends TestProfileBase {
+
+    public void testOneLinePerColumn() throws Exception {
+        SQLTable t = mydb.getTableByName("PROFILE_TEST1");
+        Collection<TableProfileResult> tableResults = pm.getResults(t);
+
+        List<ProfileResult> profileResults = new ArrayList<ProfileResult>();
+        int columnCount = 0;
+        for (TableProfileResult tpr : tableResults) {
+            profileResults.add(tpr);
+            for (ColumnProfileResult cpr : tpr.getColumnProfileResults()) {
+                profileResults.add(cpr);
+                columnCount++;
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new ProfileJSONLinesFormat().format(out, profileResults);
+        String x = out.toString("UTF-8");
+
+        BufferedReader rdr = new BufferedReader(new StringReader(x));
+        String line;
+        int lineCount = 0;
+        while ((line = rdr.readLine()) != null) {
+            assertTrue("Incorrect line: " + line, line.startsWith("{\"database\":"));
+            assertTrue("Incorrect line: " + line, line.endsWith("}"));
+            assertTrue("Incorrect line: " + line, line.toUpperCase().contains("\"TABLE\":\"PROFILE_TEST1\""));
+            lineCount++;
+        }
+        assertEquals(columnCount, lineCount);
+        assertTrue(x.toLowerCase().contains("\"column\":\"t1_c4\""));
+    }
+
+    /**
+     * Formatting from an iterator of table results should give the same
+     * output as formatting the equivalent list.
+     */
+    public void testIteratorMatchesList() throws Exception {
+        SQLTable t = mydb.getTableByName("PROFILE_TEST1");
+        Collection<TableProfileResult> tableResults = pm.getResults(t);
+
+        List<ProfileResult> profileResults = new ArrayList<ProfileResult>();
+        for (TableProfileResult tpr : tableResults) {
+            profileResults.add(tpr);
+            profileResults.addAll(tpr.getColumnProfileResults());
+        }
+
+        ByteArrayOutputStream listOut = new ByteArrayOutputStream();
+        new ProfileJSONLinesFormat().format(listOut, profileResults);
+        ByteArrayOutputStream iteratorOut = new ByteArrayOutputStream();
+        new ProfileJSONLinesFormat().format(iteratorOut, tableResults.iterator());
+
+        assertEquals(listOut.toString("UTF-8"), iteratorOut.toString("UTF-8"));
+    }
+}
@@ -83,6 +83,24 @@ public class TestProfileManager extends TestProfileBase {
         }
     }
     
+    public void testFixedRowSampleSmallerThanTableIsScaledUp() throws Exception {
+        pm.getDefaultProfileSettings().setSamplingMode(ProfileSettings.SamplingMode.FIXED_ROWS);
+        pm.getDefaultProfileSettings().setSampleRows(2);
+        pm.setCreator(new LocalReservoirProfileCreator(pm.getDefaultProfileSettings()));
+        TableProfileResult tpr = pm.createProfile(t1);
+        assertEquals(5, tpr.getRowCount());
+        assertEquals(2, tpr.getSampledRowCount());
+    }
+    
+    public void testFixedRowSampleLargerThanTableReadsEveryRow() throws Exception {
+        pm.getDefaultProfileSettings().setSamplingMode(ProfileSettings.SamplingMode.FIXED_ROWS);
+        pm.getDefaultProfileSettings().setSampleRows(50);
+        pm.setCreator(new LocalReservoirProfileCreator(pm.getDefaultProfileSettings()));
+        TableProfileResult tpr = pm.createProfile(t1);
+        assertEquals(5, tpr.getRowCount());
+        assertEquals(0, tpr.getSampledRowCount());
+    }
+    
     public void testProfileAddedEventFiresWhenTableReprofiled() throws Exception {
         CountingProfileChangeListener listener = new CountingProfileChangeListener();
         pm.addProfileChangeListener(listener);
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.sqlpower.architect.profile;
+
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class TopNValueCounterTest extends TestCase {
+
+    public void testExactWhileUnderCapacity() throws Exception {
+        TopNValueCounter counter = new TopNValueCounter(10);
+        for (int i = 0; i < 5; i++) {
+            for (int j = 0; j <= i; j++) {
+                counter.offer("v" + i);
+            }
+        }
+        counter.offer(null);
+        counter.offer(null);
+
+        List<TopNValueCounter.Entry> top = counter.getTop(3);
+        assertEquals(3, top.size());
+        assertEquals("v4", top.get(0).getValue());
+        assertEquals(5, top.get(0).getCount());
+        assertEquals(0, top.get(0).getError());
+        assertEquals("v3", top.get(1).getValue());
+        assertEquals(4, top.get(1).getCount());
+        assertEquals("v2", top.get(2).getValue());
+        assertEquals(17, counter.getTotal());
+        assertEquals(6, counter.size());
+        assertEquals(0, counter.getMinimumCount());
+    }
+
+    public void testNullIsCounted() throws Exception {
+        TopNValueCounter counter = new TopNValueCounter(3);
+        counter.offer(null);
+        counter.offer(null);
+        counter.offer("a");
+        TopNValueCounter.Entry top = counter.getTop(1).get(0);
+        assertNull(top.getValue());
+        assertEquals(2, top.getCount());
+    }
+
+    public void testFrequentValuesSurviveEviction() throws Exception {
+        TopNValueCounter counter = new TopNValueCounter(20);
+        Random r = new Random(1234);
+        for (int i = 0; i < 100000; i++) {
+            if (r.nextInt(4) == 0) {
+                counter.offer(Integer.valueOf(-1 - r.nextInt(3)));
+            } else {
+                counter.offer(Integer.valueOf(r.nextInt(5000)));
+            }
+        }
+        assertEquals(20, counter.size());
+        List<TopNValueCounter.Entry> top = counter.getTop(3);
+        for (TopNValueCounter.Entry e : top) {
+            assertTrue("Unexpected top value " + e, ((Integer) e.getValue()).intValue() < 0);
+            long lowerBound = e.getCount() - e.getError();
+            assertTrue("Count lower bound too low for " + e, lowerBound > 7000);
+        }
+    }
+
+    public void testMergeKeepsUpperBounds() throws Exception {
+        TopNValueCounter a = new TopNValueCounter(3);
+        TopNValueCounter b = new TopNValueCounter(3);
+        for (int i = 0; i < 10; i++) a.offer("x");
+        for (int i = 0; i < 4; i++) a.offer("y");
+        a.offer("z");
+        a.offer("w");
+        for (int i = 0; i < 6; i++) b.offer("x");
+        for (int i = 0; i < 5; i++) b.offer("q");
+
+        a.merge(b);
+        assertEquals(27, a.getTotal());
+        List<TopNValueCounter.Entry> top = a.getTop(2);
+        assertEquals("x", top.get(0).getValue());
+        assertEquals(16, top.get(0).getCount());
+        assertEquals(0, top.get(0).getError());
+
+        // q was not tracked by a, which had evicted values with up to 2 occurrences
+        assertEquals("q", top.get(1).getValue());
+        assertTrue(top.get(1).getCount() >= 5);
+        assertTrue(top.get(1).getCount() - top.get(1).getError() <= 5);
+    }
+}
@@ -53,6 +53,8 @@ import ca.sqlpower.architect.olap.MondrianModel;
 import ca.sqlpower.architect.olap.OLAPSession;
 import ca.sqlpower.architect.profile.ColumnProfileResult;
 import ca.sqlpower.architect.profile.ProfileManager;
+import ca.sqlpower.architect.profile.ProfileSettings;
+import ca.sqlpower.architect.profile.ProfileSettings.SamplingMode;
 import ca.sqlpower.architect.profile.TableProfileResult;
 import ca.sqlpower.architect.swingui.dbtree.DBTreeModel;
 import ca.sqlpower.object.SPObject;
@@ -1192,6 +1194,59 @@ public class TestSwingUIProject extends ArchitectTestCase {
         assertEquals(6, cpr.getMaxLength());
     }
     
+    /**
+     * The default profile settings should be saved with the project and
+     * loaded back.
+     */
+    public void testSaveAndLoadCoversProfileSettings() throws Exception {
+        ProfileSettings settings = session.getProfileManager().getDefaultProfileSettings();
+        settings.setTopNCount(7);
+        settings.setMaxConcurrentProfiles(3);
+        settings.setMaxConcurrentProfilesPerDataSource(2);
+        settings.setUsingApproximateCounts(false);
+        settings.setRemoteColumnsPerQuery(5);
+        settings.setRemoteConnectionsPerTable(3);
+        settings.setRemotePartitionCount(4);
+        settings.setRemotePartitionMinRows(1234);
+        settings.setIncrementalProfiling(true);
+        settings.setChangeTrackingColumns("CHANGED_AT,\"Edited\"");
+        settings.setScanningForChanges(true);
+        settings.setSamplingMode(SamplingMode.PERCENTAGE);
+        settings.setSampleRows(1000);
+        settings.setSamplePercentage(2.5);
+        settings.setSampleTimeBudgetSeconds(30);
+        settings.setUsingProfileStore(true);
+        settings.setMaxLoadedProfiles(12);
+        settings.setMaxProfilesPerTable(6);
+
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        session.getProjectLoader().save(byteArrayOutputStream, ENCODING);
+
+        ArchitectSwingSession session2 = new ArchitectSwingSessionImpl(context, "Load session");
+        SwingUIProjectLoader project2 = new SwingUIProjectLoader(session2);
+        project2.load(new ByteArrayInputStream(byteArrayOutputStream.toByteArray()), plIni);
+
+        ProfileSettings loaded = session2.getProfileManager().getDefaultProfileSettings();
+        assertEquals(7, loaded.getTopNCount());
+        assertEquals(3, loaded.getMaxConcurrentProfiles());
+        assertEquals(2, loaded.getMaxConcurrentProfilesPerDataSource());
+        assertFalse(loaded.isUsingApproximateCounts());
+        assertEquals(5, loaded.getRemoteColumnsPerQuery());
+        assertEquals(3, loaded.getRemoteConnectionsPerTable());
+        assertEquals(4, loaded.getRemotePartitionCount());
+        assertEquals(1234, loaded.getRemotePartitionMinRows());
+        assertTrue(loaded.isIncrementalProfiling());
+        assertEquals("CHANGED_AT,\"Edited\"", loaded.getChangeTrackingColumns());
+        assertTrue(loaded.isScanningForChanges());
+        assertEquals(SamplingMode.PERCENTAGE, loaded.getSamplingMode());
+        assertEquals(1000, loaded.getSampleRows());
+        assertEquals(2.5, loaded.getSamplePercentage(), 0.0);
+        assertEquals(30, loaded.getSampleTimeBudgetSeconds());
+        assertTrue(loaded.isUsingProfileStore());
+        assertEquals(12, loaded.getMaxLoadedProfiles());
+        assertEquals(6, loaded.getMaxProfilesPerTable());
+    }
+    
     /**
      * Checks the entire object tree loaded in to ensure all the
      * parent references point to the parents we found the children
@@ -47,6 +47,7 @@ import ca.sqlpower.architect.etl.kettle.KettleJob;
 import ca.sqlpower.architect.olap.OLAPRootObject;
 import ca.sqlpower.architect.olap.OLAPSession;
 import ca.sqlpower.architect.profile.ProfileManager;
+import ca.sqlpower.architect.swingui.critic.ValidationScheduler;
 import ca.sqlpower.architect.swingui.olap.OLAPEditSession;
 import ca.sqlpower.architect.undo.ArchitectUndoManager;
 import ca.sqlpower.object.SPObjectSnapshot;
@@ -532,6 +533,11 @@ public class TestingArchitectSwingSession implements ArchitectSwingSession {
         return null;
     }
 
+    @Override
+    public ValidationScheduler getValidationScheduler() {
+        return null;
+    }
+
     @Override
     public void setSaveBehaviour(Saver saveBehaviour) {
         // TODO Auto-generated method stub
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2009, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+package ca.sqlpower.architect.swingui.critic;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.SwingUtilities;
+
+import junit.framework.TestCase;
+import ca.sqlpower.architect.ddl.critic.Criticism;
+import ca.sqlpower.architect.ddl.critic.impl.PrimaryKeyCritic;
+import ca.sqlpower.architect.swingui.ArchitectSwingSession;
+import ca.sqlpower.architect.swingui.TestingArchitectSwingSessionContext;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLTable;
+
+public class ValidationSchedulerTest extends TestCase {
+
+    private ArchitectSwingSession session;
+    private ValidationScheduler scheduler;
+    private SQLTable table;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        session = new TestingArchitectSwingSessionContext().createSession();
+        scheduler = new ValidationScheduler(session);
+        scheduler.setDelay(0);
+        SQLDatabase db = session.getTargetDatabase();
+        table = new SQLTable(db, "no_key", null, "TABLE", true);
+        table.addColumn(new SQLColumn(table, "id", Types.INTEGER, 10, 0));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        scheduler.cleanup();
+        super.tearDown();
+    }
+
+    /**
+     * Returns true if the bucket has a primary key criticism of the table, as
+     * seen from the Swing thread.
+     */
+    private boolean hasPrimaryKeyCriticism() throws Exception {
+        final List<Criticism> criticisms = new ArrayList<Criticism>();
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                criticisms.addAll(scheduler.getCriticismBucket().getCriticismsByObject(table));
+            }
+        });
+        for (Criticism criticism : criticisms) {
+            if (criticism.getCritic() instanceof PrimaryKeyCritic) return true;
+        }
+        return false;
+    }
+
+    private void waitFor(boolean expected) throws Exception {
+        long end = System.currentTimeMillis() + 10000;
+        while (hasPrimaryKeyCriticism() != expected) {
+            if (System.currentTimeMillis() > end) {
+                fail("The bucket was not updated in time");
+            }
+            Thread.sleep(20);
+        }
+    }
+
+    public void testChangesAreValidatedInTheBackground() throws Exception {
+        scheduler.start();
+        session.getTargetDatabase().addChild(table);
+        waitFor(true);
+
+        table.addToPK(table.getColumn(0));
+        waitFor(false);
+    }
+
+    public void testNothingIsValidatedBeforeStart() throws Exception {
+        session.getTargetDatabase().addChild(table);
+        Thread.sleep(200);
+        assertFalse(hasPrimaryKeyCriticism());
+    }
+}
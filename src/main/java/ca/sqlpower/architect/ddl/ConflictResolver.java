@@ -21,7 +21,6 @@ package ca.sqlpower.architect.ddl;
 
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
@@ -33,6 +32,8 @@ import java.util.Set;
 import org.apache.log4j.Logger;
 
 import ca.sqlpower.architect.ArchitectUtils;
+import ca.sqlpower.architect.ddl.SchemaMetadataIndex.ForeignKeyEntry;
+import ca.sqlpower.architect.ddl.SchemaMetadataIndex.TableEntry;
 import ca.sqlpower.sqlobject.SQLDatabase;
 import ca.sqlpower.sqlobject.SQLIndex;
 import ca.sqlpower.sqlobject.SQLObject;
@@ -91,41 +92,23 @@ public class ConflictResolver implements Monitorable {
         
         /**
          * Adds the dependant imported and exported key relationships which must
-         * be dropped before this conflict can be dropped. 
-         * @param dbmd The database metadata to consult.
+         * be dropped before this conflict can be dropped.
+         * @param index The index of the schema this conflict's table is in.
+         * @param table This conflict's table in the index.
+         * @param dbmd The database metadata to consult if the index doesn't
+         * have the keys already.
          */
-        private void addTableDependants(DatabaseMetaData dbmd) throws SQLException {
-            ResultSet ikrs = dbmd.getImportedKeys(getCatalog(), getSchema(), getName());
-            addDependantsFromKeys(ikrs);
-            ikrs.close();
-            
-            ikrs = dbmd.getExportedKeys(getCatalog(), getSchema(), getName());
-            addDependantsFromKeys(ikrs);
-            ikrs.close();
-        }
-
-        /**
-         * A subrountine of addTableDependants().  It adds dependant objects from 
-         * a DatabaseMetaData imported keys or exported keys resultset. 
-         * @param rs
-         * @throws SQLException
-         */
-        private void addDependantsFromKeys(ResultSet rs) throws SQLException {
-            Conflict prev = null;
-            while (rs.next()) {
+        private void addTableDependants(SchemaMetadataIndex index, TableEntry table,
+                DatabaseMetaData dbmd) throws SQLException {
+            for (ForeignKeyEntry fk : index.getForeignKeys(table, dbmd)) {
                 Conflict c = new Conflict("FOREIGN KEY",
-                        rs.getString("FKTABLE_CAT"),
-                        rs.getString("FKTABLE_SCHEM"),
-                        rs.getString("FK_NAME"));
-
-                // multi-column keys get multiple rows in this result set.  We need to skip 'em.
-                if (c.equals(prev)) continue;
-                prev = c;
-                
+                        fk.getFkCatalog(),
+                        fk.getFkSchema(),
+                        fk.getName());
                 ddlg.setTargetCatalog(c.getCatalog());
                 ddlg.setTargetSchema(c.getSchema());
                 c.setSqlDropStatement(
-                        ddlg.makeDropForeignKeySQL(rs.getString("FKTABLE_NAME"), c.getName()));
+                        ddlg.makeDropForeignKeySQL(fk.getFkTable(), c.getName()));
                 dependants.add(c);
             }
         }
@@ -191,6 +174,11 @@ public class ConflictResolver implements Monitorable {
     private List<Conflict> conflicts;
     private String lastSQLStatement;
     private DDLGenerator ddlg;
+
+    /**
+     * Where the tables and foreign keys of the target schemas are looked up.
+     */
+    private final SchemaMetadataCache metadataCache;
     private int monitorableProgress;
 	private boolean doingFindConflicting;
     private boolean findConflictingFinished;
@@ -199,13 +187,25 @@ public class ConflictResolver implements Monitorable {
 	private boolean dropConflictingFinished;
 	
     /**
-     * Creates a new ConflictResolver.  You should call findConflicting() after you get
-     * this new object.
+     * Creates a new ConflictResolver with its own cache of the target schemas,
+     * which reads each schema once. You should call findConflicting() after
+     * you get this new object.
      */
     public ConflictResolver(SQLDatabase target, DDLGenerator ddlg, List<DDLStatement> ddlStatements) {
+        this(target, ddlg, ddlStatements, new SchemaMetadataCache(SchemaMetadataCache.NEVER_EXPIRES));
+    }
+
+    /**
+     * Creates a new ConflictResolver that looks up the target schemas in the
+     * given cache, so resolvers for the same target can share them. You
+     * should call findConflicting() after you get this new object.
+     */
+    public ConflictResolver(SQLDatabase target, DDLGenerator ddlg, List<DDLStatement> ddlStatements,
+            SchemaMetadataCache metadataCache) {
     	this.targetDatabase = target;
         this.ddlg = ddlg;
         this.ddlStatements = ddlStatements;
+        this.metadataCache = metadataCache;
     }
 
     public void aboutToCallDropConflicting() {
@@ -251,24 +251,20 @@ public class ConflictResolver implements Monitorable {
    			                    + sch + "'.'" + t.getPhysicalName() + "'");
    			        }
    			        
-   			        ResultSet rs = dbmd.getTables(
-   			                ddlg.toIdentifier(cat),
-   			                ddlg.toIdentifier(sch),
-   			                ddlg.toIdentifier(t.getPhysicalName()),
-   			                null);
-   			        while (rs.next()) {
+   			        SchemaMetadataIndex index = metadataCache.getIndex(targetDatabase, dbmd,
+   			                ddlg.toIdentifier(cat), ddlg.toIdentifier(sch));
+   			        for (TableEntry existing : index.getTables(ddlg.toIdentifier(t.getPhysicalName()))) {
    			            Conflict c = new Conflict(
-   			                    rs.getString("TABLE_TYPE"),
-   			                    rs.getString("TABLE_CAT"),
-   			                    rs.getString("TABLE_SCHEM"),
-   			                    rs.getString("TABLE_NAME"));
+   			                    existing.getType(),
+   			                    existing.getCatalog(),
+   			                    existing.getSchema(),
+   			                    existing.getName());
    			            ddlg.setTargetCatalog(c.getCatalog());
    			            ddlg.setTargetSchema(c.getSchema());
    			            c.setSqlDropStatement(ddlg.makeDropTableSQL(c.getName()));
-   			            c.addTableDependants(dbmd);
+   			            c.addTableDependants(index, existing, dbmd);
    			            conflicts.add(c);
    			        }
-   			        rs.close();
    			        
    				} else if (clazz.equals(SQLRelationship.class)) {
    					logger.error("Relationship conflicts are not supported yet!");
@@ -322,6 +318,7 @@ public class ConflictResolver implements Monitorable {
     				dropConflict(c, stmt, alreadyDropped);
     			}
     		} finally {
+    			metadataCache.invalidate(targetDatabase);
     			dropConflictingFinished = true;
     			doingDropConflicting = false;
     			try {
@@ -19,6 +19,8 @@
 
 package ca.sqlpower.architect.ddl;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.sql.SQLException;
 import java.util.Collection;
 import java.util.List;
@@ -78,6 +80,41 @@ public interface DDLGenerator {
      */
     public String generateDDLScript(Collection<SQLTable> tables) throws SQLException, SQLObjectException;
 
+    /**
+     * Writes the same script as {@link #generateDDLScript(Collection)} to the
+     * given writer, one statement at a time as they are generated, so the
+     * whole script never has to be held in memory. The generated statements
+     * are not kept for {@link #getDdlStatements()}.
+     * 
+     * @param tables The collection of tables the generated script should create.
+     * @param out The writer to write the script to. It is flushed but not closed.
+     * @throws SQLException If there is a problem getting type info from the target DB.
+     * @throws SQLObjectException If there are problems with the Architect objects.
+     * @throws IOException If writing to the writer fails.
+     */
+    public void writeDDLScript(Collection<SQLTable> tables, Writer out)
+    throws SQLException, SQLObjectException, IOException;
+
+    /**
+     * Sets the number of threads {@link #generateDDLStatements(Collection)}
+     * and {@link #writeDDLScript(Collection, Writer)} may use to generate the
+     * statements of different tables at the same time. The statements come
+     * out in the same order either way. The default is 1.
+     */
+    public void setGenerationThreads(int threads);
+
+    public int getGenerationThreads();
+
+    /**
+     * Sets the cache that {@link #generateDDLStatements(Collection)} and
+     * {@link #writeDDLScript(Collection, Writer)} take the statements of
+     * unchanged tables from, instead of generating them again. Null, the
+     * default, generates every table every time.
+     */
+    public void setStatementCache(DDLStatementCache cache);
+
+    public DDLStatementCache getStatementCache();
+
 
     /**
      * Adds a comment (remark) to the passed object (table, column, view, ...)
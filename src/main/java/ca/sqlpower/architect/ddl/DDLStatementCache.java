@@ -0,0 +1,297 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+package ca.sqlpower.architect.ddl;
+
+import java.beans.PropertyChangeEvent;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.object.AbstractSPListener;
+import ca.sqlpower.object.SPChildEvent;
+import ca.sqlpower.object.SPListener;
+import ca.sqlpower.object.SPObject;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLObjectException;
+import ca.sqlpower.sqlobject.SQLRelationship;
+import ca.sqlpower.sqlobject.SQLRelationship.SQLImportedKey;
+import ca.sqlpower.sqlobject.SQLTable;
+import ca.sqlpower.sqlobject.UserDefinedSQLType;
+import ca.sqlpower.util.SQLPowerUtils;
+
+/**
+ * Keeps the DDL statements generated for each table of a database, for each
+ * kind of generator and target catalog and schema, until the table changes.
+ * A generator given this cache with
+ * {@link DDLGenerator#setStatementCache(DDLStatementCache)} only generates the
+ * tables that were changed since the last time, so regenerating the DDL of a
+ * large model after a small edit is quick.
+ * <p>
+ * The cache listens to the whole database hierarchy. A change to a table,
+ * one of its columns, indices or relationships forgets the statements of that
+ * table, along with the relationship statements of the tables that have
+ * relationships to it since those name its columns. The types and domains
+ * the columns of the cached tables are based on live outside the database,
+ * so the cache also listens to those, and a change to one forgets the
+ * statements of every table with a column based on it. Call
+ * {@link #cleanup()} to stop listening when the cache is no longer needed.
+ * <p>
+ * The statements depend on the generator's settings, so the statements of
+ * each generator class, target catalog, target schema, combination of the
+ * settings given by {@link GenericDDLGenerator#getStatementSettings()} and
+ * type map are kept apart. The type map is part of the key because a
+ * generator connected to its target database reads its types from there.
+ */
+public class DDLStatementCache {
+
+    private static final Logger logger = Logger.getLogger(DDLStatementCache.class);
+
+    private final SQLDatabase database;
+
+    /**
+     * The statements of each table by generator key. Each value holds the
+     * statements that create the table and its indices followed by the ones
+     * that create its exported relationships.
+     */
+    private final Map<String, Map<SQLTable, List<DDLStatement>[]>> statements =
+        new HashMap<String, Map<SQLTable, List<DDLStatement>[]>>();
+
+    private final SPListener listener = new AbstractSPListener() {
+
+        @Override
+        public void childAdded(SPChildEvent e) {
+            SQLPowerUtils.listenToHierarchy(e.getChild(), this);
+            changed(e.getSource());
+            changed(e.getChild());
+        }
+
+        @Override
+        public void childRemoved(SPChildEvent e) {
+            SQLPowerUtils.unlistenToHierarchy(e.getChild(), this);
+            changed(e.getSource());
+            if (e.getChild() instanceof SQLTable) {
+                forget((SQLTable) e.getChild());
+            } else {
+                changed(e.getChild());
+            }
+        }
+
+        @Override
+        public void propertyChanged(PropertyChangeEvent evt) {
+            changed((SPObject) evt.getSource());
+        }
+    };
+
+    /**
+     * The types and domains the columns of the cached tables are based on,
+     * directly or through other types, with the tables that use each.
+     */
+    private final Map<UserDefinedSQLType, Set<SQLTable>> typeUsers =
+        new HashMap<UserDefinedSQLType, Set<SQLTable>>();
+
+    private final SPListener typeListener = new AbstractSPListener() {
+
+        @Override
+        public void childAdded(SPChildEvent e) {
+            SQLPowerUtils.listenToHierarchy(e.getChild(), this);
+            typeChanged(e.getSource());
+        }
+
+        @Override
+        public void childRemoved(SPChildEvent e) {
+            SQLPowerUtils.unlistenToHierarchy(e.getChild(), this);
+            typeChanged(e.getSource());
+        }
+
+        @Override
+        public void propertyChanged(PropertyChangeEvent evt) {
+            typeChanged((SPObject) evt.getSource());
+        }
+    };
+
+    public DDLStatementCache(SQLDatabase database) {
+        this.database = database;
+        SQLPowerUtils.listenToHierarchy(database, listener);
+    }
+
+    /**
+     * Returns the database whose tables' statements this cache keeps.
+     */
+    public SQLDatabase getDatabase() {
+        return database;
+    }
+
+    /**
+     * Stops listening to the database and forgets all statements.
+     */
+    public void cleanup() {
+        SQLPowerUtils.unlistenToHierarchy(database, listener);
+        synchronized (this) {
+            for (UserDefinedSQLType type : typeUsers.keySet()) {
+                SQLPowerUtils.unlistenToHierarchy(type, typeListener);
+            }
+            typeUsers.clear();
+        }
+        clear();
+    }
+
+    private static String key(DDLGenerator ddlg) {
+        String key = ddlg.getClass().getName() + "\u0000" + ddlg.getTargetCatalog() + "\u0000" + ddlg.getTargetSchema();
+        if (ddlg instanceof GenericDDLGenerator) {
+            GenericDDLGenerator generic = (GenericDDLGenerator) ddlg;
+            key += "\u0000" + generic.getStatementSettings() + "\u0000" + generic.describeTypeMap();
+        }
+        return key;
+    }
+
+    /**
+     * Returns the statements the given kind of generator made for the given
+     * table, or null if the table has changed since or was never generated.
+     */
+    synchronized List<DDLStatement>[] get(DDLGenerator ddlg, SQLTable table) {
+        Map<SQLTable, List<DDLStatement>[]> tables = statements.get(key(ddlg));
+        if (tables == null) return null;
+        return tables.get(table);
+    }
+
+    synchronized void put(DDLGenerator ddlg, SQLTable table, List<DDLStatement>[] tableStatements) {
+        String key = key(ddlg);
+        Map<SQLTable, List<DDLStatement>[]> tables = statements.get(key);
+        if (tables == null) {
+            tables = new HashMap<SQLTable, List<DDLStatement>[]>();
+            statements.put(key, tables);
+        }
+        tables.put(table, tableStatements);
+        for (SQLColumn col : table.getChildren(SQLColumn.class)) {
+            UserDefinedSQLType type = col.getUserDefinedSQLType().getUpstreamType();
+            while (type != null) {
+                Set<SQLTable> users = typeUsers.get(type);
+                if (users == null) {
+                    users = new HashSet<SQLTable>();
+                    typeUsers.put(type, users);
+                    SQLPowerUtils.listenToHierarchy(type, typeListener);
+                }
+                users.add(table);
+                type = type.getUpstreamType();
+            }
+        }
+    }
+
+    /**
+     * Forgets the statements of the given table for every generator, and the
+     * relationship statements of the tables it imports keys from.
+     */
+    public synchronized void invalidate(SQLTable table) {
+        forget(table);
+        try {
+            for (SQLImportedKey k : table.getImportedKeys()) {
+                forgetRelationships(k.getRelationship().getPkTable());
+            }
+        } catch (SQLObjectException ex) {
+            logger.warn("Couldn't find the relationships of " + table + ", forgetting all statements", ex);
+            statements.clear();
+        }
+    }
+
+    /**
+     * Forgets all statements.
+     */
+    public synchronized void clear() {
+        statements.clear();
+    }
+
+    /**
+     * Returns the number of tables that have statements cached for the given
+     * kind of generator.
+     */
+    public synchronized int size(DDLGenerator ddlg) {
+        Map<SQLTable, List<DDLStatement>[]> tables = statements.get(key(ddlg));
+        return tables == null ? 0 : tables.size();
+    }
+
+    private synchronized void forget(SQLTable table) {
+        for (Map<SQLTable, List<DDLStatement>[]> tables : statements.values()) {
+            tables.remove(table);
+        }
+    }
+
+    private synchronized void forgetRelationships(SQLTable table) {
+        for (Map<SQLTable, List<DDLStatement>[]> tables : statements.values()) {
+            List<DDLStatement>[] tableStatements = tables.get(table);
+            if (tableStatements != null && !tableStatements[1].isEmpty()) {
+                tables.remove(table);
+            }
+        }
+    }
+
+    /**
+     * Forgets the statements the given changed object could be part of.
+     */
+    private void changed(SPObject source) {
+        if (source instanceof SQLRelationship) {
+            SQLRelationship r = (SQLRelationship) source;
+            invalidateIfPresent(r.getPkTable());
+            invalidateIfPresent(r.getFkTable());
+        } else if (source instanceof SQLImportedKey) {
+            SQLRelationship r = ((SQLImportedKey) source).getRelationship();
+            invalidateIfPresent(r.getPkTable());
+            invalidateIfPresent(r.getFkTable());
+        } else if (source instanceof SQLTable) {
+            invalidate((SQLTable) source);
+        } else if (source != null) {
+            // column mappings are under the relationship, which is under its pk table
+            SQLRelationship r = SQLPowerUtils.getAncestor(source, SQLRelationship.class);
+            if (r != null) {
+                changed(r);
+            } else {
+                SQLTable table = SQLPowerUtils.getAncestor(source, SQLTable.class);
+                if (table != null) {
+                    invalidate(table);
+                }
+            }
+        }
+    }
+
+    /**
+     * Forgets the statements of the tables with columns based on the type or
+     * domain the given changed object is, or is part of.
+     */
+    private synchronized void typeChanged(SPObject source) {
+        while (source != null && !(source instanceof UserDefinedSQLType)) {
+            source = source.getParent();
+        }
+        if (source == null) return;
+        Set<SQLTable> users = typeUsers.get(source);
+        if (users == null) return;
+        for (SQLTable table : users) {
+            invalidate(table);
+        }
+    }
+
+    private void invalidateIfPresent(SQLTable table) {
+        if (table != null) {
+            invalidate(table);
+        }
+    }
+}
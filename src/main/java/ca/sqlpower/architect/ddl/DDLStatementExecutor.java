@@ -0,0 +1,773 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+package ca.sqlpower.architect.ddl;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.architect.ddl.DDLStatement.StatementType;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLIndex;
+import ca.sqlpower.sqlobject.SQLObject;
+import ca.sqlpower.sqlobject.SQLObjectException;
+import ca.sqlpower.sqlobject.SQLRelationship;
+import ca.sqlpower.sqlobject.SQLSequence;
+import ca.sqlpower.sqlobject.SQLTable;
+
+/**
+ * Executes a list of DDL statements against a database on several
+ * connections at once, keeping the order the statements were generated in
+ * wherever it matters.
+ * <p>
+ * The order matters between statements about the same table, but only where
+ * one statement needs what an earlier one made:
+ * <ul>
+ *  <li>Every statement about a table waits for the statement that created
+ *      or dropped the table, and creating or dropping a table waits for
+ *      every earlier statement about it.
+ *  <li>Statements about the same object (a column, an index, a relationship
+ *      or the table itself) run in list order.
+ *  <li>A primary key or index waits for the earlier changes to the table's
+ *      columns, and a column change waits for the earlier changes to the
+ *      table's keys and indices and to the relationships involving the
+ *      table.
+ *  <li>A relationship waits for the earlier column changes of its foreign
+ *      key table and for the primary key and indices of the table it
+ *      refers to.
+ *  <li>Comments wait for the object they describe, and nothing waits for
+ *      them except the table being created or dropped again.
+ * </ul>
+ * So a table's primary key, indices and comments are added once the table is
+ * created, and its foreign keys once the tables they refer to have their
+ * keys, while statements about unrelated tables run concurrently. Sequence
+ * creation runs before the statement that follows it and other sequence
+ * statements after the statement before them. Statements about any other
+ * kind of object wait for everything before them and hold back everything
+ * after them.
+ * <p>
+ * A failed statement does not stop the execution. It is recorded along with
+ * the statements that depended on it, which are skipped, and the remaining
+ * statements still run. Statements about the same table that alter an
+ * existing object and are ready at the same time are sent in one JDBC batch
+ * when the driver supports it.
+ * <p>
+ * An executor can only be run once.
+ */
+public class DDLStatementExecutor {
+
+    private static final Logger logger = Logger.getLogger(DDLStatementExecutor.class);
+
+    /**
+     * The number of connections used when none is specified.
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS = 4;
+
+    /**
+     * The most statements sent in one batch.
+     */
+    private static final int MAX_BATCH_SIZE = 50;
+
+    /**
+     * A statement that failed, or that was skipped because a statement it
+     * depends on failed.
+     */
+    public static class Failure {
+        private final int index;
+        private final DDLStatement statement;
+        private final SQLException exception;
+
+        Failure(int index, DDLStatement statement, SQLException exception) {
+            this.index = index;
+            this.statement = statement;
+            this.exception = exception;
+        }
+
+        /**
+         * Returns the position of the statement in the list of statements.
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        public DDLStatement getStatement() {
+            return statement;
+        }
+
+        /**
+         * Returns the exception the statement failed with, or null if the
+         * statement was skipped.
+         */
+        public SQLException getException() {
+            return exception;
+        }
+
+        public boolean isSkipped() {
+            return exception == null;
+        }
+    }
+
+    /**
+     * A statement and the statements that have to wait for it.
+     */
+    private static class Node {
+        final int index;
+        final DDLStatement statement;
+
+        /**
+         * The table the statement is about (for a relationship, the foreign
+         * key table), or null if it isn't about a table.
+         */
+        final SQLTable table;
+
+        final List<Node> dependents = new ArrayList<Node>();
+
+        /**
+         * The number of statements this one is still waiting for.
+         */
+        int unmet;
+
+        /**
+         * True once this statement has been given to a worker.
+         */
+        boolean claimed;
+
+        boolean skipped;
+
+        /**
+         * True if the driver reported that this statement ran, which makes
+         * it count as run even if a statement it waited for failed in the
+         * same batch.
+         */
+        boolean ran;
+
+        Node(int index, DDLStatement statement, SQLTable table) {
+            this.index = index;
+            this.statement = statement;
+            this.table = table;
+        }
+
+        void dependOn(Node n) {
+            if (n != null && n != this && !n.dependents.contains(this)) {
+                n.dependents.add(this);
+                unmet++;
+            }
+        }
+
+        void dependOnAll(List<Node> nodes) {
+            for (Node n : nodes) {
+                dependOn(n);
+            }
+        }
+    }
+
+    /**
+     * The statements about one table since it was last created or dropped,
+     * which the statements after them may have to wait for.
+     */
+    private static class TableState {
+
+        /**
+         * The statement that last created or dropped the table, or null if
+         * there wasn't one since the last barrier.
+         */
+        Node created;
+
+        final List<Node> all = new ArrayList<Node>();
+        final List<Node> columnChanges = new ArrayList<Node>();
+        final List<Node> keys = new ArrayList<Node>();
+        final List<Node> relationships = new ArrayList<Node>();
+    }
+
+    private final List<Node> nodes;
+
+    private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+
+    private boolean batching = true;
+
+    /*
+     * The execution state, guarded by this executor's monitor.
+     */
+    private final LinkedList<Node> ready = new LinkedList<Node>();
+    private final List<Failure> failures = new ArrayList<Failure>();
+    private int processedCount;
+    private int executedCount;
+    private int activeWorkers;
+    private boolean started;
+    private boolean cancelled;
+
+    public DDLStatementExecutor(List<DDLStatement> statements) {
+        nodes = buildGraph(statements);
+    }
+
+    /**
+     * Sets how many statements can be executed at once, each on its own
+     * connection. Defaults to {@link #DEFAULT_MAX_CONNECTIONS}.
+     */
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = Math.max(1, maxConnections);
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * Sets whether consecutive statements that alter an existing object can
+     * be sent in one batch. Batches are only used if the driver supports
+     * them. Defaults to true.
+     */
+    public void setBatching(boolean batching) {
+        this.batching = batching;
+    }
+
+    public boolean isBatching() {
+        return batching;
+    }
+
+    /**
+     * Finds the table a statement is about, and for a relationship the table
+     * it refers to as well. Returns an empty set if the statement is not
+     * about a table.
+     */
+    static Set<SQLTable> tablesOf(DDLStatement statement) {
+        Set<SQLTable> tables = new LinkedHashSet<SQLTable>();
+        SQLObject object = statement.getObject();
+        if (object instanceof SQLTable) {
+            tables.add((SQLTable) object);
+        } else if (object instanceof SQLColumn || object instanceof SQLIndex) {
+            if (object.getParent() instanceof SQLTable) {
+                tables.add((SQLTable) object.getParent());
+            }
+        } else if (object instanceof SQLRelationship) {
+            SQLRelationship r = (SQLRelationship) object;
+            if (r.getFkTable() != null) tables.add(r.getFkTable());
+            if (r.getPkTable() != null) tables.add(r.getPkTable());
+        }
+        return tables;
+    }
+
+    /**
+     * Builds the graph of which statements have to wait for which, as
+     * described in the class comment.
+     */
+    private static List<Node> buildGraph(List<DDLStatement> statements) {
+        List<Node> nodes = new ArrayList<Node>(statements.size());
+        Map<SQLTable, TableState> tableStates = new HashMap<SQLTable, TableState>();
+
+        // the last statement about each object, for running them in order
+        Map<SQLObject, Node> lastForObject = new HashMap<SQLObject, Node>();
+
+        // everything since the last barrier; a barrier waits for all of them
+        List<Node> sinceBarrier = new ArrayList<Node>();
+        Node barrier = null;
+
+        // sequence creation that the next statement about a table waits for
+        List<Node> pendingSequences = new ArrayList<Node>();
+        Node previous = null;
+
+        for (DDLStatement statement : statements) {
+            Set<SQLTable> tables = tablesOf(statement);
+            SQLTable table = tables.isEmpty() ? null : tables.iterator().next();
+            Node node = new Node(nodes.size(), statement, table);
+            nodes.add(node);
+
+            if (table != null) {
+                node.dependOn(barrier);
+                node.dependOnAll(pendingSequences);
+                pendingSequences.clear();
+                for (SQLTable t : tables) {
+                    if (!tableStates.containsKey(t)) {
+                        tableStates.put(t, new TableState());
+                    }
+                }
+                addTableDependencies(node, tables, tableStates, lastForObject);
+                sinceBarrier.add(node);
+            } else if (statement.getObject() instanceof SQLSequence) {
+                node.dependOn(barrier);
+                if (isCreate(statement)) {
+                    pendingSequences.add(node);
+                } else {
+                    node.dependOn(previous);
+                }
+                sinceBarrier.add(node);
+            } else {
+                node.dependOn(barrier);
+                node.dependOnAll(sinceBarrier);
+                sinceBarrier.clear();
+                pendingSequences.clear();
+                tableStates.clear();
+                lastForObject.clear();
+                barrier = node;
+            }
+            previous = node;
+        }
+        return nodes;
+    }
+
+    /**
+     * Makes the given statement about one or two tables wait for the earlier
+     * statements it needs, and records it in the states of its tables.
+     */
+    private static void addTableDependencies(Node node, Set<SQLTable> tables,
+            Map<SQLTable, TableState> tableStates, Map<SQLObject, Node> lastForObject) {
+        DDLStatement statement = node.statement;
+        SQLObject object = statement.getObject();
+        TableState state = tableStates.get(node.table);
+        for (SQLTable t : tables) {
+            node.dependOn(tableStates.get(t).created);
+        }
+        node.dependOn(lastForObject.get(object));
+
+        if (object instanceof SQLTable && (isCreate(statement) || isDropTable(statement))) {
+            node.dependOnAll(state.all);
+            TableState fresh = new TableState();
+            fresh.created = node;
+            tableStates.put(node.table, fresh);
+            lastForObject.put(object, node);
+            return;
+        }
+
+        if (StatementType.COMMENT.equals(statement.getType())) {
+            // nothing but the table's next creation or drop waits for a comment
+            state.all.add(node);
+            return;
+        }
+
+        if (object instanceof SQLRelationship) {
+            SQLRelationship r = (SQLRelationship) object;
+            if (r.getFkTable() != null) {
+                node.dependOnAll(tableStates.get(r.getFkTable()).columnChanges);
+            }
+            if (r.getPkTable() != null) {
+                node.dependOnAll(tableStates.get(r.getPkTable()).keys);
+            }
+            for (SQLTable t : tables) {
+                tableStates.get(t).relationships.add(node);
+                tableStates.get(t).all.add(node);
+            }
+        } else if (object instanceof SQLIndex || StatementType.ADD_PK.equals(statement.getType())) {
+            node.dependOnAll(state.columnChanges);
+            state.keys.add(node);
+            state.all.add(node);
+        } else {
+            node.dependOnAll(state.keys);
+            node.dependOnAll(state.relationships);
+            state.columnChanges.add(node);
+            state.all.add(node);
+        }
+        lastForObject.put(object, node);
+    }
+
+    private static boolean isCreate(DDLStatement statement) {
+        String sql = statement.getSQLText();
+        return StatementType.CREATE.equals(statement.getType())
+            && sql != null && sql.trim().toUpperCase().startsWith("CREATE");
+    }
+
+    private static boolean isDropTable(DDLStatement statement) {
+        String sql = statement.getSQLText();
+        return StatementType.DROP.equals(statement.getType())
+            && sql != null && sql.trim().toUpperCase().startsWith("DROP");
+    }
+
+    /**
+     * Returns true if the statement changes an object that already exists,
+     * so it can go in the same batch as the statements about the same table
+     * before it.
+     */
+    private static boolean isBatchable(DDLStatement statement) {
+        StatementType type = statement.getType();
+        return StatementType.ALTER.equals(type)
+            || StatementType.ADD_PK.equals(type)
+            || StatementType.ADD_FK.equals(type)
+            || StatementType.MODIFY.equals(type)
+            || StatementType.COMMENT.equals(type)
+            || (StatementType.CREATE.equals(type) && statement.getObject() instanceof SQLRelationship);
+    }
+
+    /**
+     * Runs all the statements on the given database and waits for them to
+     * finish.
+     */
+    public void execute(SQLDatabase target) throws SQLObjectException, SQLException, InterruptedException {
+        start(target);
+        awaitCompletion(0);
+    }
+
+    /**
+     * Opens up to {@link #getMaxConnections()} connections to the given
+     * database and starts executing the statements on them. Returns once
+     * the workers are running; use {@link #awaitCompletion(long)} to wait for
+     * them to finish.
+     * 
+     * @throws SQLObjectException
+     *             if not even one connection could be opened
+     * @throws SQLException
+     *             if a statement could not be created on the first connection
+     */
+    public synchronized void start(SQLDatabase target) throws SQLObjectException, SQLException {
+        if (started) throw new IllegalStateException("This executor has already been started");
+        started = true;
+
+        int connectionCount = Math.max(1, Math.min(maxConnections, nodes.size()));
+        List<Connection> connections = new ArrayList<Connection>();
+        connections.add(target.getConnection());
+        for (int i = 1; i < connectionCount; i++) {
+            try {
+                connections.add(target.getConnection());
+            } catch (SQLObjectException ex) {
+                logger.warn("Could only open " + connections.size() + " of " + connectionCount
+                        + " connections, continuing with those", ex);
+                break;
+            }
+        }
+
+        for (Node n : nodes) {
+            if (n.unmet == 0) {
+                ready.add(n);
+            }
+        }
+        logger.info("Executing " + nodes.size() + " statements on " + connections.size()
+                + " connections, " + ready.size() + " of them independent");
+
+        for (int i = 0; i < connections.size(); i++) {
+            final Connection con = connections.get(i);
+            final Statement stmt;
+            try {
+                stmt = con.createStatement();
+            } catch (SQLException ex) {
+                closeQuietly(con);
+                if (i == 0 && connections.size() == 1) throw ex;
+                logger.warn("Couldn't create a statement on connection " + i, ex);
+                continue;
+            }
+            boolean supportsBatch = false;
+            try {
+                supportsBatch = batching && con.getMetaData().supportsBatchUpdates();
+            } catch (SQLException ex) {
+                logger.debug("Couldn't tell if the driver supports batches", ex);
+            }
+            final boolean batch = supportsBatch;
+            activeWorkers++;
+            Thread worker = new Thread("DDL statement executor " + i) {
+                @Override
+                public void run() {
+                    try {
+                        work(stmt, batch);
+                    } finally {
+                        try {
+                            stmt.close();
+                        } catch (SQLException ex) {
+                            logger.error("SQLException while closing statement", ex);
+                        }
+                        closeQuietly(con);
+                        synchronized (DDLStatementExecutor.this) {
+                            activeWorkers--;
+                            DDLStatementExecutor.this.notifyAll();
+                        }
+                    }
+                }
+            };
+            worker.setDaemon(true);
+            worker.start();
+        }
+        if (activeWorkers == 0) {
+            throw new SQLException("Couldn't create a statement on any connection");
+        }
+    }
+
+    private static void closeQuietly(Connection con) {
+        try {
+            con.close();
+        } catch (SQLException ex) {
+            logger.error("Couldn't close connection", ex);
+        }
+    }
+
+    /**
+     * Waits for the started execution to finish, or for the given time to
+     * pass.
+     * 
+     * @param timeoutMillis
+     *            The longest time to wait, or 0 to wait until the execution
+     *            finishes.
+     * @return True if the execution has finished.
+     */
+    public synchronized boolean awaitCompletion(long timeoutMillis) throws InterruptedException {
+        long end = System.currentTimeMillis() + timeoutMillis;
+        while (activeWorkers > 0) {
+            if (timeoutMillis == 0) {
+                wait();
+            } else {
+                long remaining = end - System.currentTimeMillis();
+                if (remaining <= 0) return false;
+                wait(remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stops giving statements to the connections. The statements that are
+     * running when this is called still finish.
+     */
+    public synchronized void cancel() {
+        cancelled = true;
+        notifyAll();
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    private synchronized boolean isDone() {
+        return cancelled || processedCount == nodes.size();
+    }
+
+    /**
+     * The loop each worker runs: takes the next statement that is ready,
+     * along with the statements that can be batched with it, and runs them.
+     */
+    private void work(Statement stmt, boolean batch) {
+        while (true) {
+            List<Node> work;
+            synchronized (this) {
+                try {
+                    while (ready.isEmpty() && !isDone()) {
+                        wait();
+                    }
+                } catch (InterruptedException ex) {
+                    logger.info("DDL executor worker interrupted");
+                    return;
+                }
+                if (isDone()) return;
+                work = claim(ready.removeFirst(), batch);
+            }
+            if (work.size() == 1) {
+                Node n = work.get(0);
+                SQLException failure = null;
+                try {
+                    logger.info("executing: " + n.statement.getSQLText());
+                    stmt.executeUpdate(n.statement.getSQLText());
+                } catch (SQLException ex) {
+                    logger.info("sql statement failed: " + ex.getMessage());
+                    failure = ex;
+                }
+                finished(n, failure);
+            } else {
+                executeBatch(stmt, work);
+            }
+        }
+    }
+
+    /**
+     * Claims the given ready statement and, if batching, the statements after
+     * it that only wait for the statements claimed before them, and the other
+     * ready statements about the same table.
+     */
+    private List<Node> claim(Node first, boolean batch) {
+        List<Node> work = new ArrayList<Node>();
+        first.claimed = true;
+        work.add(first);
+        if (batch && isBatchable(first.statement)) {
+            Node last = first;
+            while (work.size() < MAX_BATCH_SIZE) {
+                Node next = null;
+                for (Node d : last.dependents) {
+                    if (!d.claimed && !d.skipped && d.unmet == 1 && isBatchable(d.statement)) {
+                        next = d;
+                        break;
+                    }
+                }
+                if (next == null) break;
+                next.claimed = true;
+                work.add(next);
+                last = next;
+            }
+            for (Iterator<Node> it = ready.iterator(); it.hasNext() && work.size() < MAX_BATCH_SIZE; ) {
+                Node n = it.next();
+                if (first.table != null && n.table == first.table && isBatchable(n.statement)) {
+                    it.remove();
+                    n.claimed = true;
+                    work.add(n);
+                }
+            }
+        }
+        return work;
+    }
+
+    private void executeBatch(Statement stmt, List<Node> work) {
+        int succeeded = 0;
+        SQLException failure = null;
+        try {
+            for (Node n : work) {
+                logger.info("batching: " + n.statement.getSQLText());
+                stmt.addBatch(n.statement.getSQLText());
+            }
+            stmt.executeBatch();
+            succeeded = work.size();
+        } catch (BatchUpdateException ex) {
+            int[] counts = ex.getUpdateCounts();
+            // drivers either stop at the first failure or go on and mark
+            // each failed statement
+            if (counts != null && counts.length == work.size()) {
+                finishedBatch(work, counts, ex);
+                return;
+            }
+            succeeded = counts == null ? 0 : counts.length;
+            failure = ex;
+        } catch (SQLException ex) {
+            failure = ex;
+        } finally {
+            try {
+                stmt.clearBatch();
+            } catch (SQLException ex) {
+                logger.debug("Couldn't clear the batch", ex);
+            }
+        }
+        for (int i = 0; i < succeeded; i++) {
+            finished(work.get(i), null);
+        }
+        if (succeeded < work.size()) {
+            logger.info("sql batch failed: " + failure.getMessage());
+            finished(work.get(succeeded), failure);
+            // the rest were never run, so the ones that don't depend on the
+            // failed statement get another chance
+            unclaim(work.subList(succeeded + 1, work.size()));
+        }
+    }
+
+    /**
+     * Gives back the given claimed statements that were not run, making the
+     * ones that no longer wait for anything ready again.
+     */
+    private synchronized void unclaim(List<Node> notRun) {
+        for (Node n : notRun) {
+            if (n.skipped) continue;
+            n.claimed = false;
+            if (n.unmet == 0) {
+                ready.add(n);
+            }
+        }
+        notifyAll();
+    }
+
+    /**
+     * Records the outcome of each statement of a batch the driver kept going
+     * after a failure in. Statements after a failed one still ran, so they
+     * are recorded as run instead of skipped, and only the statements outside
+     * the batch that depend on the failed ones are skipped.
+     */
+    private synchronized void finishedBatch(List<Node> work, int[] counts, SQLException failure) {
+        for (int i = 0; i < counts.length; i++) {
+            work.get(i).ran = counts[i] != Statement.EXECUTE_FAILED;
+        }
+        for (int i = 0; i < counts.length; i++) {
+            finished(work.get(i), work.get(i).ran ? null : failure);
+        }
+    }
+
+    /**
+     * Records that the given statement ran, or failed with the given
+     * exception, and makes the statements waiting only for it ready.
+     */
+    private synchronized void finished(Node n, SQLException failure) {
+        if (n.skipped) return;
+        processedCount++;
+        if (failure == null) {
+            executedCount++;
+            for (Node d : n.dependents) {
+                d.unmet--;
+                if (d.unmet == 0 && !d.claimed && !d.skipped) {
+                    ready.add(d);
+                }
+            }
+        } else {
+            failures.add(new Failure(n.index, n.statement, failure));
+            for (Node d : n.dependents) {
+                skip(d);
+            }
+        }
+        notifyAll();
+    }
+
+    /**
+     * Skips the given statement and everything that depends on it.
+     */
+    private synchronized void skip(Node n) {
+        if (n.skipped || n.ran) return;
+        n.skipped = true;
+        n.claimed = true;
+        ready.remove(n);
+        processedCount++;
+        failures.add(new Failure(n.index, n.statement, null));
+        for (Node d : n.dependents) {
+            skip(d);
+        }
+        notifyAll();
+    }
+
+    public int getStatementCount() {
+        return nodes.size();
+    }
+
+    /**
+     * Returns the number of statements that have run, failed or been
+     * skipped so far.
+     */
+    public synchronized int getProcessedCount() {
+        return processedCount;
+    }
+
+    /**
+     * Returns the number of statements that have run successfully so far.
+     */
+    public synchronized int getExecutedCount() {
+        return executedCount;
+    }
+
+    /**
+     * Returns the statements that failed or were skipped, in the order they
+     * appear in the list of statements.
+     */
+    public synchronized List<Failure> getFailures() {
+        List<Failure> sorted = new ArrayList<Failure>(failures);
+        Collections.sort(sorted, new Comparator<Failure>() {
+            public int compare(Failure f1, Failure f2) {
+                return f1.getIndex() - f2.getIndex();
+            }
+        });
+        return sorted;
+    }
+}
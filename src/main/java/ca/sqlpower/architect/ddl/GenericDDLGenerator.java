@@ -18,6 +18,8 @@
  */
 package ca.sqlpower.architect.ddl;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
@@ -30,6 +32,12 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.log4j.Logger;
 
@@ -63,7 +71,7 @@ import ca.sqlpower.sqlobject.SQLTypePhysicalPropertiesProvider.PropertyType;
 import ca.sqlpower.sqlobject.UserDefinedSQLType;
 import ca.sqlpower.util.SQLPowerUtils;
 
-public class GenericDDLGenerator implements DDLGenerator {
+public class GenericDDLGenerator implements DDLGenerator, Cloneable {
 
 	public static final String GENERATOR_VERSION = "$Revision$";
 
@@ -99,6 +107,44 @@ public class GenericDDLGenerator implements DDLGenerator {
 	 */
 	private List<DDLStatement> ddlStatements;
 
+	/**
+	 * The writer that {@link #writeDDLScript(Collection, Writer)} is streaming
+	 * the script to, or null when statements are being collected in
+	 * {@link #ddlStatements} instead.
+	 */
+	private Writer scriptWriter;
+
+	/**
+	 * The number of threads {@link #generateDDLStatements(Collection)} may
+	 * use to generate the statements of different tables at the same time.
+	 */
+	private int generationThreads = 1;
+
+	/**
+	 * Where the statements of tables that haven't changed since they were
+	 * last generated are kept, or null to generate every table every time.
+	 */
+	private DDLStatementCache statementCache;
+
+	/**
+	 * True in the copies of this generator that generate the statements of
+	 * one table, possibly on another thread. They only read the model: the
+	 * physical names they need were set on the calling thread first, so
+	 * {@link #createPhysicalName(Map, SQLObject)} returns names without
+	 * setting them, which would fire events off the calling thread.
+	 */
+	private boolean readingModelOnly;
+
+	/**
+	 * The type map {@link #typeMapDescription} describes.
+	 */
+	private Map<Integer, GenericTypeDescriptor> describedTypeMap;
+
+	/**
+	 * See {@link #describeTypeMap()}.
+	 */
+	private String typeMapDescription;
+
 	/**
 	 * This is initialized to the System line.separator property.
 	 */
@@ -188,6 +234,35 @@ public class GenericDDLGenerator implements DDLGenerator {
 		return ddl.toString();
 	}
 
+	/**
+	 * Writes the same script as {@link #generateDDLScript(Collection)}, but
+	 * each statement is written to the given writer as soon as it has been
+	 * generated rather than being collected first. The statements are not
+	 * kept, so {@link #getDdlStatements()} will be empty afterwards. The
+	 * writer is flushed but not closed.
+	 */
+	public void writeDDLScript(Collection<SQLTable> tables, Writer out) throws SQLException, SQLObjectException, IOException {
+		scriptWriter = out;
+		try {
+			ddlStatements = new ArrayList<DDLStatement>();
+			ddl = new StringBuffer(500);
+			writeHeader();
+			writeDDLTransactionBegin();
+			out.write(ddl.toString());
+
+			generateStatements(tables);
+
+			ddl = new StringBuffer(500);
+			writeDDLTransactionEnd();
+			out.write(ddl.toString());
+			out.flush();
+		} catch (ScriptWriteException ex) {
+			throw ex.getCause();
+		} finally {
+			scriptWriter = null;
+		}
+	}
+
 
 	/**
      * Creates a series of SQL DDL statements which will create the given list of
@@ -201,6 +276,16 @@ public class GenericDDLGenerator implements DDLGenerator {
 	 */
 	public final List<DDLStatement> generateDDLStatements(Collection<SQLTable> tables) throws SQLException, SQLObjectException {
 		ddlStatements = new ArrayList<DDLStatement>();
+		generateStatements(tables);
+		return ddlStatements;
+	}
+
+	/**
+	 * Generates the statements that create the given tables, passing each
+	 * one to {@link #endStatement(StatementType, SQLObject)} as it is
+	 * finished.
+	 */
+	private void generateStatements(Collection<SQLTable> tables) throws SQLException, SQLObjectException {
 		ddl = new StringBuffer(500);
         topLevelNames = new CaseInsensitiveHashMap();
 
@@ -227,18 +312,23 @@ public class GenericDDLGenerator implements DDLGenerator {
 
 			createTypeMap();
 
-			for (SQLTable t : tableList) {
+			boolean parallel = generationThreads > 1 && tableList.size() > 1;
+			if ((parallel || statementCache != null) && canGenerateTablesSeparately()) {
+			    generateFromFragments(tableList, parallel);
+			} else {
+			    for (SQLTable t : tableList) {
 
-				addTable(t);
+			        addTable(t);
 
-                for (SQLIndex index : t.getIndices()) {
-                   if (index.isPrimaryKeyIndex()) continue;
-                    addIndex(index);
-                }
-			}
+			        for (SQLIndex index : t.getIndices()) {
+			            if (index.isPrimaryKeyIndex()) continue;
+			            addIndex(index);
+			        }
+			    }
 
-            for (SQLTable t : tableList) {
-				writeExportedRelationships(t);
+			    for (SQLTable t : tableList) {
+			        writeExportedRelationships(t);
+			    }
 			}
 
 		} finally {
@@ -248,7 +338,264 @@ public class GenericDDLGenerator implements DDLGenerator {
 				logger.error("Couldn't close connection", ex);
 			}
 		}
-		return ddlStatements;
+	}
+
+	/**
+	 * Generates the statements of each table separately, then adds them in the
+	 * same order the sequential generation would have: every table with its
+	 * indices in the given order, then every table's exported relationships.
+	 * Tables the {@link #statementCache} has statements for are not generated
+	 * again. The others are generated on up to {@link #generationThreads}
+	 * threads if parallel is true.
+	 * <p>
+	 * The physical names of the objects are all set on the calling thread
+	 * first, and the copies of this generator that generate the tables only
+	 * read the model.
+	 */
+	private void generateFromFragments(List<SQLTable> tableList, boolean parallel) throws SQLException, SQLObjectException {
+		assignPhysicalNames(tableList);
+
+		List<List<DDLStatement>[]> fragments = new ArrayList<List<DDLStatement>[]>(tableList.size());
+		List<SQLTable> missing = new ArrayList<SQLTable>();
+		for (SQLTable t : tableList) {
+			List<DDLStatement>[] cached = statementCache == null ? null : statementCache.get(this, t);
+			if (cached == null) {
+				missing.add(t);
+			}
+			fragments.add(cached);
+		}
+
+		List<List<DDLStatement>[]> generated;
+		if (parallel && missing.size() > 1) {
+			generated = generateInParallel(missing);
+		} else {
+			generated = new ArrayList<List<DDLStatement>[]>(missing.size());
+			for (SQLTable t : missing) {
+				generated.add(generateTableFragments(t));
+			}
+		}
+
+		Iterator<List<DDLStatement>[]> generatedIt = generated.iterator();
+		for (int i = 0; i < fragments.size(); i++) {
+			if (fragments.get(i) == null) {
+				List<DDLStatement>[] tableFragments = generatedIt.next();
+				fragments.set(i, tableFragments);
+				if (statementCache != null) {
+					statementCache.put(this, tableList.get(i), tableFragments);
+				}
+			}
+		}
+
+		for (List<DDLStatement>[] tableFragments : fragments) {
+			mergeStatements(tableFragments[0]);
+		}
+		for (List<DDLStatement>[] tableFragments : fragments) {
+			mergeStatements(tableFragments[1]);
+		}
+		ddl = new StringBuffer(500);
+	}
+
+	/**
+	 * Generates the statements of the given tables on up to
+	 * {@link #generationThreads} threads, returning the fragments of each
+	 * table in the given order.
+	 */
+	private List<List<DDLStatement>[]> generateInParallel(List<SQLTable> tableList) throws SQLException, SQLObjectException {
+		List<Callable<List<DDLStatement>[]>> tasks = new ArrayList<Callable<List<DDLStatement>[]>>();
+		for (final SQLTable t : tableList) {
+			tasks.add(new Callable<List<DDLStatement>[]>() {
+				public List<DDLStatement>[] call() throws Exception {
+					return generateTableFragments(t);
+				}
+			});
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(generationThreads, tableList.size()));
+		try {
+			List<List<DDLStatement>[]> result = new ArrayList<List<DDLStatement>[]>(tableList.size());
+			for (Future<List<DDLStatement>[]> fragment : executor.invokeAll(tasks)) {
+				result.add(fragment.get());
+			}
+			return result;
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new SQLObjectException("Interrupted while generating DDL", ex);
+		} catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if (cause instanceof SQLException) throw (SQLException) cause;
+			if (cause instanceof SQLObjectException) throw (SQLObjectException) cause;
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw new SQLObjectException("Failed to generate DDL", cause);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Generates the statements of one table on a copy of this generator. The
+	 * first list returned has the table and its indices, the second the
+	 * table's exported relationships.
+	 */
+	@SuppressWarnings("unchecked")
+	private List<DDLStatement>[] generateTableFragments(SQLTable t) throws SQLException, SQLObjectException {
+		GenericDDLGenerator fragment = createFragmentGenerator();
+		fragment.addTable(t);
+		for (SQLIndex index : t.getIndices()) {
+			if (index.isPrimaryKeyIndex()) continue;
+			fragment.addIndex(index);
+		}
+		List<DDLStatement> tableStatements = fragment.ddlStatements;
+		fragment.ddlStatements = new ArrayList<DDLStatement>();
+		fragment.ddl = new StringBuffer(500);
+		fragment.writeExportedRelationships(t);
+		return new List[] { tableStatements, fragment.ddlStatements };
+	}
+
+	/**
+	 * Sets the physical names of the tables, columns, indices and
+	 * relationships the way {@link #addTable(SQLTable)},
+	 * {@link #addIndex(SQLIndex)} and {@link #addRelationship(SQLRelationship)}
+	 * would, so that the parallel generation doesn't change the model from
+	 * other threads.
+	 */
+	private void assignPhysicalNames(List<SQLTable> tableList) throws SQLObjectException {
+		Map<String, SQLObject> names = new CaseInsensitiveHashMap();
+		for (SQLTable t : tableList) {
+			createPhysicalName(names, t);
+			Map<String, SQLObject> colNameMap = new HashMap<String, SQLObject>();
+			for (SQLColumn c : t.getColumns()) {
+				createPhysicalName(colNameMap, c);
+			}
+			for (SQLIndex index : t.getIndices()) {
+				if (!index.isPrimaryKeyIndex() || index.getChildCount() > 0) {
+					createPhysicalName(names, index);
+				}
+			}
+			for (SQLRelationship r : t.getExportedKeys()) {
+				createPhysicalName(names, r);
+				createPhysicalName(names, r.getFkTable());
+				for (ColumnMapping cm : r.getChildren(ColumnMapping.class)) {
+					createPhysicalName(colNameMap, cm.getFkColumn());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns a copy of this generator with the same settings but its own
+	 * statement list, buffers and type map, for generating one table's
+	 * statements on another thread. The copy has no connection, since the
+	 * type map has already been read from it and a connection can't be shared
+	 * between threads.
+	 */
+	private GenericDDLGenerator createFragmentGenerator() {
+		try {
+			GenericDDLGenerator fragment = (GenericDDLGenerator) clone();
+			fragment.ddlStatements = new ArrayList<DDLStatement>();
+			fragment.ddl = new StringBuffer(500);
+			fragment.topLevelNames = new CaseInsensitiveHashMap();
+			fragment.typeMap = new HashMap<Integer, GenericTypeDescriptor>(typeMap);
+			fragment.con = null;
+			fragment.scriptWriter = null;
+			fragment.generationThreads = 1;
+			fragment.statementCache = null;
+			fragment.readingModelOnly = true;
+			return fragment;
+		} catch (CloneNotSupportedException ex) {
+			throw new AssertionError(ex);
+		}
+	}
+
+	/**
+	 * Adds statements generated by a copy of this generator, checking the
+	 * names of the objects they create against the ones already added.
+	 */
+	private void mergeStatements(List<DDLStatement> statements) {
+		for (DDLStatement stmt : statements) {
+			SQLObject so = stmt.getObject();
+			if (stmt.getType() == StatementType.CREATE && so != null && so.getPhysicalName() != null) {
+				SQLObject previous = topLevelNames.put(so.getPhysicalName(), so);
+				if (previous != null && previous != so) {
+					logger.warn("Duplicate name " + so.getPhysicalName() + " used by " + previous + " and " + so);
+				}
+			}
+			if (scriptWriter != null) {
+				try {
+					scriptWriter.write(stmt.getSQLText());
+					scriptWriter.write(getStatementTerminator());
+					scriptWriter.write(EOL);
+				} catch (IOException ex) {
+					throw new ScriptWriteException(ex);
+				}
+			} else {
+				ddlStatements.add(stmt);
+			}
+		}
+	}
+
+	/**
+	 * Returns true if this generator can generate the statements of different
+	 * tables on separate copies of itself, in parallel or to be kept in a
+	 * {@link DDLStatementCache}. Subclasses that keep state from one statement
+	 * to the next should return false when the output would depend on it.
+	 */
+	protected boolean canGenerateTablesSeparately() {
+		return true;
+	}
+
+	/**
+	 * Returns the settings of this generator, other than its target catalog
+	 * and schema, that change the statements it generates. A
+	 * {@link DDLStatementCache} only gives statements to a generator with the
+	 * same settings as the one that generated them. Subclasses with settings
+	 * of their own should add them to the ones returned here.
+	 */
+	protected String getStatementSettings() {
+		return "";
+	}
+
+	/**
+	 * Describes the contents of {@link #typeMap}, which depends on the target
+	 * database when this generator is connected to it, so that a
+	 * {@link DDLStatementCache} can keep the statements generated with
+	 * different type maps apart. The description is kept until the type map
+	 * is replaced.
+	 */
+	synchronized String describeTypeMap() {
+		if (typeMap != describedTypeMap) {
+			StringBuilder sb = new StringBuilder();
+			for (GenericTypeDescriptor td : new TreeMap<Integer, GenericTypeDescriptor>(typeMap).values()) {
+				sb.append(td.getDataType()).append('=').append(td.getName());
+				sb.append(',').append(td.getPrecision());
+				sb.append(',').append(td.getLiteralPrefix()).append(',').append(td.getLiteralSuffix());
+				sb.append(',').append(td.getNullable());
+				sb.append(',').append(td.getHasPrecision()).append(',').append(td.getHasScale());
+				sb.append(';');
+			}
+			typeMapDescription = sb.toString();
+			describedTypeMap = typeMap;
+		}
+		return typeMapDescription;
+	}
+
+	public void setGenerationThreads(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("At least one thread is needed, not " + threads);
+		}
+		generationThreads = threads;
+	}
+
+	public int getGenerationThreads() {
+		return generationThreads;
+	}
+
+	public void setStatementCache(DDLStatementCache statementCache) {
+		this.statementCache = statementCache;
+	}
+
+	public DDLStatementCache getStatementCache() {
+		return statementCache;
 	}
 
 	/**
@@ -263,11 +610,36 @@ public class GenericDDLGenerator implements DDLGenerator {
 			logger.info("endStatement: " + ddl.toString());
 		}
 
-		ddlStatements.add(new DDLStatement(sqlObject, type, ddl.toString(), getStatementTerminator(), getTargetCatalog(), getTargetSchema()));
+		if (scriptWriter != null) {
+			try {
+				scriptWriter.write(ddl.toString());
+				scriptWriter.write(getStatementTerminator());
+				scriptWriter.write(EOL);
+			} catch (IOException ex) {
+				throw new ScriptWriteException(ex);
+			}
+		} else {
+			ddlStatements.add(new DDLStatement(sqlObject, type, ddl.toString(), getStatementTerminator(), getTargetCatalog(), getTargetSchema()));
+		}
 		ddl = new StringBuffer(500);
 		println("");
 	}
 
+	/**
+	 * Carries an I/O failure of the script writer out of
+	 * {@link #endStatement(StatementType, SQLObject)}, which can't throw it.
+	 */
+	private static class ScriptWriteException extends RuntimeException {
+		ScriptWriteException(IOException cause) {
+			super(cause);
+		}
+
+		@Override
+		public IOException getCause() {
+			return (IOException) super.getCause();
+		}
+	}
+
 	public void writeHeader() {
 		println("-- Created by SQLPower Generic DDL Generator "+GENERATOR_VERSION+" --");
 	}
@@ -1282,6 +1654,8 @@ public class GenericDDLGenerator implements DDLGenerator {
                 (so.getPhysicalName() != null && !so.getPhysicalName().trim().equals(""))) {
 		    String physicalName = so.getPhysicalName();
 		    logger.debug("The physical name for this SQLObject is: " + physicalName);
+		} else if (readingModelOnly) {
+		    return toIdentifier(so.getName());
 		} else {
 		    so.setPhysicalName(toIdentifier(so.getName()));
 		}
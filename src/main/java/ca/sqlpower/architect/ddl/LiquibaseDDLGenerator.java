@@ -192,6 +192,21 @@ public class LiquibaseDDLGenerator extends GenericDDLGenerator implements DDLGen
 		}
 	}
 
+	/**
+	 * Copies of this generator would each number their change sets from the
+	 * same id, so generated ids rule out generating tables separately.
+	 */
+	@Override
+	protected boolean canGenerateTablesSeparately() {
+		return !(separateChangeSets && generateId);
+	}
+
+	@Override
+	protected String getStatementSettings() {
+		return super.getStatementSettings() + "changeSets=" + separateChangeSets + ",author=" + author +
+			",generateId=" + generateId + ",addPKTag=" + useAddPKSingleColumn;
+	}
+
 	public void writeDDLTransactionBegin() {
 	}
 
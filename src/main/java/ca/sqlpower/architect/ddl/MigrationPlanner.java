@@ -0,0 +1,545 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+package ca.sqlpower.architect.ddl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import ca.sqlpower.architect.ddl.DDLStatement.StatementType;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLIndex;
+import ca.sqlpower.sqlobject.SQLObject;
+import ca.sqlpower.sqlobject.SQLRelationship;
+import ca.sqlpower.sqlobject.SQLTable;
+
+/**
+ * Turns the statements a {@link DDLGenerator} made from a list of CompareSQL
+ * differences into a migration plan for large, live tables. The plan:
+ * <ul>
+ * <li>orders the statements in phases, so that foreign keys and indices are
+ * dropped before the columns and tables they use, and created after them;
+ * <li>merges the ALTER TABLE statements of each table within a phase into as
+ * few statements as the platform allows. On MySQL every ALTER TABLE copies
+ * the table, so one statement per table means one copy instead of one per
+ * change;
+ * <li>estimates how each statement locks the table it changes, so the
+ * expensive ones can be scheduled.
+ * </ul>
+ * The lock estimates are rules of thumb for the default storage engines of
+ * each platform, not a guarantee.
+ */
+public class MigrationPlanner {
+
+    /**
+     * The phases of a migration, in the order they run.
+     */
+    public enum Phase {
+        DROP_CONSTRAINTS,
+        DROP_TABLES,
+        RENAMES,
+        ALTER_COLUMNS,
+        CREATE_TABLES,
+        ADD_CONSTRAINTS,
+        ADD_FOREIGN_KEYS,
+        COMMENTS
+    }
+
+    /**
+     * How a statement locks the existing table it changes, from least to
+     * most disruptive.
+     */
+    public enum TableLock {
+        /** The statement doesn't touch an existing table. */
+        NONE,
+        /** A short exclusive lock to change the table's definition only. */
+        METADATA,
+        /** Reads continue but writes wait while the table is read. */
+        BLOCKS_WRITES,
+        /** Reads and writes wait while the whole table is read. */
+        EXCLUSIVE_SCAN,
+        /** Reads and writes wait while the whole table is rewritten. */
+        REBUILD
+    }
+
+    /**
+     * How the target platform lets several changes to one table be combined
+     * into one ALTER TABLE statement, and how it locks for them.
+     */
+    enum Platform {
+        /** ALTER TABLE t change, change, ... */
+        MYSQL,
+        /** ALTER TABLE t change, change, ... */
+        POSTGRES,
+        /** ALTER TABLE t ADD (a, b), and the same for MODIFY and DROP. */
+        ORACLE,
+        /** ALTER TABLE t ADD a, b and ALTER TABLE t DROP COLUMN a, b. */
+        SQL_SERVER,
+        /** One change per statement. */
+        OTHER
+    }
+
+    /**
+     * The kinds of ALTER TABLE clauses the planner tells apart.
+     */
+    enum ClauseKind {
+        ADD_COLUMN, DROP_COLUMN, MODIFY_COLUMN, ADD_CONSTRAINT, DROP_CONSTRAINT, RENAME, COMMENT, OTHER
+    }
+
+    /**
+     * One statement of the plan, which may replace several of the generated
+     * statements.
+     */
+    public static class Step {
+        private final DDLStatement statement;
+        private final Phase phase;
+        private final TableLock lock;
+        private final int mergedCount;
+
+        Step(DDLStatement statement, Phase phase, TableLock lock, int mergedCount) {
+            this.statement = statement;
+            this.phase = phase;
+            this.lock = lock;
+            this.mergedCount = mergedCount;
+        }
+
+        public DDLStatement getStatement() {
+            return statement;
+        }
+
+        public Phase getPhase() {
+            return phase;
+        }
+
+        public TableLock getLock() {
+            return lock;
+        }
+
+        /**
+         * Returns the number of generated statements this step does the work
+         * of.
+         */
+        public int getMergedCount() {
+            return mergedCount;
+        }
+
+        @Override
+        public String toString() {
+            return phase + " " + lock + ": " + statement.getSQLText().trim();
+        }
+    }
+
+    /**
+     * Splits an ALTER TABLE statement into everything up to the table name
+     * and the clause after it. Quoted table names are not matched, so
+     * statements for them are never merged.
+     */
+    private static final Pattern ALTER_TABLE = Pattern.compile(
+            "^(\\s*ALTER\\s+TABLE\\s+(?:ONLY\\s+)?[^\\s\"'`\\[]+)\\s+([A-Za-z].*)$",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    /**
+     * Matches the clause that renames a column on H2 and HSQLDB,
+     * ALTER [COLUMN] name RENAME TO new_name.
+     */
+    private static final Pattern ALTER_COLUMN_RENAME = Pattern.compile(
+            "^ALTER\\s+(?:COLUMN\\s+)?(?:\"[^\"]*\"|[^\\s\"]+)\\s+RENAME\\b.*$",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    private final Platform platform;
+
+    /**
+     * @param ddlg
+     *            The generator that made the statements to plan. It decides
+     *            what the statements can be merged into.
+     */
+    public MigrationPlanner(DDLGenerator ddlg) {
+        if (ddlg instanceof MySqlDDLGenerator) {
+            platform = Platform.MYSQL;
+        } else if (ddlg instanceof PostgresDDLGenerator) {
+            platform = Platform.POSTGRES;
+        } else if (ddlg instanceof OracleDDLGenerator) {
+            platform = Platform.ORACLE;
+        } else if (ddlg instanceof SQLServerDDLGenerator) {
+            platform = Platform.SQL_SERVER;
+        } else {
+            platform = Platform.OTHER;
+        }
+    }
+
+    /**
+     * Plans the given statements, which are usually the
+     * {@link DDLGenerator#getDdlStatements()} of a generator that was given
+     * the differences found by CompareSQL.
+     */
+    public List<Step> plan(List<DDLStatement> statements) {
+        List<PendingStep> pending = new ArrayList<PendingStep>(statements.size());
+        for (int i = 0; i < statements.size(); i++) {
+            pending.add(new PendingStep(statements.get(i), i));
+        }
+        Collections.sort(pending, new Comparator<PendingStep>() {
+            public int compare(PendingStep o1, PendingStep o2) {
+                int diff = o1.phase.compareTo(o2.phase);
+                if (diff == 0) diff = o1.order - o2.order;
+                if (diff == 0) diff = o1.index - o2.index;
+                return diff;
+            }
+        });
+
+        List<Step> steps = new ArrayList<Step>(pending.size());
+        int phaseStart = 0;
+        while (phaseStart < pending.size()) {
+            Phase phase = pending.get(phaseStart).phase;
+            int phaseEnd = phaseStart;
+            while (phaseEnd < pending.size() && pending.get(phaseEnd).phase == phase) {
+                phaseEnd++;
+            }
+            mergePhase(pending.subList(phaseStart, phaseEnd), steps);
+            phaseStart = phaseEnd;
+        }
+        return steps;
+    }
+
+    /**
+     * Returns the statements of the given plan, in order.
+     */
+    public static List<DDLStatement> getStatements(List<Step> plan) {
+        List<DDLStatement> statements = new ArrayList<DDLStatement>(plan.size());
+        for (Step step : plan) {
+            statements.add(step.getStatement());
+        }
+        return statements;
+    }
+
+    /**
+     * A generated statement with the phase and merge group the planner
+     * worked out for it.
+     */
+    private class PendingStep {
+        final DDLStatement statement;
+        final int index;
+        final Phase phase;
+
+        /**
+         * The order of this statement within its phase, for phases that
+         * need some statements before others.
+         */
+        final int order;
+
+        /**
+         * The ALTER TABLE prefix and the clause after it, or null if this
+         * isn't an ALTER TABLE statement.
+         */
+        final String prefix;
+        final String clause;
+        final ClauseKind kind;
+
+        PendingStep(DDLStatement statement, int index) {
+            this.statement = statement;
+            this.index = index;
+            Matcher m = ALTER_TABLE.matcher(statement.getSQLText());
+            if (m.matches()) {
+                prefix = m.group(1);
+                clause = m.group(2).trim();
+                kind = classifyClause(clause);
+            } else {
+                prefix = null;
+                clause = null;
+                kind = null;
+            }
+            phase = classifyPhase();
+            order = classifyOrder();
+        }
+
+        private Phase classifyPhase() {
+            StatementType type = statement.getType();
+            SQLObject so = statement.getObject();
+            String text = statement.getSQLText().trim().toUpperCase();
+            if (type == StatementType.COMMENT) {
+                return Phase.COMMENTS;
+            } else if (type == StatementType.ALTER) {
+                if (kind == ClauseKind.COMMENT || kind == ClauseKind.MODIFY_COLUMN) {
+                    return Phase.COMMENTS;
+                }
+                return Phase.RENAMES;
+            } else if (so instanceof SQLRelationship) {
+                return type == StatementType.DROP ? Phase.DROP_CONSTRAINTS : Phase.ADD_FOREIGN_KEYS;
+            } else if (so instanceof SQLIndex) {
+                return type == StatementType.DROP ? Phase.DROP_CONSTRAINTS : Phase.ADD_CONSTRAINTS;
+            } else if (so instanceof SQLTable) {
+                if (type == StatementType.DROP) {
+                    return text.startsWith("DROP") ? Phase.DROP_TABLES : Phase.DROP_CONSTRAINTS;
+                } else if (type == StatementType.ADD_PK) {
+                    return Phase.ADD_CONSTRAINTS;
+                } else if (type == StatementType.CREATE) {
+                    return text.startsWith("CREATE") ? Phase.CREATE_TABLES : Phase.ADD_CONSTRAINTS;
+                }
+            } else if (so instanceof SQLColumn) {
+                return Phase.ALTER_COLUMNS;
+            } else if (type == StatementType.CREATE) {
+                // sequences and other objects the new tables may need
+                return Phase.CREATE_TABLES;
+            }
+            return Phase.ALTER_COLUMNS;
+        }
+
+        private int classifyOrder() {
+            StatementType type = statement.getType();
+            SQLObject so = statement.getObject();
+            if (phase == Phase.DROP_CONSTRAINTS) {
+                // foreign keys use the indices and primary keys
+                if (so instanceof SQLRelationship) return 0;
+                if (so instanceof SQLIndex) return 1;
+                return 2;
+            } else if (phase == Phase.ADD_CONSTRAINTS) {
+                return so instanceof SQLTable ? 0 : 1;
+            } else if (phase == Phase.ALTER_COLUMNS) {
+                if (type == StatementType.DROP) return 0;
+                if (type == StatementType.MODIFY) return 1;
+                return 2;
+            } else if (phase == Phase.CREATE_TABLES) {
+                return so instanceof SQLTable ? 1 : 0;
+            }
+            return 0;
+        }
+
+        /**
+         * Returns the key of the statements this one can be merged with, or
+         * null if it has to stay on its own.
+         */
+        String mergeKey() {
+            if (prefix == null || kind == ClauseKind.RENAME || kind == ClauseKind.OTHER) {
+                return null;
+            }
+            String table = prefix.trim().replaceAll("\\s+", " ").toUpperCase();
+            switch (platform) {
+            case MYSQL:
+            case POSTGRES:
+                return table;
+            case ORACLE:
+                if (kind == ClauseKind.ADD_COLUMN || kind == ClauseKind.ADD_CONSTRAINT) return table + " ADD";
+                if (kind == ClauseKind.MODIFY_COLUMN && startsWithWord(clause, "MODIFY")) return table + " MODIFY";
+                if (kind == ClauseKind.DROP_COLUMN && startsWithWord(clause, "DROP COLUMN")) return table + " DROP";
+                return null;
+            case SQL_SERVER:
+                if (kind == ClauseKind.ADD_COLUMN || kind == ClauseKind.ADD_CONSTRAINT) return table + " ADD";
+                if (kind == ClauseKind.DROP_COLUMN && startsWithWord(clause, "DROP COLUMN")) return table + " DROP COLUMN";
+                if (kind == ClauseKind.DROP_CONSTRAINT && startsWithWord(clause, "DROP CONSTRAINT")) return table + " DROP CONSTRAINT";
+                return null;
+            default:
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Merges the mergeable statements of one phase and adds the resulting
+     * steps to the plan. A merged statement takes the place of the first of
+     * the statements it replaces.
+     * <p>
+     * Statements of different orders within a phase are never merged, except
+     * in {@link Phase#ALTER_COLUMNS} where the order only sequences changes
+     * to the columns of the same table, which the merged clauses keep. In the
+     * constraint phases the order is what drops every foreign key before the
+     * primary keys they reference, and merging one table's statements across
+     * orders would drop its primary key before another table's foreign key.
+     */
+    private void mergePhase(List<PendingStep> phaseSteps, List<Step> steps) {
+        Map<Object, List<PendingStep>> groups = new LinkedHashMap<Object, List<PendingStep>>();
+        for (PendingStep p : phaseSteps) {
+            String key = p.mergeKey();
+            if (key != null && p.phase != Phase.ALTER_COLUMNS) {
+                key = key + " " + p.order;
+            }
+            Object groupKey = key == null ? p : key;
+            List<PendingStep> group = groups.get(groupKey);
+            if (group == null) {
+                group = new ArrayList<PendingStep>(1);
+                groups.put(groupKey, group);
+            }
+            group.add(p);
+        }
+
+        for (List<PendingStep> group : groups.values()) {
+            PendingStep first = group.get(0);
+            if (group.size() == 1) {
+                steps.add(new Step(first.statement, first.phase, lockOf(first), 1));
+                continue;
+            }
+            TableLock lock = TableLock.NONE;
+            List<String> clauses = new ArrayList<String>(group.size());
+            for (PendingStep p : group) {
+                clauses.add(p.clause);
+                TableLock clauseLock = lockOf(p);
+                if (clauseLock.compareTo(lock) > 0) lock = clauseLock;
+            }
+            DDLStatement merged = new DDLStatement(
+                    first.statement.getObject(),
+                    first.statement.getType(),
+                    first.prefix + " " + mergeClauses(clauses),
+                    first.statement.getSqlTerminator(),
+                    first.statement.getTargetCatalog(),
+                    first.statement.getTargetSchema());
+            steps.add(new Step(merged, first.phase, lock, group.size()));
+        }
+    }
+
+    /**
+     * Combines the clauses of one merge group into the clause of a single
+     * ALTER TABLE statement.
+     */
+    String mergeClauses(List<String> clauses) {
+        StringBuilder sb = new StringBuilder();
+        if (platform == Platform.ORACLE) {
+            // ADD x, MODIFY x and DROP COLUMN x become ADD (x, y) etc.
+            String first = clauses.get(0);
+            String keyword = startsWithWord(first, "DROP COLUMN") ? "DROP" : first.substring(0, first.indexOf(' '));
+            sb.append(keyword.toUpperCase()).append(" (");
+            for (int i = 0; i < clauses.size(); i++) {
+                if (i > 0) sb.append(", ");
+                sb.append(stripKeyword(clauses.get(i)));
+            }
+            sb.append(")");
+        } else if (platform == Platform.SQL_SERVER) {
+            // ADD x, y and DROP COLUMN x, y and DROP CONSTRAINT x, y
+            String first = clauses.get(0);
+            String keyword = startsWithWord(first, "ADD") ? "ADD" :
+                (startsWithWord(first, "DROP COLUMN") ? "DROP COLUMN" : "DROP CONSTRAINT");
+            sb.append(keyword).append(" ");
+            for (int i = 0; i < clauses.size(); i++) {
+                if (i > 0) sb.append(", ");
+                sb.append(clauses.get(i).substring(keyword.length()).trim());
+            }
+        } else {
+            for (int i = 0; i < clauses.size(); i++) {
+                if (i > 0) sb.append(", ");
+                sb.append(clauses.get(i));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Removes the leading ADD, MODIFY or DROP COLUMN from an Oracle clause.
+     */
+    private static String stripKeyword(String clause) {
+        if (startsWithWord(clause, "DROP COLUMN")) {
+            return clause.substring("DROP COLUMN".length()).trim();
+        }
+        return clause.substring(clause.indexOf(' ') + 1).trim();
+    }
+
+    private static boolean startsWithWord(String clause, String words) {
+        return clause.regionMatches(true, 0, words, 0, words.length())
+            && (clause.length() == words.length() || Character.isWhitespace(clause.charAt(words.length()))
+                    || clause.charAt(words.length()) == '(');
+    }
+
+    static ClauseKind classifyClause(String clause) {
+        if (startsWithWord(clause, "RENAME") || startsWithWord(clause, "CHANGE")
+                || ALTER_COLUMN_RENAME.matcher(clause).matches()) {
+            return ClauseKind.RENAME;
+        } else if (startsWithWord(clause, "COMMENT")) {
+            return ClauseKind.COMMENT;
+        } else if (startsWithWord(clause, "ADD CONSTRAINT") || startsWithWord(clause, "ADD PRIMARY")
+                || startsWithWord(clause, "ADD FOREIGN") || startsWithWord(clause, "ADD UNIQUE")
+                || startsWithWord(clause, "ADD INDEX") || startsWithWord(clause, "ADD CHECK")) {
+            return ClauseKind.ADD_CONSTRAINT;
+        } else if (startsWithWord(clause, "ADD")) {
+            return ClauseKind.ADD_COLUMN;
+        } else if (startsWithWord(clause, "DROP CONSTRAINT") || startsWithWord(clause, "DROP FOREIGN")
+                || startsWithWord(clause, "DROP PRIMARY") || startsWithWord(clause, "DROP INDEX")) {
+            return ClauseKind.DROP_CONSTRAINT;
+        } else if (startsWithWord(clause, "DROP")) {
+            return ClauseKind.DROP_COLUMN;
+        } else if (startsWithWord(clause, "MODIFY") || startsWithWord(clause, "ALTER")) {
+            return ClauseKind.MODIFY_COLUMN;
+        }
+        return ClauseKind.OTHER;
+    }
+
+    /**
+     * Estimates how the given statement locks the table it changes.
+     */
+    private TableLock lockOf(PendingStep p) {
+        String text = p.statement.getSQLText().trim().toUpperCase();
+        if (p.prefix == null) {
+            if (text.startsWith("CREATE")) {
+                if (text.contains(" INDEX ")) {
+                    return text.contains(" CONCURRENTLY ") ? TableLock.NONE : TableLock.BLOCKS_WRITES;
+                }
+                return TableLock.NONE;
+            }
+            return TableLock.METADATA;
+        }
+
+        String clause = p.clause.toUpperCase();
+        switch (p.kind) {
+        case RENAME:
+            return platform == Platform.MYSQL && clause.startsWith("CHANGE") ? TableLock.REBUILD : TableLock.METADATA;
+        case COMMENT:
+            return TableLock.METADATA;
+        case ADD_COLUMN:
+            switch (platform) {
+            case MYSQL: return TableLock.REBUILD;
+            case POSTGRES: return clause.contains(" DEFAULT ") ? TableLock.REBUILD : TableLock.METADATA;
+            case SQL_SERVER: return clause.contains("NOT NULL") ? TableLock.EXCLUSIVE_SCAN : TableLock.METADATA;
+            default: return TableLock.METADATA;
+            }
+        case DROP_COLUMN:
+            switch (platform) {
+            case MYSQL:
+            case ORACLE:
+                return TableLock.REBUILD;
+            case OTHER:
+                return TableLock.EXCLUSIVE_SCAN;
+            default:
+                return TableLock.METADATA;
+            }
+        case MODIFY_COLUMN:
+            switch (platform) {
+            case MYSQL:
+            case OTHER:
+                return TableLock.REBUILD;
+            case POSTGRES:
+                if (clause.contains(" TYPE ")) return TableLock.REBUILD;
+                if (clause.contains("SET NOT NULL")) return TableLock.EXCLUSIVE_SCAN;
+                return TableLock.METADATA;
+            default:
+                return TableLock.EXCLUSIVE_SCAN;
+            }
+        case ADD_CONSTRAINT:
+            if (clause.contains("PRIMARY KEY")) {
+                if (platform == Platform.MYSQL || platform == Platform.SQL_SERVER) return TableLock.REBUILD;
+                return TableLock.EXCLUSIVE_SCAN;
+            }
+            return TableLock.BLOCKS_WRITES;
+        case DROP_CONSTRAINT:
+            if (platform == Platform.MYSQL && clause.contains("PRIMARY KEY")) return TableLock.REBUILD;
+            return TableLock.METADATA;
+        default:
+            return TableLock.REBUILD;
+        }
+    }
+}
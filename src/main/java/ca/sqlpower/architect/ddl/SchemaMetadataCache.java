@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+package ca.sqlpower.architect.ddl;
+
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import ca.sqlpower.sql.JDBCDataSource;
+import ca.sqlpower.sqlobject.SQLDatabase;
+
+/**
+ * Keeps the {@link SchemaMetadataIndex} of each target schema for a while, so
+ * that checking the same target for conflicts again, for example after
+ * cancelling a deploy and fixing the model, doesn't read the whole schema
+ * again. Anything that changes a target database should call
+ * {@link #invalidate(SQLDatabase)} for it.
+ */
+public class SchemaMetadataCache {
+
+    /**
+     * The default time an index is used for before it is read again.
+     */
+    public static final long DEFAULT_MAX_AGE = 5 * 60 * 1000;
+
+    /**
+     * The maximum age of a cache that keeps each index until it is
+     * invalidated.
+     */
+    public static final long NEVER_EXPIRES = Long.MAX_VALUE;
+
+    private final long maxAge;
+
+    private final Map<String, SchemaMetadataIndex> indices = new HashMap<String, SchemaMetadataIndex>();
+
+    public SchemaMetadataCache() {
+        this(DEFAULT_MAX_AGE);
+    }
+
+    /**
+     * @param maxAge
+     *            How many milliseconds an index is used for. 0 reads the
+     *            schema every time it is asked for, and
+     *            {@link #NEVER_EXPIRES} reads it only once.
+     */
+    public SchemaMetadataCache(long maxAge) {
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * Returns the index of the given catalog and schema of the target
+     * database, reading it through the given metadata if there isn't a fresh
+     * enough one.
+     */
+    public synchronized SchemaMetadataIndex getIndex(SQLDatabase target, DatabaseMetaData dbmd,
+            String catalog, String schema) throws SQLException {
+        String key = prefix(target) + catalog + "\u0000" + schema;
+        SchemaMetadataIndex index = indices.get(key);
+        if (index == null || System.currentTimeMillis() - index.getLoadTime() >= maxAge) {
+            index = new SchemaMetadataIndex(dbmd, catalog, schema);
+            indices.put(key, index);
+        }
+        return index;
+    }
+
+    /**
+     * Forgets every index of the given target database.
+     */
+    public synchronized void invalidate(SQLDatabase target) {
+        String prefix = prefix(target);
+        for (Iterator<String> it = indices.keySet().iterator(); it.hasNext(); ) {
+            if (it.next().startsWith(prefix)) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the start of the keys of the given target's indices.
+     */
+    private static String prefix(SQLDatabase target) {
+        JDBCDataSource ds = target.getDataSource();
+        return ds.getUrl() + "\u0000" + ds.getUser() + "\u0000";
+    }
+}
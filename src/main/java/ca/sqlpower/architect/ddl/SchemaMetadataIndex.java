@@ -0,0 +1,299 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+package ca.sqlpower.architect.ddl;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+/**
+ * An in-memory copy of the tables and foreign keys of one catalog and schema
+ * of a database, read with a couple of bulk metadata calls. The
+ * {@link ConflictResolver} looks up every table it is about to create here
+ * instead of asking the database about each one, which takes thousands of
+ * round trips on large Oracle or SQL Server catalogs.
+ * <p>
+ * The foreign keys each table has are read in bulk where the driver can list
+ * the keys of a whole schema at once. Some drivers can't, and many others
+ * return nothing instead of failing, so when the bulk listing fails or comes
+ * back empty the keys of each table are read the first time they are asked
+ * for. The keys referencing a table are always read for that table when they
+ * are asked for, as they may come from tables in other schemas which the bulk
+ * listing does not cover. Keys read this way are remembered.
+ */
+public class SchemaMetadataIndex {
+
+    private static final Logger logger = Logger.getLogger(SchemaMetadataIndex.class);
+
+    /**
+     * A table, view or other object listed by
+     * {@link DatabaseMetaData#getTables(String, String, String, String[])}.
+     */
+    public static class TableEntry {
+        private final String type;
+        private final String catalog;
+        private final String schema;
+        private final String name;
+
+        TableEntry(String type, String catalog, String schema, String name) {
+            this.type = type;
+            this.catalog = catalog;
+            this.schema = schema;
+            this.name = name;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public String getCatalog() {
+            return catalog;
+        }
+
+        public String getSchema() {
+            return schema;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    /**
+     * A foreign key, described by the table it belongs to. Multi-column keys
+     * are only listed once.
+     */
+    public static class ForeignKeyEntry {
+        private final String fkCatalog;
+        private final String fkSchema;
+        private final String fkTable;
+        private final String name;
+
+        ForeignKeyEntry(String fkCatalog, String fkSchema, String fkTable, String name) {
+            this.fkCatalog = fkCatalog;
+            this.fkSchema = fkSchema;
+            this.fkTable = fkTable;
+            this.name = name;
+        }
+
+        public String getFkCatalog() {
+            return fkCatalog;
+        }
+
+        public String getFkSchema() {
+            return fkSchema;
+        }
+
+        public String getFkTable() {
+            return fkTable;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    private final String catalog;
+    private final String schema;
+    private final long loadTime;
+
+    private final Map<String, List<TableEntry>> tables = new HashMap<String, List<TableEntry>>();
+
+    /**
+     * The keys each table has, by qualified table name, in the order the
+     * metadata listed them. Null if the driver couldn't list the keys of the
+     * whole schema.
+     */
+    private Map<String, List<ForeignKeyEntry>> keys;
+
+    /**
+     * The keys of each table and the keys referencing it, by qualified table
+     * name, for the tables that were asked about.
+     */
+    private final Map<String, List<ForeignKeyEntry>> tableKeys = new HashMap<String, List<ForeignKeyEntry>>();
+
+    /**
+     * Reads the tables and foreign keys of the given catalog and schema. Null
+     * means the same as it does to {@link DatabaseMetaData#getTables(String, String, String, String[])}.
+     */
+    public SchemaMetadataIndex(DatabaseMetaData dbmd, String catalog, String schema) throws SQLException {
+        this.catalog = catalog;
+        this.schema = schema;
+        loadTime = System.currentTimeMillis();
+
+        ResultSet rs = dbmd.getTables(catalog, schema, "%", null);
+        try {
+            while (rs.next()) {
+                TableEntry t = new TableEntry(
+                        rs.getString("TABLE_TYPE"),
+                        rs.getString("TABLE_CAT"),
+                        rs.getString("TABLE_SCHEM"),
+                        rs.getString("TABLE_NAME"));
+                List<TableEntry> sameName = tables.get(t.getName());
+                if (sameName == null) {
+                    sameName = new ArrayList<TableEntry>(1);
+                    tables.put(t.getName(), sameName);
+                }
+                sameName.add(t);
+            }
+        } finally {
+            rs.close();
+        }
+
+        try {
+            rs = dbmd.getImportedKeys(catalog, schema, null);
+        } catch (SQLException ex) {
+            logger.info("Driver can't list all foreign keys of " + catalog + "." + schema
+                    + ", they will be read table by table", ex);
+            return;
+        }
+        Map<String, List<ForeignKeyEntry>> bulkKeys = new HashMap<String, List<ForeignKeyEntry>>();
+        try {
+            Set<String> seen = new HashSet<String>();
+            while (rs.next()) {
+                ForeignKeyEntry fk = new ForeignKeyEntry(
+                        rs.getString("FKTABLE_CAT"),
+                        rs.getString("FKTABLE_SCHEM"),
+                        rs.getString("FKTABLE_NAME"),
+                        rs.getString("FK_NAME"));
+                String fkTable = key(fk.getFkCatalog(), fk.getFkSchema(), fk.getFkTable());
+                // multi-column keys get multiple rows in this result set.  We need to skip 'em.
+                if (!seen.add(fkTable + "." + fk.getName())) continue;
+                addKey(bulkKeys, fkTable, fk);
+            }
+        } finally {
+            rs.close();
+        }
+        if (bulkKeys.isEmpty() && !tables.isEmpty()) {
+            logger.info("Driver listed no foreign keys for all of " + catalog + "." + schema
+                    + ", they will be read table by table");
+            return;
+        }
+        keys = bulkKeys;
+    }
+
+    /**
+     * Returns the map key of the table with the given catalog, schema and name.
+     */
+    private static String key(String catalog, String schema, String name) {
+        return catalog + "\u0000" + schema + "\u0000" + name;
+    }
+
+    private static void addKey(Map<String, List<ForeignKeyEntry>> keys, String qualifiedTable,
+            ForeignKeyEntry fk) {
+        List<ForeignKeyEntry> list = keys.get(qualifiedTable);
+        if (list == null) {
+            list = new ArrayList<ForeignKeyEntry>(2);
+            keys.put(qualifiedTable, list);
+        }
+        list.add(fk);
+    }
+
+    public String getCatalog() {
+        return catalog;
+    }
+
+    public String getSchema() {
+        return schema;
+    }
+
+    /**
+     * Returns the time this index was read from the database, in
+     * milliseconds since the epoch.
+     */
+    public long getLoadTime() {
+        return loadTime;
+    }
+
+    /**
+     * Returns the tables with exactly the given name. There can be more than
+     * one if this index covers several schemas.
+     */
+    public List<TableEntry> getTables(String name) {
+        List<TableEntry> sameName = tables.get(name);
+        if (sameName == null) return Collections.emptyList();
+        return sameName;
+    }
+
+    /**
+     * Returns the foreign keys of the given table and the ones referencing it
+     * from any schema: everything that has to be dropped before the table
+     * can be. The keys referencing the table are read from the metadata, and
+     * so are the table's own keys if they couldn't be read in bulk.
+     */
+    public synchronized List<ForeignKeyEntry> getForeignKeys(TableEntry table, DatabaseMetaData dbmd) throws SQLException {
+        String qualifiedName = key(table.getCatalog(), table.getSchema(), table.getName());
+        List<ForeignKeyEntry> result = tableKeys.get(qualifiedName);
+        if (result == null) {
+            result = new ArrayList<ForeignKeyEntry>();
+            Set<String> seen = new HashSet<String>();
+            if (keys != null) {
+                List<ForeignKeyEntry> list = keys.get(qualifiedName);
+                if (list != null) {
+                    for (ForeignKeyEntry fk : list) {
+                        seen.add(key(fk.getFkCatalog(), fk.getFkSchema(), fk.getFkTable()) + "." + fk.getName());
+                        result.add(fk);
+                    }
+                }
+            } else {
+                ResultSet rs = dbmd.getImportedKeys(table.getCatalog(), table.getSchema(), table.getName());
+                try {
+                    addKeys(rs, result, seen);
+                } finally {
+                    rs.close();
+                }
+            }
+            ResultSet rs = dbmd.getExportedKeys(table.getCatalog(), table.getSchema(), table.getName());
+            try {
+                addKeys(rs, result, seen);
+            } finally {
+                rs.close();
+            }
+            tableKeys.put(qualifiedName, result);
+        }
+        return result;
+    }
+
+    /**
+     * Adds the keys listed in the given result set to the result, skipping
+     * the ones already seen. A self-referencing key is listed as both an
+     * imported and an exported key but is only added once.
+     */
+    private static void addKeys(ResultSet rs, List<ForeignKeyEntry> result, Set<String> seen) throws SQLException {
+        while (rs.next()) {
+            ForeignKeyEntry fk = new ForeignKeyEntry(
+                    rs.getString("FKTABLE_CAT"),
+                    rs.getString("FKTABLE_SCHEM"),
+                    rs.getString("FKTABLE_NAME"),
+                    rs.getString("FK_NAME"));
+            // multi-column keys get multiple rows in this result set.  We need to skip 'em.
+            if (!seen.add(key(fk.getFkCatalog(), fk.getFkSchema(), fk.getFkTable()) + "." + fk.getName())) continue;
+            result.add(fk);
+        }
+    }
+}
@@ -66,5 +66,14 @@ public interface Critic {
      * as the object is immutable.
      */
     public Severity getSeverity();
+
+    /**
+     * Returns true if the criticisms this critic makes of one object depend on
+     * the other objects it was given since {@link #start()} was called, as
+     * when looking for duplicate names. The criticisms of a critic that
+     * returns false depend only on the subject and the objects it can reach,
+     * so they can be recalculated for a changed object on its own.
+     */
+    public boolean isCrossObject();
     
 }
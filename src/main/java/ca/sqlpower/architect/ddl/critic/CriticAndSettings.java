@@ -190,6 +190,15 @@ public abstract class CriticAndSettings extends AbstractSPObject implements Crit
     public void end() {
         started = false;
     }
+
+    /**
+     * Most critics only look at the object they are given. Critics that keep
+     * state between {@link #start()} and {@link #end()} to compare objects
+     * with each other must override this method to return true.
+     */
+    public boolean isCrossObject() {
+        return false;
+    }
     
     @Mutator
     public void setSeverity(Severity severity) {
@@ -40,6 +40,7 @@ import ca.sqlpower.architect.ddl.critic.impl.HSQLDBUnsupportedFeaturesCritic;
 import ca.sqlpower.architect.ddl.critic.impl.MySQLCommentCritic;
 import ca.sqlpower.architect.ddl.critic.impl.MySQLReservedWordsCritic;
 import ca.sqlpower.architect.ddl.critic.impl.MySQLUnsupportedFeaturesCritic;
+import ca.sqlpower.architect.ddl.critic.impl.NamingRules;
 import ca.sqlpower.architect.ddl.critic.impl.OraclePhysicalNameCritic;
 import ca.sqlpower.architect.ddl.critic.impl.OracleReservedWordsCritic;
 import ca.sqlpower.architect.ddl.critic.impl.OracleUnsupportedFeaturesCritic;
@@ -60,8 +61,6 @@ import ca.sqlpower.object.annotation.Mutator;
 import ca.sqlpower.object.annotation.NonBound;
 import ca.sqlpower.object.annotation.NonProperty;
 import ca.sqlpower.object.annotation.Transient;
-import ca.sqlpower.sql.JDBCDataSource;
-import ca.sqlpower.sql.JDBCDataSourceType;
 
 /**
  * A collection of settings that defines what critics are enabled in the system
@@ -121,6 +120,17 @@ public class CriticManager extends AbstractSPObject {
      * All of the critic groups known to this system.
      */
     private final List<CriticGrouping> criticGroupings = new ArrayList<CriticGrouping>();
+
+    /**
+     * See {@link #getIncrementalCriticizer()}. This is not persisted.
+     */
+    private IncrementalCriticizer incrementalCriticizer;
+
+    /**
+     * The reserved words and name patterns of this manager's critics. This
+     * is not persisted.
+     */
+    private final NamingRules namingRules = new NamingRules();
     
     @Constructor
     public CriticManager() {
@@ -188,7 +198,8 @@ public class CriticManager extends AbstractSPObject {
     /**
      * Returns a list of criticisms calculated by critics in this manager based
      * on the objects the manager knows to criticize. These criticisms are
-     * immutable after they are created.
+     * immutable after they are created. Only the objects that changed since
+     * the last call are criticized again, see {@link IncrementalCriticizer}.
      * 
      * @param generatorClass
      *            The generator type we will be using to create DDL with. Will
@@ -197,21 +208,35 @@ public class CriticManager extends AbstractSPObject {
      *            enabled critics will be used.
      */
     public List<Criticism> criticize(Class<? extends DDLGenerator> generatorClass) {
-        List<Criticism> criticisms = new ArrayList<Criticism>();
-        criticisms.addAll(criticize(generatorClass, getParent().getTargetDatabase()));
-        for (JDBCDataSourceType dsType : getParent().getSession().getDataSources().getDataSourceTypes()) {
-            criticisms.addAll(criticize(generatorClass, dsType));
-        }
-        for (JDBCDataSource ds : getParent().getSession().getDataSources().getConnections()) {
-            criticisms.addAll(criticize(generatorClass, ds));
+        return getIncrementalCriticizer().criticize(generatorClass);
+    }
+
+    /**
+     * Returns the naming rules the critics of this manager check names with.
+     * Rules of critics that were removed from the manager are dropped when
+     * the rules run out of room, see {@link NamingRules}.
+     */
+    @NonProperty
+    public NamingRules getNamingRules() {
+        return namingRules;
+    }
+
+    /**
+     * Returns the criticizer that keeps the criticisms of this manager's
+     * project up to date as it changes. It is created the first time the
+     * project is criticized.
+     */
+    @NonProperty
+    public synchronized IncrementalCriticizer getIncrementalCriticizer() {
+        if (incrementalCriticizer == null) {
+            incrementalCriticizer = new IncrementalCriticizer(this);
         }
-        return criticisms;
+        return incrementalCriticizer;
     }
 
     /**
-     * Returns a list of criticisms calculated by critics in this manager based
-     * on the object passed to them. These criticisms are immutable after they
-     * are created.
+     * Returns the critics of this manager that are enabled and do not have
+     * their severity set to ignore.
      * 
      * @param generatorClass
      *            The generator type we will be using to create DDL with. Will
@@ -219,7 +244,7 @@ public class CriticManager extends AbstractSPObject {
      *            associated with this DDL generators of this type. If null all
      *            enabled critics will be used.
      */
-    private List<Criticism> criticize(Class<? extends DDLGenerator> generatorClass, Object root) {
+    List<Critic> getEnabledCritics(Class<? extends DDLGenerator> generatorClass) {
         List<Critic> critics = new ArrayList<Critic>();
         for (CriticGrouping grouping : criticGroupings) {
             if (!grouping.isEnabled()) continue;
@@ -231,9 +256,7 @@ public class CriticManager extends AbstractSPObject {
                 critics.add(singleSettings);
             }
         }
-        Criticizer criticizer = new Criticizer(critics);
-        return Collections.unmodifiableList(criticizer.criticize(root));
-        
+        return critics;
     }
     
     @Override
@@ -22,10 +22,16 @@ package ca.sqlpower.architect.ddl.critic;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import ca.sqlpower.architect.ddl.critic.CriticAndSettings.Severity;
+
 
 /**
  * This bucket holds all of the current criticisms about the state of the
@@ -35,6 +41,9 @@ import java.util.Set;
  * criticism bucket can decide if criticisms being added should be appended to
  * the existing list of criticisms, replace criticisms, or clear the list to
  * start over.
+ * <p>
+ * The criticisms are indexed by subject and by severity so the user interface
+ * can look up the criticisms of an object without going through all of them.
  */
 public class CriticismBucket {
 
@@ -43,33 +52,126 @@ public class CriticismBucket {
      * this criticizer.
      */
     private final List<Criticism> criticisms = new ArrayList<Criticism>();
+
+    /**
+     * The criticisms of each subject, in the order they are in
+     * {@link #criticisms}.
+     */
+    private final Map<Object, List<Criticism>> criticismsBySubject = new HashMap<Object, List<Criticism>>();
+
+    /**
+     * The criticisms of each severity. The severity is the one the critic had
+     * when the criticism was added.
+     */
+    private final Map<Severity, Set<Criticism>> criticismsBySeverity =
+        new EnumMap<Severity, Set<Criticism>>(Severity.class);
     
     private final List<CriticismListener> listeners = new ArrayList<CriticismListener>();
-    
+
+    /**
+     * Replaces the criticisms in this bucket with the given ones. A new
+     * criticism that is the same object as a current one, or that has the
+     * same subject, critic, severity and description as one, is taken to be
+     * unchanged and the current one is kept. Listeners get one event with
+     * the criticisms that were added and removed, and are not told anything
+     * if nothing changed.
+     */
     public void updateCriticismsToMatch(List<Criticism> newCriticisms) {
-        clearCriticisms();
-        criticisms.addAll(newCriticisms);
-        int index = criticisms.size();
+        Map<Criticism, Criticism> current = new IdentityHashMap<Criticism, Criticism>();
+        for (Criticism criticism : criticisms) {
+            current.put(criticism, criticism);
+        }
+
+        List<Criticism> added = new ArrayList<Criticism>();
+        Map<Criticism, Criticism> kept = new IdentityHashMap<Criticism, Criticism>();
         for (Criticism newCriticism : newCriticisms) {
-            for (int i = listeners.size() - 1; i >=0; i--) {
-                listeners.get(i).criticismAdded(new CriticismEvent(newCriticism, index));
+            Criticism match = current.remove(newCriticism);
+            if (match == null) {
+                match = findEquivalent(newCriticism, current);
+            }
+            if (match == null) {
+                added.add(newCriticism);
+            } else {
+                current.remove(match);
+                kept.put(match, match);
             }
-            index++;
+        }
+        if (added.isEmpty() && current.isEmpty()) return;
+
+        List<Criticism> removed = new ArrayList<Criticism>();
+        List<Criticism> unchanged = new ArrayList<Criticism>(kept.size());
+        for (Criticism criticism : criticisms) {
+            if (kept.containsKey(criticism)) {
+                unchanged.add(criticism);
+            } else {
+                removed.add(criticism);
+            }
+        }
+
+        criticisms.clear();
+        criticisms.addAll(unchanged);
+        criticisms.addAll(added);
+        for (Criticism criticism : removed) {
+            unindex(criticism);
+        }
+        for (Criticism criticism : added) {
+            index(criticism);
+        }
+
+        CriticismEvent e = new CriticismEvent(this, Collections.unmodifiableList(added),
+                Collections.unmodifiableList(removed), Collections.unmodifiableList(unchanged));
+        for (int i = listeners.size() - 1; i >=0; i--) {
+            listeners.get(i).criticismsChanged(e);
         }
     }
-    
+
     /**
-     * Removes all current criticisms from the criticizer.
+     * Returns a criticism of the given map of current criticisms that has the
+     * same subject, critic, severity and description as the given one, or
+     * null if there is none.
      */
-    private void clearCriticisms() {
-        ArrayList<Criticism> oldCriticisms = new ArrayList<Criticism>(criticisms);
-        criticisms.clear();
-        for (int i = oldCriticisms.size() - 1; i >= 0; i--) {
-            Criticism oldCriticism = oldCriticisms.get(i);
-            for (int j = listeners.size() - 1; j >=0; j--) {
-                listeners.get(j).criticismRemoved(new CriticismEvent(oldCriticism, i));
+    private Criticism findEquivalent(Criticism criticism, Map<Criticism, Criticism> current) {
+        List<Criticism> sameSubject = criticismsBySubject.get(criticism.getSubject());
+        if (sameSubject == null) return null;
+        Severity severity = criticism.getCritic().getSeverity();
+        for (Criticism other : sameSubject) {
+            if (current.containsKey(other) && other.getCritic() == criticism.getCritic()
+                    && criticismsBySeverity.get(severity) != null
+                    && criticismsBySeverity.get(severity).contains(other)
+                    && other.getDescription().equals(criticism.getDescription())) {
+                return other;
             }
         }
+        return null;
+    }
+
+    private void index(Criticism criticism) {
+        List<Criticism> subjectCriticisms = criticismsBySubject.get(criticism.getSubject());
+        if (subjectCriticisms == null) {
+            subjectCriticisms = new ArrayList<Criticism>(2);
+            criticismsBySubject.put(criticism.getSubject(), subjectCriticisms);
+        }
+        subjectCriticisms.add(criticism);
+        Severity severity = criticism.getCritic().getSeverity();
+        Set<Criticism> severityCriticisms = criticismsBySeverity.get(severity);
+        if (severityCriticisms == null) {
+            severityCriticisms = new LinkedHashSet<Criticism>();
+            criticismsBySeverity.put(severity, severityCriticisms);
+        }
+        severityCriticisms.add(criticism);
+    }
+
+    private void unindex(Criticism criticism) {
+        List<Criticism> subjectCriticisms = criticismsBySubject.get(criticism.getSubject());
+        if (subjectCriticisms != null) {
+            subjectCriticisms.remove(criticism);
+            if (subjectCriticisms.isEmpty()) {
+                criticismsBySubject.remove(criticism.getSubject());
+            }
+        }
+        for (Set<Criticism> severityCriticisms : criticismsBySeverity.values()) {
+            if (severityCriticisms.remove(criticism)) break;
+        }
     }
     
     public List<Criticism> getCriticisms() {
@@ -77,21 +179,23 @@ public class CriticismBucket {
     }
     
     public List<Criticism> getCriticismsByObject(Object subject) {
-        List<Criticism> selectedCriticisms = new ArrayList<Criticism>();
-        for (Criticism criticism : criticisms) {
-            if (criticism.getSubject().equals(subject)) {
-                selectedCriticisms.add(criticism);
-            }
-        }
-        return selectedCriticisms;
+        List<Criticism> subjectCriticisms = criticismsBySubject.get(subject);
+        if (subjectCriticisms == null) return Collections.emptyList();
+        return Collections.unmodifiableList(subjectCriticisms);
+    }
+
+    /**
+     * Returns the criticisms whose critic had the given severity when they
+     * were added to the bucket.
+     */
+    public Collection<Criticism> getCriticismsBySeverity(Severity severity) {
+        Set<Criticism> severityCriticisms = criticismsBySeverity.get(severity);
+        if (severityCriticisms == null) return Collections.emptySet();
+        return Collections.unmodifiableSet(severityCriticisms);
     }
     
     public Collection<Object> getCriticismSubjects() {
-        Set<Object> subjects = new HashSet<Object>();
-        for (Criticism criticism : criticisms) {
-            subjects.add(criticism.getSubject());
-        }
-        return subjects;
+        return Collections.unmodifiableSet(criticismsBySubject.keySet());
     }
     
     public void addCriticismListener(CriticismListener l) {
@@ -19,25 +19,52 @@
 
 package ca.sqlpower.architect.ddl.critic;
 
+import java.util.List;
+
 /**
- * An event signalling a criticism changed.
+ * An event signalling the criticisms of a {@link CriticismBucket} changed. One
+ * event describes all of the changes of one update of the bucket.
  */
 public class CriticismEvent {
 
-    private final Criticism criticism;
-    private final int index;
+    private final CriticismBucket source;
+    private final List<Criticism> added;
+    private final List<Criticism> removed;
+    private final List<Criticism> unchanged;
     
-    public CriticismEvent(Criticism criticism, int index) {
-        this.criticism = criticism;
-        this.index = index;
+    public CriticismEvent(CriticismBucket source, List<Criticism> added,
+            List<Criticism> removed, List<Criticism> unchanged) {
+        this.source = source;
+        this.added = added;
+        this.removed = removed;
+        this.unchanged = unchanged;
+    }
+
+    public CriticismBucket getSource() {
+        return source;
+    }
+
+    /**
+     * Returns the criticisms that were added to the end of the bucket, in
+     * the order they were added.
+     */
+    public List<Criticism> getAdded() {
+        return added;
     }
 
-    public Criticism getCriticism() {
-        return criticism;
+    /**
+     * Returns the criticisms that were removed from the bucket.
+     */
+    public List<Criticism> getRemoved() {
+        return removed;
     }
 
-    public int getIndex() {
-        return index;
+    /**
+     * Returns the criticisms that were in the bucket before and are still in
+     * it, in their order in the bucket.
+     */
+    public List<Criticism> getUnchanged() {
+        return unchanged;
     }
     
 }
@@ -20,14 +20,16 @@
 package ca.sqlpower.architect.ddl.critic;
 
 /**
- * Listener that can be added to a {@link Criticizer} to be notified when
- * criticisms get added, removed, or changed.
+ * Listener that can be added to a {@link CriticismBucket} to be notified when
+ * criticisms get added or removed.
  */
 public interface CriticismListener {
 
-    public void criticismAdded(CriticismEvent e);
-    
-    public void criticismRemoved(CriticismEvent e);
+    /**
+     * Called once for each update of the bucket that added or removed
+     * criticisms.
+     */
+    public void criticismsChanged(CriticismEvent e);
     
     //TODO add in criticismChanged for refreshing a criticism.
 }
\ No newline at end of file
@@ -21,13 +21,21 @@ package ca.sqlpower.architect.ddl.critic;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import ca.sqlpower.object.SPObject;
 import ca.sqlpower.sqlobject.SQLDatabase;
 import ca.sqlpower.sqlobject.SQLObjectException;
 import ca.sqlpower.sqlobject.SQLTable;
 import ca.sqlpower.sqlobject.SQLRelationship.SQLImportedKey;
+import ca.sqlpower.util.MonitorableImpl;
 
 /**
  * A Criticizer uses a collection of critics to analyze objects and come up with
@@ -36,6 +44,12 @@ import ca.sqlpower.sqlobject.SQLRelationship.SQLImportedKey;
  * object and its descendants will be traversed as well as which critics will be
  * informed of objects to criticize.
  * <p>
+ * A criticizer given more than one thread splits the model into units, each
+ * table with its descendants being one unit, and criticizes the units at the
+ * same time. Critics that compare objects with each other either merge what
+ * they found in each unit afterwards, if they are {@link MergeableCritic}s,
+ * or are run over the units one after another on the calling thread.
+ * <p>
  * Package private because classes outside of the critics do not need to know about
  * the implementation.
  */
@@ -43,8 +57,68 @@ class Criticizer {
 
     private final List<Critic> critics;
 
+    /**
+     * The number of units criticized at the same time.
+     */
+    private final int threads;
+
+    /**
+     * The criticisms of each unit passed to {@link Criticizer#criticizeUnits(List)},
+     * and the criticisms made by comparing the units.
+     */
+    static class UnitCriticisms {
+        private final List<List<Criticism>> unitCriticisms;
+        private final List<Map<Critic, Object>> unitParts;
+        private final List<Criticism> mergedCriticisms;
+
+        UnitCriticisms(List<List<Criticism>> unitCriticisms, List<Map<Critic, Object>> unitParts,
+                List<Criticism> mergedCriticisms) {
+            this.unitCriticisms = unitCriticisms;
+            this.unitParts = unitParts;
+            this.mergedCriticisms = mergedCriticisms;
+        }
+
+        /**
+         * Returns the criticisms of each unit, in the order the units were
+         * given.
+         */
+        public List<List<Criticism>> getUnitCriticisms() {
+            return unitCriticisms;
+        }
+
+        /**
+         * Returns the part of each {@link MergeableCritic} for each unit, in
+         * the order the units were given. The parts can be kept and given to
+         * {@link Criticizer#merge(List)} again with the parts of other units.
+         */
+        public List<Map<Critic, Object>> getUnitParts() {
+            return unitParts;
+        }
+
+        /**
+         * Returns the criticisms of cross object critics, which can not be
+         * told apart by unit.
+         */
+        public List<Criticism> getMergedCriticisms() {
+            return mergedCriticisms;
+        }
+    }
+
     public Criticizer(List<Critic> critics) {
+        this(critics, 1);
+    }
+
+    /**
+     * @param threads
+     *            The number of parts of the model that may be criticized at
+     *            the same time.
+     */
+    public Criticizer(List<Critic> critics, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is needed, not " + threads);
+        }
         this.critics = Collections.unmodifiableList(new ArrayList<Critic>(critics));
+        this.threads = threads;
     }
     
     /**
@@ -52,43 +126,307 @@ class Criticizer {
      * descendants if it is an {@link SPObject}.
      */
     public List<Criticism> criticize(Object subject) {
+        if (threads > 1 && subject instanceof SPObject && !(subject instanceof SQLTable)) {
+            List<SPObject> units = new ArrayList<SPObject>();
+            findUnits((SPObject) subject, units);
+            UnitCriticisms results = criticizeUnits(units);
+            List<Criticism> criticisms = new ArrayList<Criticism>();
+            for (List<Criticism> unitCriticisms : results.getUnitCriticisms()) {
+                criticisms.addAll(unitCriticisms);
+            }
+            criticisms.addAll(results.getMergedCriticisms());
+            return criticisms;
+        }
+        return criticize(subject, true);
+    }
+
+    /**
+     * Runs an object through the list of active critics on the calling thread.
+     * 
+     * @param descendants
+     *            If true the descendants of the subject are criticized as
+     *            well. If false only the subject itself is criticized.
+     */
+    public List<Criticism> criticize(Object subject, boolean descendants) {
+        try {
+            for (Critic c : critics) {
+                c.start();
+            }
+            List<Criticism> criticisms = new ArrayList<Criticism>();
+            recursivelyCriticize(subject, descendants, critics, null, criticisms);
+            return criticisms;
+        } finally {
+            for (Critic c : critics) {
+                c.end();
+            }
+        }
+    }
+
+    /**
+     * Criticizes each of the given units, using as many threads as this
+     * criticizer was given. A table is criticized with its descendants and any
+     * other unit is criticized on its own.
+     */
+    UnitCriticisms criticizeUnits(List<?> units) {
+        return criticizeUnits(units, true);
+    }
+
+    /**
+     * Criticizes each of the given units like {@link #criticizeUnits(List)}.
+     * 
+     * @param merge
+     *            If false the parts of the {@link MergeableCritic}s are not
+     *            merged, and are only returned with the unit criticisms. This
+     *            is for callers that merge the parts with those of units
+     *            criticized earlier.
+     */
+    UnitCriticisms criticizeUnits(List<?> units, boolean merge) {
+        List<Critic> unitCritics = new ArrayList<Critic>();
+        List<Critic> serialCritics = new ArrayList<Critic>();
+        List<MergeableCritic<?>> mergeableCritics = new ArrayList<MergeableCritic<?>>();
+        for (Critic c : critics) {
+            if (c instanceof MergeableCritic<?>) {
+                mergeableCritics.add((MergeableCritic<?>) c);
+                unitCritics.add(c);
+            } else if (c.isCrossObject()) {
+                serialCritics.add(c);
+            } else {
+                unitCritics.add(c);
+            }
+        }
+
+        List<Map<Critic, Object>> parts = new ArrayList<Map<Critic, Object>>(units.size());
+        List<Callable<List<Criticism>>> tasks = new ArrayList<Callable<List<Criticism>>>(units.size());
+        for (Object unit : units) {
+            Map<Critic, Object> unitParts = new IdentityHashMap<Critic, Object>();
+            for (MergeableCritic<?> c : mergeableCritics) {
+                unitParts.put(c, c.createPart());
+            }
+            parts.add(unitParts);
+            tasks.add(new UnitTask(unit, unitCritics, unitParts));
+        }
+
+        try {
+            for (Critic c : critics) {
+                c.start();
+            }
+            List<Criticism> serialCriticisms = new ArrayList<Criticism>();
+            List<List<Criticism>> unitCriticisms = runTasks(tasks, serialCritics, units, serialCriticisms);
+
+            List<Criticism> mergedCriticisms = new ArrayList<Criticism>();
+            if (merge) {
+                for (MergeableCritic<?> c : mergeableCritics) {
+                    mergedCriticisms.addAll(merge(c, parts));
+                }
+            }
+            mergedCriticisms.addAll(serialCriticisms);
+            return new UnitCriticisms(unitCriticisms, parts, mergedCriticisms);
+        } finally {
+            for (Critic c : critics) {
+                c.end();
+            }
+        }
+    }
+
+    /**
+     * Merges the given parts with this criticizer's {@link MergeableCritic}s
+     * and returns the criticisms that come from comparing them. The other
+     * critics are not used.
+     * 
+     * @param parts
+     *            The parts of each unit, as returned by
+     *            {@link UnitCriticisms#getUnitParts()}, in the order the units
+     *            appear in the model.
+     */
+    List<Criticism> merge(List<Map<Critic, Object>> parts) {
+        List<MergeableCritic<?>> mergeableCritics = new ArrayList<MergeableCritic<?>>();
+        for (Critic c : critics) {
+            if (c instanceof MergeableCritic<?>) {
+                mergeableCritics.add((MergeableCritic<?>) c);
+            }
+        }
+        try {
+            for (Critic c : mergeableCritics) {
+                c.start();
+            }
+            List<Criticism> criticisms = new ArrayList<Criticism>();
+            for (MergeableCritic<?> c : mergeableCritics) {
+                criticisms.addAll(merge(c, parts));
+            }
+            return criticisms;
+        } finally {
+            for (Critic c : mergeableCritics) {
+                c.end();
+            }
+        }
+    }
+
+    /**
+     * Criticizes the given units one after another on the calling thread, for
+     * critics that have to see every object of the model in one run. The
+     * monitor is checked for cancellation between units.
+     * 
+     * @param monitor
+     *            May be null.
+     * @return The criticisms, or null if the monitor was cancelled before
+     *         every unit was criticized.
+     */
+    List<Criticism> criticizeInOrder(List<?> units, MonitorableImpl monitor) {
         try {
             for (Critic c : critics) {
                 c.start();
             }
-            return recursivelyCriticize(subject);
+            List<Criticism> criticisms = new ArrayList<Criticism>();
+            for (Object unit : units) {
+                if (monitor != null && monitor.isCancelled()) return null;
+                recursivelyCriticize(unit, unit instanceof SQLTable, critics, null, criticisms);
+            }
+            return criticisms;
         } finally {
             for (Critic c : critics) {
                 c.end();
             }
         }
     }
+
+    /**
+     * Runs the unit tasks on this criticizer's threads and, at the same time,
+     * the serial critics over all of the units on the calling thread.
+     * 
+     * @return The criticisms of each task, in the order of the tasks.
+     */
+    private List<List<Criticism>> runTasks(List<Callable<List<Criticism>>> tasks,
+            List<Critic> serialCritics, List<?> units, List<Criticism> serialCriticisms) {
+        List<List<Criticism>> unitCriticisms = new ArrayList<List<Criticism>>(tasks.size());
+        if (threads == 1 || tasks.size() < 2) {
+            try {
+                for (Callable<List<Criticism>> task : tasks) {
+                    unitCriticisms.add(task.call());
+                }
+            } catch (RuntimeException ex) {
+                throw ex;
+            } catch (Exception ex) {
+                throw new RuntimeException(ex);
+            }
+            criticizeSerially(serialCritics, units, serialCriticisms);
+            return unitCriticisms;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, tasks.size()));
+        try {
+            List<Future<List<Criticism>>> futures = new ArrayList<Future<List<Criticism>>>(tasks.size());
+            for (Callable<List<Criticism>> task : tasks) {
+                futures.add(executor.submit(task));
+            }
+            criticizeSerially(serialCritics, units, serialCriticisms);
+            for (Future<List<Criticism>> future : futures) {
+                unitCriticisms.add(future.get());
+            }
+            return unitCriticisms;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while criticizing", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new RuntimeException("Failed to criticize", cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void criticizeSerially(List<Critic> serialCritics, List<?> units, List<Criticism> accumulator) {
+        if (serialCritics.isEmpty()) return;
+        for (Object unit : units) {
+            recursivelyCriticize(unit, unit instanceof SQLTable, serialCritics, null, accumulator);
+        }
+    }
+
+    /**
+     * Criticizes one unit of the model with the critics that can work on it
+     * separately.
+     */
+    private class UnitTask implements Callable<List<Criticism>> {
+        private final Object unit;
+        private final List<Critic> unitCritics;
+        private final Map<Critic, Object> parts;
+
+        UnitTask(Object unit, List<Critic> unitCritics, Map<Critic, Object> parts) {
+            this.unit = unit;
+            this.unitCritics = unitCritics;
+            this.parts = parts;
+        }
+
+        public List<Criticism> call() {
+            List<Criticism> criticisms = new ArrayList<Criticism>();
+            recursivelyCriticize(unit, unit instanceof SQLTable, unitCritics, parts, criticisms);
+            return criticisms;
+        }
+    }
+
+    /**
+     * Adds the given object to the list of units if it is a table, or else
+     * adds it and then looks for units in its children. Databases are not
+     * criticized so they are not units.
+     */
+    static void findUnits(SPObject o, List<SPObject> units) {
+        if (!(o instanceof SQLDatabase)) {
+            units.add(o);
+        }
+        if (o instanceof SQLTable) return;
+        for (SPObject child : o.getChildren()) {
+            findUnits(child, units);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> List<Criticism> criticizePart(MergeableCritic<T> critic, Object subject, Object part) {
+        return critic.criticize(subject, (T) part);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> List<Criticism> merge(MergeableCritic<T> critic, List<Map<Critic, Object>> parts) {
+        List<T> criticParts = new ArrayList<T>(parts.size());
+        for (Map<Critic, Object> unitParts : parts) {
+            criticParts.add((T) unitParts.get(critic));
+        }
+        return critic.merge(criticParts);
+    }
     
     /**
+     * Adds the criticisms of the given object, and optionally of its
+     * descendants, to the accumulator.
      * 
      * @param root
      *            The SQLObject to criticize
-     * @param criticizer
-     *            The criticizer that will examine the subtree at root and
-     *            accumulate criticisms about it
+     * @param critics
+     *            The critics to run the objects through
+     * @param parts
+     *            The part of each {@link MergeableCritic} for the unit being
+     *            criticized, or null if the mergeable critics are to be used
+     *            as ordinary critics.
      * @throws SQLObjectException
      *             if the (sub)tree under root is not already populated, and an
      *             attempt to populate it fails
      */
     @SuppressWarnings("unchecked")
-    private List<Criticism> recursivelyCriticize(Object root) {
-        List<Criticism> criticisms = new ArrayList<Criticism>();
+    private void recursivelyCriticize(Object root, boolean descendants, List<Critic> critics,
+            Map<Critic, Object> parts, List<Criticism> accumulator) {
         
         // skip types that don't warrant criticism
         if ( (!(root instanceof SQLDatabase))) {
             for (Critic critic : critics) {
-                List<Criticism> newCriticisms = critic.criticize(root);
-                criticisms.addAll(newCriticisms);
+                if (parts != null && critic instanceof MergeableCritic<?>) {
+                    accumulator.addAll(criticizePart((MergeableCritic<?>) critic, root, parts.get(critic)));
+                } else {
+                    accumulator.addAll(critic.criticize(root));
+                }
                 // TODO record the critic-subject combination so it can be wiped out later
             }
         }
         
-        if (root instanceof SPObject) {
+        if (descendants && root instanceof SPObject) {
             for (SPObject child : (List<SPObject>) ((SPObject) root).getChildren()) {
                 try {
                     if (child instanceof SQLImportedKey
@@ -99,10 +437,9 @@ class Criticizer {
                 } catch (SQLObjectException e) {
                     throw new RuntimeException(e);
                 }
-                criticisms.addAll(recursivelyCriticize(child));
+                recursivelyCriticize(child, true, critics, parts, accumulator);
             }
         }
-        return criticisms;
     }
     
 }
@@ -0,0 +1,585 @@
+/*
+ * Copyright (c) 2009, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+package ca.sqlpower.architect.ddl.critic;
+
+import java.beans.PropertyChangeEvent;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ca.sqlpower.architect.ddl.DDLGenerator;
+import ca.sqlpower.object.AbstractSPListener;
+import ca.sqlpower.object.SPChildEvent;
+import ca.sqlpower.object.SPListener;
+import ca.sqlpower.object.SPObject;
+import ca.sqlpower.sql.JDBCDataSource;
+import ca.sqlpower.sql.JDBCDataSourceType;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLObjectException;
+import ca.sqlpower.sqlobject.SQLTable;
+import ca.sqlpower.sqlobject.SQLRelationship.SQLImportedKey;
+import ca.sqlpower.util.MonitorableImpl;
+import ca.sqlpower.util.SQLPowerUtils;
+
+/**
+ * Keeps the criticisms of a project's play pen up to date as the model is
+ * edited, so each request for criticisms only criticizes the objects that
+ * changed since the last one.
+ * <p>
+ * The play pen is criticized in units. A table is one unit together with its
+ * columns, indices and exported relationships, and every other object below
+ * the target database, such as a schema, is a unit on its own. Child and
+ * property events from the model mark the affected units as changed, and only
+ * those are run through the critics again. A change to a table also marks the
+ * tables its imported relationships come from, as those relationships are
+ * criticized with their primary key table. Critics that compare objects with
+ * each other ({@link Critic#isCrossObject()}) keep what they found in each
+ * unit if they are {@link MergeableCritic}s, so after a change only the
+ * changed units are criticized and the kept parts of all units are merged
+ * again. Other cross object critics are run over the whole play pen after any
+ * change. Everything is criticized again when the critic settings or the DDL
+ * generator change.
+ * <p>
+ * Events only mark units as changed, so they never wait for a pass of the
+ * critics that is running on another thread. A pass given a monitor
+ * criticizes the changed units in batches and stops between batches if the
+ * monitor is cancelled, leaving the units it did not reach marked as changed
+ * for the next pass.
+ */
+public class IncrementalCriticizer {
+
+    /**
+     * The number of units criticized on each thread between checks for
+     * cancellation.
+     */
+    private static final int BATCH_SIZE = 64;
+
+    private final CriticManager manager;
+
+    /**
+     * The play pen database this criticizer listens to. It is only known
+     * after the first pass, and a different project may be loaded later.
+     */
+    private SQLDatabase targetDatabase;
+
+    /**
+     * The generator class the current criticisms were made for.
+     */
+    private Class<? extends DDLGenerator> generatorClass;
+
+    /**
+     * The enabled critics that can criticize each unit on its own. These are
+     * the critics that only look at the object they are given and the
+     * {@link MergeableCritic}s.
+     */
+    private List<Critic> unitCritics = Collections.emptyList();
+
+    /**
+     * The enabled critics that compare objects with each other but can not
+     * merge what they found in separate units.
+     */
+    private List<Critic> crossObjectCritics = Collections.emptyList();
+
+    /**
+     * All of the enabled critics, used for the configuration objects which
+     * are not part of the model and are criticized on every pass.
+     */
+    private List<Critic> allCritics = Collections.emptyList();
+
+    /**
+     * The criticisms of the unit critics for each unit, in the order the
+     * units were first criticized.
+     */
+    private final Map<Object, List<Criticism>> criticismsByUnit =
+        new LinkedHashMap<Object, List<Criticism>>();
+
+    /**
+     * The part of each {@link MergeableCritic} for each unit, kept so the
+     * parts of the units that did not change can be merged again with those
+     * of the changed units.
+     */
+    private final Map<Object, Map<Critic, Object>> partsByUnit =
+        new HashMap<Object, Map<Critic, Object>>();
+
+    /**
+     * The criticisms of each subject, made by both object and cross object
+     * critics.
+     */
+    private final Map<Object, List<Criticism>> criticismsBySubject =
+        new HashMap<Object, List<Criticism>>();
+
+    private List<Criticism> crossObjectCriticisms = Collections.emptyList();
+
+    /**
+     * Guards the fields that events change, which are the ones below. The
+     * lock is only held briefly so events do not wait on a pass.
+     */
+    private final Object changeLock = new Object();
+
+    /**
+     * Units that changed since the last pass.
+     */
+    private final Set<Object> changedUnits = new LinkedHashSet<Object>();
+
+    /**
+     * Units that were removed from the play pen since the last pass.
+     */
+    private final Set<Object> removedUnits = new LinkedHashSet<Object>();
+
+    private boolean crossObjectChanged = true;
+
+    /**
+     * Set when the critic settings change, so everything is criticized again.
+     */
+    private boolean settingsChanged = true;
+
+    /**
+     * The number of tables criticized at the same time. See
+     * {@link #setThreads(int)}.
+     */
+    private volatile int threads = 1;
+
+    private final SPListener modelListener = new AbstractSPListener() {
+        @Override
+        public void childAdded(SPChildEvent e) {
+            SQLPowerUtils.listenToHierarchy(e.getChild(), this);
+            synchronized (changeLock) {
+                SQLTable table = enclosingTable(e.getSource());
+                if (table != null) {
+                    markChanged(table);
+                } else {
+                    markSubtreeChanged(e.getChild());
+                }
+                crossObjectChanged = true;
+            }
+        }
+
+        @Override
+        public void childRemoved(SPChildEvent e) {
+            SQLPowerUtils.unlistenToHierarchy(e.getChild(), this);
+            synchronized (changeLock) {
+                SQLTable table = enclosingTable(e.getSource());
+                if (table != null) {
+                    markChanged(table);
+                    if (e.getChild() instanceof SQLImportedKey) {
+                        SQLTable pkTable = ((SQLImportedKey) e.getChild()).getRelationship().getPkTable();
+                        if (pkTable != null && pkTable.getParent() != null) {
+                            changedUnits.add(pkTable);
+                        }
+                    }
+                } else {
+                    markSubtreeRemoved(e.getChild());
+                }
+                crossObjectChanged = true;
+            }
+        }
+
+        @Override
+        public void propertyChanged(PropertyChangeEvent evt) {
+            if (!(evt.getSource() instanceof SPObject)) return;
+            SPObject source = (SPObject) evt.getSource();
+            synchronized (changeLock) {
+                SQLTable table = enclosingTable(source);
+                if (table != null) {
+                    markChanged(table);
+                } else if (!(source instanceof SQLDatabase)) {
+                    changedUnits.add(source);
+                }
+                crossObjectChanged = true;
+            }
+        }
+    };
+
+    private final SPListener settingsListener = new AbstractSPListener() {
+        @Override
+        public void childAdded(SPChildEvent e) {
+            SQLPowerUtils.listenToHierarchy(e.getChild(), this);
+            settingsChanged();
+        }
+
+        @Override
+        public void childRemoved(SPChildEvent e) {
+            SQLPowerUtils.unlistenToHierarchy(e.getChild(), this);
+            settingsChanged();
+        }
+
+        @Override
+        public void propertyChanged(PropertyChangeEvent evt) {
+            settingsChanged();
+        }
+
+        private void settingsChanged() {
+            synchronized (changeLock) {
+                settingsChanged = true;
+            }
+        }
+    };
+
+    /**
+     * Creates a criticizer for the project of the given manager, using the
+     * manager's critics. The manager's project must be set before the first
+     * call to {@link #criticize(Class)}.
+     */
+    public IncrementalCriticizer(CriticManager manager) {
+        this.manager = manager;
+        SQLPowerUtils.listenToHierarchy(manager, settingsListener);
+    }
+
+    /**
+     * Returns all of the current criticisms of the project. The objects that
+     * changed since the last call are criticized again first.
+     * <p>
+     * Only one pass runs at a time, so this waits for any pass running on
+     * another thread. Do not call it on the Swing thread.
+     * 
+     * @param generatorClass
+     *            The generator type we will be using to create DDL with. Will
+     *            limit some of the enabled critics to only use critics
+     *            associated with this DDL generators of this type. If null all
+     *            enabled critics will be used.
+     */
+    public synchronized List<Criticism> criticize(Class<? extends DDLGenerator> generatorClass) {
+        return criticize(generatorClass, threads, null, null);
+    }
+
+    /**
+     * Returns all of the current criticisms of the project, like
+     * {@link #criticize(Class)}, but criticizes the changed units in the order
+     * given, on the given number of threads, and can be cancelled part way
+     * through.
+     * 
+     * @param generatorClass
+     *            The generator type we will be using to create DDL with, or
+     *            null to use all of the enabled critics.
+     * @param threads
+     *            The number of tables criticized at the same time. With 1
+     *            thread everything is criticized on the calling thread, which
+     *            suits passes running in the background. The thread count set
+     *            by {@link #setThreads(int)} is not used by this method.
+     * @param unitOrder
+     *            Sorts the changed units so the ones that matter most to the
+     *            user are criticized first. If null the units are criticized
+     *            in the order they changed.
+     * @param monitor
+     *            Receives the progress of the pass and is checked for
+     *            cancellation between batches of units. May be null.
+     * @return The criticisms, or null if the monitor was cancelled before the
+     *         pass finished. The units criticized before the pass was
+     *         cancelled keep their new criticisms.
+     */
+    public synchronized List<Criticism> criticize(Class<? extends DDLGenerator> generatorClass,
+            int threads, Comparator<Object> unitOrder, MonitorableImpl monitor) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is needed, not " + threads);
+        }
+        if (!update(generatorClass, threads, unitOrder, monitor)) return null;
+
+        List<Criticism> criticisms = new ArrayList<Criticism>();
+        for (List<Criticism> unitCriticisms : criticismsByUnit.values()) {
+            criticisms.addAll(unitCriticisms);
+        }
+        criticisms.addAll(crossObjectCriticisms);
+        for (JDBCDataSourceType dsType : manager.getParent().getSession().getDataSources().getDataSourceTypes()) {
+            criticisms.addAll(new Criticizer(allCritics).criticize(dsType));
+        }
+        for (JDBCDataSource ds : manager.getParent().getSession().getDataSources().getConnections()) {
+            criticisms.addAll(new Criticizer(allCritics).criticize(ds));
+        }
+        return Collections.unmodifiableList(criticisms);
+    }
+
+    /**
+     * Sets the number of tables that are criticized at the same time by
+     * {@link #criticize(Class)}. Critics
+     * that compare objects with each other merge what they found in each
+     * table afterwards, see {@link MergeableCritic}. The default is 1. This
+     * does not wait for a pass that is running; the next pass uses the new
+     * thread count.
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is needed, not " + threads);
+        }
+        this.threads = threads;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Returns the criticisms of the given play pen object as of the last call
+     * to {@link #criticize(Class)}.
+     */
+    public synchronized List<Criticism> getCriticismsByObject(Object subject) {
+        List<Criticism> criticisms = criticismsBySubject.get(subject);
+        if (criticisms == null) return Collections.emptyList();
+        return Collections.unmodifiableList(new ArrayList<Criticism>(criticisms));
+    }
+
+    /**
+     * Stops listening to the project. The criticisms made so far are kept
+     * but will not be updated.
+     */
+    public synchronized void cleanup() {
+        SQLPowerUtils.unlistenToHierarchy(manager, settingsListener);
+        if (targetDatabase != null) {
+            SQLPowerUtils.unlistenToHierarchy(targetDatabase, modelListener);
+            targetDatabase = null;
+        }
+    }
+
+    /**
+     * Criticizes the units that changed since the last pass, or everything if
+     * the critics, the generator or the project changed.
+     * 
+     * @return false if the monitor was cancelled before all of the changed
+     *         units were criticized.
+     */
+    private boolean update(Class<? extends DDLGenerator> generatorClass, int threads,
+            Comparator<Object> unitOrder, MonitorableImpl monitor) {
+        SQLDatabase currentTarget = manager.getParent().getTargetDatabase();
+        boolean rebuild = generatorClass != this.generatorClass;
+        if (currentTarget != targetDatabase) {
+            if (targetDatabase != null) {
+                SQLPowerUtils.unlistenToHierarchy(targetDatabase, modelListener);
+            }
+            targetDatabase = currentTarget;
+            SQLPowerUtils.listenToHierarchy(targetDatabase, modelListener);
+            rebuild = true;
+        }
+
+        List<Object> changed;
+        List<Object> removed;
+        boolean crossObject;
+        synchronized (changeLock) {
+            if (settingsChanged || rebuild) {
+                settingsChanged = false;
+                changedUnits.clear();
+                removedUnits.clear();
+                markSubtreeChanged(targetDatabase);
+                crossObjectChanged = true;
+                rebuild = true;
+            }
+            changed = new ArrayList<Object>(changedUnits);
+            removed = new ArrayList<Object>(removedUnits);
+            crossObject = crossObjectChanged;
+            changedUnits.clear();
+            removedUnits.clear();
+            crossObjectChanged = false;
+        }
+
+        if (rebuild) {
+            this.generatorClass = generatorClass;
+            allCritics = manager.getEnabledCritics(generatorClass);
+            List<Critic> unitCritics = new ArrayList<Critic>();
+            List<Critic> crossObjectCritics = new ArrayList<Critic>();
+            for (Critic critic : allCritics) {
+                if (critic.isCrossObject() && !(critic instanceof MergeableCritic<?>)) {
+                    crossObjectCritics.add(critic);
+                } else {
+                    unitCritics.add(critic);
+                }
+            }
+            this.unitCritics = unitCritics;
+            this.crossObjectCritics = crossObjectCritics;
+            criticismsByUnit.clear();
+            partsByUnit.clear();
+            criticismsBySubject.clear();
+            crossObjectCriticisms = Collections.emptyList();
+        }
+
+        for (Object unit : removed) {
+            replaceCriticisms(criticismsByUnit.remove(unit), null);
+            partsByUnit.remove(unit);
+        }
+        if (unitOrder != null) {
+            Collections.sort(changed, unitOrder);
+        }
+        if (monitor != null) {
+            monitor.setJobSize(changed.size() + (crossObject ? 1 : 0));
+            monitor.setProgress(0);
+        }
+
+        int batchSize = monitor == null ? changed.size() : BATCH_SIZE * threads;
+        int done = 0;
+        boolean finished = false;
+        try {
+            while (done < changed.size()) {
+                if (monitor != null && monitor.isCancelled()) return false;
+                List<Object> batch = changed.subList(done, Math.min(changed.size(), done + batchSize));
+                Criticizer.UnitCriticisms results =
+                    new Criticizer(unitCritics, threads).criticizeUnits(batch, false);
+                for (int i = 0; i < batch.size(); i++) {
+                    List<Criticism> criticisms = results.getUnitCriticisms().get(i);
+                    replaceCriticisms(criticismsByUnit.put(batch.get(i), criticisms), criticisms);
+                    partsByUnit.put(batch.get(i), results.getUnitParts().get(i));
+                }
+                done += batch.size();
+                if (monitor != null) {
+                    monitor.setProgress(done);
+                }
+            }
+            if (crossObject) {
+                if (monitor != null && monitor.isCancelled()) return false;
+                List<SPObject> units = new ArrayList<SPObject>();
+                Criticizer.findUnits(targetDatabase, units);
+                List<Map<Critic, Object>> parts = new ArrayList<Map<Critic, Object>>(units.size());
+                for (SPObject unit : units) {
+                    // units added since this pass started are merged on the next pass
+                    Map<Critic, Object> unitParts = partsByUnit.get(unit);
+                    if (unitParts != null) {
+                        parts.add(unitParts);
+                    }
+                }
+                List<Criticism> criticisms = new Criticizer(unitCritics).merge(parts);
+                if (!crossObjectCritics.isEmpty()) {
+                    List<Criticism> serialCriticisms =
+                        new Criticizer(crossObjectCritics).criticizeInOrder(units, monitor);
+                    if (serialCriticisms == null) return false;
+                    criticisms.addAll(serialCriticisms);
+                }
+                replaceCriticisms(crossObjectCriticisms, criticisms);
+                crossObjectCriticisms = criticisms;
+            }
+            finished = true;
+            return true;
+        } finally {
+            if (!finished) {
+                markUnfinished(changed.subList(done, changed.size()), crossObject);
+            }
+        }
+    }
+
+    /**
+     * Marks the units a pass did not get to as changed again, unless they were
+     * removed while the pass ran.
+     */
+    private void markUnfinished(List<Object> units, boolean crossObject) {
+        synchronized (changeLock) {
+            for (Object unit : units) {
+                if (!removedUnits.contains(unit)) {
+                    changedUnits.add(unit);
+                }
+            }
+            crossObjectChanged |= crossObject;
+        }
+    }
+
+    /**
+     * Updates the subject index for criticisms that were replaced by new ones.
+     * Either list may be null.
+     */
+    private void replaceCriticisms(List<Criticism> oldCriticisms, List<Criticism> newCriticisms) {
+        if (oldCriticisms != null) {
+            for (Criticism criticism : oldCriticisms) {
+                List<Criticism> subjectCriticisms = criticismsBySubject.get(criticism.getSubject());
+                if (subjectCriticisms == null) continue;
+                for (Iterator<Criticism> it = subjectCriticisms.iterator(); it.hasNext(); ) {
+                    if (it.next() == criticism) {
+                        it.remove();
+                        break;
+                    }
+                }
+                if (subjectCriticisms.isEmpty()) {
+                    criticismsBySubject.remove(criticism.getSubject());
+                }
+            }
+        }
+        if (newCriticisms != null) {
+            for (Criticism criticism : newCriticisms) {
+                List<Criticism> subjectCriticisms = criticismsBySubject.get(criticism.getSubject());
+                if (subjectCriticisms == null) {
+                    subjectCriticisms = new ArrayList<Criticism>(2);
+                    criticismsBySubject.put(criticism.getSubject(), subjectCriticisms);
+                }
+                subjectCriticisms.add(criticism);
+            }
+        }
+    }
+
+    /**
+     * Returns the given object if it is a table, otherwise its closest
+     * ancestor that is a table, or null if it is not in a table.
+     */
+    private static SQLTable enclosingTable(SPObject o) {
+        while (o != null && !(o instanceof SQLTable)) {
+            o = o.getParent();
+        }
+        return (SQLTable) o;
+    }
+
+    /**
+     * Marks the given table as changed, along with the tables of the
+     * relationships it imports. Must be called while holding the change
+     * lock.
+     */
+    private void markChanged(SQLTable table) {
+        changedUnits.add(table);
+        removedUnits.remove(table);
+        try {
+            for (SQLImportedKey key : table.getImportedKeys()) {
+                SQLTable pkTable = key.getRelationship().getPkTable();
+                if (pkTable != null && pkTable.getParent() != null) {
+                    changedUnits.add(pkTable);
+                }
+            }
+        } catch (SQLObjectException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Marks every unit in the given subtree as changed. Must be called while
+     * holding the change lock.
+     */
+    private void markSubtreeChanged(SPObject o) {
+        if (o instanceof SQLTable) {
+            markChanged((SQLTable) o);
+            return;
+        }
+        if (!(o instanceof SQLDatabase)) {
+            changedUnits.add(o);
+            removedUnits.remove(o);
+        }
+        for (SPObject child : o.getChildren()) {
+            markSubtreeChanged(child);
+        }
+    }
+
+    /**
+     * Marks every unit in the given subtree as removed. Must be called while
+     * holding the change lock.
+     */
+    private void markSubtreeRemoved(SPObject o) {
+        changedUnits.remove(o);
+        removedUnits.add(o);
+        if (o instanceof SQLTable) return;
+        for (SPObject child : o.getChildren()) {
+            markSubtreeRemoved(child);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2009, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+package ca.sqlpower.architect.ddl.critic;
+
+import java.util.List;
+
+/**
+ * A cross object critic that can criticize separate parts of the model on
+ * separate threads and then merge what it found in each part. The
+ * {@link Criticizer} gives each part of the model, normally one table and its
+ * descendants, its own part object, and calls {@link #merge(List)} once every
+ * part has been criticized.
+ * <p>
+ * The {@link Critic#criticize(Object)} method is still used when the model is
+ * criticized on a single thread.
+ * 
+ * @param <T>
+ *            The type that holds what the critic found in one part of the
+ *            model.
+ */
+public interface MergeableCritic<T> extends Critic {
+
+    /**
+     * Returns a new, empty object to hold what this critic finds in one part
+     * of the model.
+     */
+    public T createPart();
+
+    /**
+     * Analyzes the subject as one object of the given part and returns the
+     * criticisms that only depend on the objects of that part. Different
+     * parts may be criticized on different threads at the same time, so this
+     * must not change any state other than the part's.
+     */
+    public List<Criticism> criticize(Object subject, T part);
+
+    /**
+     * Returns the criticisms that come from comparing the parts with each
+     * other. The parts are given in the order their objects appear in the
+     * model.
+     */
+    public List<Criticism> merge(List<T> parts);
+}
@@ -19,7 +19,6 @@
 
 package ca.sqlpower.architect.ddl.critic.impl;
 
-import java.util.regex.Pattern;
 
 /**
  * A generic critic that creates criticisms if the name of an object is not made
@@ -29,7 +28,7 @@ public class AlphaNumericNameCritic extends PhysicalNameCritic {
 
     public AlphaNumericNameCritic() {
         super(StarterPlatformTypes.GENERIC.getName(), 
-                Pattern.compile("^[a-z_][a-z0-9_]*$", Pattern.CASE_INSENSITIVE), 
+                NamingRules.ALPHANUMERIC_PATTERN, 
                 Integer.MAX_VALUE);
         setName(Messages.getString("AlphaNumericNameCritic.name"));
     }
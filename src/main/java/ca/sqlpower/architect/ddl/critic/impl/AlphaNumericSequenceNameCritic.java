@@ -22,7 +22,6 @@ package ca.sqlpower.architect.ddl.critic.impl;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.regex.Pattern;
 
 import ca.sqlpower.architect.ddl.critic.CriticAndSettings;
 import ca.sqlpower.architect.ddl.critic.Criticism;
@@ -34,7 +33,7 @@ import ca.sqlpower.sqlobject.SQLColumn;
  */
 public class AlphaNumericSequenceNameCritic extends CriticAndSettings {
 
-    private final Pattern pattern = Pattern.compile("^[a-z_][a-z0-9_]*$", Pattern.CASE_INSENSITIVE); 
+    private final NamingRules.Rule legalNameRule = NamingRules.nameRule(NamingRules.ALPHANUMERIC_PATTERN, Integer.MAX_VALUE);
     
     public AlphaNumericSequenceNameCritic() {
         super(StarterPlatformTypes.GENERIC.getName(), Messages.getString("AlphaNumericSequenceNameCritic.name"));
@@ -49,7 +48,7 @@ public class AlphaNumericSequenceNameCritic extends CriticAndSettings {
         if (physName == null) return Collections.emptyList();
         
         List<Criticism> criticisms = new ArrayList<Criticism>();
-        if (!pattern.matcher(physName).matches()) {
+        if (!NamingRules.forCritic(this).isLegalName(physName, legalNameRule)) {
             criticisms.add(new Criticism(
                     so,
                     Messages.getString("AlphaNumericSequenceNameCritic.quickFixMessage", so.getName()),
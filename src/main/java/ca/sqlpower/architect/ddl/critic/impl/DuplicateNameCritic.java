@@ -29,6 +29,7 @@ import ca.sqlpower.architect.ddl.critic.CriticAndSettings;
 import ca.sqlpower.architect.ddl.critic.Criticism;
 import ca.sqlpower.architect.ddl.critic.CriticFix;
 import ca.sqlpower.architect.ddl.critic.CriticFix.FixType;
+import ca.sqlpower.architect.ddl.critic.MergeableCritic;
 import ca.sqlpower.sqlobject.SQLColumn;
 import ca.sqlpower.sqlobject.SQLIndex;
 import ca.sqlpower.sqlobject.SQLObject;
@@ -43,8 +44,32 @@ import com.google.common.collect.Multimap;
  * are of conflicting types. This means some objects, like columns in different
  * tables, can have the same name but a sequence cannot have the same name as a
  * table because they are at the same level in a database.
+ * <p>
+ * When the model is criticized on several threads, each part of the model
+ * records its top level names in a {@link Names} object and the duplicates
+ * between parts are found when the parts are merged.
  */
-public class DuplicateNameCritic extends CriticAndSettings {
+public class DuplicateNameCritic extends CriticAndSettings implements MergeableCritic<DuplicateNameCritic.Names> {
+
+    /**
+     * The names found in one part of the model.
+     */
+    public static class Names {
+
+        /**
+         * The columns of each table of the part, as in
+         * {@link DuplicateNameCritic#columnPhysicalNameMap}.
+         */
+        private final Multimap<SQLTable, SQLColumn> columnPhysicalNameMap = ArrayListMultimap.create();
+
+        /**
+         * The top level objects of the part in the order they were
+         * criticized, with their names in {@link #topLevelNames}.
+         */
+        private final List<SQLObject> topLevelObjects = new ArrayList<SQLObject>();
+
+        private final List<String> topLevelNames = new ArrayList<String>();
+    }
 
     /**
      * Stores all of the top level target database objects by name for the
@@ -83,65 +108,127 @@ public class DuplicateNameCritic extends CriticAndSettings {
         columnPhysicalNameMap.clear();
     }
     
+    @Override
+    public boolean isCrossObject() {
+        return true;
+    }
+    
     public List<Criticism> criticize(Object subject) {
         if (!(subject instanceof SQLObject)) return Collections.emptyList();
 
         List<Criticism> criticisms = new ArrayList<Criticism>();
         if (subject instanceof SQLColumn) {
-            final SQLColumn col = (SQLColumn) subject;
-            SQLTable parent = col.getParent();
-            if (col.getPhysicalName() == null) return criticisms;
-
-            int count = 0;
-            for (SQLColumn otherCol : columnPhysicalNameMap.get(parent)) {
-                if (col.getPhysicalName().equals(otherCol.getPhysicalName())) {
-                    count++;
-                }
-            }
-            if (count > 0) {
-                final String newPhysicalName = col.getPhysicalName() + "_" + count;
-                criticisms.add(new Criticism(subject, 
-                        "Duplicate physical name \"" + col.getPhysicalName() + "\"", this, 
-                        new CriticFix("Replace physical name " + col.getPhysicalName() + " with " + newPhysicalName, 
-                                FixType.QUICK_FIX) {
-                            @Override
-                            public void apply() {
-                                col.setPhysicalName(newPhysicalName);
-                            }
-                        }));
+            // columns without a name are not checked for a duplicate sequence name either
+            if (((SQLColumn) subject).getPhysicalName() == null) return criticisms;
+            criticizeColumnName((SQLColumn) subject, columnPhysicalNameMap, criticisms);
+        }
+        if (isTopLevel(subject)) {
+            criticizeTopLevelName((SQLObject) subject, topLevelName((SQLObject) subject),
+                    topLevelPhysicalNameMap, criticisms);
+        }
+        return criticisms;
+    }
+
+    public Names createPart() {
+        return new Names();
+    }
+
+    /**
+     * Finds the columns with the same name as another column of their table
+     * right away, as a table is never split between parts, and records the
+     * top level names for {@link #merge(List)}.
+     */
+    public List<Criticism> criticize(Object subject, Names part) {
+        if (!(subject instanceof SQLObject)) return Collections.emptyList();
+
+        List<Criticism> criticisms = new ArrayList<Criticism>();
+        if (subject instanceof SQLColumn) {
+            // columns without a name are not checked for a duplicate sequence name either
+            if (((SQLColumn) subject).getPhysicalName() == null) return criticisms;
+            criticizeColumnName((SQLColumn) subject, part.columnPhysicalNameMap, criticisms);
+        }
+        if (isTopLevel(subject)) {
+            part.topLevelObjects.add((SQLObject) subject);
+            part.topLevelNames.add(topLevelName((SQLObject) subject));
+        }
+        return criticisms;
+    }
+
+    public List<Criticism> merge(List<Names> parts) {
+        List<Criticism> criticisms = new ArrayList<Criticism>();
+        Multimap<String, SQLObject> topLevelMap = ArrayListMultimap.create();
+        for (Names part : parts) {
+            for (int i = 0; i < part.topLevelObjects.size(); i++) {
+                criticizeTopLevelName(part.topLevelObjects.get(i), part.topLevelNames.get(i),
+                        topLevelMap, criticisms);
             }
-            columnPhysicalNameMap.put(parent, col);
         }
-        if (subject instanceof SQLTable || subject instanceof SQLRelationship || 
-                subject instanceof SQLIndex || subject instanceof SQLColumn) {
-            final SQLObject obj = (SQLObject) subject;
-            String physicalName = obj.getPhysicalName();
-            if (obj instanceof SQLColumn) {
-                physicalName = ((SQLColumn) obj).getAutoIncrementSequenceName();
+        return criticisms;
+    }
+
+    private static boolean isTopLevel(Object subject) {
+        return subject instanceof SQLTable || subject instanceof SQLRelationship || 
+                subject instanceof SQLIndex || subject instanceof SQLColumn;
+    }
+
+    /**
+     * Returns the name the object takes up at the top level of the database,
+     * which is the sequence name for columns.
+     */
+    private static String topLevelName(SQLObject obj) {
+        if (obj instanceof SQLColumn) {
+            return ((SQLColumn) obj).getAutoIncrementSequenceName();
+        }
+        return obj.getPhysicalName();
+    }
+
+    private void criticizeColumnName(final SQLColumn col, Multimap<SQLTable, SQLColumn> columnMap,
+            List<Criticism> criticisms) {
+        SQLTable parent = col.getParent();
+        int count = 0;
+        for (SQLColumn otherCol : columnMap.get(parent)) {
+            if (col.getPhysicalName().equals(otherCol.getPhysicalName())) {
+                count++;
             }
-            final Collection<SQLObject> sameNameObjects = topLevelPhysicalNameMap.get(physicalName);
-            if (!sameNameObjects.isEmpty()) {
-                final String newPhysicalName = physicalName + "_" + sameNameObjects.size();
-                SQLObject duplicate = sameNameObjects.iterator().next();
-                criticisms.add(new Criticism(subject, 
-                        "Duplicate physical name \"" + physicalName + 
-                            "\". There is a " + ArchitectUtils.convertClassToString(duplicate.getClass())+ " in " + 
-                            duplicate.getParent().getName() + " with this name already.", this, 
-                        new CriticFix("Replace physical name " + obj.getPhysicalName() + " with " + newPhysicalName, 
-                                FixType.QUICK_FIX) {
-                            @Override
-                            public void apply() {
-                                if (obj instanceof SQLColumn) {
-                                    ((SQLColumn) obj).setAutoIncrementSequenceName(newPhysicalName);
-                                } else {
-                                    obj.setPhysicalName(newPhysicalName);
-                                }
+        }
+        if (count > 0) {
+            final String newPhysicalName = col.getPhysicalName() + "_" + count;
+            criticisms.add(new Criticism(col, 
+                    "Duplicate physical name \"" + col.getPhysicalName() + "\"", this, 
+                    new CriticFix("Replace physical name " + col.getPhysicalName() + " with " + newPhysicalName, 
+                            FixType.QUICK_FIX) {
+                        @Override
+                        public void apply() {
+                            col.setPhysicalName(newPhysicalName);
+                        }
+                    }));
+        }
+        columnMap.put(parent, col);
+    }
+
+    private void criticizeTopLevelName(final SQLObject obj, String physicalName,
+            Multimap<String, SQLObject> topLevelMap, List<Criticism> criticisms) {
+        final Collection<SQLObject> sameNameObjects = topLevelMap.get(physicalName);
+        if (!sameNameObjects.isEmpty()) {
+            final String newPhysicalName = physicalName + "_" + sameNameObjects.size();
+            SQLObject duplicate = sameNameObjects.iterator().next();
+            criticisms.add(new Criticism(obj, 
+                    "Duplicate physical name \"" + physicalName + 
+                        "\". There is a " + ArchitectUtils.convertClassToString(duplicate.getClass())+ " in " + 
+                        duplicate.getParent().getName() + " with this name already.", this, 
+                    new CriticFix("Replace physical name " + obj.getPhysicalName() + " with " + newPhysicalName, 
+                            FixType.QUICK_FIX) {
+                        @Override
+                        public void apply() {
+                            if (obj instanceof SQLColumn) {
+                                ((SQLColumn) obj).setAutoIncrementSequenceName(newPhysicalName);
+                            } else {
+                                obj.setPhysicalName(newPhysicalName);
                             }
-                }));
-            }
-            topLevelPhysicalNameMap.put(physicalName, obj);
+                        }
+            }));
         }
-        return criticisms;
+        topLevelMap.put(physicalName, obj);
     }
 
 }
@@ -0,0 +1,415 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Architect.
+ *
+ * SQL Power Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+package ca.sqlpower.architect.ddl.critic.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import ca.sqlpower.architect.ddl.critic.CriticManager;
+import ca.sqlpower.object.SPObject;
+
+/**
+ * Checks names against the reserved words, legal name patterns and name
+ * length limits of every platform at once, and remembers the result for each
+ * name. The same names, such as ID or NAME, appear in many tables, so most
+ * names are only checked the first time a critic sees them.
+ * <p>
+ * Each {@link CriticManager} has its own naming rules, see
+ * {@link #forCritic(SPObject)}. Critics make a {@link Rule} once, when they
+ * are created, and pass it to {@link #isReservedWord}, {@link #isLegalName}
+ * or {@link #isTooLong}. A rule is added to the naming rules the first time
+ * it is used. All of the reserved words are kept in one map from word to the
+ * rules that reserve it, so one lookup of a name finds it for every platform.
+ * The common pattern of letters, digits and underscores is checked by a scan
+ * of the name instead of a regular expression.
+ * <p>
+ * Each rule takes one bit of the cached results. When the bits run out all
+ * of the rules are dropped and the rules still in use are added again the
+ * next time they are used, so rules of critics that went away do not pile
+ * up.
+ * <p>
+ * This class is thread safe so critics can share it while criticizing on
+ * several threads.
+ */
+public class NamingRules {
+
+    /**
+     * The legal name pattern most platforms use: a letter or underscore
+     * followed by letters, digits and underscores.
+     */
+    public static final Pattern ALPHANUMERIC_PATTERN =
+        Pattern.compile("^[a-z_][a-z0-9_]*$", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Each of the reserved word rules and pattern rules gets one bit of an
+     * int in the cached results.
+     */
+    private static final int MAX_RULES = 32;
+
+    /**
+     * The cache is cleared when it grows past this many names, so names
+     * that were renamed away do not pile up in a long session.
+     */
+    private static final int MAX_CACHED_NAMES = 50000;
+
+    /**
+     * The naming rules of critics that do not belong to a critic manager.
+     */
+    private static final NamingRules UNMANAGED = new NamingRules();
+
+    /**
+     * Returns the naming rules of the critic manager the given critic belongs
+     * to. Critics that are not in a critic manager, such as critics that are
+     * still being set up, share one set of naming rules.
+     */
+    public static NamingRules forCritic(SPObject critic) {
+        for (SPObject o = critic; o != null; o = o.getParent()) {
+            if (o instanceof CriticManager) {
+                return ((CriticManager) o).getNamingRules();
+            }
+        }
+        return UNMANAGED;
+    }
+
+    /**
+     * Makes a rule that reserves the given upper case words. Rules made from
+     * the same collection share a bit.
+     */
+    public static Rule reservedWordsRule(Collection<String> words) {
+        return new Rule(words, null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Makes a rule that names must match the given pattern and be no longer
+     * than the given number of characters. Rules with the same expression and
+     * flags share a bit.
+     */
+    public static Rule nameRule(Pattern pattern, int maxNameLength) {
+        return new Rule(null, pattern, maxNameLength);
+    }
+
+    /**
+     * A reserved word rule or a legal name rule of a critic. Making a rule
+     * never fails; the rule gets its bit in the naming rules it is used with.
+     */
+    public static class Rule {
+
+        private final Collection<String> reservedWords;
+
+        private final Pattern pattern;
+
+        private final int maxNameLength;
+
+        /**
+         * Where the rule was last added. This is replaced, never changed.
+         */
+        private volatile Registration registration;
+
+        private Rule(Collection<String> reservedWords, Pattern pattern, int maxNameLength) {
+            this.reservedWords = reservedWords;
+            this.pattern = pattern;
+            this.maxNameLength = maxNameLength;
+        }
+
+        public int getMaxNameLength() {
+            return maxNameLength;
+        }
+    }
+
+    /**
+     * The bit a rule was given in one set of naming rules.
+     */
+    private static class Registration {
+
+        final NamingRules owner;
+
+        /**
+         * The {@link State#epoch} the bit was given in.
+         */
+        final int epoch;
+
+        final int bit;
+
+        Registration(NamingRules owner, int epoch, int bit) {
+            this.owner = owner;
+            this.epoch = epoch;
+            this.bit = bit;
+        }
+    }
+
+    /**
+     * The rules names are checked against. A new state replaces the old one
+     * when a rule is added, so a name is always checked against one set of
+     * rules.
+     */
+    private static class State {
+
+        /**
+         * Counts the times the rules were dropped. Bits given in an earlier
+         * epoch may belong to other rules now.
+         */
+        final int epoch;
+
+        /**
+         * The collections of reserved words that were added, by bit.
+         */
+        final List<Collection<String>> reservedWordRules;
+
+        /**
+         * Maps each upper case reserved word to the bits of the rules that
+         * reserve it.
+         */
+        final Map<String, Integer> reservedWords;
+
+        /**
+         * The patterns that were added, by bit.
+         */
+        final List<Pattern> patternRules;
+
+        State(int epoch, List<Collection<String>> reservedWordRules,
+                Map<String, Integer> reservedWords, List<Pattern> patternRules) {
+            this.epoch = epoch;
+            this.reservedWordRules = reservedWordRules;
+            this.reservedWords = reservedWords;
+            this.patternRules = patternRules;
+        }
+    }
+
+    /**
+     * What is known about one name.
+     */
+    private static class NameInfo {
+
+        /**
+         * One bit for each reserved word rule that reserves the name.
+         */
+        final int reservedRules;
+
+        /**
+         * One bit for each pattern rule that the name matches.
+         */
+        final int legalRules;
+
+        /**
+         * The state the name was checked against.
+         */
+        final State state;
+
+        NameInfo(int reservedRules, int legalRules, State state) {
+            this.reservedRules = reservedRules;
+            this.legalRules = legalRules;
+            this.state = state;
+        }
+    }
+
+    private volatile State state = new State(0,
+            Collections.<Collection<String>>emptyList(),
+            Collections.<String, Integer>emptyMap(),
+            Collections.<Pattern>emptyList());
+
+    private final ConcurrentHashMap<String, NameInfo> cache = new ConcurrentHashMap<String, NameInfo>();
+
+    /**
+     * Returns true if the name, in upper case, is one of the reserved words of
+     * the given rule. Null names are not reserved.
+     */
+    public boolean isReservedWord(String name, Rule reservedWordsRule) {
+        if (reservedWordsRule.reservedWords == null) {
+            throw new IllegalArgumentException("Not a reserved word rule");
+        }
+        if (name == null) return false;
+        while (true) {
+            Registration registration = register(reservedWordsRule);
+            NameInfo info = lookUp(name);
+            if (info.state.epoch == registration.epoch) {
+                return (info.reservedRules & (1 << registration.bit)) != 0;
+            }
+        }
+    }
+
+    /**
+     * Returns true if the whole name matches the pattern of the given rule.
+     * The length of the name is checked by {@link #isTooLong}.
+     */
+    public boolean isLegalName(String name, Rule nameRule) {
+        if (nameRule.pattern == null) {
+            throw new IllegalArgumentException("Not a legal name rule");
+        }
+        while (true) {
+            Registration registration = register(nameRule);
+            NameInfo info = lookUp(name);
+            if (info.state.epoch == registration.epoch) {
+                return (info.legalRules & (1 << registration.bit)) != 0;
+            }
+        }
+    }
+
+    /**
+     * Returns true if the name is longer than the maximum length of the given
+     * rule. Null names are not too long.
+     */
+    public boolean isTooLong(String name, Rule nameRule) {
+        return name != null && name.length() > nameRule.maxNameLength;
+    }
+
+    /**
+     * Returns the bit of the rule in these naming rules, adding the rule if
+     * it has no bit in the current epoch.
+     */
+    private Registration register(Rule rule) {
+        Registration registration = rule.registration;
+        if (registration != null && registration.owner == this && registration.epoch == state.epoch) {
+            return registration;
+        }
+        synchronized (this) {
+            registration = rule.registration;
+            if (registration != null && registration.owner == this && registration.epoch == state.epoch) {
+                return registration;
+            }
+            int bit;
+            if (rule.reservedWords != null) {
+                bit = addReservedWords(rule.reservedWords);
+            } else {
+                bit = addPattern(rule.pattern);
+            }
+            registration = new Registration(this, state.epoch, bit);
+            rule.registration = registration;
+            return registration;
+        }
+    }
+
+    /**
+     * Returns the bit of the collection of reserved words, adding it if it is
+     * not already there. Must be called while synchronized on this object.
+     */
+    private int addReservedWords(Collection<String> words) {
+        List<Collection<String>> rules = state.reservedWordRules;
+        for (int i = 0; i < rules.size(); i++) {
+            if (rules.get(i) == words) return i;
+        }
+        if (rules.size() >= MAX_RULES) {
+            dropRules();
+        }
+        State old = state;
+        int bit = old.reservedWordRules.size();
+        List<Collection<String>> newRules = new ArrayList<Collection<String>>(old.reservedWordRules);
+        newRules.add(words);
+        Map<String, Integer> newReservedWords = new HashMap<String, Integer>(old.reservedWords);
+        for (String word : words) {
+            String key = word.toUpperCase();
+            Integer bits = newReservedWords.get(key);
+            newReservedWords.put(key, (bits == null ? 0 : bits) | (1 << bit));
+        }
+        state = new State(old.epoch, newRules, newReservedWords, old.patternRules);
+        cache.clear();
+        return bit;
+    }
+
+    /**
+     * Returns the bit of the pattern, adding it if no pattern with the same
+     * expression and flags is there. Must be called while synchronized on
+     * this object.
+     */
+    private int addPattern(Pattern pattern) {
+        List<Pattern> patterns = state.patternRules;
+        for (int i = 0; i < patterns.size(); i++) {
+            Pattern p = patterns.get(i);
+            if (p.pattern().equals(pattern.pattern()) && p.flags() == pattern.flags()) return i;
+        }
+        if (patterns.size() >= MAX_RULES) {
+            dropRules();
+        }
+        State old = state;
+        List<Pattern> newPatterns = new ArrayList<Pattern>(old.patternRules);
+        newPatterns.add(pattern);
+        state = new State(old.epoch, old.reservedWordRules, old.reservedWords, newPatterns);
+        cache.clear();
+        return newPatterns.size() - 1;
+    }
+
+    /**
+     * Drops every rule and starts a new epoch. Rules that are still in use
+     * are added again the next time they are used. Must be called while
+     * synchronized on this object.
+     */
+    private void dropRules() {
+        state = new State(state.epoch + 1,
+                Collections.<Collection<String>>emptyList(),
+                Collections.<String, Integer>emptyMap(),
+                Collections.<Pattern>emptyList());
+        cache.clear();
+    }
+
+    private NameInfo lookUp(String name) {
+        State current = state;
+        NameInfo info = cache.get(name);
+        if (info == null || info.state != current) {
+            info = check(name, current);
+            if (cache.size() >= MAX_CACHED_NAMES) {
+                cache.clear();
+            }
+            cache.put(name, info);
+        }
+        return info;
+    }
+
+    /**
+     * Checks the name against every rule of the given state.
+     */
+    private NameInfo check(String name, State checkedState) {
+        Integer reservedRules = checkedState.reservedWords.get(name.toUpperCase());
+
+        int legalRules = 0;
+        List<Pattern> patterns = checkedState.patternRules;
+        boolean alphanumeric = isAlphanumeric(name);
+        for (int i = 0; i < patterns.size(); i++) {
+            Pattern p = patterns.get(i);
+            boolean matches;
+            if (p.pattern().equals(ALPHANUMERIC_PATTERN.pattern()) && p.flags() == ALPHANUMERIC_PATTERN.flags()) {
+                matches = alphanumeric;
+            } else {
+                matches = p.matcher(name).matches();
+            }
+            if (matches) {
+                legalRules |= 1 << i;
+            }
+        }
+        return new NameInfo(reservedRules == null ? 0 : reservedRules, legalRules, checkedState);
+    }
+
+    /**
+     * Returns true if the name matches {@link #ALPHANUMERIC_PATTERN}.
+     */
+    static boolean isAlphanumeric(String name) {
+        if (name.length() == 0) return false;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            boolean legal = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_'
+                || (i > 0 && c >= '0' && c <= '9');
+            if (!legal) return false;
+        }
+        return true;
+    }
+}
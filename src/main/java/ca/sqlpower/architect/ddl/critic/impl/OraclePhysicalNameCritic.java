@@ -19,7 +19,6 @@
 
 package ca.sqlpower.architect.ddl.critic.impl;
 
-import java.util.regex.Pattern;
 
 /**
  * This is the physical name critic for Oracle name length restrictions. In the
@@ -30,7 +29,7 @@ public class OraclePhysicalNameCritic extends PhysicalNameCritic {
 
     public OraclePhysicalNameCritic() {
         super(StarterPlatformTypes.ORACLE.getName(), 
-                Pattern.compile("^[a-z_][a-z0-9_]*$", Pattern.CASE_INSENSITIVE), 
+                NamingRules.ALPHANUMERIC_PATTERN, 
                 30);
     }
     
@@ -49,6 +49,11 @@ public class PhysicalNameCritic extends CriticAndSettings {
     private final int maxNameLength;
     private final String platformName;
 
+    /**
+     * The legal name pattern and length limit checked by {@link NamingRules}.
+     */
+    private final NamingRules.Rule legalNameRule;
+
     /**
      * If the {@link SQLObject}s criticized do not match the pattern or is
      * longer than the given max length criticisms will be created to warn the
@@ -72,7 +77,7 @@ public class PhysicalNameCritic extends CriticAndSettings {
         this.platformName = platformName;
         this.legalNamePattern = legalNamePattern;
         this.maxNameLength = maxNameLength;
-        
+        legalNameRule = NamingRules.nameRule(legalNamePattern, maxNameLength);
     }
     
     public List<Criticism> criticize(final Object subject) {
@@ -100,7 +105,8 @@ public class PhysicalNameCritic extends CriticAndSettings {
 			return criticisms;
 		}
 
-        if (physName.length() > getMaxNameLength()) {
+        NamingRules namingRules = NamingRules.forCritic(this);
+        if (namingRules.isTooLong(physName, legalNameRule)) {
             criticisms.add(new Criticism(
                     so,
                     "Physical name too long for " + getPlatformName(),
@@ -114,7 +120,7 @@ public class PhysicalNameCritic extends CriticAndSettings {
                     }));
         }
 		
-        if (!getLegalNamePattern().matcher(physName).matches()) {
+        if (!namingRules.isLegalName(physName, legalNameRule)) {
             final String newLogicalName = correctPhysicalName(so, physName);
             criticisms.add(new Criticism(
                     so,
@@ -46,9 +46,15 @@ public abstract class ReservedWordsCritic extends CriticAndSettings {
      */
     private final Collection<String> reservedWords;
 
+    /**
+     * The reserved words as a rule checked by {@link NamingRules}.
+     */
+    private final NamingRules.Rule reservedWordsRule;
+
     public ReservedWordsCritic(String platformType, String name, Collection<String> reservedWords) {
         super(platformType, name);
         this.reservedWords = reservedWords;
+        reservedWordsRule = NamingRules.reservedWordsRule(reservedWords);
     }
 
     public List<Criticism> criticize(Object subject) {
@@ -56,7 +62,7 @@ public abstract class ReservedWordsCritic extends CriticAndSettings {
                 subject instanceof SQLRelationship || subject instanceof SQLColumn) {
             final SQLObject sqlObject = (SQLObject) subject;
             String typeName = sqlObject.getClass().getSimpleName().substring(3);
-            if (reservedWords.contains(sqlObject.getPhysicalName().toUpperCase())) {
+            if (NamingRules.forCritic(this).isReservedWord(sqlObject.getPhysicalName(), reservedWordsRule)) {
                 final String newName = sqlObject.getPhysicalName() + "_1";
                 return Collections.singletonList(new Criticism(subject, 
                         Messages.getString("ReservedWordsCritic.criticismDesc", 
@@ -0,0 +1,589 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+package ca.sqlpower.architect.diff;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.architect.ArchitectSession;
+import ca.sqlpower.architect.ArchitectSessionContext;
+import ca.sqlpower.architect.ArchitectSessionContextImpl;
+import ca.sqlpower.architect.ArchitectSessionImpl;
+import ca.sqlpower.architect.ddl.DDLGenerator;
+import ca.sqlpower.architect.ddl.DDLStatement;
+import ca.sqlpower.architect.ddl.DDLUtils;
+import ca.sqlpower.architect.ddl.GenericDDLGenerator;
+import ca.sqlpower.architect.ddl.MigrationPlanner;
+import ca.sqlpower.diff.DiffChunk;
+import ca.sqlpower.diff.DiffType;
+import ca.sqlpower.diff.PropertyChange;
+import ca.sqlpower.sql.JDBCDataSource;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLObject;
+import ca.sqlpower.sqlobject.SQLObjectException;
+import ca.sqlpower.sqlobject.SQLObjectUtils;
+import ca.sqlpower.sqlobject.SQLRelationship;
+import ca.sqlpower.sqlobject.SQLTable;
+
+/**
+ * Compares the play pen of a saved project against databases or schema
+ * snapshots without a user interface, so schema drift can be checked by a
+ * scheduled job. Each database or snapshot is compared with
+ * {@link CompareSQL} and the differences are written either as a plain text
+ * report or as the DDL that turns the database into the project's model,
+ * ordered by the {@link MigrationPlanner}. The time each comparison took and
+ * the memory used are logged to standard error.
+ * <p>
+ * The exit status is 0 when every database matches the project,
+ * {@link #DIFFERENCES_FOUND} when at least one differs and 1 when a
+ * comparison could not be done, so a build can fail on drift.
+ * <p>
+ * Run with no arguments for a description of the command line options.
+ */
+public class CompareBatchRunner {
+
+    private static final Logger logger = Logger.getLogger(CompareBatchRunner.class);
+
+    /**
+     * The exit status when every comparison worked but at least one
+     * database or snapshot differs from the project.
+     */
+    public static final int DIFFERENCES_FOUND = 3;
+
+    /**
+     * The ways the runner can write the differences.
+     */
+    public enum OutputFormat {
+
+        /**
+         * One line for each object that differs, followed by a line for
+         * each of its properties that changed.
+         */
+        REPORT("txt"),
+
+        /**
+         * The DDL that makes the database match the project.
+         */
+        SQL("sql");
+
+        private final String fileExtension;
+
+        private OutputFormat(String fileExtension) {
+            this.fileExtension = fileExtension;
+        }
+    }
+
+    private File projectFile;
+    private String plDotIniPath;
+    private final List<String> databaseNames = new ArrayList<String>();
+    private final List<File> snapshotFiles = new ArrayList<File>();
+    private String catalogName;
+    private String schemaName;
+    private OutputFormat format = OutputFormat.REPORT;
+    private String generatorClassName;
+    private File outputDirectory;
+    private File snapshotDirectory;
+    private int threads = 1;
+    private boolean comparingIndices;
+    private MatchStrategy matchStrategy = MatchStrategy.PHYSICAL_NAME;
+    private PrintStream progress = System.err;
+
+    private ArchitectSession session;
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        CompareBatchRunner runner = new CompareBatchRunner();
+        try {
+            runner.parseArguments(args);
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            printUsage(System.err);
+            System.exit(2);
+        }
+        int status;
+        try {
+            status = runner.run();
+        } catch (Exception ex) {
+            logger.error("Comparison failed", ex);
+            System.err.println("Comparison failed: " + ex);
+            System.exit(1);
+            return;
+        }
+        System.exit(status);
+    }
+
+    static void printUsage(PrintStream out) {
+        out.println("Usage: CompareBatchRunner [options] project.architect");
+        out.println("Compares the project's play pen against each database and snapshot given.");
+        out.println("  -plini <file>       The PL.INI file holding the connections");
+        out.println("  -database <name>    Compare against this connection, from the project or");
+        out.println("                      the PL.INI file (repeatable)");
+        out.println("  -snapshot <file>    Compare against this schema snapshot (repeatable)");
+        out.println("  -catalog <name>     Only compare the tables of this catalog");
+        out.println("  -schema <name>      Only compare the tables of this schema");
+        out.println("  -format <type>      report or sql (default report)");
+        out.println("  -generator <class>  The DDL generator for sql output, for example");
+        out.println("                      PostgresDDLGenerator (default from the connection)");
+        out.println("  -output <dir>       Write one file per database to this directory");
+        out.println("                      (default standard output)");
+        out.println("  -saveSnapshot <dir> Also save a snapshot of each database to this directory");
+        out.println("  -threads <n>        Tables of one database read at once (default 1)");
+        out.println("  -match <strategy>   physical_name or logical_name (default physical_name)");
+        out.println("  -indices            Compare indices too");
+        out.println("Exit status: 0 no differences, " + DIFFERENCES_FOUND
+                + " differences found, 1 failure, 2 bad arguments");
+    }
+
+    /**
+     * Sets this runner's options from the command line arguments.
+     * 
+     * @throws IllegalArgumentException
+     *             if the arguments are not valid. The message describes the
+     *             problem.
+     */
+    void parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("-plini")) {
+                plDotIniPath = argumentValue(args, ++i, arg);
+            } else if (arg.equals("-database")) {
+                databaseNames.add(argumentValue(args, ++i, arg));
+            } else if (arg.equals("-snapshot")) {
+                snapshotFiles.add(new File(argumentValue(args, ++i, arg)));
+            } else if (arg.equals("-catalog")) {
+                catalogName = argumentValue(args, ++i, arg);
+            } else if (arg.equals("-schema")) {
+                schemaName = argumentValue(args, ++i, arg);
+            } else if (arg.equals("-format")) {
+                String value = argumentValue(args, ++i, arg);
+                try {
+                    format = OutputFormat.valueOf(value.toUpperCase());
+                } catch (IllegalArgumentException ex) {
+                    throw new IllegalArgumentException("Unknown format " + value);
+                }
+            } else if (arg.equals("-generator")) {
+                generatorClassName = argumentValue(args, ++i, arg);
+            } else if (arg.equals("-output")) {
+                outputDirectory = new File(argumentValue(args, ++i, arg));
+            } else if (arg.equals("-saveSnapshot")) {
+                snapshotDirectory = new File(argumentValue(args, ++i, arg));
+            } else if (arg.equals("-threads")) {
+                threads = intArgumentValue(args, ++i, arg);
+            } else if (arg.equals("-match")) {
+                String value = argumentValue(args, ++i, arg);
+                try {
+                    matchStrategy = MatchStrategy.valueOf(value.toUpperCase());
+                } catch (IllegalArgumentException ex) {
+                    throw new IllegalArgumentException("Unknown match strategy " + value);
+                }
+                if (matchStrategy == MatchStrategy.UUID) {
+                    throw new IllegalArgumentException("Databases can not be matched by UUID");
+                }
+            } else if (arg.equals("-indices")) {
+                comparingIndices = true;
+            } else if (arg.startsWith("-")) {
+                throw new IllegalArgumentException("Unknown option " + arg);
+            } else if (projectFile == null) {
+                projectFile = new File(arg);
+            } else {
+                throw new IllegalArgumentException("Only one project can be compared at a time");
+            }
+        }
+        if (projectFile == null) {
+            throw new IllegalArgumentException("No project file given");
+        }
+        if (databaseNames.isEmpty() && snapshotFiles.isEmpty()) {
+            throw new IllegalArgumentException("No database or snapshot to compare against");
+        }
+        if (snapshotDirectory != null && databaseNames.isEmpty()) {
+            throw new IllegalArgumentException("-saveSnapshot needs at least one -database");
+        }
+    }
+
+    File getProjectFile() {
+        return projectFile;
+    }
+
+    List<String> getDatabaseNames() {
+        return databaseNames;
+    }
+
+    List<File> getSnapshotFiles() {
+        return snapshotFiles;
+    }
+
+    OutputFormat getFormat() {
+        return format;
+    }
+
+    int getThreads() {
+        return threads;
+    }
+
+    MatchStrategy getMatchStrategy() {
+        return matchStrategy;
+    }
+
+    boolean isComparingIndices() {
+        return comparingIndices;
+    }
+
+    void setProgress(PrintStream progress) {
+        this.progress = progress;
+    }
+
+    private static String argumentValue(String[] args, int i, String option) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[i];
+    }
+
+    private static int intArgumentValue(String[] args, int i, String option) {
+        String value = argumentValue(args, i, option);
+        try {
+            int intValue = Integer.parseInt(value);
+            if (intValue < 1) {
+                throw new IllegalArgumentException(option + " must be at least 1");
+            }
+            return intValue;
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException(option + " must be a number, not " + value);
+        }
+    }
+
+    /**
+     * Loads the project and compares it against each database and snapshot.
+     * A database that can not be compared is logged and the others are
+     * still compared.
+     * 
+     * @return The exit status: 0 if nothing differs,
+     *         {@link #DIFFERENCES_FOUND} if something differs and 1 if a
+     *         comparison failed.
+     */
+    public int run() throws Exception {
+        long runStart = System.currentTimeMillis();
+        ArchitectSessionContext context = new ArchitectSessionContextImpl(plDotIniPath, false);
+        session = new ArchitectSessionImpl(context, projectFile.getName()) {
+            @Override
+            public void runInForeground(Runnable runner) {
+                synchronized (CompareBatchRunner.this) {
+                    runner.run();
+                }
+            }
+        };
+        try {
+            log("Loading " + projectFile);
+            InputStream in = new BufferedInputStream(new FileInputStream(projectFile));
+            try {
+                session.getProjectLoader().load(in, context.getPlDotIni());
+            } finally {
+                in.close();
+            }
+            session.getProjectLoader().setFile(projectFile);
+
+            List<SQLTable> projectTables = new ArrayList<SQLTable>();
+            SQLObjectUtils.findDescendentsByClass(session.getTargetDatabase(), SQLTable.class, projectTables);
+            log("The project has " + projectTables.size() + " tables, loaded in "
+                    + (System.currentTimeMillis() - runStart) + " ms");
+
+            if (outputDirectory != null) {
+                outputDirectory.mkdirs();
+            }
+            if (snapshotDirectory != null) {
+                snapshotDirectory.mkdirs();
+            }
+
+            int failures = 0;
+            int differing = 0;
+            for (String name : databaseNames) {
+                try {
+                    SQLDatabase db = findDatabase(name, context);
+                    if (compare(name, db, projectTables, true)) differing++;
+                } catch (Exception ex) {
+                    failures++;
+                    logger.error("Comparing against " + name + " failed", ex);
+                    log(name + " failed: " + ex);
+                }
+            }
+            for (File file : snapshotFiles) {
+                try {
+                    SQLDatabase db;
+                    InputStream snapshotIn = new BufferedInputStream(new FileInputStream(file));
+                    try {
+                        db = SchemaSnapshot.read(snapshotIn);
+                    } finally {
+                        snapshotIn.close();
+                    }
+                    if (compare(file.getName(), db, projectTables, false)) differing++;
+                } catch (Exception ex) {
+                    failures++;
+                    logger.error("Comparing against " + file + " failed", ex);
+                    log(file.getName() + " failed: " + ex);
+                }
+            }
+
+            int compared = databaseNames.size() + snapshotFiles.size() - failures;
+            log(differing + " of " + compared + " compared schemas differ from the project, "
+                    + failures + " failed, in " + (System.currentTimeMillis() - runStart) + " ms");
+            logMemory();
+            if (failures > 0) return 1;
+            return differing > 0 ? DIFFERENCES_FOUND : 0;
+        } finally {
+            session.close();
+        }
+    }
+
+    /**
+     * Returns the project's source connection with the given name, or a new
+     * database for the PL.INI connection with that name.
+     */
+    private SQLDatabase findDatabase(String name, ArchitectSessionContext context) throws SQLObjectException {
+        for (SQLDatabase db : session.getRootObject().getChildren(SQLDatabase.class)) {
+            if (!db.isPlayPenDatabase() && db.getName().equals(name)) {
+                return db;
+            }
+        }
+        JDBCDataSource ds = context.getPlDotIni().getDataSource(name, JDBCDataSource.class);
+        if (ds == null) {
+            throw new SQLObjectException("No connection named " + name);
+        }
+        return new SQLDatabase(ds);
+    }
+
+    /**
+     * Compares the tables of the given database against the project's tables
+     * and writes the differences.
+     * 
+     * @param live
+     *            True if the database is connected, so it can be saved as a
+     *            snapshot and its connection picks the DDL generator.
+     * @return True if the database differs from the project.
+     */
+    private boolean compare(String name, SQLDatabase db, List<SQLTable> projectTables, boolean live)
+            throws Exception {
+        long start = System.currentTimeMillis();
+        List<SQLTable> dbTables = findTables(db);
+        long read = System.currentTimeMillis() - start;
+
+        CompareSQL compare = new CompareSQL(dbTables, projectTables, true, matchStrategy);
+        compare.setCompareIndices(comparingIndices);
+        compare.setComparisonThreads(threads);
+        // gives the columns upstream types from the session's types, as the
+        // compare dialog does, so types compare the same way in both
+        List<DiffChunk<SQLObject>> diff = compare.generateTableDiffs(session);
+        long compared = System.currentTimeMillis() - start - read;
+
+        int differences = 0;
+        for (DiffChunk<SQLObject> chunk : diff) {
+            if (chunk.getType() != DiffType.SAME) differences++;
+        }
+
+        if (live && snapshotDirectory != null) {
+            File snapshotFile = new File(snapshotDirectory, fileName(name, SchemaSnapshot.FILE_EXTENSION));
+            OutputStream snapshotOut = new BufferedOutputStream(new FileOutputStream(snapshotFile));
+            try {
+                SchemaSnapshot.write(dbTables, name, snapshotOut);
+            } finally {
+                snapshotOut.close();
+            }
+            log("Saved a snapshot of " + name + " to " + snapshotFile);
+        }
+
+        OutputStream out;
+        if (outputDirectory == null) {
+            out = System.out;
+        } else {
+            out = new BufferedOutputStream(new FileOutputStream(
+                    new File(outputDirectory, fileName(name, format.fileExtension))));
+        }
+        PrintWriter writer = new PrintWriter(new OutputStreamWriter(out, "UTF-8"));
+        try {
+            if (format == OutputFormat.SQL) {
+                writeScript(name, db, dbTables.isEmpty() ? projectTables : null, diff, writer, live);
+            } else {
+                writeReport(name, diff, writer);
+            }
+        } finally {
+            if (outputDirectory == null) {
+                writer.flush();
+            } else {
+                writer.close();
+            }
+        }
+
+        log(name + ": " + dbTables.size() + " tables, " + differences + " differences in "
+                + (System.currentTimeMillis() - start) + " ms (read " + read + " ms, compare "
+                + compared + " ms)");
+        return differences > 0;
+    }
+
+    /**
+     * Returns the tables of the given database in the catalog and schema
+     * selected by the -catalog and -schema options.
+     */
+    private List<SQLTable> findTables(SQLDatabase db) throws SQLObjectException {
+        List<SQLTable> allTables = new ArrayList<SQLTable>();
+        SQLObjectUtils.findDescendentsByClass(db, SQLTable.class, allTables);
+        if (catalogName == null && schemaName == null) return allTables;
+        List<SQLTable> tables = new ArrayList<SQLTable>();
+        for (SQLTable table : allTables) {
+            if (catalogName != null && !catalogName.equalsIgnoreCase(table.getCatalogName())) continue;
+            if (schemaName != null && !schemaName.equalsIgnoreCase(table.getSchemaName())) continue;
+            tables.add(table);
+        }
+        return tables;
+    }
+
+    private void writeReport(String name, List<DiffChunk<SQLObject>> diff, PrintWriter out) {
+        out.println("# " + name + " compared to " + projectFile.getName());
+        for (DiffChunk<SQLObject> chunk : diff) {
+            if (chunk.getType() == DiffType.SAME) continue;
+            SQLObject o = chunk.getData();
+            out.print(chunk.getType() + "\t" + o.getClass().getSimpleName() + "\t" + describe(o));
+            if (chunk.getType() == DiffType.NAME_CHANGED && chunk.getOriginalData() != null) {
+                out.print("\twas " + describe(chunk.getOriginalData()));
+            }
+            out.println();
+            for (PropertyChange change : chunk.getPropertyChanges()) {
+                out.println("\t" + change.getPropertyName() + ": " + change.getOldValue()
+                        + " -> " + change.getNewValue());
+            }
+        }
+    }
+
+    /**
+     * Returns the name of the given object qualified by the name of its
+     * table, so the report lines can be told apart.
+     */
+    private static String describe(SQLObject o) {
+        if (o instanceof SQLTable) {
+            return DDLUtils.toQualifiedName((SQLTable) o);
+        } else if (o instanceof SQLRelationship) {
+            SQLTable fkTable = ((SQLRelationship) o).getFkTable();
+            return (fkTable == null ? "" : fkTable.getName() + ".") + o.getName();
+        }
+        if (o.getParent() instanceof SQLTable) {
+            return o.getParent().getName() + "." + o.getName();
+        }
+        return o.getName();
+    }
+
+    /**
+     * Writes the statements that turn the database into the project.
+     *
+     * @param createdTables
+     *            The project's tables if the database has none of them yet,
+     *            otherwise null. A database with no tables just needs the
+     *            project's create script, which is streamed to the output as
+     *            it is generated instead of being planned in memory.
+     */
+    private void writeScript(String name, SQLDatabase db, List<SQLTable> createdTables,
+            List<DiffChunk<SQLObject>> diff, PrintWriter out, boolean live) throws Exception {
+        DDLGenerator gen = createGenerator(db, live);
+        gen.setTargetCatalog(catalogName);
+        gen.setTargetSchema(schemaName);
+        if (createdTables != null) {
+            gen.setGenerationThreads(threads);
+            out.println("-- " + name + " has none of the tables of " + projectFile.getName()
+                    + " (" + gen.getName() + ")");
+            gen.writeDDLScript(createdTables, out);
+            return;
+        }
+        DiffScriptGenerator.generate(diff, gen);
+
+        // order and merge the changes so big tables are locked as briefly as possible
+        List<MigrationPlanner.Step> plan = new MigrationPlanner(gen).plan(gen.getDdlStatements());
+        int rebuilds = 0;
+        for (MigrationPlanner.Step step : plan) {
+            if (step.getLock() == MigrationPlanner.TableLock.REBUILD) rebuilds++;
+        }
+        out.println("-- Changes to turn " + name + " into " + projectFile.getName()
+                + " (" + gen.getName() + ")");
+        if (rebuilds > 0) {
+            out.println("-- " + rebuilds + " of " + plan.size() + " statements rebuild a table");
+        }
+        for (DDLStatement statement : MigrationPlanner.getStatements(plan)) {
+            out.println(statement.getSQLText() + statement.getSqlTerminator());
+        }
+    }
+
+    /**
+     * Creates the generator named by the -generator option, or the one for
+     * the database's connection type. Snapshots have no connection, so they
+     * get the generic generator when no generator was named.
+     */
+    private DDLGenerator createGenerator(SQLDatabase db, boolean live) throws Exception {
+        if (generatorClassName != null) {
+            String className = generatorClassName;
+            if (className.indexOf('.') < 0) {
+                className = DDLGenerator.class.getPackage().getName() + "." + className;
+            }
+            Class<?> generatorClass = Class.forName(className, true, getClass().getClassLoader());
+            return generatorClass.asSubclass(DDLGenerator.class).newInstance();
+        } else if (live) {
+            return DDLUtils.createDDLGenerator(db.getDataSource());
+        } else {
+            return new GenericDDLGenerator();
+        }
+    }
+
+    private static String fileName(String name, String extension) {
+        return name.replaceAll("[^A-Za-z0-9_.-]", "_") + "." + extension;
+    }
+
+    /**
+     * Logs the heap in use now and the most any heap pool has held, so the
+     * memory a nightly run needs can be sized from its logs.
+     */
+    private void logMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        log("Heap: " + (used >> 20) + " MB used, " + (peak >> 20) + " MB peak, "
+                + (runtime.maxMemory() >> 20) + " MB max");
+    }
+
+    private void log(String message) {
+        progress.println(new SimpleDateFormat("HH:mm:ss").format(new Date()) + " " + message);
+        logger.info(message);
+    }
+}
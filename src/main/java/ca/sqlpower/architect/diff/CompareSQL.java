@@ -19,31 +19,38 @@ package ca.sqlpower.architect.diff;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Comparator;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 
 import ca.sqlpower.architect.ArchitectSession;
 import ca.sqlpower.architect.ArchitectUtils;
+import ca.sqlpower.architect.diff.MatchIndex.Match;
 import ca.sqlpower.dao.PersisterUtils;
 import ca.sqlpower.dao.session.SessionPersisterSuperConverter;
 import ca.sqlpower.diff.DiffChunk;
 import ca.sqlpower.diff.DiffType;
 import ca.sqlpower.diff.PropertyChange;
-import ca.sqlpower.object.SPObjectUUIDComparator;
 import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
 import ca.sqlpower.sqlobject.SQLIndex;
 import ca.sqlpower.sqlobject.SQLObject;
 import ca.sqlpower.sqlobject.SQLObjectException;
 import ca.sqlpower.sqlobject.SQLRelationship;
 import ca.sqlpower.sqlobject.SQLTable;
 import ca.sqlpower.util.Monitorable;
+import ca.sqlpower.util.SQLPowerUtils;
 
 public class CompareSQL implements Monitorable {
 
@@ -53,27 +60,17 @@ public class CompareSQL implements Monitorable {
 
     private static final Logger logger = Logger.getLogger(CompareSQL.class);
 
-	/**
-	 * A comparator that compares SQL Objects by name.
-	 */
-	final static Comparator<SQLObject> nameComparator = new SQLObjectComparator();
-
-	/**
-	 * A comparator that detects equality by comparing the UUID
-	 */
-    final static Comparator<SQLObject> uuidComparator = new SPObjectUUIDComparator<SQLObject>();
-
 	/**
 	 * The source tables that this compare object will use when asked
 	 * to generate diffs.
 	 */
-	private TreeSet<SQLTable> sourceTableSet;
+	private final MatchIndex<SQLTable> sourceTableIndex;
 
 	/**
 	 * The target tables that this compare object will use when asked
 	 * to generate diffs.
 	 */
-	private TreeSet<SQLTable> targetTableSet;
+	private final MatchIndex<SQLTable> targetTableIndex;
 
 	/**
 	 * The amount of work that needs to be done (for the progress monitor).
@@ -118,7 +115,18 @@ public class CompareSQL implements Monitorable {
     private boolean started;
     private boolean suppressSimilarities;
 
-	private boolean useUUID;
+	/**
+	 * Decides which objects on the source side match which objects on the
+	 * target side.
+	 */
+	private final MatchStrategy matchStrategy;
+
+	/**
+	 * The number of tables of one database that may be populated at the same
+	 * time, and half the number of threads that populate and compare tables.
+	 * See {@link #setComparisonThreads(int)}.
+	 */
+	private int comparisonThreads = 1;
 
 	public CompareSQL(
 			Collection<SQLTable> sourceTables,
@@ -134,23 +142,32 @@ public class CompareSQL implements Monitorable {
 			Collection<SQLTable> sourceTables,
 			Collection<SQLTable> targetTables,
 			boolean suppressSimilarities, boolean useUUID) throws ArchitectDiffException {
+	    this(sourceTables, targetTables, suppressSimilarities,
+	            useUUID ? MatchStrategy.UUID : MatchStrategy.PHYSICAL_NAME);
+	}
 
-		boolean sourceValid = true;
-		boolean targetValid = true;
-		this.useUUID = useUUID;
-		this.sourceTableSet = new TreeSet<SQLTable>(getObjectComparator());
-		this.sourceTableSet.addAll(sourceTables);
-		this.targetTableSet = new TreeSet<SQLTable>(getObjectComparator());
-		this.targetTableSet.addAll(targetTables);
+	/**
+	 * @param matchStrategy
+	 *            Decides which tables, columns, indices and relationships on
+	 *            the source side match which ones on the target side.
+	 * @throws ArchitectDiffException
+	 *             When the source or target table collections contain tables
+	 *             that match each other.
+	 */
+	public CompareSQL(
+	        Collection<SQLTable> sourceTables,
+	        Collection<SQLTable> targetTables,
+	        boolean suppressSimilarities, MatchStrategy matchStrategy) throws ArchitectDiffException {
+
+		this.matchStrategy = matchStrategy;
+		this.sourceTableIndex = new MatchIndex<SQLTable>();
+		this.sourceTableIndex.addAll(sourceTables, matchStrategy);
+		this.targetTableIndex = new MatchIndex<SQLTable>();
+		this.targetTableIndex.addAll(targetTables, matchStrategy);
 		this.suppressSimilarities = suppressSimilarities;
 
-
-		if (sourceTableSet.size() != sourceTables.size()){
-			sourceValid = false;
-		}
-		if (targetTableSet.size() != targetTables.size()){
-			targetValid = false;
-		}
+		boolean sourceValid = !sourceTableIndex.hasDuplicates();
+		boolean targetValid = !targetTableIndex.hasDuplicates();
 		if (!sourceValid || !targetValid){
 			String error;
 			if (!sourceValid && !targetValid) {
@@ -165,7 +182,7 @@ public class CompareSQL implements Monitorable {
 
 		results = new ArrayList<DiffChunk<SQLObject>>();
 		setProgress(0);
-		setJobSize(targetTableSet.size()*2 + sourceTableSet.size()*2);
+		setJobSize(targetTableIndex.size()*2 + sourceTableIndex.size()*2);
 		setFinished(false);
 		setStarted(false);
 	}
@@ -178,161 +195,24 @@ public class CompareSQL implements Monitorable {
 		setStarted(true);
 		setFinished(false);
 	    try {
-			Iterator<SQLTable> sourceIter = sourceTableSet.iterator();
-			Iterator<SQLTable> targetIter = targetTableSet.iterator();
-			SQLTable targetTable;
-			SQLTable sourceTable;
-			boolean sourceContinue;
-			boolean targetContinue;
-
-			//Checks if both lists of tables contain any tables at all, if they do
-			//the iterator is initialized for the list
-			if (sourceIter.hasNext()) {
-
-				sourceContinue = true;
-				sourceTable = sourceIter.next();
-				sourceTable.populate();
-			} else {
-				sourceContinue = false;
-				sourceTable = null;
-			}
-
-			if (targetIter.hasNext()) {
-				targetContinue = true;
-				targetTable = targetIter.next();
-				targetTable.populate();
-			} else {
-				targetContinue = false;
-				targetTable = null;
-			}
-
-			// Will loop until one or both the list reaches its last table
-			while (sourceContinue && targetContinue && !isCancelled()) {
-			    logger.debug("Generating table diffs for " + sourceTable.getName());
-			    if (session != null) {
-			        ArchitectUtils.setUpstreamTypesInTable(sourceTable, session);
-			        ArchitectUtils.setUpstreamTypesInTable(targetTable, session);
-			    }
-			    DiffChunk<SQLObject> chunk = null;
-			    int compareResult = getObjectComparator().compare(sourceTable, targetTable);
-
-				// bring the source table up to the same level as the target
-				if (compareResult < 0) {
-					chunk = new DiffChunk<SQLObject>(sourceTable, DiffType.LEFTONLY);
-					incProgress(1, sourceTable, targetTable);
-					//results.addAll(generateColumnDiffs(sourceTable, null));
-					if (sourceIter.hasNext()) {
-						sourceTable = (SQLTable) sourceIter.next();
-						sourceTable.populate();
-					} else {
-						sourceContinue = false;
-
-					}
-				}
-
-				// bring the target table up to the same level as the source
-				if (compareResult > 0) {
-					chunk = new DiffChunk<SQLObject>(targetTable, DiffType.RIGHTONLY);
-					incProgress(1, sourceTable, targetTable);
-					// now don't do the columns it's already handled
-					//results.addAll(generateColumnDiffs(null, targetTable));
-					if (targetIter.hasNext()) {
-						targetTable = (SQLTable) targetIter.next();
-						targetTable.populate();
-					} else {
-						targetContinue = false;
-					}
-				}
-
-				if (compareResult == 0) {
-                    List<PropertyChange> changes = generatePropertyChanges(sourceTable, targetTable);
-					if (changes.size() > 0) {
-						if (nameComparator.compare(sourceTable, targetTable) != 0) {
-							chunk = new DiffChunk<SQLObject>(targetTable, DiffType.NAME_CHANGED);
-							chunk.setOriginalData(sourceTable);
-						} else if (!StringUtils.equals(sourceTable.getRemarks(), targetTable.getRemarks())) {
-                            // If the remarks are the same, then don't generate SQL script
-                            chunk = new DiffChunk<SQLObject>(sourceTable, DiffType.SQL_MODIFIED);
-                        } else {
-                            // If the remarks were changed, generate SQL script for that
-                            chunk = new DiffChunk<SQLObject>(sourceTable, DiffType.MODIFIED);
-                        }
-                        for (PropertyChange change : changes) {
-                            chunk.addPropertyChange(change);
-                        }
-                    } else {
-                        chunk = new DiffChunk<SQLObject>(sourceTable, DiffType.SAME);
-                    }
-                    incProgress(1, sourceTable, targetTable);
-                    List<DiffChunk<SQLObject>> columns = generateColumnDiffs(sourceTable, targetTable);
-                    if (!(chunk.getType() == DiffType.SAME && suppressSimilarities) || columns.size() > 0) {
-                        results.add(chunk);
-                        results.addAll(columns);
-                    }
-					if (!targetIter.hasNext() && !sourceIter.hasNext())
-					{
-						targetContinue = false;
-						sourceContinue = false;
-					}
-					if (targetIter.hasNext()) {
-						targetTable = (SQLTable) targetIter.next();
-						targetTable.populate();
-					} else {
-						targetContinue = false;
-					}
-
-					if (sourceIter.hasNext()) {
-						sourceTable = (SQLTable) sourceIter.next();
-						sourceTable.populate();
-					}
-
-					else {
-						sourceContinue = false;
-					}
-				} else {
-				    // If we are adding column diffs, the table diff must be in the list first.
-				    // If we are not generating column diffs, we have waited until now to add the chunk.
-				    results.add(chunk);
-				}
-
-			}
-			// If any tables in the sourceList still exist, the changes are added
-			while (sourceContinue && !isCancelled()) {
-			    if (session != null) {
-			        ArchitectUtils.setUpstreamTypesInTable(sourceTable, session);
-			    }
-				results.add(new DiffChunk<SQLObject>(sourceTable, DiffType.LEFTONLY));
-				incProgress(1, sourceTable, null);
-				//results.addAll(generateColumnDiffs(sourceTable, null));
-				if (sourceIter.hasNext()) {
-					sourceTable = (SQLTable) sourceIter.next();
-					sourceTable.populate();
-				} else {
-					sourceContinue = false;
-				}
-			}
+	        List<Match<SQLTable>> tableMatches = MatchIndex.match(sourceTableIndex, targetTableIndex);
+	        if (comparisonThreads > 1) {
+	            generateTableDiffsInParallel(tableMatches, session);
+	        } else {
+	            for (Match<SQLTable> m : tableMatches) {
+	                if (isCancelled()) break;
+	                results.addAll(generatePairDiffs(m.source, m.target, session, null));
+	                incProgress(1, m.source, m.target);
+	            }
+	        }
 
-			//If any remaining tables in the targetList still exist, they are now being added
-			while (targetContinue && !isCancelled()) {
-			    if (session != null) {
-			        ArchitectUtils.setUpstreamTypesInTable(targetTable, session);
-			    }
-				results.add(new DiffChunk<SQLObject>(targetTable, DiffType.RIGHTONLY));
-				incProgress(1, null, targetTable);
+	        List<SQLTable> sourceTables = sourceTableIndex.getSortedObjects();
+	        List<SQLTable> targetTables = targetTableIndex.getSortedObjects();
+	        results.addAll(generateRelationshipDiffs(sourceTables, targetTables));
 
-				//results.addAll(generateColumnDiffs(null, targetTable));
-				if (targetIter.hasNext()) {
-					targetTable = (SQLTable) targetIter.next();
-					targetTable.populate();
-				} else {
-					targetContinue = false;
-				}
-			}
-			results.addAll(generateRelationshipDiffs(sourceTableSet, targetTableSet));
-
-			if (compareIndex) {
-			    results.addAll(generateIndexDiffs(sourceTableSet, targetTableSet));
-			}
+	        if (compareIndex) {
+	            results.addAll(generateIndexDiffs(sourceTables, targetTables));
+	        }
 		} finally {
 			setJobSize(null);
 			setFinished(true);
@@ -340,87 +220,168 @@ public class CompareSQL implements Monitorable {
 		return results;
 	}
 
+	/**
+	 * Compares two tables that match, returning the diff of the table
+	 * followed by the diffs of its columns. The list is empty if the tables
+	 * are the same and similarities are suppressed.
+	 */
+	private List<DiffChunk<SQLObject>> generateMatchingTableDiffs(SQLTable sourceTable, SQLTable targetTable)
+	throws SQLObjectException {
+	    DiffChunk<SQLObject> chunk;
+	    List<PropertyChange> changes = generatePropertyChanges(sourceTable, targetTable);
+	    if (changes.size() > 0) {
+	        if (!sameName(sourceTable, targetTable)) {
+	            chunk = new DiffChunk<SQLObject>(targetTable, DiffType.NAME_CHANGED);
+	            chunk.setOriginalData(sourceTable);
+	        } else if (!StringUtils.equals(sourceTable.getRemarks(), targetTable.getRemarks())) {
+	            // If the remarks are the same, then don't generate SQL script
+	            chunk = new DiffChunk<SQLObject>(sourceTable, DiffType.SQL_MODIFIED);
+	        } else {
+	            // If the remarks were changed, generate SQL script for that
+	            chunk = new DiffChunk<SQLObject>(sourceTable, DiffType.MODIFIED);
+	        }
+	        for (PropertyChange change : changes) {
+	            chunk.addPropertyChange(change);
+	        }
+	    } else {
+	        chunk = new DiffChunk<SQLObject>(sourceTable, DiffType.SAME);
+	    }
+	    List<DiffChunk<SQLObject>> diffs = new ArrayList<DiffChunk<SQLObject>>();
+	    List<DiffChunk<SQLObject>> columns = generateColumnDiffs(sourceTable, targetTable);
+	    if (!(chunk.getType() == DiffType.SAME && suppressSimilarities) || columns.size() > 0) {
+	        diffs.add(chunk);
+	        diffs.addAll(columns);
+	    }
+	    return diffs;
+	}
+
+	/**
+	 * Does the work of {@link #generateTableDiffs(ArchitectSession)} on
+	 * several threads. Most of the time of a comparison goes to populating
+	 * the tables from the database, so each pair of matching tables is
+	 * populated and compared on a pool of threads, in the order of the pairs,
+	 * while this thread collects the results in that same order. The results
+	 * are the same as those of the single threaded comparison.
+	 */
+	private void generateTableDiffsInParallel(final List<Match<SQLTable>> pairs, final ArchitectSession session)
+	throws SQLObjectException {
+	    if (pairs.isEmpty()) return;
+
+	    // the tables of one database share its connections, so they are
+	    // populated at most comparisonThreads at a time
+	    final Map<SQLDatabase, Semaphore> populateLimits = new HashMap<SQLDatabase, Semaphore>();
+	    for (Match<SQLTable> pair : pairs) {
+	        for (SQLTable t : new SQLTable[] { pair.source, pair.target }) {
+	            if (t == null) continue;
+	            SQLDatabase db = SQLPowerUtils.getAncestor(t, SQLDatabase.class);
+	            if (!populateLimits.containsKey(db)) {
+	                populateLimits.put(db, new Semaphore(comparisonThreads));
+	            }
+	        }
+	    }
+
+	    ExecutorService executor = Executors.newFixedThreadPool(Math.min(2 * comparisonThreads, pairs.size()));
+	    try {
+	        List<Future<List<DiffChunk<SQLObject>>>> pairDiffs = new ArrayList<Future<List<DiffChunk<SQLObject>>>>(pairs.size());
+	        for (final Match<SQLTable> pair : pairs) {
+	            pairDiffs.add(executor.submit(new Callable<List<DiffChunk<SQLObject>>>() {
+	                public List<DiffChunk<SQLObject>> call() throws Exception {
+	                    if (isCancelled()) return Collections.emptyList();
+	                    return generatePairDiffs(pair.source, pair.target, session, populateLimits);
+	                }
+	            }));
+	        }
+	        for (int i = 0; i < pairs.size() && !isCancelled(); i++) {
+	            results.addAll(pairDiffs.get(i).get());
+	            incProgress(1, pairs.get(i).source, pairs.get(i).target);
+	        }
+	    } catch (InterruptedException ex) {
+	        Thread.currentThread().interrupt();
+	        throw new SQLObjectException("Interrupted while comparing tables", ex);
+	    } catch (ExecutionException ex) {
+	        Throwable cause = ex.getCause();
+	        if (cause instanceof SQLObjectException) throw (SQLObjectException) cause;
+	        if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+	        if (cause instanceof Error) throw (Error) cause;
+	        throw new SQLObjectException("Failed to compare tables", cause);
+	    } finally {
+	        executor.shutdownNow();
+	    }
+	}
+
+	/**
+	 * Populates and compares one pair of matching tables. Either table can be
+	 * null if the other has no match.
+	 * 
+	 * @param populateLimits
+	 *            The number of tables of each database that may be populated
+	 *            at the same time, or null if this is the only thread
+	 *            populating tables.
+	 */
+	private List<DiffChunk<SQLObject>> generatePairDiffs(SQLTable sourceTable, SQLTable targetTable,
+	        ArchitectSession session, Map<SQLDatabase, Semaphore> populateLimits)
+	throws SQLObjectException {
+	    for (SQLTable t : new SQLTable[] { sourceTable, targetTable }) {
+	        if (t == null) continue;
+	        if (populateLimits == null) {
+	            t.populate();
+	        } else {
+	            Semaphore limit = populateLimits.get(SQLPowerUtils.getAncestor(t, SQLDatabase.class));
+	            limit.acquireUninterruptibly();
+	            try {
+	                t.populate();
+	            } finally {
+	                limit.release();
+	            }
+	        }
+	        if (session != null) {
+	            ArchitectUtils.setUpstreamTypesInTable(t, session);
+	        }
+	    }
+
+	    if (targetTable == null) {
+	        return Collections.singletonList(new DiffChunk<SQLObject>(sourceTable, DiffType.LEFTONLY));
+	    } else if (sourceTable == null) {
+	        return Collections.singletonList(new DiffChunk<SQLObject>(targetTable, DiffType.RIGHTONLY));
+	    } else {
+	        logger.debug("Generating table diffs for " + sourceTable.getName());
+	        return generateMatchingTableDiffs(sourceTable, targetTable);
+	    }
+	}
+
     private List<DiffChunk<SQLObject>> generateRelationshipDiffs(
 			Collection<SQLTable> sourceTables, Collection<SQLTable> targetTables) throws SQLObjectException {
-		SQLRelationshipComparator relComparator = new SQLRelationshipComparator(useUUID);
-		Set<SQLRelationship> sourceRels = new TreeSet<SQLRelationship>(relComparator);
-		Set<SQLRelationship> targetRels = new TreeSet<SQLRelationship>(relComparator);
-		
+		MatchIndex<SQLRelationship> sourceRels = new MatchIndex<SQLRelationship>();
+		MatchIndex<SQLRelationship> targetRels = new MatchIndex<SQLRelationship>();
 
 		for (SQLTable t : sourceTables) {
 			incProgress(1, t, null);
-			sourceRels.addAll(SQLRelationship.getExportedKeys(t.getImportedKeys()));
+			for (SQLRelationship r : SQLRelationship.getExportedKeys(t.getImportedKeys())) {
+			    sourceRels.add(SQLRelationshipComparator.matchKey(r, matchStrategy), r);
+			}
 		}
 
 		for (SQLTable t : targetTables) {
 			incProgress(1, null, t);
-			targetRels.addAll(SQLRelationship.getExportedKeys(t.getImportedKeys()));
+			for (SQLRelationship r : SQLRelationship.getExportedKeys(t.getImportedKeys())) {
+			    targetRels.add(SQLRelationshipComparator.matchKey(r, matchStrategy), r);
+			}
 		}
 
-		logger.debug("Source relationships: "+sourceRels);
-		logger.debug("Target relationships: "+targetRels);
-
 		List<DiffChunk<SQLObject>> diffs = new ArrayList<DiffChunk<SQLObject>>();
-
-		Iterator<SQLRelationship> sourceIter = sourceRels.iterator();
-		Iterator<SQLRelationship> targetIter = targetRels.iterator();
-		SQLRelationship targetRel;
-		SQLRelationship sourceRel;
-		boolean sourceContinue;
-		boolean targetContinue;
-
-		//Checks if both lists of tables contain any tables at all, if they do
-		//the iterator is initialized for the list
-		if (sourceIter.hasNext()) {
-
-			sourceContinue = true;
-			sourceRel = sourceIter.next();
-		} else {
-			sourceContinue = false;
-			sourceRel = null;
-		}
-
-		if (targetIter.hasNext()) {
-			targetContinue = true;
-			targetRel = targetIter.next();
-		} else {
-			targetContinue = false;
-			targetRel = null;
-		}
-
-
-		// Will loop until one or both of the lists reaches its last table
-		while (sourceContinue && targetContinue) {
-
-			int compareResult = relComparator.compare(sourceRel, targetRel);
-
-			// bring the source table up to the same level as the target
-			if (compareResult < 0) {
-				diffs.add(new DiffChunk<SQLObject>(sourceRel, DiffType.LEFTONLY));
-				if (sourceIter.hasNext()) {
-					sourceRel = sourceIter.next();
-				} else {
-					sourceContinue = false;
-				}
-			}
-
-			// bring the target table up to the same level as the source
-			if (compareResult > 0) {
-				diffs.add(new DiffChunk<SQLObject>(targetRel, DiffType.RIGHTONLY));
-				// now do the mappings
-				if (targetIter.hasNext()) {
-					targetRel = targetIter.next();
-				} else {
-					targetContinue = false;
-				}
-			}
-
-			if (compareResult == 0) {
+		for (Match<SQLRelationship> m : MatchIndex.match(sourceRels, targetRels)) {
+		    SQLRelationship sourceRel = m.source;
+		    SQLRelationship targetRel = m.target;
+		    if (targetRel == null) {
+		        diffs.add(new DiffChunk<SQLObject>(sourceRel, DiffType.LEFTONLY));
+		    } else if (sourceRel == null) {
+		        diffs.add(new DiffChunk<SQLObject>(targetRel, DiffType.RIGHTONLY));
+		    } else {
 			    List<PropertyChange> changes = generatePropertyChanges(sourceRel, targetRel);
 			    if (changes.size() > 0) {
 
 					DiffChunk<SQLObject> chunk = null;
-					if (nameComparator.compare(sourceRel, targetRel) != 0) {
+					if (!sameName(sourceRel, targetRel)) {
 						chunk = new DiffChunk<SQLObject>(targetRel, DiffType.NAME_CHANGED);
 						chunk.setOriginalData(sourceRel);
 					} else {
@@ -435,45 +396,7 @@ public class CompareSQL implements Monitorable {
 			            diffs.add(new DiffChunk<SQLObject>(sourceRel, DiffType.SAME));
 			        }
 			    }
-
-				// now do the columns
-				if (!targetIter.hasNext() && !sourceIter.hasNext())
-				{
-					targetContinue = false;
-					sourceContinue = false;
-				}
-				if (targetIter.hasNext()) {
-					targetRel = targetIter.next();
-				} else {
-					targetContinue = false;
-				}
-
-				if (sourceIter.hasNext()) {
-					sourceRel = sourceIter.next();
-				} else {
-					sourceContinue = false;
-				}
-			}
-
-		}
-		// If any tables in the sourceList still exist, the changes are added
-		while (sourceContinue) {
-			diffs.add(new DiffChunk<SQLObject>(sourceRel, DiffType.LEFTONLY));
-			if (sourceIter.hasNext()) {
-				sourceRel = sourceIter.next();
-			} else {
-				sourceContinue = false;
-			}
-		}
-
-		//If any remaining tables in the targetList still exist, they are now being added
-		while (targetContinue) {
-			diffs.add(new DiffChunk<SQLObject>(targetRel, DiffType.RIGHTONLY));
-			if (targetIter.hasNext()) {
-				targetRel = targetIter.next();
-			} else {
-				targetContinue = false;
-			}
+		    }
 		}
 		return diffs;
 	}
@@ -493,86 +416,41 @@ public class CompareSQL implements Monitorable {
      */
 	private List<DiffChunk<SQLObject>> generateIndexDiffs(
 	        Collection<SQLTable> sourceTables, Collection<SQLTable> targetTables) throws SQLObjectException {
-	    SQLIndexComparator indComparator = new SQLIndexComparator(useUUID);
-	    Set<SQLIndex> sourceInds = new TreeSet<SQLIndex>(indComparator);
-	    Set<SQLIndex> targetInds = new TreeSet<SQLIndex>(indComparator);
+	    MatchIndex<SQLIndex> sourceInds = new MatchIndex<SQLIndex>();
+	    MatchIndex<SQLIndex> targetInds = new MatchIndex<SQLIndex>();
 
 	    for (SQLTable t : sourceTables) {
 	        incProgress(1, t, null);
 	        if (t.getIndices() != null){
-	            sourceInds.addAll(t.getIndices());
+	            for (SQLIndex index : t.getIndices()) {
+	                sourceInds.add(SQLIndexComparator.matchKey(index, matchStrategy), index);
+	            }
 	        }
 	    }
 
 	    for (SQLTable t : targetTables) {
 	        incProgress(1, null, t);
 	        if (t.getIndices() != null){
-	            targetInds.addAll(t.getIndices());
+	            for (SQLIndex index : t.getIndices()) {
+	                targetInds.add(SQLIndexComparator.matchKey(index, matchStrategy), index);
+	            }
 	        }
 	    }
 
-	    logger.debug("Source indices: "+sourceInds);
-	    logger.debug("Target indices: "+targetInds);
-
 	    List<DiffChunk<SQLObject>> diffs = new ArrayList<DiffChunk<SQLObject>>();
-
-	    Iterator<SQLIndex> sourceIter = sourceInds.iterator();
-	    Iterator<SQLIndex> targetIter = targetInds.iterator();
-	    SQLIndex targetInd;
-	    SQLIndex sourceInd;
-	    boolean sourceContinue;
-	    boolean targetContinue;
-
-	    //Checks if both lists of tables contain any tables at all, if they do
-	    //the iterator is initialized for the list
-	    if (sourceIter.hasNext()) {
-	        sourceContinue = true;
-	        sourceInd = sourceIter.next();
-	    } else {
-	        sourceContinue = false;
-	        sourceInd = null;
-	    }
-
-	    if (targetIter.hasNext()) {
-	        targetContinue = true;
-	        targetInd = targetIter.next();
-	    } else {
-	        targetContinue = false;
-	        targetInd = null;
-	    }
-
-
-	    // Will loop until one or both of the lists reaches its last table
-	    while (sourceContinue && targetContinue) {
-
-			int compareResult = indComparator.compare(sourceInd, targetInd);
-	        // bring the source table up to the same level as the target
-	        if (compareResult < 0) {
+	    for (Match<SQLIndex> m : MatchIndex.match(sourceInds, targetInds)) {
+	        SQLIndex sourceInd = m.source;
+	        SQLIndex targetInd = m.target;
+	        if (targetInd == null) {
 	            diffs.add(new DiffChunk<SQLObject>(sourceInd, DiffType.LEFTONLY));
-	            if (sourceIter.hasNext()) {
-	                sourceInd = sourceIter.next();
-	            } else {
-	                sourceContinue = false;
-	            }
-	        }
-
-	        // bring the target table up to the same level as the source
-	        if (compareResult > 0) {
+	        } else if (sourceInd == null) {
 	            diffs.add(new DiffChunk<SQLObject>(targetInd, DiffType.RIGHTONLY));
-	            // now do the mappings
-	            if (targetIter.hasNext()) {
-	                targetInd = targetIter.next();
-	            } else {
-	                targetContinue = false;
-	            }
-	        }
-
-	        if (compareResult == 0) {
+	        } else {
 	            List<PropertyChange> changes = generatePropertyChanges(sourceInd, targetInd);
 
 	            if (changes.size() > 0) {
 					DiffChunk<SQLObject> chunk = null;
-					if (nameComparator.compare(sourceInd, targetInd) != 0) {
+					if (!sameName(sourceInd, targetInd)) {
 						chunk = new DiffChunk<SQLObject>(targetInd, DiffType.NAME_CHANGED);
 						chunk.setOriginalData(sourceInd);
 					} else {
@@ -587,41 +465,6 @@ public class CompareSQL implements Monitorable {
 	                    diffs.add(new DiffChunk<SQLObject>(sourceInd, DiffType.SAME));
 	                }
 	            }
-	            // now do the columns
-	            if (!targetIter.hasNext() && !sourceIter.hasNext()) {
-	                targetContinue = false;
-	                sourceContinue = false;
-	            }
-	            if (targetIter.hasNext()) {
-	                targetInd = targetIter.next();
-	            } else {
-	            }
-
-	            if (sourceIter.hasNext()) {
-	                sourceInd = sourceIter.next();
-	            } else {
-	                sourceContinue = false;
-	            }
-	        }
-
-	    }
-	    // If any tables in the sourceList still exist, the changes are added
-	    while (sourceContinue) {
-	        diffs.add(new DiffChunk<SQLObject>(sourceInd, DiffType.LEFTONLY));
-	        if (sourceIter.hasNext()) {
-	            sourceInd = sourceIter.next();
-	        } else {
-	            sourceContinue = false;
-	        }
-	    }
-
-	    //If any remaining tables in the targetList still exist, they are now being added
-	    while (targetContinue) {
-	        diffs.add(new DiffChunk<SQLObject>(targetInd, DiffType.RIGHTONLY));
-	        if (targetIter.hasNext()) {
-	            targetInd = targetIter.next();
-	        } else {
-	            targetContinue = false;
 	        }
 	    }
 	    return diffs;
@@ -641,103 +484,48 @@ public class CompareSQL implements Monitorable {
 	private List<DiffChunk<SQLObject>> generateColumnDiffs(
 			SQLTable sourceTable,
 			SQLTable targetTable) throws SQLObjectException {
-		TreeSet<SQLColumn> sourceColumnList;
-		TreeSet<SQLColumn> targetColumnList;
-		Iterator<SQLColumn> sourceColIter;
-		Iterator<SQLColumn> targetColIter;
-		SQLColumn sourceColumn;
-		SQLColumn targetColumn;
-		boolean sourceColContinue;
-		boolean targetColContinue;
 		boolean keyChangeFlag = false;
 
-		sourceColumnList = new TreeSet<SQLColumn>(getObjectComparator());
-		targetColumnList = new TreeSet<SQLColumn>(getObjectComparator());
-		sourceColContinue = false;
-		targetColContinue = false;
-		sourceColIter = null;
-		targetColIter = null;
-		sourceColumn = null;
-		targetColumn = null;
-
-		// We store the diffs in here, then return this list
-		List<DiffChunk<SQLObject>> diffs = new ArrayList<DiffChunk<SQLObject>>();
-
+		MatchIndex<SQLColumn> sourceColumns = new MatchIndex<SQLColumn>();
+		MatchIndex<SQLColumn> targetColumns = new MatchIndex<SQLColumn>();
 		if (sourceTable != null) {
-			sourceColumnList.addAll(sourceTable.getColumns());
+			sourceColumns.addAll(sourceTable.getColumns(), matchStrategy);
 		}
 		if (targetTable != null) {
-			targetColumnList.addAll(targetTable.getColumns());
+			targetColumns.addAll(targetTable.getColumns(), matchStrategy);
 		}
-		if (sourceColumnList.size() == 0) {
-			sourceColumnList = null;
-			sourceColContinue = false;
-		} else {
-			sourceColIter = sourceColumnList.iterator();
-			sourceColumn = sourceColIter.next();
-			sourceColContinue = true;
-		}
-
-		if (targetColumnList.size() == 0) {
-			targetColumnList = null;
-			targetColContinue = false;
-		} else {
 
-			targetColIter = targetColumnList.iterator();
-			targetColumn = targetColIter.next();
-			targetColContinue = true;
-		}
-
-		while (sourceColContinue && targetColContinue) {
+		// We store the diffs in here, then return this list
+		List<DiffChunk<SQLObject>> diffs = new ArrayList<DiffChunk<SQLObject>>();
 
-			int compareResult = getObjectComparator().compare(sourceColumn, targetColumn);
-			// Comparing Columns
-			if (compareResult < 0) {
+		for (Match<SQLColumn> m : MatchIndex.match(sourceColumns, targetColumns)) {
+		    SQLColumn sourceColumn = m.source;
+		    SQLColumn targetColumn = m.target;
+			if (targetColumn == null) {
 				diffs.add(new DiffChunk<SQLObject>(sourceColumn,
 						DiffType.LEFTONLY));
 				logger.debug("The source column is " + sourceColumn);
 				if (sourceColumn.isPrimaryKey()) {
                     keyChangeFlag = true;
                 }
-				if (sourceColIter.hasNext()) {
-					sourceColumn = sourceColIter.next();
-				} else {
-					sourceColContinue = false;
-					
-
-				}
-
-			}
-			// Comparing Columns
-			if (compareResult > 0) {
+			} else if (sourceColumn == null) {
 				diffs.add(new DiffChunk<SQLObject>(targetColumn,
 						DiffType.RIGHTONLY));
 				logger.debug("The target column is " + targetColumn);
 				if (targetColumn.isPrimaryKey()) {
                     keyChangeFlag = true;
 				}
-				if (targetColIter.hasNext()) {
-					targetColumn = targetColIter.next();
-				} else {
-					targetColContinue = false;
-					
-
-				}
-			}
-
-			// Comparing Columns
-			if (compareResult == 0) {
+			} else {
 
 				if (targetColumn.isPrimaryKey() != sourceColumn.isPrimaryKey()){
 				    keyChangeFlag = true;
-					//diffs.add(new DiffChunk<SQLObject>(targetColumn, DiffType.KEY_CHANGED));
 				}
 
 				List<PropertyChange> changes = generatePropertyChanges(sourceColumn, targetColumn);
 				if (changes.size() > 0) {
 					DiffChunk<SQLObject> chunk = null;
 
-					if (nameComparator.compare(sourceColumn, targetColumn) != 0) {
+					if (!sameName(sourceColumn, targetColumn)) {
 						chunk = new DiffChunk<SQLObject>(targetColumn, DiffType.NAME_CHANGED);
 						chunk.setOriginalData(sourceColumn);
 					} else if (ArchitectUtils.columnsDiffer(targetColumn, sourceColumn)) {
@@ -764,36 +552,6 @@ public class CompareSQL implements Monitorable {
 				        diffs.add(new DiffChunk<SQLObject>(sourceColumn, DiffType.SAME));
 				    }
 				}
-	
-
-				if (targetColIter.hasNext()) {
-					targetColumn = targetColIter.next();
-				} else {
-					targetColContinue = false;
-				}
-
-				if (sourceColIter.hasNext()) {
-					sourceColumn = sourceColIter.next();
-				} else {
-					sourceColContinue = false;
-				}
-			}
-		}
-		while (sourceColContinue) {
-			diffs.add(new DiffChunk<SQLObject>(sourceColumn, DiffType.LEFTONLY));
-			if (sourceColIter.hasNext()) {
-				sourceColumn = sourceColIter.next();
-			} else {
-				sourceColContinue = false;
-			}
-		}
-
-		while (targetColContinue) {
-			diffs.add(new DiffChunk<SQLObject>(targetColumn, DiffType.RIGHTONLY));
-			if (targetColIter.hasNext()) {
-				targetColumn = targetColIter.next();
-			} else {
-				targetColContinue = false;
 			}
 		}
 
@@ -805,6 +563,15 @@ public class CompareSQL implements Monitorable {
 		}
 		return diffs;
 	}
+
+	/**
+	 * Returns true if the two objects have the same physical name, which
+	 * decides whether a matched object was renamed.
+	 */
+	private static boolean sameName(SQLObject sourceObject, SQLObject targetObject) {
+	    return StringUtils.equals(MatchStrategy.PHYSICAL_NAME.keyOf(sourceObject),
+	            MatchStrategy.PHYSICAL_NAME.keyOf(targetObject));
+	}
 	
 
 	/**
@@ -845,10 +612,6 @@ public class CompareSQL implements Monitorable {
 	    return changes;
 	}
 
-	private Comparator<SQLObject> getObjectComparator() {
-		return useUUID ? uuidComparator : nameComparator;
-	}
-
     // ------------------ Monitorable Interface --------------------
 
     public synchronized Integer getJobSize() {
@@ -934,4 +697,21 @@ public class CompareSQL implements Monitorable {
     public void setCompareIndices(boolean compareIndices) {
         this.compareIndex = compareIndices;
     }
+
+    /**
+     * Sets how many tables of each database may be populated at the same
+     * time while comparing. With more than one, the tables are populated and
+     * compared on a pool of twice that many threads. The default is 1, which
+     * compares the tables one after another on the calling thread.
+     */
+    public void setComparisonThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is needed, not " + threads);
+        }
+        comparisonThreads = threads;
+    }
+
+    public int getComparisonThreads() {
+        return comparisonThreads;
+    }
 }
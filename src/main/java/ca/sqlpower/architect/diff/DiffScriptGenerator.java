@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+package ca.sqlpower.architect.diff;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import ca.sqlpower.architect.ddl.DDLGenerator;
+import ca.sqlpower.diff.DiffChunk;
+import ca.sqlpower.diff.DiffType;
+import ca.sqlpower.diff.PropertyChange;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLIndex;
+import ca.sqlpower.sqlobject.SQLObject;
+import ca.sqlpower.sqlobject.SQLObjectException;
+import ca.sqlpower.sqlobject.SQLRelationship;
+import ca.sqlpower.sqlobject.SQLTable;
+
+/**
+ * Turns the differences found by {@link CompareSQL} into the DDL statements
+ * that change the source side into the target side. This has no user
+ * interface so both the compare dialog and {@link CompareBatchRunner} use it.
+ */
+public class DiffScriptGenerator {
+
+    private DiffScriptGenerator() {
+        // static utility class
+    }
+
+    /**
+     * Adds the statements for the given differences to the generator.
+     * Relationships that are only on the source side are dropped before
+     * anything else changes and relationships that are only on the target
+     * side are added after everything else, so no foreign key refers to a
+     * table or column that does not exist yet or any more.
+     */
+    public static void generate(List<DiffChunk<SQLObject>> diff, DDLGenerator gen)
+            throws SQLException, SQLObjectException {
+        List<DiffChunk<SQLObject>> addRelationships = new ArrayList<DiffChunk<SQLObject>>();
+        List<DiffChunk<SQLObject>> dropRelationships = new ArrayList<DiffChunk<SQLObject>>();
+        List<DiffChunk<SQLObject>> nonRelationship = new ArrayList<DiffChunk<SQLObject>>();
+        for (DiffChunk<SQLObject> d : diff) {
+            if (d.getData() instanceof SQLRelationship) {
+                if (d.getType() == DiffType.LEFTONLY) {
+                    dropRelationships.add(d);
+                } else if (d.getType() == DiffType.RIGHTONLY) {
+                    addRelationships.add(d);
+                }
+            } else {
+                nonRelationship.add(d);
+            }
+        }
+        generateChunks(dropRelationships, gen);
+        generateChunks(nonRelationship, gen);
+        generateChunks(addRelationships, gen);
+    }
+
+    private static void generateChunks(List<DiffChunk<SQLObject>> diff, DDLGenerator gen)
+            throws SQLException, SQLObjectException {
+        for (DiffChunk<SQLObject> chunk : diff) {
+            if (chunk.getType() == DiffType.KEY_CHANGED) {
+                if(chunk.getData() instanceof SQLTable) {
+                    SQLTable t = (SQLTable) chunk.getData();
+                    if (hasKey(t)) {
+                        gen.addPrimaryKey(t);
+                    }
+                }
+            } else if (chunk.getType() == DiffType.DROP_KEY) {
+                if(chunk.getData() instanceof SQLTable) {
+                    SQLTable t = (SQLTable) chunk.getData();
+                    if (hasKey(t)) {
+                        gen.dropPrimaryKey(t);
+                    }
+                }
+            } else if (chunk.getType() == DiffType.LEFTONLY) {
+                if (chunk.getData() instanceof SQLTable) {
+                    SQLTable t = (SQLTable) chunk.getData();
+                    gen.dropTable(t);
+                } else if (chunk.getData() instanceof SQLColumn) {
+                    SQLColumn c = (SQLColumn) chunk.getData();
+                    gen.dropColumn(c);
+                } else if (chunk.getData() instanceof SQLRelationship) {
+                    SQLRelationship r = (SQLRelationship)chunk.getData();
+                    gen.dropRelationship(r);
+                } else if (chunk.getData() instanceof SQLIndex) {
+                    SQLIndex i = (SQLIndex)chunk.getData();
+                    gen.dropIndex(i);
+                } else {
+                    throw new IllegalStateException("DiffChunk is an unexpected type.");
+                }
+
+            } else if (chunk.getType() == DiffType.RIGHTONLY) {
+                if (chunk.getData() instanceof SQLTable) {
+                    SQLTable t = (SQLTable) chunk.getData();
+                    if (t == null ) throw new NullPointerException();
+                    if (t.getObjectType().equals("TABLE")) {
+                        gen.addTable(t);
+                    }
+                } else if (chunk.getData() instanceof SQLColumn) {
+                    SQLColumn c = (SQLColumn) chunk.getData();
+                    gen.addColumn(c);
+                } else if (chunk.getData() instanceof SQLRelationship) {
+                    SQLRelationship r = (SQLRelationship)chunk.getData();
+                    gen.addRelationship(r);
+                } else if (chunk.getData() instanceof SQLIndex) {
+                    SQLIndex i = (SQLIndex)chunk.getData();
+                    gen.addIndex(i);
+                } else {
+                    throw new IllegalStateException("DiffChunk is an unexpected type.");
+                }
+            } else if (chunk.getType() == DiffType.MODIFIED) {
+                // do nothing because it has not been modified enough (see next case)
+            } else if (chunk.getType() == DiffType.SQL_MODIFIED) {
+                if (chunk.getData() instanceof SQLColumn) {
+                    SQLColumn c = (SQLColumn) chunk.getData();
+                    gen.modifyColumn(c, chunk);
+                }
+                for (PropertyChange change : chunk.getPropertyChanges()) {
+                    if (change.getPropertyName().equals("remarks")) {
+                        gen.modifyComment(chunk.getData());
+                        break;
+                    }
+                }
+            } else if (chunk.getType() == DiffType.SAME) {
+                //do nothing when they're the same
+            } else if (chunk.getType() == DiffType.NAME_CHANGED) {
+                if (chunk.getData() instanceof SQLTable) {
+                    SQLTable newTable = (SQLTable)chunk.getData();
+                    SQLTable oldTable = (SQLTable)chunk.getOriginalData();
+                    gen.renameTable(oldTable, newTable);
+                } else if (chunk.getData() instanceof SQLColumn) {
+                    SQLColumn newCol = (SQLColumn)chunk.getData();
+                    SQLColumn oldCol = (SQLColumn)chunk.getOriginalData();
+                    gen.renameColumn(oldCol, newCol);
+                } else if (chunk.getData() instanceof SQLIndex) {
+                    SQLIndex newIndex = (SQLIndex)chunk.getData();
+                    SQLIndex oldIndex= (SQLIndex)chunk.getOriginalData();
+                    gen.renameIndex(oldIndex, newIndex);
+                } else {
+                    throw new IllegalStateException("DiffChunk is an unexpected type.");
+                }
+            } else {
+                throw new IllegalStateException("DiffChunk is an invalid type.");
+            }
+        }
+    }
+
+    private static boolean hasKey(SQLTable t) throws SQLObjectException {
+        for (SQLColumn c : t.getColumns()) {
+            if (c.isPrimaryKey()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+package ca.sqlpower.architect.diff;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ca.sqlpower.sqlobject.SQLObject;
+
+/**
+ * A hash index of the objects on one side of a comparison by their match
+ * keys. The keys are computed once per object when it is added, so matching
+ * two sides takes one hash lookup per key and one sort of the keys instead
+ * of a comparator call, with its string normalization, for every step of a
+ * sorted set insert or merge.
+ * <p>
+ * Like the TreeSets CompareSQL used before, an index keeps the first object
+ * added for each key and ignores the rest.
+ */
+class MatchIndex<T extends SQLObject> {
+
+    /**
+     * A match of one object on each side. One of the objects is null if the
+     * other has no match.
+     */
+    static class Match<T> {
+        final T source;
+        final T target;
+
+        Match(T source, T target) {
+            this.source = source;
+            this.target = target;
+        }
+    }
+
+    /**
+     * Orders match keys, with null before every other key.
+     */
+    static final Comparator<String> KEY_ORDER = new Comparator<String>() {
+        public int compare(String k1, String k2) {
+            if (k1 == k2) return 0;
+            else if (k1 == null) return -1;
+            else if (k2 == null) return 1;
+            else return k1.compareTo(k2);
+        }
+    };
+
+    private final Map<String, T> objects = new HashMap<String, T>();
+
+    /**
+     * The number of objects that were not added because an object with the
+     * same key already was.
+     */
+    private int duplicates;
+
+    /**
+     * Adds the given object under the given key, unless the index already
+     * has an object with that key.
+     */
+    void add(String key, T o) {
+        if (objects.containsKey(key)) {
+            duplicates++;
+        } else {
+            objects.put(key, o);
+        }
+    }
+
+    /**
+     * Adds each of the given objects under its key from the given strategy.
+     */
+    void addAll(Iterable<? extends T> list, MatchStrategy strategy) {
+        for (T o : list) {
+            add(strategy.keyOf(o), o);
+        }
+    }
+
+    T get(String key) {
+        return objects.get(key);
+    }
+
+    int size() {
+        return objects.size();
+    }
+
+    /**
+     * Returns true if an object was left out because another one had the
+     * same key.
+     */
+    boolean hasDuplicates() {
+        return duplicates > 0;
+    }
+
+    /**
+     * Returns the keys of this index in order.
+     */
+    List<String> getSortedKeys() {
+        List<String> keys = new ArrayList<String>(objects.keySet());
+        Collections.sort(keys, KEY_ORDER);
+        return keys;
+    }
+
+    /**
+     * Returns the objects of this index in the order of their keys.
+     */
+    List<T> getSortedObjects() {
+        List<T> list = new ArrayList<T>(objects.size());
+        for (String key : getSortedKeys()) {
+            list.add(objects.get(key));
+        }
+        return list;
+    }
+
+    /**
+     * Separates the parts of a composite match key. It sorts before every
+     * character of a name, so a key that is a prefix of another sorts first.
+     */
+    static final char FIELD_SEPARATOR = '\u0000';
+
+    /**
+     * Starts each element of a list within a composite match key.
+     */
+    static final char ELEMENT_SEPARATOR = '\u0001';
+
+    /**
+     * Appends one part of a composite match key. A null part sorts before
+     * every other value, the way the comparators order nulls.
+     */
+    static void appendKey(StringBuilder key, String part) {
+        if (part != null) {
+            key.append('\u0002').append(part);
+        }
+    }
+
+    /**
+     * Matches the objects of two indices by key, in the order of the keys.
+     */
+    static <T extends SQLObject> List<Match<T>> match(MatchIndex<T> source, MatchIndex<T> target) {
+        Set<String> keySet = new HashSet<String>(source.objects.keySet());
+        keySet.addAll(target.objects.keySet());
+        List<String> keys = new ArrayList<String>(keySet);
+        Collections.sort(keys, KEY_ORDER);
+
+        List<Match<T>> matches = new ArrayList<Match<T>>(keys.size());
+        for (String key : keys) {
+            matches.add(new Match<T>(source.objects.get(key), target.objects.get(key)));
+        }
+        return matches;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+package ca.sqlpower.architect.diff;
+
+import java.util.Locale;
+
+import ca.sqlpower.sqlobject.SQLObject;
+
+/**
+ * The ways CompareSQL can decide which object on one side matches which
+ * object on the other. Each strategy turns an object into a match key once,
+ * and objects match when their keys are equal. The keys also set the order
+ * of the differences CompareSQL reports.
+ */
+public enum MatchStrategy {
+
+    /**
+     * Matches objects by physical name, or by name if they have no physical
+     * name, ignoring case. This is the same match as
+     * {@link SQLObjectComparator}.
+     */
+    PHYSICAL_NAME {
+        @Override
+        public String keyOf(SQLObject o) {
+            String name = o.getPhysicalName();
+            if (name == null || name.trim().equals("")) {
+                name = o.getName();
+            }
+            return name == null ? null : name.toLowerCase(Locale.getDefault());
+        }
+    },
+
+    /**
+     * Matches objects by their logical name, ignoring case.
+     */
+    LOGICAL_NAME {
+        @Override
+        public String keyOf(SQLObject o) {
+            String name = o.getName();
+            return name == null ? null : name.toLowerCase(Locale.getDefault());
+        }
+    },
+
+    /**
+     * Matches objects by UUID, for comparing two versions of the same
+     * project.
+     */
+    UUID {
+        @Override
+        public String keyOf(SQLObject o) {
+            return o.getUUID();
+        }
+    };
+
+    /**
+     * Returns the key the given object matches by. The key can be null.
+     */
+    public abstract String keyOf(SQLObject o);
+}
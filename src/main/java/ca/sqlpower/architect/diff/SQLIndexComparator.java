@@ -21,7 +21,9 @@ package ca.sqlpower.architect.diff;
 import java.io.Serializable;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.TreeSet;
 
 import org.apache.log4j.Logger;
@@ -97,6 +99,46 @@ public class SQLIndexComparator implements Comparator<SQLIndex>, Serializable {
 		return compareColumns(sourceCol, targetCol);
 	}
 
+	/**
+	 * Returns a key for the given index that two indices share exactly when
+	 * this comparator finds them equal, and that sorts the same way.
+	 * CompareSQL computes it once per index to match indices by hashing
+	 * instead of comparing them.
+	 * 
+	 * @param strategy
+	 *            Matches the index columns, like the UUID or name comparator
+	 *            of {@link #SQLIndexComparator(boolean)}.
+	 */
+	public static String matchKey(SQLIndex index, MatchStrategy strategy) {
+	    StringBuilder key = new StringBuilder();
+	    MatchIndex.appendKey(key, index.getQualifier());
+	    key.append(MatchIndex.FIELD_SEPARATOR);
+	    MatchIndex.appendKey(key, index.getType());
+	    key.append(MatchIndex.FIELD_SEPARATOR);
+	    MatchIndex.appendKey(key, index.getFilterCondition());
+	    key.append(MatchIndex.FIELD_SEPARATOR);
+	    key.append(index.isUnique() ? '1' : '0');
+	    key.append(index.isClustered() ? '1' : '0');
+	    key.append(index.isPrimaryKeyIndex() ? '1' : '0');
+	    key.append(MatchIndex.FIELD_SEPARATOR);
+
+	    Map<String, Column> columns = new TreeMap<String, Column>(MatchIndex.KEY_ORDER);
+	    for (Column c : index.getChildren(Column.class)) {
+	        String columnKey = strategy.keyOf(c);
+	        if (!columns.containsKey(columnKey)) columns.put(columnKey, c);
+	    }
+	    for (Map.Entry<String, Column> entry : columns.entrySet()) {
+	        AscendDescend order = entry.getValue().getAscendingOrDescending();
+	        if (order == null) {
+	            order = AscendDescend.UNSPECIFIED;
+	        }
+	        key.append(MatchIndex.ELEMENT_SEPARATOR);
+	        MatchIndex.appendKey(key, entry.getKey());
+	        key.append(MatchIndex.FIELD_SEPARATOR).append((char) ('0' + order.ordinal()));
+	    }
+	    return key.toString();
+	}
+
 	/**
      * Compares the given sets of Columns on name and ascending/descending. A
      * null ascending/descending value is taken as UNSPECIFIED.
@@ -18,9 +18,12 @@
  */
 package ca.sqlpower.architect.diff;
 
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.TreeSet;
 
 import org.apache.log4j.Logger;
@@ -94,6 +97,42 @@ public class SQLRelationshipComparator implements Comparator<SQLRelationship> {
 		return 0;
 	}
 
+	/**
+	 * Returns a key for the given relationship that two relationships share
+	 * exactly when this comparator finds them equal, and that sorts the
+	 * same way. CompareSQL computes it once per relationship to match
+	 * relationships by hashing instead of comparing them.
+	 * 
+	 * @param strategy
+	 *            Matches the tables and orders the columns, like the UUID or
+	 *            name comparator of {@link #SQLRelationshipComparator(boolean)}.
+	 *            Columns are then compared by name, as in
+	 *            {@link #compareColumns(Set, Set)}.
+	 */
+	public static String matchKey(SQLRelationship r, MatchStrategy strategy) {
+	    StringBuilder key = new StringBuilder();
+	    MatchIndex.appendKey(key, strategy.keyOf(r.getPkTable()));
+	    key.append(MatchIndex.FIELD_SEPARATOR);
+	    MatchIndex.appendKey(key, strategy.keyOf(r.getFkTable()));
+
+	    Map<String, SQLColumn> pkColumns = new TreeMap<String, SQLColumn>(MatchIndex.KEY_ORDER);
+	    Map<String, SQLColumn> fkColumns = new TreeMap<String, SQLColumn>(MatchIndex.KEY_ORDER);
+	    for (ColumnMapping cm : r.getChildren(ColumnMapping.class)) {
+	        String pkKey = strategy.keyOf(cm.getPkColumn());
+	        if (!pkColumns.containsKey(pkKey)) pkColumns.put(pkKey, cm.getPkColumn());
+	        String fkKey = strategy.keyOf(cm.getFkColumn());
+	        if (!fkColumns.containsKey(fkKey)) fkColumns.put(fkKey, cm.getFkColumn());
+	    }
+	    for (Map<String, SQLColumn> columns : Arrays.asList(pkColumns, fkColumns)) {
+	        key.append(MatchIndex.FIELD_SEPARATOR);
+	        for (SQLColumn c : columns.values()) {
+	            key.append(MatchIndex.ELEMENT_SEPARATOR);
+	            MatchIndex.appendKey(key, MatchStrategy.PHYSICAL_NAME.keyOf(c));
+	        }
+	    }
+	    return key.toString();
+	}
+
 	public int compareColumns(Set<SQLColumn> source, Set<SQLColumn> target) {
 
 		Iterator<SQLColumn> sourceIter = source.iterator();
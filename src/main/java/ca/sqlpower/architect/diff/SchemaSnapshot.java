@@ -0,0 +1,402 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+package ca.sqlpower.architect.diff;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLIndex;
+import ca.sqlpower.sqlobject.SQLIndex.AscendDescend;
+import ca.sqlpower.sqlobject.SQLIndex.Column;
+import ca.sqlpower.sqlobject.SQLObjectException;
+import ca.sqlpower.sqlobject.SQLRelationship;
+import ca.sqlpower.sqlobject.SQLRelationship.ColumnMapping;
+import ca.sqlpower.sqlobject.SQLRelationship.Deferrability;
+import ca.sqlpower.sqlobject.SQLRelationship.UpdateDeleteRule;
+import ca.sqlpower.sqlobject.SQLTable;
+
+/**
+ * Saves the structure of a set of tables to a compact binary file, and loads
+ * it back as an unconnected {@link SQLDatabase}. Comparing against a snapshot
+ * takes no catalog queries, so a production schema can be captured once and
+ * compared to the model as often as needed, even offline.
+ * <p>
+ * The file has a short uncompressed header followed by a gzipped body. All
+ * names, types and remarks in the body are stored once in a string table
+ * and referenced by number. The tables, columns, indices, index columns,
+ * relationships and column mappings are each stored column by column: all
+ * the names, then all the types, and so on. Values of the same kind end up
+ * next to each other, which compresses much better than whole records.
+ * <p>
+ * A snapshot keeps the tables, their columns and primary keys, indices and
+ * relationships between the captured tables. It doesn't keep catalogs,
+ * schemas or UUIDs, so snapshots should be compared by name.
+ */
+public class SchemaSnapshot {
+
+    private static final Logger logger = Logger.getLogger(SchemaSnapshot.class);
+
+    /**
+     * The extension of snapshot files, without the dot.
+     */
+    public static final String FILE_EXTENSION = "snapshot";
+
+    private static final byte[] MAGIC = { 'P', 'A', 'S', 'N', 'A', 'P' };
+
+    private static final int VERSION = 1;
+
+    private SchemaSnapshot() {
+        // static utility class
+    }
+
+    /**
+     * Returns true if the given file starts like a snapshot file.
+     */
+    public static boolean isSnapshot(File file) {
+        if (!file.isFile()) return false;
+        try {
+            InputStream in = new FileInputStream(file);
+            try {
+                byte[] start = new byte[MAGIC.length];
+                return new DataInputStream(in).read(start) == MAGIC.length && Arrays.equals(start, MAGIC);
+            } finally {
+                in.close();
+            }
+        } catch (IOException ex) {
+            logger.debug("Could not read " + file, ex);
+            return false;
+        }
+    }
+
+    /**
+     * Writes a snapshot of the given tables, populating them first. The
+     * stream is finished but not closed.
+     * 
+     * @param description
+     *            A description of where the tables came from, which becomes
+     *            the name of the database the snapshot loads as. Can be null.
+     */
+    public static void write(Collection<SQLTable> tables, String description, OutputStream out)
+    throws SQLObjectException, IOException {
+        StringTable strings = new StringTable();
+        List<SQLTable> tableList = new ArrayList<SQLTable>(tables);
+        Map<SQLTable, Integer> tableNumbers = new HashMap<SQLTable, Integer>();
+        for (int i = 0; i < tableList.size(); i++) {
+            tableNumbers.put(tableList.get(i), i);
+        }
+
+        IntColumns tableData = new IntColumns(5);
+        IntColumns columnData = new IntColumns(11);
+        IntColumns indexData = new IntColumns(9);
+        IntColumns indexColumnData = new IntColumns(3);
+        IntColumns relationshipData = new IntColumns(9);
+        IntColumns mappingData = new IntColumns(2);
+
+        for (SQLTable t : tableList) {
+            t.populate();
+            List<SQLColumn> columns = t.getColumns();
+            List<SQLIndex> indices = t.getIndices();
+            tableData.add(strings.get(t.getName()), strings.get(t.getPhysicalName()),
+                    strings.get(t.getRemarks()), columns.size(), indices.size());
+
+            for (SQLColumn c : columns) {
+                columnData.add(strings.get(c.getName()), strings.get(c.getPhysicalName()),
+                        c.getType(), c.getPrecision(), c.getScale(), c.getNullable(),
+                        c.isAutoIncrement() ? 1 : 0, strings.get(c.getDefaultValue()),
+                        strings.get(c.getRemarks()), c.isPrimaryKey() ? 1 : 0,
+                        strings.get(c.getSourceDataTypeName()));
+            }
+
+            for (SQLIndex index : indices) {
+                List<Column> indexColumns = index.getChildren(Column.class);
+                indexData.add(strings.get(index.getName()), strings.get(index.getPhysicalName()),
+                        index.isUnique() ? 1 : 0, strings.get(index.getQualifier()),
+                        strings.get(index.getType()), strings.get(index.getFilterCondition()),
+                        index.isClustered() ? 1 : 0, index.isPrimaryKeyIndex() ? 1 : 0,
+                        indexColumns.size());
+                for (Column ic : indexColumns) {
+                    AscendDescend order = ic.getAscendingOrDescending();
+                    indexColumnData.add(ic.getColumn() == null ? -1 : columns.indexOf(ic.getColumn()),
+                            strings.get(ic.getName()),
+                            order == null ? -1 : order.ordinal());
+                }
+            }
+        }
+
+        for (SQLTable t : tableList) {
+            for (SQLRelationship r : SQLRelationship.getExportedKeys(t.getImportedKeys())) {
+                Integer pkTable = tableNumbers.get(r.getPkTable());
+                if (pkTable == null) {
+                    logger.debug("Leaving out " + r + ", its primary key table isn't in the snapshot");
+                    continue;
+                }
+                List<ColumnMapping> mappings = r.getChildren(ColumnMapping.class);
+                relationshipData.add(pkTable, tableNumbers.get(t), strings.get(r.getName()),
+                        strings.get(r.getPhysicalName()),
+                        strings.get(r.getUpdateRule() == null ? null : r.getUpdateRule().name()),
+                        strings.get(r.getDeleteRule() == null ? null : r.getDeleteRule().name()),
+                        strings.get(r.getDeferrability() == null ? null : r.getDeferrability().name()),
+                        r.isIdentifying() ? 1 : 0, mappings.size());
+                for (ColumnMapping cm : mappings) {
+                    mappingData.add(r.getPkTable().getColumns().indexOf(cm.getPkColumn()),
+                            t.getColumns().indexOf(cm.getFkColumn()));
+                }
+            }
+        }
+
+        DataOutputStream header = new DataOutputStream(out);
+        header.write(MAGIC);
+        header.writeInt(VERSION);
+        header.flush();
+
+        GZIPOutputStream zip = new GZIPOutputStream(out);
+        DataOutputStream data = new DataOutputStream(zip);
+        data.writeLong(System.currentTimeMillis());
+        data.writeInt(strings.get(description));
+        strings.write(data);
+        tableData.write(data);
+        columnData.write(data);
+        indexData.write(data);
+        indexColumnData.write(data);
+        relationshipData.write(data);
+        mappingData.write(data);
+        data.flush();
+        zip.finish();
+    }
+
+    /**
+     * Reads a snapshot back as a new database holding the captured tables.
+     * The database has no data source and is fully populated, so nothing
+     * in it ever goes to a real database.
+     */
+    public static SQLDatabase read(InputStream in) throws IOException, SQLObjectException {
+        in = new BufferedInputStream(in);
+        DataInputStream header = new DataInputStream(in);
+        byte[] start = new byte[MAGIC.length];
+        header.readFully(start);
+        if (!Arrays.equals(start, MAGIC)) {
+            throw new IOException("Not a schema snapshot");
+        }
+        int version = header.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported schema snapshot version " + version);
+        }
+
+        DataInputStream data = new DataInputStream(new GZIPInputStream(in));
+        long captured = data.readLong();
+        int description = data.readInt();
+        String[] strings = StringTable.read(data);
+        int[][] tableData = IntColumns.read(data);
+        int[][] columnData = IntColumns.read(data);
+        int[][] indexData = IntColumns.read(data);
+        int[][] indexColumnData = IntColumns.read(data);
+        int[][] relationshipData = IntColumns.read(data);
+        int[][] mappingData = IntColumns.read(data);
+
+        SQLDatabase db = new SQLDatabase();
+        db.setName(description < 0 ? "Snapshot" : strings[description]);
+        logger.debug("Reading snapshot " + db.getName() + " taken at " + new java.util.Date(captured));
+
+        List<SQLTable> tables = new ArrayList<SQLTable>();
+        int column = 0;
+        int index = 0;
+        int indexColumn = 0;
+        for (int i = 0; i < tableData[0].length; i++) {
+            SQLTable t = new SQLTable(db, string(strings, tableData[0][i]), string(strings, tableData[2][i]), "TABLE", true);
+            t.setPhysicalName(string(strings, tableData[1][i]));
+            List<SQLColumn> pkColumns = new ArrayList<SQLColumn>();
+            for (int c = 0; c < tableData[3][i]; c++, column++) {
+                SQLColumn col = new SQLColumn(t, string(strings, columnData[0][column]),
+                        columnData[2][column], columnData[3][column], columnData[4][column]);
+                col.setPhysicalName(string(strings, columnData[1][column]));
+                col.setNullable(columnData[5][column]);
+                col.setAutoIncrement(columnData[6][column] != 0);
+                col.setDefaultValue(string(strings, columnData[7][column]));
+                col.setRemarks(string(strings, columnData[8][column]));
+                col.setSourceDataTypeName(string(strings, columnData[10][column]));
+                t.addColumn(col);
+                if (columnData[9][column] != 0) {
+                    pkColumns.add(col);
+                }
+            }
+
+            for (int x = 0; x < tableData[4][i]; x++, index++) {
+                boolean primaryKey = indexData[7][index] != 0;
+                SQLIndex sqlIndex = primaryKey ? t.getPrimaryKeyIndex() : new SQLIndex();
+                sqlIndex.setName(string(strings, indexData[0][index]));
+                sqlIndex.setPhysicalName(string(strings, indexData[1][index]));
+                sqlIndex.setUnique(indexData[2][index] != 0);
+                sqlIndex.setQualifier(string(strings, indexData[3][index]));
+                sqlIndex.setType(string(strings, indexData[4][index]));
+                sqlIndex.setFilterCondition(string(strings, indexData[5][index]));
+                sqlIndex.setClustered(indexData[6][index] != 0);
+                for (int ic = 0; ic < indexData[8][index]; ic++, indexColumn++) {
+                    AscendDescend order = indexColumnData[2][indexColumn] < 0 ?
+                            null : AscendDescend.values()[indexColumnData[2][indexColumn]];
+                    int columnIndex = indexColumnData[0][indexColumn];
+                    if (columnIndex >= 0) {
+                        sqlIndex.addIndexColumn(t.getColumn(columnIndex), order);
+                    } else {
+                        sqlIndex.addChild(new Column(string(strings, indexColumnData[1][indexColumn]), order));
+                    }
+                }
+                if (!primaryKey) {
+                    t.addIndex(sqlIndex);
+                }
+            }
+            if (t.getPrimaryKeyIndex().getChildCount() == 0) {
+                // the primary key index had no columns stored, so fall back on the column flags
+                for (SQLColumn col : pkColumns) {
+                    t.addToPK(col);
+                }
+            }
+            db.addChild(t);
+            tables.add(t);
+        }
+
+        int mapping = 0;
+        for (int i = 0; i < relationshipData[0].length; i++) {
+            SQLTable pkTable = tables.get(relationshipData[0][i]);
+            SQLTable fkTable = tables.get(relationshipData[1][i]);
+            SQLRelationship r = new SQLRelationship();
+            r.setName(string(strings, relationshipData[2][i]));
+            r.setPhysicalName(string(strings, relationshipData[3][i]));
+            String updateRule = string(strings, relationshipData[4][i]);
+            if (updateRule != null) r.setUpdateRule(UpdateDeleteRule.valueOf(updateRule));
+            String deleteRule = string(strings, relationshipData[5][i]);
+            if (deleteRule != null) r.setDeleteRule(UpdateDeleteRule.valueOf(deleteRule));
+            String deferrability = string(strings, relationshipData[6][i]);
+            if (deferrability != null) r.setDeferrability(Deferrability.valueOf(deferrability));
+            r.setIdentifying(relationshipData[7][i] != 0);
+            for (int m = 0; m < relationshipData[8][i]; m++, mapping++) {
+                r.addMapping(pkTable.getColumn(mappingData[0][mapping]), fkTable.getColumn(mappingData[1][mapping]));
+            }
+            r.attachRelationship(pkTable, fkTable, false);
+        }
+        return db;
+    }
+
+    private static String string(String[] strings, int i) {
+        return i < 0 ? null : strings[i];
+    }
+
+    /**
+     * Interns the strings of a snapshot, numbering each distinct string in
+     * the order it is first seen. Null is -1.
+     */
+    private static class StringTable {
+        private final Map<String, Integer> numbers = new LinkedHashMap<String, Integer>();
+
+        int get(String s) {
+            if (s == null) return -1;
+            Integer n = numbers.get(s);
+            if (n == null) {
+                n = numbers.size();
+                numbers.put(s, n);
+            }
+            return n;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(numbers.size());
+            for (String s : numbers.keySet()) {
+                // not writeUTF, which is limited to 64k for long remarks
+                byte[] bytes = s.getBytes("UTF-8");
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+
+        static String[] read(DataInputStream in) throws IOException {
+            String[] strings = new String[in.readInt()];
+            for (int i = 0; i < strings.length; i++) {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                strings[i] = new String(bytes, "UTF-8");
+            }
+            return strings;
+        }
+    }
+
+    /**
+     * A growable table of ints kept column by column, for one kind of
+     * object in a snapshot.
+     */
+    private static class IntColumns {
+        private final int[][] columns;
+        private int rows;
+
+        IntColumns(int columnCount) {
+            columns = new int[columnCount][16];
+        }
+
+        void add(int... values) {
+            if (rows == columns[0].length) {
+                for (int i = 0; i < columns.length; i++) {
+                    columns[i] = Arrays.copyOf(columns[i], rows * 2);
+                }
+            }
+            for (int i = 0; i < columns.length; i++) {
+                columns[i][rows] = values[i];
+            }
+            rows++;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(columns.length);
+            out.writeInt(rows);
+            for (int[] column : columns) {
+                for (int r = 0; r < rows; r++) {
+                    out.writeInt(column[r]);
+                }
+            }
+        }
+
+        static int[][] read(DataInputStream in) throws IOException {
+            int[][] columns = new int[in.readInt()][];
+            int rows = in.readInt();
+            for (int c = 0; c < columns.length; c++) {
+                columns[c] = new int[rows];
+                for (int r = 0; r < rows; r++) {
+                    columns[c][r] = in.readInt();
+                }
+            }
+            return columns;
+        }
+    }
+}
@@ -19,8 +19,16 @@
 
 package ca.sqlpower.architect.profile;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.apache.log4j.Logger;
 
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLObjectException;
 import ca.sqlpower.util.MonitorableImpl;
 
 /**
@@ -31,6 +39,22 @@ public abstract class AbstractTableProfileCreator implements TableProfileCreator
     
     private static final Logger logger = Logger.getLogger(AbstractTableProfileCreator.class);
     
+    /**
+     * The earlier column profile results being reused by each profile in
+     * progress, keyed by the column they will be copied to. Subclasses don't
+     * profile these columns; see {@link #getColumnsToProfile(TableProfileResult)}.
+     */
+    private final Map<TableProfileResult, Map<SQLColumn, ColumnProfileResult>> reusedColumns = 
+        Collections.synchronizedMap(new HashMap<TableProfileResult, Map<SQLColumn, ColumnProfileResult>>());
+
+    /**
+     * The row count of each profile in progress whose table was counted when
+     * its change signature was computed. See
+     * {@link #getKnownRowCount(TableProfileResult)}.
+     */
+    private final Map<TableProfileResult, Long> knownRowCounts =
+        Collections.synchronizedMap(new HashMap<TableProfileResult, Long>());
+    
     /**
      * A generic template for populating a profile result.  Calls {@link #doProfileImpl()}
      * to perform the actual work of populating this profile result.
@@ -39,6 +63,12 @@ public abstract class AbstractTableProfileCreator implements TableProfileCreator
      * doProfile, then fire a profileFinished event after doProfile exits (with
      * or without success) unless this profile population has been cancelled,
      * in which case it fires a profileCancelled event.
+     * <p>
+     * If the profile result has a previous result (see
+     * {@link TableProfileResult#getPreviousResult()}) whose change signature
+     * matches the table's current signature, the previous column results are
+     * copied for every column whose definition hasn't changed and only the
+     * other columns are profiled.
      */
     public final boolean doProfile(final TableProfileResult tpr) {
         
@@ -51,7 +81,29 @@ public abstract class AbstractTableProfileCreator implements TableProfileCreator
                 pm.setStarted(true);
                 pm.setFinished(false);
                 tpr.setCreateStartTime(System.currentTimeMillis());
-                doProfileImpl(tpr);
+                Map<SQLColumn, ColumnProfileResult> reused;
+                try {
+                    reused = findReusableColumns(tpr);
+                    if (reused.isEmpty()) {
+                        doProfileImpl(tpr);
+                    } else if (reused.size() == tpr.getProfiledObject().getColumns().size()) {
+                        logger.debug("Table " + tpr.getProfiledObject() + " is unchanged, reusing its last profile");
+                        tpr.setRowCount(tpr.getPreviousResult().getRowCount());
+                        tpr.setSampledRowCount(tpr.getPreviousResult().getSampledRowCount());
+                    } else {
+                        reusedColumns.put(tpr, reused);
+                        try {
+                            doProfileImpl(tpr);
+                        } finally {
+                            reusedColumns.remove(tpr);
+                        }
+                    }
+                } finally {
+                    knownRowCounts.remove(tpr);
+                }
+                if (!pm.isCancelled()) {
+                    finishColumnResults(tpr, reused);
+                }
             }
         } catch (Exception ex) {
             tpr.setException(ex);
@@ -82,4 +134,103 @@ public abstract class AbstractTableProfileCreator implements TableProfileCreator
      */
     protected abstract boolean doProfileImpl(TableProfileResult tpr) throws Exception;
 
+    /**
+     * Returns the columns of the given profile's table that have to be
+     * profiled, in table order. Columns whose earlier results are being
+     * reused are left out.
+     */
+    protected List<SQLColumn> getColumnsToProfile(TableProfileResult tpr) throws SQLObjectException {
+        Map<SQLColumn, ColumnProfileResult> reused = reusedColumns.get(tpr);
+        List<SQLColumn> columns = tpr.getProfiledObject().getColumns();
+        if (reused == null) return columns;
+        List<SQLColumn> toProfile = new ArrayList<SQLColumn>();
+        for (SQLColumn col : columns) {
+            if (!reused.containsKey(col)) {
+                toProfile.add(col);
+            }
+        }
+        return toProfile;
+    }
+
+    /**
+     * Returns the number of rows in the given profile's table if it was
+     * already counted before {@link #doProfileImpl(TableProfileResult)} was
+     * called, so the subclass does not have to count them again, or -1 if it
+     * was not.
+     */
+    protected long getKnownRowCount(TableProfileResult tpr) {
+        Long rowCount = knownRowCounts.get(tpr);
+        return rowCount == null ? -1 : rowCount.longValue();
+    }
+
+    /**
+     * Decides which columns of the given profile's previous result can be
+     * reused. Nothing can be reused unless the previous result has a change
+     * signature equal to the table's current one, and the table has a
+     * signature. When the profile's settings
+     * ask for incremental profiling, the current signature is stored in the
+     * profile result either way, so the next profile can be compared to it.
+     * 
+     * @return The previous column results to reuse, keyed by the column of
+     *         the table being profiled.
+     */
+    private Map<SQLColumn, ColumnProfileResult> findReusableColumns(TableProfileResult tpr) 
+            throws Exception {
+        if (tpr.getSettings() == null || !tpr.getSettings().isIncrementalProfiling()) {
+            return Collections.emptyMap();
+        }
+        ProfileChangeDetector.TableSignature tableSignature =
+            new ProfileChangeDetector(tpr.getSettings()).findTableSignature(tpr.getProfiledObject());
+        if (tableSignature.getRowCount() >= 0) {
+            knownRowCounts.put(tpr, tableSignature.getRowCount());
+        }
+        String signature = tableSignature.getValue();
+        tpr.setChangeSignature(signature);
+        
+        TableProfileResult previous = tpr.getPreviousResult();
+        if (previous == null || signature == null) return Collections.emptyMap();
+        if (!signature.equals(previous.getChangeSignature())) {
+            logger.debug("Table " + tpr.getProfiledObject() + " changed from " + previous.getChangeSignature() + 
+                    " to " + signature + ", profiling it again");
+            return Collections.emptyMap();
+        }
+        
+        Map<SQLColumn, ColumnProfileResult> reused = new HashMap<SQLColumn, ColumnProfileResult>();
+        for (SQLColumn col : tpr.getProfiledObject().getColumns()) {
+            String columnSignature = ProfileChangeDetector.computeColumnSignature(col);
+            for (ColumnProfileResult cpr : previous.getColumnProfileResults()) {
+                if (cpr.getProfiledObject().getUUID().equals(col.getUUID()) && cpr.getException() == null
+                        && columnSignature.equals(cpr.getColumnSignature())) {
+                    reused.put(col, cpr);
+                    break;
+                }
+            }
+        }
+        return reused;
+    }
+
+    /**
+     * Copies the reused column results into the given profile result at the
+     * positions of their columns, and records the definition of every
+     * column that was profiled.
+     */
+    private void finishColumnResults(TableProfileResult tpr, Map<SQLColumn, ColumnProfileResult> reused) 
+            throws SQLObjectException {
+        List<SQLColumn> columns = tpr.getProfiledObject().getColumns();
+        for (int i = 0; i < columns.size(); i++) {
+            SQLColumn col = columns.get(i);
+            ColumnProfileResult previous = reused.get(col);
+            if (previous != null) {
+                ColumnProfileResult copy = new ColumnProfileResult(previous, col);
+                copy.setParent(null);
+                tpr.addColumnProfileResult(copy, Math.min(i, tpr.getColumnProfileResults().size()));
+            }
+        }
+        for (ColumnProfileResult cpr : tpr.getColumnProfileResults()) {
+            if (cpr.getColumnSignature() == null) {
+                cpr.setColumnSignature(ProfileChangeDetector.computeColumnSignature(cpr.getProfiledObject()));
+            }
+        }
+    }
+
 }
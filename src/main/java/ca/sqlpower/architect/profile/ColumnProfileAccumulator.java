@@ -0,0 +1,301 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.sqlpower.architect.profile;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Collects the profile statistics of one column as its values are read, one
+ * row at a time. An accumulator never holds on to the rows it has seen, and
+ * the memory it uses is bounded. By default the distinct count is estimated
+ * with a {@link HyperLogLog} sketch of fixed size. When the profile settings
+ * turn approximate counts off, the distinct values are remembered so they can
+ * be counted exactly, but only up to {@link #MAX_EXACT_DISTINCT_VALUES} of
+ * them; a column with more distinct values than that has its distinct count
+ * estimated from then on.
+ * <p>
+ * Accumulators that were fed different rows of the same column, such as
+ * separate partitions of a table, can be combined with
+ * {@link #merge(ColumnProfileAccumulator)}.
+ * <p>
+ * This class is not thread safe.
+ */
+public class ColumnProfileAccumulator {
+
+    /**
+     * The number of counters kept for every value wanted in the "top n" list.
+     * Extra counters make the counts of the top values exact unless the column
+     * has a very large number of values that are almost as frequent as they are.
+     */
+    private static final int TOP_N_COUNTERS_PER_VALUE = 10;
+
+    /**
+     * The smallest number of "top n" counters kept for a column.
+     */
+    private static final int MIN_TOP_N_COUNTERS = 100;
+
+    /**
+     * The largest number of distinct values of a column that are remembered
+     * for an exact distinct count. Once a column has more, its values are
+     * moved to a {@link HyperLogLog} sketch and the distinct count becomes an
+     * estimate with its error recorded in the profile result.
+     */
+    public static final int MAX_EXACT_DISTINCT_VALUES = 100000;
+
+    private final ProfileSettings settings;
+
+    /**
+     * The number of values seen, including nulls.
+     */
+    private long valueCount;
+
+    private long nullCount;
+
+    /**
+     * For calculating the average value (nulls count as 0).
+     */
+    private double sum;
+
+    /**
+     * For calculating the average length, based on string length (nulls count as 0).
+     */
+    private double lengthSum;
+
+    /**
+     * The shortest and longest string lengths of the non-null values, or -1 if
+     * there have not been any non-null values yet.
+     */
+    private int minLength = -1;
+    private int maxLength = -1;
+
+    private Comparable minValue;
+
+    private Comparable maxValue;
+
+    /**
+     * The distinct values seen so far. Null if the settings say not to find
+     * the distinct count, or to estimate it, or if there were more than
+     * {@link #MAX_EXACT_DISTINCT_VALUES} of them.
+     */
+    private Set<Object> distinctValues;
+
+    /**
+     * Estimates the distinct count when the settings ask for approximate
+     * counts or the column has too many distinct values to count exactly.
+     * Null otherwise.
+     */
+    private HyperLogLog distinctSketch;
+
+    /**
+     * Tracks the most frequent values. Null if the settings say not to find
+     * the top values.
+     */
+    private final TopNValueCounter topValues;
+
+    /**
+     * Creates an accumulator that collects the statistics the given settings
+     * ask for. Min, max, average and length statistics are always collected
+     * because they cost next to nothing.
+     */
+    public ColumnProfileAccumulator(ProfileSettings settings) {
+        this.settings = settings;
+        if (!settings.isFindingDistinctCount()) {
+            distinctValues = null;
+            distinctSketch = null;
+        } else if (settings.isUsingApproximateCounts()) {
+            distinctValues = null;
+            distinctSketch = new HyperLogLog();
+        } else {
+            distinctValues = new HashSet<Object>();
+            distinctSketch = null;
+        }
+        if (settings.isFindingTopTen()) {
+            topValues = new TopNValueCounter(
+                    Math.max(MIN_TOP_N_COUNTERS, settings.getTopNCount() * TOP_N_COUNTERS_PER_VALUE));
+        } else {
+            topValues = null;
+        }
+    }
+
+    /**
+     * Accounts for the given value, which came from the next row of the
+     * column being profiled.
+     */
+    @SuppressWarnings("unchecked")
+    public void add(Object val) {
+        valueCount++;
+        if (distinctValues != null) {
+            distinctValues.add(val);
+            if (distinctValues.size() > MAX_EXACT_DISTINCT_VALUES) {
+                switchToDistinctSketch();
+            }
+        } else if (distinctSketch != null) {
+            distinctSketch.offer(val);
+        }
+        if (topValues != null) {
+            topValues.offer(val);
+        }
+
+        if (val == null) {
+            nullCount++;
+            return;
+        }
+
+        if (val instanceof Number) {
+            sum += ((Number) val).doubleValue();
+        }
+
+        int length = String.valueOf(val).length();
+        lengthSum += length;
+        if (minLength < 0 || length < minLength) minLength = length;
+        if (length > maxLength) maxLength = length;
+
+        if (val instanceof Comparable) {
+            Comparable cval = (Comparable) val;
+            if (minValue == null || (cval.compareTo(minValue) < 0)) {
+                minValue = cval;
+            }
+            if (maxValue == null || (cval.compareTo(maxValue) > 0)) {
+                maxValue = cval;
+            }
+        }
+    }
+
+    /**
+     * Adds the statistics collected by the given accumulator to this one. Both
+     * accumulators must have been created with the same settings.
+     */
+    @SuppressWarnings("unchecked")
+    public void merge(ColumnProfileAccumulator other) {
+        valueCount += other.valueCount;
+        nullCount += other.nullCount;
+        sum += other.sum;
+        lengthSum += other.lengthSum;
+        if (other.minLength >= 0 && (minLength < 0 || other.minLength < minLength)) {
+            minLength = other.minLength;
+        }
+        maxLength = Math.max(maxLength, other.maxLength);
+        if (other.minValue != null && (minValue == null || other.minValue.compareTo(minValue) < 0)) {
+            minValue = other.minValue;
+        }
+        if (other.maxValue != null && (maxValue == null || other.maxValue.compareTo(maxValue) > 0)) {
+            maxValue = other.maxValue;
+        }
+        if (distinctValues != null && other.distinctValues != null) {
+            distinctValues.addAll(other.distinctValues);
+            if (distinctValues.size() > MAX_EXACT_DISTINCT_VALUES) {
+                switchToDistinctSketch();
+            }
+        } else if (distinctValues != null || distinctSketch != null) {
+            if (distinctValues != null) {
+                switchToDistinctSketch();
+            }
+            if (other.distinctValues != null) {
+                for (Object val : other.distinctValues) {
+                    distinctSketch.offer(val);
+                }
+            } else {
+                distinctSketch.merge(other.distinctSketch);
+            }
+        }
+        if (topValues != null) {
+            topValues.merge(other.topValues);
+        }
+    }
+
+    /**
+     * Moves the distinct values remembered so far into a new sketch, which
+     * estimates the distinct count from then on.
+     */
+    private void switchToDistinctSketch() {
+        distinctSketch = new HyperLogLog();
+        for (Object val : distinctValues) {
+            distinctSketch.offer(val);
+        }
+        distinctValues = null;
+    }
+
+    /**
+     * Returns true if the distinct count this accumulator gives is exact.
+     */
+    public boolean isDistinctCountExact() {
+        return distinctValues != null;
+    }
+
+    /**
+     * Returns the number of values this accumulator has seen.
+     */
+    public long getValueCount() {
+        return valueCount;
+    }
+
+    /**
+     * Stores the statistics gathered so far in the given column profile
+     * result, including its "top n" value counts. The profile result's parent
+     * must already have its row count set.
+     */
+    public void populate(ColumnProfileResult cpr) {
+        populate(cpr, valueCount);
+    }
+
+    /**
+     * Stores the statistics gathered so far in the given column profile
+     * result, treating the values seen as a random sample of a table with
+     * <tt>populationSize</tt> rows. The null count and the "top n" value counts
+     * are scaled up to the whole table and their confidence intervals are
+     * stored as their errors. The distinct count is left as the number of
+     * distinct values in the sample, which is a lower bound; there is no
+     * dependable way to scale it up.
+     */
+    public void populate(ColumnProfileResult cpr, long populationSize) {
+        double n = valueCount == 0 ? 1.0 : (double) valueCount;
+        cpr.setAvgLength(lengthSum / n);
+        cpr.setAvgValue(sum / n);
+        if (distinctValues != null) {
+            cpr.setDistinctValueCount(distinctValues.size());
+            cpr.setDistinctValueCountError(0);
+        } else if (distinctSketch != null) {
+            cpr.setDistinctValueCount((int) Math.min(distinctSketch.estimate(), valueCount));
+            cpr.setDistinctValueCountError((int) distinctSketch.getErrorBound());
+        }
+        cpr.setMaxLength(Math.max(maxLength, 0));
+        cpr.setMaxValue(maxValue);
+        cpr.setMinLength(Math.max(minLength, 0));
+        cpr.setMinValue(minValue);
+        cpr.setNullCount((int) SampleEstimate.scale(nullCount, valueCount, populationSize));
+        cpr.setNullCountError((int) SampleEstimate.errorBound(nullCount, valueCount, populationSize));
+
+        if (topValues != null) {
+            long sumOfTopNCount = 0;
+            long maxError = 0;
+            for (TopNValueCounter.Entry entry : topValues.getTop(settings.getTopNCount())) {
+                long count = SampleEstimate.scale(entry.getCount(), valueCount, populationSize);
+                cpr.addValueCount(entry.getValue(), (int) count);
+                sumOfTopNCount += count;
+                long error = SampleEstimate.scale(entry.getError(), valueCount, populationSize)
+                    + SampleEstimate.errorBound(entry.getCount(), valueCount, populationSize);
+                maxError = Math.max(maxError, error);
+            }
+            cpr.setTopValueCountError((int) maxError);
+            long total = Math.max(valueCount, populationSize);
+            cpr.addValueCount(ColumnValueCount.OTHER_VALUE_OBJECT, (int) Math.max(0, total - sumOfTopNCount));
+        }
+    }
+}
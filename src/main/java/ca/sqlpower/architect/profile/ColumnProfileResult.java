@@ -52,6 +52,33 @@ public class ColumnProfileResult extends AbstractProfileResult<SQLColumn> {
     private int maxLength;
     private double avgLength;
     private int nullCount;
+    
+    /**
+     * The half-width of an interval around {@link #distinctValueCount} that
+     * contains the true distinct count with about 95% confidence. Zero when
+     * the distinct count is exact.
+     */
+    private int distinctValueCountError;
+    
+    /**
+     * The most any of the counts in {@link #topTen} can overestimate the true
+     * number of occurrences of its value. Zero when the counts are exact.
+     */
+    private int topValueCountError;
+    
+    /**
+     * The half-width of a 95% confidence interval around {@link #nullCount}
+     * when it was scaled up from a sample. Zero when every row was read.
+     */
+    private int nullCountError;
+    
+    /**
+     * The definition of the column when it was profiled, as given by
+     * {@link ProfileChangeDetector#computeColumnSignature(SQLColumn)}. Null if
+     * it is not known.
+     */
+    private String columnSignature;
+    
     private List<ColumnValueCount> topTen = new ArrayList<ColumnValueCount>();
     
     /**
@@ -76,6 +103,10 @@ public class ColumnProfileResult extends AbstractProfileResult<SQLColumn> {
         this.minLength = cprToCopy.minLength;
         this.minValue = cprToCopy.minValue;
         this.nullCount = cprToCopy.nullCount;
+        this.distinctValueCountError = cprToCopy.distinctValueCountError;
+        this.topValueCountError = cprToCopy.topValueCountError;
+        this.nullCountError = cprToCopy.nullCountError;
+        this.columnSignature = cprToCopy.columnSignature;
         setParent(cprToCopy.getParent());
         for (int i = 0; i < cprToCopy.getValueCount().size(); i++) {
             ColumnValueCount cvc = cprToCopy.getValueCount().get(i);
@@ -123,6 +154,73 @@ public class ColumnProfileResult extends AbstractProfileResult<SQLColumn> {
         firePropertyChange("distinctValueCount", oldVal, distinctValueCount);
     }
 
+    /**
+     * Returns the half-width of an interval around the distinct value count
+     * that contains the true count with about 95% confidence. This is 0 when
+     * the distinct value count is exact.
+     */
+    @Accessor
+    public int getDistinctValueCountError() {
+        return distinctValueCountError;
+    }
+
+    @Mutator
+    public void setDistinctValueCountError(int distinctValueCountError) {
+        int oldVal = this.distinctValueCountError;
+        this.distinctValueCountError = distinctValueCountError;
+        firePropertyChange("distinctValueCountError", oldVal, distinctValueCountError);
+    }
+
+    /**
+     * Returns the most that any of the counts of the top values of this column
+     * may overestimate the true number of occurrences of its value. This is 0
+     * when the counts are exact.
+     */
+    @Accessor
+    public int getTopValueCountError() {
+        return topValueCountError;
+    }
+
+    @Mutator
+    public void setTopValueCountError(int topValueCountError) {
+        int oldVal = this.topValueCountError;
+        this.topValueCountError = topValueCountError;
+        firePropertyChange("topValueCountError", oldVal, topValueCountError);
+    }
+
+    /**
+     * Returns the half-width of the 95% confidence interval of the null count,
+     * which is 0 unless the null count was estimated from a sample.
+     */
+    @Accessor
+    public int getNullCountError() {
+        return nullCountError;
+    }
+
+    @Mutator
+    public void setNullCountError(int nullCountError) {
+        int oldVal = this.nullCountError;
+        this.nullCountError = nullCountError;
+        firePropertyChange("nullCountError", oldVal, nullCountError);
+    }
+
+    /**
+     * Returns the signature of the column's definition at the time it was
+     * profiled. Incremental profiling reuses this result only while the
+     * column's current signature matches.
+     */
+    @Accessor
+    public String getColumnSignature() {
+        return columnSignature;
+    }
+
+    @Mutator
+    public void setColumnSignature(String columnSignature) {
+        String oldVal = this.columnSignature;
+        this.columnSignature = columnSignature;
+        firePropertyChange("columnSignature", oldVal, columnSignature);
+    }
+
     @Accessor
     public int getMaxLength() {
         return maxLength;
@@ -183,6 +281,7 @@ public class ColumnProfileResult extends AbstractProfileResult<SQLColumn> {
     public String toString() {
         return "[ColumnProfileResult:" +
         "; distinctValues: "+distinctValueCount+
+        (distinctValueCountError > 0 ? " +/- "+distinctValueCountError : "")+
         "; minLength: "+minLength+
         "; maxLength: "+maxLength+
         "; avgLength: "+avgLength+
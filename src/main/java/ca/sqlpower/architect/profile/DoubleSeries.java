@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.sqlpower.architect.profile;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * An append-only series of double values. Each value is kept as the
+ * exclusive or of its bits with the previous value's bits, bit-reversed and
+ * variable length encoded. A value equal to the previous one takes one byte,
+ * and whole numbers or values close to the previous one take a few; a run of
+ * NaN, which marks missing values, takes one byte per value.
+ * <p>
+ * This class is not thread safe.
+ */
+public class DoubleSeries {
+
+    private byte[] data = new byte[16];
+
+    /**
+     * The number of bytes of {@link #data} in use.
+     */
+    private int length;
+
+    private int size;
+
+    /**
+     * The bits of the most recently appended value.
+     */
+    private long lastBits;
+
+    public void add(double value) {
+        long bits = Double.doubleToLongBits(value);
+        // the sign, exponent and high mantissa bits rarely change, so after
+        // reversing they end up as the high zero bits the encoding drops
+        writeVarLong(Long.reverse(bits ^ lastBits));
+        lastBits = bits;
+        size++;
+    }
+
+    /**
+     * Returns the number of values in this series.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Decodes all the values of this series.
+     */
+    public double[] toArray() {
+        double[] values = new double[size];
+        int pos = 0;
+        long bits = 0;
+        for (int i = 0; i < size; i++) {
+            long encoded = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[pos++];
+                encoded |= (long) (b & 0x7f) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            bits ^= Long.reverse(encoded);
+            values[i] = Double.longBitsToDouble(bits);
+        }
+        return values;
+    }
+
+    /**
+     * Returns the number of bytes the encoded values take.
+     */
+    public int getEncodedLength() {
+        return length;
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(size);
+        out.writeLong(lastBits);
+        out.writeInt(length);
+        out.write(data, 0, length);
+    }
+
+    static DoubleSeries read(DataInputStream in) throws IOException {
+        DoubleSeries series = new DoubleSeries();
+        series.size = in.readInt();
+        series.lastBits = in.readLong();
+        series.length = in.readInt();
+        series.data = new byte[Math.max(16, series.length)];
+        in.readFully(series.data, 0, series.length);
+        return series;
+    }
+
+    private void writeVarLong(long v) {
+        if (length + 10 > data.length) {
+            byte[] bigger = new byte[data.length * 2];
+            System.arraycopy(data, 0, bigger, 0, length);
+            data = bigger;
+        }
+        while ((v & ~0x7fL) != 0) {
+            data[length++] = (byte) ((v & 0x7f) | 0x80);
+            v >>>= 7;
+        }
+        data[length++] = (byte) v;
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.sqlpower.architect.profile;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * Estimates the number of distinct values in a stream using a fixed amount of
+ * memory, following the HyperLogLog algorithm of Flajolet et al. with the
+ * usual linear counting correction for small cardinalities.
+ * <p>
+ * With precision <i>p</i> the sketch keeps 2<sup><i>p</i></sup> one-byte
+ * registers and the relative standard error of the estimate is about
+ * 1.04/sqrt(2<sup><i>p</i></sup>). Two sketches with the same precision can be
+ * merged, which gives exactly the sketch that would have been built from both
+ * streams together; this is what allows partitions of a table to be profiled
+ * separately.
+ * <p>
+ * Null is counted as one distinct value, which matches the exact distinct
+ * count done by {@link ColumnProfileAccumulator}.
+ * <p>
+ * This class is not thread safe.
+ */
+public class HyperLogLog {
+
+    /**
+     * The precision used when none is given: 16384 registers, for a relative
+     * standard error of about 0.8%.
+     */
+    public static final int DEFAULT_PRECISION = 14;
+
+    /**
+     * The hash used for null values.
+     */
+    private static final long NULL_HASH = 0x5bd1e9955bd1e995L;
+
+    private final int precision;
+
+    private final byte[] registers;
+
+    /**
+     * Creates an empty sketch with the given precision, which must be between
+     * 4 and 18 inclusive.
+     */
+    public HyperLogLog(int precision) {
+        if (precision < 4 || precision > 18) {
+            throw new IllegalArgumentException("Precision must be between 4 and 18, was " + precision);
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    public HyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    /**
+     * Counts the given value.
+     */
+    public void offer(Object value) {
+        offerHash(hash(value));
+    }
+
+    private void offerHash(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        // the remaining bits, with a sentinel so the rank can't exceed 64 - precision + 1
+        long rest = (hash << precision) | (1L << (precision - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+        }
+    }
+
+    /**
+     * Folds the given sketch into this one. Afterwards this sketch estimates
+     * the number of distinct values in the union of both streams.
+     *
+     * @throws IllegalArgumentException
+     *             if the sketches have different precisions.
+     */
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Can't merge sketches of precision " +
+                    precision + " and " + other.precision);
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    /**
+     * Returns the estimated number of distinct values counted.
+     */
+    public long estimate() {
+        int m = registers.length;
+        double sum = 0.0;
+        int zeros = 0;
+        for (byte r : registers) {
+            sum += 1.0 / (1L << r);
+            if (r == 0) zeros++;
+        }
+        double estimate = alpha(m) * m * (double) m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Returns the relative standard error of the estimates made by this
+     * sketch.
+     */
+    public double getRelativeStandardError() {
+        return 1.04 / Math.sqrt(registers.length);
+    }
+
+    /**
+     * Returns the half-width of an interval around {@link #estimate()} that
+     * contains the true distinct count about 95% of the time (two standard
+     * errors).
+     */
+    public long getErrorBound() {
+        return (long) Math.ceil(2.0 * getRelativeStandardError() * estimate());
+    }
+
+    private static double alpha(int m) {
+        switch (m) {
+        case 16: return 0.673;
+        case 32: return 0.697;
+        case 64: return 0.709;
+        default: return 0.7213 / (1.0 + 1.079 / m);
+        }
+    }
+
+    /**
+     * Computes a well mixed 64 bit hash of the given value. Numbers with the
+     * same value hash the same regardless of their Java type or scale, so
+     * that the same column read through different drivers gives the same
+     * sketch: a BigDecimal of 42.00 hashes like the Long 42. Byte arrays are
+     * hashed by their contents and everything else through its string form.
+     */
+    static long hash(Object value) {
+        if (value == null) {
+            return mix(NULL_HASH);
+        } else if (value instanceof Long || value instanceof Integer
+                || value instanceof Short || value instanceof Byte) {
+            return mix(((Number) value).longValue());
+        } else if (value instanceof BigInteger) {
+            return hashDecimal(new BigDecimal((BigInteger) value));
+        } else if (value instanceof BigDecimal) {
+            return hashDecimal((BigDecimal) value);
+        } else if (value instanceof byte[]) {
+            return hashBytes((byte[]) value);
+        } else {
+            return hashString(value.toString());
+        }
+    }
+
+    /**
+     * Hashes a decimal by its value alone. Integral values that fit in a long
+     * hash like that long; anything else hashes through its plain string
+     * form without trailing zeros.
+     */
+    private static long hashDecimal(BigDecimal value) {
+        BigDecimal stripped = value.signum() == 0 ? BigDecimal.ZERO : value.stripTrailingZeros();
+        if (stripped.scale() <= 0) {
+            BigInteger integral = stripped.toBigInteger();
+            if (integral.bitLength() < 64) {
+                return mix(integral.longValue());
+            }
+        }
+        return hashString(stripped.toPlainString());
+    }
+
+    private static long hashString(String s) {
+        // FNV-1a over the UTF-16 code units, then mixed for better avalanche
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return mix(h ^ s.length());
+    }
+
+    private static long hashBytes(byte[] bytes) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return mix(h ^ bytes.length);
+    }
+
+    /**
+     * The 64 bit finalizer of MurmurHash3.
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
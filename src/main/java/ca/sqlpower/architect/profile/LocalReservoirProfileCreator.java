@@ -19,35 +19,55 @@
 
 package ca.sqlpower.architect.profile;
 
+import java.math.BigDecimal;
 import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Random;
 
 import org.apache.log4j.Logger;
 
 import ca.sqlpower.architect.ddl.DDLUtils;
+import ca.sqlpower.architect.profile.ProfileSettings.SamplingMode;
 import ca.sqlpower.sqlobject.SQLObjectException;
 import ca.sqlpower.sqlobject.SQLColumn;
 import ca.sqlpower.sqlobject.SQLTable;
 import ca.sqlpower.util.MonitorableImpl;
-import ca.sqlpower.util.reservoir.BasicReservoir;
-import ca.sqlpower.util.reservoir.JDBCReserviorDataSource;
-import ca.sqlpower.util.reservoir.Reservoir;
-import ca.sqlpower.util.reservoir.ReservoirDataException;
 
 /**
- * A profile creator that takes a statistical sample of the rows in the table
- * and then performs the profiling operation on that sample. The profiling is
- * done inside the local JVM, which means that a known set of aggregates will be
- * computed for each data type, regardless of the remote database platform's
- * support for aggregating different data types. For example, this profiler will
- * always calculate the average date of a date column.
+ * A profile creator that reads the rows of the table into the local JVM and
+ * performs the profiling operation there. The profiling is done inside the
+ * local JVM, which means that a known set of aggregates will be computed for
+ * each data type, regardless of the remote database platform's support for
+ * aggregating different data types. For example, this profiler will always
+ * calculate the average date of a date column.
+ * <p>
+ * The rows are streamed through a single query and every column's statistics
+ * are updated as each row arrives (see {@link ColumnProfileAccumulator}), so
+ * the rows themselves are never held in memory. This keeps very wide tables
+ * and very long tables from exhausting the heap. If the profile settings ask
+ * for approximate counts ({@link ProfileSettings#isUsingApproximateCounts()}),
+ * the distinct count of each column is estimated with a fixed-size sketch
+ * instead of by remembering every distinct value.
+ * <p>
+ * The profile settings can limit the rows profiled to a sample (see
+ * {@link ProfileSettings#getSamplingMode()}), and by default a fixed number
+ * of rows is profiled. Rows are picked at random from a full scan, so the
+ * table's row count comes from the scan itself. When the table's row count is
+ * known or estimated beforehand, a fixed number of rows is picked row by row
+ * like a percentage, with the percentage that gives about that many rows, and
+ * the rows go straight to the accumulators. Otherwise only the column values
+ * of the rows in a reservoir are kept until the scan ends. The
+ * database's own sampling clause avoids the full scan, and its sample is
+ * scaled up to the row count in the catalog statistics. The null counts and
+ * "top n" value counts of these random samples are scaled up to the whole
+ * table with their confidence intervals recorded as errors. A time budget
+ * only stops the scan early, so its results describe the rows read and are
+ * not scaled.
  * <p>
  * Unless the network connection to the remote database is very slow, expect
  * this profile creator to be much faster than the
@@ -58,14 +78,19 @@ public class LocalReservoirProfileCreator extends AbstractTableProfileCreator {
     private static final Logger logger = Logger.getLogger(LocalReservoirProfileCreator.class);
     
     /**
-     * The settings for this profile creator.
+     * The number of rows to ask the JDBC driver to fetch in each round trip.
      */
-    private final ProfileSettings settings;
+    private static final int FETCH_SIZE = 1000;
 
     /**
-     * The number of rows that the reservoir should keep for us to profile.
+     * The number of rows to read between checks for cancellation.
      */
-    private int sampleSize = 50000;
+    private static final int CANCEL_CHECK_INTERVAL = 1000;
+    
+    /**
+     * The settings for this profile creator.
+     */
+    private final ProfileSettings settings;
 
     public LocalReservoirProfileCreator(ProfileSettings settings) {
         if (settings == null) {
@@ -75,42 +100,158 @@ public class LocalReservoirProfileCreator extends AbstractTableProfileCreator {
     }
     
     @Override
-    protected boolean doProfileImpl(TableProfileResult tpr) 
-    throws ReservoirDataException, SQLException, SQLObjectException {
+    protected boolean doProfileImpl(TableProfileResult tpr) throws SQLException, SQLObjectException {
         Connection con = null;
-        Object[][] sample = null;
+        Statement stmt = null;
+        ResultSet rs = null;
         SQLTable table = tpr.getProfiledObject();
+        List<SQLColumn> columns = getColumnsToProfile(tpr);
 
         MonitorableImpl pm = (MonitorableImpl) tpr.getProgressMonitor();
-        pm.setJobSize(table.getColumns().size() + 1);
-        pm.setProgress(1);
+        pm.setJobSize(columns.size() + 1);
+        pm.setProgress(0);
+
+        ColumnProfileAccumulator[] accumulators = new ColumnProfileAccumulator[columns.size()];
+        for (int i = 0; i < accumulators.length; i++) {
+            accumulators[i] = new ColumnProfileAccumulator(settings);
+        }
+        SamplingMode mode = settings.getSamplingMode() == null ? SamplingMode.FIXED_ROWS : settings.getSamplingMode();
+        RowSampler sampler = null;
+        
+        /*
+         * The values of each column in the rows of the reservoir, used only
+         * for a fixed number of rows when the table's size isn't known.
+         */
+        List<List<Object>> reservoir = null;
+        int rowCount = 0;
+        
+        /*
+         * The number of rows the sample is scaled up to, or -1 if the counts
+         * describe only the rows read.
+         */
+        long populationSize = -1;
+        boolean timedOut = false;
 
         try {
             con = table.getParentDatabase().getConnection();
+            String from = DDLUtils.toQualifiedName(table);
+            long deadline = Long.MAX_VALUE;
+            double fraction = Math.min(1.0, settings.getSamplePercentage() / 100.0);
+            if (mode == SamplingMode.FIXED_ROWS) {
+                long expectedRows = getKnownRowCount(tpr);
+                if (expectedRows < 0) {
+                    expectedRows = estimateRowCount(con, table);
+                }
+                if (expectedRows > settings.getSampleRows()) {
+                    sampler = RowSampler.bernoulli((double) settings.getSampleRows() / expectedRows, new Random());
+                } else if (expectedRows < 0) {
+                    sampler = RowSampler.reservoir(settings.getSampleRows(), new Random());
+                    reservoir = new ArrayList<List<Object>>();
+                    for (int i = 0; i < accumulators.length; i++) {
+                        reservoir.add(new ArrayList<Object>());
+                    }
+                }
+                // a table known to be no bigger than the sample is read whole
+            } else if (mode == SamplingMode.PERCENTAGE) {
+                sampler = RowSampler.bernoulli(fraction, new Random());
+            } else if (mode == SamplingMode.TIME_BUDGET) {
+                deadline = System.currentTimeMillis() + settings.getSampleTimeBudgetSeconds() * 1000L;
+            } else if (mode == SamplingMode.TABLESAMPLE) {
+                String clause = tableSampleClause(con, settings.getSamplePercentage());
+                if (clause != null) {
+                    from = from + " " + clause;
+                    populationSize = getKnownRowCount(tpr);
+                    if (populationSize < 0) {
+                        populationSize = estimateRowCount(con, table);
+                    }
+                } else {
+                    logger.debug("No sampling clause for this platform, sampling " + 
+                            settings.getSamplePercentage() + "% of the rows of a full scan instead");
+                    sampler = RowSampler.bernoulli(fraction, new Random());
+                }
+            }
+            
             StringBuilder sql = new StringBuilder();
             sql.append("SELECT ");
             boolean first = true;
-            for (SQLColumn col : table.getColumns()) {
+            for (SQLColumn col : columns) {
                 if (!first) sql.append(", ");
                 sql.append(col.getName());
                 first = false;
             }
-            sql.append(" FROM ").append(DDLUtils.toQualifiedName(table));
+            sql.append(" FROM ").append(from);
             
             logger.debug("About to execute profiling query: " + sql);
-            try {
-                JDBCReserviorDataSource ds = new JDBCReserviorDataSource(con, sql.toString());
-                Reservoir<Object[]> r = new BasicReservoir<Object[]>();
-                sample = r.getSample(ds, sampleSize);
-                tpr.setRowCount(ds.getRowCount());
-            } catch (Throwable ex) {
-                logger.error("something bad happened", ex);
-                throw new RuntimeException(ex);
+            stmt = con.createStatement();
+            stmt.setFetchSize(FETCH_SIZE);
+            rs = stmt.executeQuery(sql.toString());
+            pm.setProgress(1);
+            
+            long rowsRead = 0;
+            while (rs.next()) {
+                rowsRead++;
+                int slot = sampler == null ? 0 : sampler.nextRow();
+                if (slot >= 0 && reservoir != null) {
+                    for (int i = 0; i < accumulators.length; i++) {
+                        List<Object> values = reservoir.get(i);
+                        if (slot < values.size()) {
+                            values.set(slot, rs.getObject(i + 1));
+                        } else {
+                            values.add(rs.getObject(i + 1));
+                        }
+                    }
+                } else if (slot >= 0) {
+                    for (int i = 0; i < accumulators.length; i++) {
+                        accumulators[i].add(rs.getObject(i + 1));
+                    }
+                    rowCount++;
+                }
+                if (rowsRead % CANCEL_CHECK_INTERVAL == 0) {
+                    if (pm.isCancelled()) {
+                        logger.debug("Profile of " + table.getName() + " cancelled after " + rowsRead + " rows");
+                        return false;
+                    }
+                    if (System.currentTimeMillis() >= deadline) {
+                        logger.debug("Time budget for " + table.getName() + " used up after " + rowsRead + 
+                                " rows, the profile only describes those rows");
+                        timedOut = true;
+                        break;
+                    }
+                }
+            }
+            
+            if (reservoir != null) {
+                rowCount = (int) Math.min(settings.getSampleRows(), sampler.getRowsSeen());
+                for (int i = 0; i < accumulators.length; i++) {
+                    List<Object> values = reservoir.get(i);
+                    for (Object value : values) {
+                        accumulators[i].add(value);
+                    }
+                    // let the values go as soon as they're counted
+                    reservoir.set(i, null);
+                }
+            }
+            if (sampler != null) {
+                populationSize = sampler.getRowsSeen();
+            } else if (populationSize >= 0 && populationSize < rowCount) {
+                // the catalog's estimate is out of date or missing, so scale
+                // by the fraction of the table the database was asked for
+                populationSize = fraction > 0 ? Math.round(rowCount / fraction) : rowCount;
             }
             
-            logger.debug("Finished sampling result set. Row count=" + tpr.getRowCount() + "; sample size = " + sample.length);
+            logger.debug("Finished reading result set. Rows read=" + rowsRead + ", rows sampled=" + rowCount);
             
         } finally {
+            try {
+                if (rs != null) rs.close();
+            } catch (SQLException ex) {
+                logger.error("Failed to close result set. Squishing this exception: ", ex);
+            }
+            try {
+                if (stmt != null) stmt.close();
+            } catch (SQLException ex) {
+                logger.error("Failed to close statement. Squishing this exception: ", ex);
+            }
             try {
                 if (con != null) con.close();
             } catch (SQLException ex) {
@@ -119,110 +260,83 @@ public class LocalReservoirProfileCreator extends AbstractTableProfileCreator {
         }
         
         // now the columns (notice we have already released the connection because it's no longer required)
-        for (SQLColumn col : table.getColumns()) {
-            tpr.addColumnProfileResult(new ColumnProfileResult(col));
+        boolean sampled = !timedOut && populationSize > rowCount;
+        if (sampled) {
+            tpr.setRowCount((int) Math.min(Integer.MAX_VALUE, populationSize));
+            tpr.setSampledRowCount(rowCount);
+        } else {
+            tpr.setRowCount(rowCount);
+            tpr.setSampledRowCount(0);
         }
-        profileColumnsFromSample(tpr, sample, pm);
-        return true;
-    }
-
-    private void profileColumnsFromSample(TableProfileResult tpr, Object[][] sample, MonitorableImpl pm) {
-        // Profile each column in a separate pass so we only have to track one set
-        // of "top n values" at a time.
-        if (sample.length > 0) {
-            for (int col = 0; col < sample[0].length; col++) {
-                pm.setProgress(col + 1);
-                ColumnProfileResult cpr = tpr.getColumnProfileResults().get(col);
+        for (int i = 0; i < columns.size(); i++) {
+            ColumnProfileResult cpr = new ColumnProfileResult(columns.get(i));
+            tpr.addColumnProfileResult(cpr);
+            if (rowCount > 0) {
                 cpr.setCreateStartTime(System.currentTimeMillis());
-                
-                // this map is for counting distinct values as well as finding the "top n" values
-                Map<Object, Integer> valueCounts = new HashMap<Object, Integer>();
-                
-                // for calculating the average value (nulls count as 0)
-                double sum = 0.0;
-    
-                // for calculating the average length, based on string length (nulls count as 0)
-                double lengthSum = 0.0;
-                
-                int minLength = 0;
-                int maxLength = 0;
-                
-                Comparable minValue = null;
-                Comparable maxValue = null;
-                
-                int nullCount = 0;
-                
-                for (int row = 0; row < sample.length; row++) {
-                    Object val = sample[row][col];
-                    String sval = (val == null ? null : String.valueOf(val));
-                    
-                    Integer oldCount = valueCounts.get(val);
-                    if (oldCount == null) oldCount = new Integer(0);
-                    valueCounts.put(val, oldCount + 1);
-                    
-                    if (val == null) {
-                        nullCount++;
-                    } else if (val instanceof Number) {
-                        sum += ((Number) val).doubleValue();
-                    }
-                    
-                    if (sval != null) {
-                        lengthSum += sval.length();
-                    }
-                    
-                    if (val instanceof Comparable) {
-                        Comparable cval = (Comparable) val;
-                        if (minValue == null || (cval.compareTo(minValue) < 0)) {
-                            minValue = cval;
-                        }
-                        if (maxValue == null || (cval.compareTo(maxValue) > 0)) {
-                            maxValue = cval;
-                        }
-                    }
-                }
-                
-                // TODO: scale results by the ratio of the sample size to the total row count
-                // (the actual row count is in tpr.getRowCount())
-                
-                cpr.setAvgLength(lengthSum / ((double) sample.length));
-                cpr.setAvgValue(sum / ((double) sample.length));
-                cpr.setDistinctValueCount(valueCounts.size());
-                cpr.setMaxLength(maxLength);
-                cpr.setMaxValue(maxValue);
-                cpr.setMinLength(minLength);
-                cpr.setMinValue(minValue);
-                cpr.setNullCount(nullCount);
-                
-                List<Map.Entry<Object, Integer>> topNList = new ArrayList<Entry<Object,Integer>>(valueCounts.entrySet());
-                Collections.sort(topNList, new TopNValuesComparator());
-                
-                int sumOfTopNCount = 0;
-                for (int i = 0; i < settings.getTopNCount() && i < topNList.size(); i++) {
-                    Entry<Object, Integer> entry = topNList.get(i);
-                    cpr.addValueCount(entry.getKey(), entry.getValue().intValue());
-                    sumOfTopNCount += entry.getValue().intValue();
+                if (sampled) {
+                    accumulators[i].populate(cpr, populationSize);
+                } else {
+                    accumulators[i].populate(cpr);
                 }
-                
-                cpr.addValueCount(ColumnValueCount.OTHER_VALUE_OBJECT, sample.length - sumOfTopNCount);
-                
                 cpr.setCreateEndTime(System.currentTimeMillis());
-    
             }
+            pm.setProgress(i + 2);
         }
+        return true;
     }
 
     /**
-     * Compares the two map entries by their value.  This allows us to sort a list
-     * of entries by frequency of occurrence.
+     * Returns the number of rows the database's catalog statistics give for
+     * the table, or -1 if it has none. This avoids counting the rows of a
+     * table whose rows are sampled, which would read the whole table an
+     * extra time.
      */
-    class TopNValuesComparator implements Comparator<Map.Entry<Object, Integer>> {
+    private long estimateRowCount(Connection con, SQLTable table) {
+        ResultSet rs = null;
+        try {
+            rs = con.getMetaData().getIndexInfo(table.getCatalogName(), table.getSchemaName(), 
+                    table.getName(), false, true);
+            while (rs.next()) {
+                if (rs.getShort("TYPE") == DatabaseMetaData.tableIndexStatistic) {
+                    return rs.getLong("CARDINALITY");
+                }
+            }
+            return -1;
+        } catch (SQLException ex) {
+            logger.debug("Couldn't read the row count estimate of " + table.getName(), ex);
+            return -1;
+        } finally {
+            try {
+                if (rs != null) rs.close();
+            } catch (SQLException ex) {
+                logger.error("Failed to close index info. Squishing this exception: ", ex);
+            }
+        }
+    }
 
-        public int compare(Entry<Object, Integer> o1, Entry<Object, Integer> o2) {
-            return o2.getValue().compareTo(o1.getValue());
+    /**
+     * Returns the clause that makes the database return a random sample of
+     * about the given percentage of a table's rows, to follow the table name
+     * in the FROM clause. Block level sampling is used where there is a
+     * choice, since it is the kind that doesn't read the whole table. Returns
+     * null if the platform has no such clause.
+     */
+    private String tableSampleClause(Connection con, double percentage) throws SQLException {
+        String product = con.getMetaData().getDatabaseProductName();
+        String p = BigDecimal.valueOf(Math.min(100.0, Math.max(0.000001, percentage)))
+            .stripTrailingZeros().toPlainString();
+        if (product == null) {
+            return null;
+        } else if (product.startsWith("PostgreSQL") || product.startsWith("DB2")) {
+            return "TABLESAMPLE SYSTEM (" + p + ")";
+        } else if (product.startsWith("Microsoft SQL Server")) {
+            return "TABLESAMPLE SYSTEM (" + p + " PERCENT)";
+        } else if (product.startsWith("Oracle")) {
+            return "SAMPLE BLOCK (" + p + ")";
         }
-        
+        return null;
     }
-    
+
     @Override
     public String toString() {
         return "Local Reservoir";
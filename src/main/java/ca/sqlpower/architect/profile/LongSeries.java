@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.sqlpower.architect.profile;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * An append-only series of long values, kept as the variable length encoded
+ * differences between consecutive values. A series of counts or times that
+ * change slowly takes one or two bytes per value instead of eight.
+ * <p>
+ * This class is not thread safe.
+ */
+public class LongSeries {
+
+    private byte[] data = new byte[16];
+
+    /**
+     * The number of bytes of {@link #data} in use.
+     */
+    private int length;
+
+    private int size;
+
+    /**
+     * The most recently appended value, which the next value is encoded
+     * relative to.
+     */
+    private long last;
+
+    public void add(long value) {
+        long delta = value - last;
+        // zig-zag encoding, so small negative deltas are small too
+        writeVarLong((delta << 1) ^ (delta >> 63));
+        last = value;
+        size++;
+    }
+
+    /**
+     * Returns the number of values in this series.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the last value added, or 0 if the series is empty.
+     */
+    public long getLast() {
+        return last;
+    }
+
+    /**
+     * Decodes all the values of this series.
+     */
+    public long[] toArray() {
+        long[] values = new long[size];
+        int pos = 0;
+        long value = 0;
+        for (int i = 0; i < size; i++) {
+            long encoded = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[pos++];
+                encoded |= (long) (b & 0x7f) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            value += (encoded >>> 1) ^ -(encoded & 1);
+            values[i] = value;
+        }
+        return values;
+    }
+
+    /**
+     * Returns the number of bytes the encoded values take.
+     */
+    public int getEncodedLength() {
+        return length;
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(size);
+        out.writeLong(last);
+        out.writeInt(length);
+        out.write(data, 0, length);
+    }
+
+    static LongSeries read(DataInputStream in) throws IOException {
+        LongSeries series = new LongSeries();
+        series.size = in.readInt();
+        series.last = in.readLong();
+        series.length = in.readInt();
+        series.data = new byte[Math.max(16, series.length)];
+        in.readFully(series.data, 0, series.length);
+        return series;
+    }
+
+    private void writeVarLong(long v) {
+        if (length + 10 > data.length) {
+            byte[] bigger = new byte[data.length * 2];
+            System.arraycopy(data, 0, bigger, 0, length);
+            data = bigger;
+        }
+        while ((v & ~0x7fL) != 0) {
+            data[length++] = (byte) ((v & 0x7f) | 0x80);
+            v >>>= 7;
+        }
+        data[length++] = (byte) v;
+    }
+}
@@ -0,0 +1,417 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+package ca.sqlpower.architect.profile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.regex.Pattern;
+
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.architect.ArchitectSession;
+import ca.sqlpower.architect.ArchitectSessionContext;
+import ca.sqlpower.architect.ArchitectSessionContextImpl;
+import ca.sqlpower.architect.ArchitectSessionImpl;
+import ca.sqlpower.architect.profile.ProfileSettings.SamplingMode;
+import ca.sqlpower.architect.profile.output.AbstractStreamingProfileFormat;
+import ca.sqlpower.architect.profile.output.ProfileCSVFormat;
+import ca.sqlpower.architect.profile.output.ProfileHTMLFormat;
+import ca.sqlpower.architect.profile.output.ProfileJSONLinesFormat;
+import ca.sqlpower.architect.profile.output.ProfilePDFFormat;
+import ca.sqlpower.architect.profile.output.StreamingProfileFormat;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLObjectException;
+import ca.sqlpower.sqlobject.SQLObjectUtils;
+import ca.sqlpower.sqlobject.SQLTable;
+
+/**
+ * Profiles the tables of a saved project without a user interface, so
+ * profiling can be scheduled on a server close to the databases. The project
+ * is loaded with its {@link ca.sqlpower.architect.ProjectLoader}, the selected
+ * tables of its source connections are profiled by its
+ * {@link ProfileManagerImpl} using the project's profile settings, and the
+ * result of each table is written with one of the streaming profile formats
+ * as soon as the table is done.
+ * <p>
+ * Run with no arguments for a description of the command line options.
+ */
+public class ProfileBatchRunner {
+
+    private static final Logger logger = Logger.getLogger(ProfileBatchRunner.class);
+
+    /**
+     * The output formats the runner can write.
+     */
+    public enum OutputFormat {
+        CSV, HTML, PDF, JSONL;
+
+        AbstractStreamingProfileFormat createFormat() {
+            switch (this) {
+            case CSV:
+                return new ProfileCSVFormat();
+            case HTML:
+                return new ProfileHTMLFormat("utf-8");
+            case PDF:
+                return new ProfilePDFFormat();
+            case JSONL:
+                return new ProfileJSONLinesFormat();
+            default:
+                throw new IllegalStateException("Unknown format " + this);
+            }
+        }
+    }
+
+    private File projectFile;
+    private String plDotIniPath;
+    private OutputFormat format = OutputFormat.CSV;
+    private File outputFile;
+    private final List<String> databaseNames = new ArrayList<String>();
+    private final List<Pattern> tablePatterns = new ArrayList<Pattern>();
+    private int threads;
+    private int threadsPerDatabase;
+    private SamplingMode samplingMode;
+    private int sampleRows;
+    private boolean recordingHistory;
+    private PrintStream progress = System.err;
+
+    /**
+     * The session the project was loaded into. Profiling threads hand their
+     * results to this session's foreground, which this class serializes
+     * because there is no event dispatch thread to do it.
+     */
+    private ArchitectSession session;
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        ProfileBatchRunner runner = new ProfileBatchRunner();
+        try {
+            runner.parseArguments(args);
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            printUsage(System.err);
+            System.exit(2);
+        }
+        int failures;
+        try {
+            failures = runner.run();
+        } catch (Exception ex) {
+            logger.error("Profiling failed", ex);
+            System.err.println("Profiling failed: " + ex);
+            System.exit(1);
+            return;
+        }
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    static void printUsage(PrintStream out) {
+        out.println("Usage: ProfileBatchRunner [options] project.architect");
+        out.println("  -plini <file>       The PL.INI file holding the project's connections");
+        out.println("  -database <name>    Only profile tables of this source connection (repeatable)");
+        out.println("  -table <regex>      Only profile tables whose name or catalog.schema.table");
+        out.println("                      name matches (repeatable; default all tables)");
+        out.println("  -format <type>      csv, html, pdf or jsonl (default csv)");
+        out.println("  -output <file>      Where to write the results (default standard output)");
+        out.println("  -threads <n>        Tables profiled at once (default from the project)");
+        out.println("  -threadsPerDatabase <n>");
+        out.println("                      Tables profiled at once per connection (default from the project)");
+        out.println("  -sample <rows>      Profile at most this many rows of each table");
+        out.println("  -recordHistory      Add the results to the project's profile history file");
+    }
+
+    /**
+     * Sets this runner's options from the command line arguments.
+     * 
+     * @throws IllegalArgumentException
+     *             if the arguments are not valid. The message describes the
+     *             problem.
+     */
+    void parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("-plini")) {
+                plDotIniPath = argumentValue(args, ++i, arg);
+            } else if (arg.equals("-database")) {
+                databaseNames.add(argumentValue(args, ++i, arg));
+            } else if (arg.equals("-table")) {
+                tablePatterns.add(Pattern.compile(argumentValue(args, ++i, arg), Pattern.CASE_INSENSITIVE));
+            } else if (arg.equals("-format")) {
+                String value = argumentValue(args, ++i, arg);
+                try {
+                    format = OutputFormat.valueOf(value.toUpperCase());
+                } catch (IllegalArgumentException ex) {
+                    throw new IllegalArgumentException("Unknown format " + value);
+                }
+            } else if (arg.equals("-output")) {
+                outputFile = new File(argumentValue(args, ++i, arg));
+            } else if (arg.equals("-threads")) {
+                threads = intArgumentValue(args, ++i, arg);
+            } else if (arg.equals("-threadsPerDatabase")) {
+                threadsPerDatabase = intArgumentValue(args, ++i, arg);
+            } else if (arg.equals("-sample")) {
+                samplingMode = SamplingMode.FIXED_ROWS;
+                sampleRows = intArgumentValue(args, ++i, arg);
+            } else if (arg.equals("-recordHistory")) {
+                recordingHistory = true;
+            } else if (arg.startsWith("-")) {
+                throw new IllegalArgumentException("Unknown option " + arg);
+            } else if (projectFile == null) {
+                projectFile = new File(arg);
+            } else {
+                throw new IllegalArgumentException("Only one project can be profiled at a time");
+            }
+        }
+        if (projectFile == null) {
+            throw new IllegalArgumentException("No project file given");
+        }
+    }
+
+    File getProjectFile() {
+        return projectFile;
+    }
+
+    OutputFormat getFormat() {
+        return format;
+    }
+
+    File getOutputFile() {
+        return outputFile;
+    }
+
+    List<String> getDatabaseNames() {
+        return databaseNames;
+    }
+
+    int getThreads() {
+        return threads;
+    }
+
+    int getThreadsPerDatabase() {
+        return threadsPerDatabase;
+    }
+
+    SamplingMode getSamplingMode() {
+        return samplingMode;
+    }
+
+    int getSampleRows() {
+        return sampleRows;
+    }
+
+    boolean isRecordingHistory() {
+        return recordingHistory;
+    }
+
+    void setProgress(PrintStream progress) {
+        this.progress = progress;
+    }
+
+    private static String argumentValue(String[] args, int i, String option) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[i];
+    }
+
+    private static int intArgumentValue(String[] args, int i, String option) {
+        String value = argumentValue(args, i, option);
+        try {
+            int intValue = Integer.parseInt(value);
+            if (intValue < 1) {
+                throw new IllegalArgumentException(option + " must be at least 1");
+            }
+            return intValue;
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException(option + " must be a number, not " + value);
+        }
+    }
+
+    /**
+     * Loads the project, profiles the selected tables and writes the results.
+     * 
+     * @return The number of tables that could not be profiled.
+     */
+    public int run() throws Exception {
+        ArchitectSessionContext context = new ArchitectSessionContextImpl(plDotIniPath, false);
+        session = new ArchitectSessionImpl(context, projectFile.getName()) {
+            @Override
+            public void runInForeground(Runnable runner) {
+                synchronized (ProfileBatchRunner.this) {
+                    runner.run();
+                }
+            }
+        };
+        try {
+            log("Loading " + projectFile);
+            InputStream in = new BufferedInputStream(new FileInputStream(projectFile));
+            try {
+                session.getProjectLoader().load(in, context.getPlDotIni());
+            } finally {
+                in.close();
+            }
+            session.getProjectLoader().setFile(projectFile);
+
+            ProfileManager profileManager = session.getProfileManager();
+            ProfileSettings settings = profileManager.getDefaultProfileSettings();
+            if (threads > 0) {
+                settings.setMaxConcurrentProfiles(threads);
+            }
+            if (threadsPerDatabase > 0) {
+                settings.setMaxConcurrentProfilesPerDataSource(threadsPerDatabase);
+            }
+            if (samplingMode != null) {
+                settings.setSamplingMode(samplingMode);
+                settings.setSampleRows(sampleRows);
+            }
+
+            List<SQLTable> tables = findTables();
+            log("Profiling " + tables.size() + " tables, " + settings.getMaxConcurrentProfiles()
+                    + " at a time");
+
+            long start = System.currentTimeMillis();
+            OutputStream out;
+            if (outputFile == null) {
+                out = System.out;
+            } else {
+                out = new BufferedOutputStream(new FileOutputStream(outputFile));
+            }
+            int failures = profile(profileManager, tables, format.createFormat(), out);
+            log("Profiled " + (tables.size() - failures) + " of " + tables.size() + " tables in "
+                    + (System.currentTimeMillis() - start) + " ms");
+            if (outputFile != null) {
+                log("Wrote " + format + " results to " + outputFile);
+            }
+
+            if (recordingHistory && !profileManager.getHistory().isEmpty()) {
+                File historyFile = ProfileHistory.fileFor(projectFile);
+                profileManager.getHistory().save(historyFile);
+                log("Saved profile history to " + historyFile);
+            }
+            return failures;
+        } finally {
+            session.getProfileManager().close();
+            session.close();
+        }
+    }
+
+    /**
+     * Returns the tables of the project's source connections that were
+     * selected by the -database and -table options.
+     */
+    private List<SQLTable> findTables() throws SQLObjectException {
+        List<SQLTable> tables = new ArrayList<SQLTable>();
+        for (SQLDatabase db : session.getRootObject().getChildren(SQLDatabase.class)) {
+            if (db.isPlayPenDatabase()) continue;
+            if (!databaseNames.isEmpty() && !databaseNames.contains(db.getName())) continue;
+            log("Reading tables of " + db.getName());
+            List<SQLTable> dbTables = new ArrayList<SQLTable>();
+            SQLObjectUtils.findDescendentsByClass(db, SQLTable.class, dbTables);
+            for (SQLTable table : dbTables) {
+                if (isSelected(table)) {
+                    tables.add(table);
+                }
+            }
+        }
+        return tables;
+    }
+
+    private boolean isSelected(SQLTable table) {
+        if (tablePatterns.isEmpty()) return true;
+        String qualifiedName = qualifiedName(table);
+        for (Pattern p : tablePatterns) {
+            if (p.matcher(table.getName()).matches() || p.matcher(qualifiedName).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String qualifiedName(SQLTable table) {
+        StringBuilder name = new StringBuilder();
+        if (table.getCatalog() != null) {
+            name.append(table.getCatalog().getName()).append('.');
+        }
+        if (table.getSchema() != null) {
+            name.append(table.getSchema().getName()).append('.');
+        }
+        return name.append(table.getName()).toString();
+    }
+
+    /**
+     * Profiles the given tables and writes the result of each one in the given
+     * format as soon as it is done, so the results are written, and logged,
+     * in the order the tables finish rather than all at once at the end.
+     * 
+     * @return The number of tables that failed.
+     */
+    int profile(ProfileManager profileManager, List<SQLTable> tables,
+            StreamingProfileFormat profileFormat, OutputStream out) throws Exception {
+        BlockingQueue<Future<TableProfileResult>> completed = new LinkedBlockingQueue<Future<TableProfileResult>>();
+        List<Future<TableProfileResult>> futures =
+            new ArrayList<Future<TableProfileResult>>(profileManager.asynchCreateProfiles(tables, completed));
+        Map<Future<TableProfileResult>, SQLTable> futureTables = new IdentityHashMap<Future<TableProfileResult>, SQLTable>();
+        for (int i = 0; i < futures.size(); i++) {
+            futureTables.put(futures.get(i), tables.get(i));
+        }
+
+        // the formats close the stream they were given
+        profileFormat.startFormat(out);
+        int failures = 0;
+        for (int done = 1; done <= futures.size(); done++) {
+            Future<TableProfileResult> future = completed.take();
+            String name = qualifiedName(futureTables.get(future));
+            try {
+                TableProfileResult result = future.get();
+                profileFormat.formatTable(result, result.getColumnProfileResults());
+                log("(" + done + "/" + futures.size() + ") " + name + ": "
+                        + result.getRowCount() + " rows in " + result.getTimeToCreate() + " ms");
+            } catch (ExecutionException ex) {
+                failures++;
+                logger.error("Profiling " + name + " failed", ex.getCause());
+                log("(" + done + "/" + futures.size() + ") " + name + " failed: " + ex.getCause());
+            } catch (CancellationException ex) {
+                failures++;
+                log("(" + done + "/" + futures.size() + ") " + name + " was cancelled");
+            }
+        }
+        profileFormat.finishFormat();
+        return failures;
+    }
+
+    private void log(String message) {
+        progress.println(new SimpleDateFormat("HH:mm:ss").format(new Date()) + " " + message);
+        logger.info(message);
+    }
+}
@@ -0,0 +1,375 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.sqlpower.architect.profile;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.architect.ddl.DDLUtils;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLObjectException;
+import ca.sqlpower.sqlobject.SQLTable;
+
+/**
+ * Computes cheap signatures of a table's data and of its columns' definitions,
+ * so a table whose signature has not changed since it was last profiled does
+ * not have to be profiled again.
+ * <p>
+ * A table's signature is made of the profile settings that change what a
+ * profile contains and whatever the platform's catalog keeps track of about
+ * changes to the table: the modification statistics of MySQL, PostgreSQL,
+ * SQL Server and DB2, and the row statistics and tracked modifications of
+ * Oracle. Reading these does not touch the table's rows.
+ * <p>
+ * If {@link ProfileSettings#isScanningForChanges()} is set, the signature also
+ * has the table's row count, the largest value of each of its change tracking
+ * columns (audit or timestamp columns named in
+ * {@link ProfileSettings#getChangeTrackingColumns()}) and the largest
+ * ORA_ROWSCN of its rows on Oracle, which takes a pass over the whole table.
+ * <p>
+ * A table that has none of these besides its row count has no signature, as
+ * rows updated in place would not be noticed, so it is always profiled
+ * again.
+ */
+public class ProfileChangeDetector {
+
+    private static final Logger logger = Logger.getLogger(ProfileChangeDetector.class);
+
+    /**
+     * The signature of a table along with the row count found while
+     * computing it, so a table that changed does not have to be counted again
+     * when it is profiled.
+     */
+    public static class TableSignature {
+        private final String value;
+        private final long rowCount;
+
+        TableSignature(String value, long rowCount) {
+            this.value = value;
+            this.rowCount = rowCount;
+        }
+
+        /**
+         * Returns the signature, or null if changes to the table can not all
+         * be seen.
+         */
+        public String getValue() {
+            return value;
+        }
+
+        public long getRowCount() {
+            return rowCount;
+        }
+    }
+
+    private final ProfileSettings settings;
+
+    public ProfileChangeDetector(ProfileSettings settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * Returns a signature of the data in the given table. Two signatures of
+     * the same table are equal only if nothing this detector can see has
+     * changed in between.
+     *
+     * @param table
+     *            The table to compute the signature of. It must belong to a
+     *            database that can give out connections.
+     * @return The signature, or null if the table's rows could be updated
+     *         without its signature changing.
+     */
+    public String computeTableSignature(SQLTable table) throws SQLException, SQLObjectException {
+        return findTableSignature(table).getValue();
+    }
+
+    /**
+     * Returns the signature of the data in the given table, like
+     * {@link #computeTableSignature(SQLTable)}, along with its row count. The
+     * row count is only known if the settings ask for the table to be
+     * scanned, and is -1 otherwise.
+     */
+    public TableSignature findTableSignature(SQLTable table) throws SQLException, SQLObjectException {
+        Connection con = null;
+        try {
+            con = table.getParentDatabase().getConnection();
+            String product = con.getMetaData().getDatabaseProductName();
+            StringBuilder signature = new StringBuilder();
+            signature.append("settings=").append(computeSettingsSignature(settings));
+            long rowCount = -1;
+            boolean tracked = false;
+            if (settings.isScanningForChanges()) {
+                List<SQLColumn> trackingColumns = findChangeTrackingColumns(table);
+                String rowVersion = getRowVersionExpression(product);
+                rowCount = scanTable(table, con, trackingColumns, rowVersion, signature);
+                tracked = !trackingColumns.isEmpty() || rowVersion != null;
+            }
+
+            String modification = findModificationMetadata(table, con, product);
+            if (modification != null) {
+                signature.append(";modified=").append(modification);
+                tracked = true;
+            }
+            if (!tracked) {
+                logger.debug("Updates to " + table + " can't be detected, it has no signature");
+                return new TableSignature(null, rowCount);
+            }
+            return new TableSignature(signature.toString(), rowCount);
+        } finally {
+            if (con != null) {
+                con.close();
+            }
+        }
+    }
+
+    /**
+     * Counts the rows of the given table and finds the largest values of its
+     * change tracking columns and row version in one pass over the table,
+     * appending them to the signature.
+     *
+     * @return The table's row count.
+     */
+    private long scanTable(SQLTable table, Connection con, List<SQLColumn> trackingColumns,
+            String rowVersion, StringBuilder signature) throws SQLException {
+        Statement stmt = null;
+        ResultSet rs = null;
+        String lastSQL = null;
+        try {
+            String quote = con.getMetaData().getIdentifierQuoteString();
+            StringBuilder sql = new StringBuilder("SELECT COUNT(*) AS ROW__COUNT");
+            for (int i = 0; i < trackingColumns.size(); i++) {
+                sql.append(", MAX(").append(quote).append(trackingColumns.get(i).getName()).append(quote);
+                sql.append(") AS MAXCHANGE_").append(i);
+            }
+            if (rowVersion != null) {
+                sql.append(", MAX(").append(rowVersion).append(") AS ROW__VERSION");
+            }
+            sql.append(" FROM ").append(DDLUtils.toQualifiedName(table.getCatalogName(),
+                    table.getSchemaName(), table.getName(), quote, quote));
+            lastSQL = sql.toString();
+
+            stmt = con.createStatement();
+            stmt.setEscapeProcessing(false);
+            rs = stmt.executeQuery(lastSQL);
+            long rowCount = -1;
+            if (rs.next()) {
+                rowCount = rs.getLong("ROW__COUNT");
+                signature.append(";rows=").append(rowCount);
+                for (int i = 0; i < trackingColumns.size(); i++) {
+                    signature.append(";max(").append(trackingColumns.get(i).getName()).append(")=");
+                    signature.append(rs.getString("MAXCHANGE_" + i));
+                }
+                if (rowVersion != null) {
+                    signature.append(";version=").append(rs.getString("ROW__VERSION"));
+                }
+            }
+            return rowCount;
+        } catch (SQLException ex) {
+            logger.error("Change signature query failed: " + lastSQL);
+            throw ex;
+        } finally {
+            try {
+                if (rs != null) rs.close();
+                if (stmt != null) stmt.close();
+            } catch (SQLException ex) {
+                logger.error("Couldn't clean up result set", ex);
+            }
+        }
+    }
+
+    /**
+     * Returns a signature of the profile settings that change what a profile
+     * contains. A profile made with other settings can not be reused even if
+     * the table's data has not changed.
+     */
+    static String computeSettingsSignature(ProfileSettings settings) {
+        StringBuilder signature = new StringBuilder();
+        signature.append(settings.isFindingMin() ? 'm' : '-');
+        signature.append(settings.isFindingMax() ? 'M' : '-');
+        signature.append(settings.isFindingAvg() ? 'a' : '-');
+        signature.append(settings.isFindingMinLength() ? 'l' : '-');
+        signature.append(settings.isFindingMaxLength() ? 'L' : '-');
+        signature.append(settings.isFindingAvgLength() ? 'A' : '-');
+        signature.append(settings.isFindingDistinctCount() ? 'd' : '-');
+        signature.append(settings.isFindingNullCount() ? 'n' : '-');
+        signature.append(settings.isFindingTopTen() ? "t" + settings.getTopNCount() : "-");
+        signature.append(settings.isUsingApproximateCounts() ? ",approx" : ",exact");
+        signature.append(",").append(settings.getSamplingMode());
+        switch (settings.getSamplingMode()) {
+        case FIXED_ROWS:
+            signature.append(":").append(settings.getSampleRows());
+            break;
+        case PERCENTAGE:
+        case TABLESAMPLE:
+            signature.append(":").append(settings.getSamplePercentage());
+            break;
+        case TIME_BUDGET:
+            signature.append(":").append(settings.getSampleTimeBudgetSeconds());
+            break;
+        default:
+            break;
+        }
+        return signature.toString();
+    }
+
+    /**
+     * Returns a signature of the definition of the given column. A column
+     * profile result can be reused only for a column with the same signature
+     * as the column that was profiled.
+     */
+    public static String computeColumnSignature(SQLColumn col) {
+        return col.getName() + ":" + col.getType() + ":" + col.getSourceDataTypeName() +
+            ":" + col.getPrecision() + ":" + col.getScale();
+    }
+
+    /**
+     * Returns the columns of the given table whose names appear in the
+     * settings' change tracking column list and whose type can be maxed.
+     */
+    private List<SQLColumn> findChangeTrackingColumns(SQLTable table) throws SQLObjectException {
+        Set<String> names = new HashSet<String>();
+        for (String name : settings.getChangeTrackingColumns().split(",")) {
+            if (name.trim().length() > 0) {
+                names.add(name.trim().toUpperCase());
+            }
+        }
+        List<SQLColumn> trackingColumns = new ArrayList<SQLColumn>();
+        if (names.isEmpty()) return trackingColumns;
+        for (SQLColumn col : table.getColumns()) {
+            if (names.contains(col.getName().toUpperCase()) && isTrackable(col.getType())) {
+                trackingColumns.add(col);
+            }
+        }
+        return trackingColumns;
+    }
+
+    private static boolean isTrackable(int type) {
+        switch (type) {
+        case Types.DATE:
+        case Types.TIME:
+        case Types.TIMESTAMP:
+        case Types.BIGINT:
+        case Types.INTEGER:
+        case Types.SMALLINT:
+        case Types.NUMERIC:
+        case Types.DECIMAL:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Returns the pseudo column of the given platform that changes whenever a
+     * row is inserted or updated and grows over time, or null if the platform
+     * has none. Its largest value is read with the row count when the table
+     * is scanned, so it does not cost another pass over the table.
+     */
+    static String getRowVersionExpression(String product) {
+        if (product != null && product.startsWith("Oracle")) {
+            return "ORA_ROWSCN";
+        }
+        return null;
+    }
+
+    /**
+     * Returns the query that reads the modification statistics the given
+     * platform keeps for a table, or null if the platform is not known to keep
+     * any. The query takes the table's schema, or its catalog on MySQL, and
+     * then its name.
+     * <p>
+     * Oracle only writes the modifications it tracks to
+     * ALL_TAB_MODIFICATIONS every few minutes and when statistics are
+     * gathered, so a table changed just before it is profiled again may look
+     * unchanged. Scan for changes where that matters.
+     */
+    static String getModificationQuery(String product) {
+        if (product == null) {
+            return null;
+        } else if (product.startsWith("MySQL")) {
+            return "SELECT UPDATE_TIME FROM information_schema.TABLES WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ?";
+        } else if (product.startsWith("PostgreSQL")) {
+            return "SELECT n_tup_ins, n_tup_upd, n_tup_del FROM pg_stat_user_tables WHERE schemaname = ? AND relname = ?";
+        } else if (product.startsWith("Microsoft SQL Server")) {
+            return "SELECT MAX(last_user_update) FROM sys.dm_db_index_usage_stats " +
+                    "WHERE database_id = DB_ID() AND object_id = OBJECT_ID(? + '.' + ?)";
+        } else if (product.startsWith("Oracle")) {
+            return "SELECT t.NUM_ROWS, t.LAST_ANALYZED, m.INSERTS, m.UPDATES, m.DELETES, m.TRUNCATED, m.TIMESTAMP " +
+                    "FROM ALL_TABLES t LEFT OUTER JOIN ALL_TAB_MODIFICATIONS m " +
+                    "ON m.TABLE_OWNER = t.OWNER AND m.TABLE_NAME = t.TABLE_NAME AND m.PARTITION_NAME IS NULL " +
+                    "WHERE t.OWNER = ? AND t.TABLE_NAME = ?";
+        } else if (product.startsWith("DB2")) {
+            return "SELECT SUM(ROWS_INSERTED), SUM(ROWS_UPDATED), SUM(ROWS_DELETED) " +
+                    "FROM TABLE(MON_GET_TABLE(?, ?, -2)) AS T";
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Asks the database when, or how often, the given table was last modified
+     * for platforms that keep track of it. Returns null if the platform is not
+     * known to keep track or if the statistics could not be read.
+     */
+    private String findModificationMetadata(SQLTable table, Connection con, String product) {
+        String query = getModificationQuery(product);
+        if (query == null) return null;
+        String owner = product.startsWith("MySQL") ? table.getCatalogName() : table.getSchemaName();
+
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+        try {
+            stmt = con.prepareStatement(query);
+            stmt.setString(1, owner);
+            stmt.setString(2, table.getName());
+            rs = stmt.executeQuery();
+            if (!rs.next()) return null;
+            StringBuilder modification = new StringBuilder();
+            boolean known = false;
+            for (int i = 1; i <= rs.getMetaData().getColumnCount(); i++) {
+                String value = rs.getString(i);
+                if (i > 1) modification.append(",");
+                modification.append(value);
+                known |= value != null;
+            }
+            // MySQL has no UPDATE_TIME for InnoDB tables before 5.7
+            return known ? modification.toString() : null;
+        } catch (SQLException ex) {
+            logger.debug("Couldn't read modification statistics for " + table, ex);
+            return null;
+        } finally {
+            try {
+                if (rs != null) rs.close();
+                if (stmt != null) stmt.close();
+            } catch (SQLException ex) {
+                logger.error("Couldn't clean up result set", ex);
+            }
+        }
+    }
+}
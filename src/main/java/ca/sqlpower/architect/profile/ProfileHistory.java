@@ -0,0 +1,415 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.sqlpower.architect.profile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLTable;
+
+/**
+ * Keeps the headline statistics of every profiling run of every table, so
+ * their trends can be charted long after the full profile results have been
+ * thrown away. Each run of a table is a snapshot, numbered from 1 in the
+ * order they were recorded. The statistics are kept column-wise in
+ * {@link LongSeries} and {@link DoubleSeries}, which take a byte or two per
+ * value for the slowly changing numbers typical of daily data quality
+ * profiling.
+ * <p>
+ * Only numeric and date minimum, maximum and average values are kept; dates
+ * are kept as milliseconds since the epoch and other values are kept as NaN.
+ * <p>
+ * This class is thread safe.
+ */
+public class ProfileHistory {
+
+    /**
+     * The file name extension added to a project file's name to get the name
+     * of the file its profile history is saved in.
+     */
+    public static final String FILE_EXTENSION = ".history";
+
+    private static final int MAGIC = 0x50524849;
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * The profiling history of one table.
+     */
+    public static class TableHistory {
+
+        private LongSeries times = new LongSeries();
+        private LongSeries rowCounts = new LongSeries();
+        private final Map<String, ColumnHistory> columns = new HashMap<String, ColumnHistory>();
+
+        /**
+         * Returns the number of snapshots recorded for the table.
+         */
+        public synchronized int getSnapshotCount() {
+            return times.size();
+        }
+
+        /**
+         * Returns the time each snapshot's profile was started, oldest first.
+         */
+        public synchronized long[] getTimes() {
+            return times.toArray();
+        }
+
+        public synchronized long[] getRowCounts() {
+            return rowCounts.toArray();
+        }
+
+        /**
+         * Returns the history of the given column of the table, or null if it
+         * has never been profiled.
+         */
+        public synchronized ColumnHistory getColumnHistory(SQLColumn col) {
+            return columns.get(col.getUUID());
+        }
+
+        /**
+         * Returns the number of bytes the encoded statistics of the table and
+         * its columns take.
+         */
+        public synchronized int getEncodedLength() {
+            int length = times.getEncodedLength() + rowCounts.getEncodedLength();
+            for (ColumnHistory ch : columns.values()) {
+                length += ch.getEncodedLength();
+            }
+            return length;
+        }
+
+        private synchronized boolean record(TableProfileResult tpr) {
+            if (times.size() > 0 && tpr.getCreateStartTime() <= times.getLast()) {
+                return false;
+            }
+            times.add(tpr.getCreateStartTime());
+            rowCounts.add(tpr.getRowCount());
+            int snapshot = times.size();
+            for (ColumnProfileResult cpr : tpr.getColumnProfileResults()) {
+                if (cpr.getException() != null) continue;
+                String uuid = cpr.getProfiledObject().getUUID();
+                ColumnHistory ch = columns.get(uuid);
+                if (ch == null) {
+                    ch = new ColumnHistory();
+                    columns.put(uuid, ch);
+                }
+                ch.record(snapshot, tpr.getCreateStartTime(), cpr);
+            }
+            return true;
+        }
+
+        private synchronized void write(DataOutputStream out) throws IOException {
+            times.write(out);
+            rowCounts.write(out);
+            out.writeInt(columns.size());
+            for (Map.Entry<String, ColumnHistory> entry : columns.entrySet()) {
+                out.writeUTF(entry.getKey());
+                entry.getValue().write(out);
+            }
+        }
+
+        private static TableHistory read(DataInputStream in) throws IOException {
+            TableHistory th = new TableHistory();
+            th.times = LongSeries.read(in);
+            th.rowCounts = LongSeries.read(in);
+            int columnCount = in.readInt();
+            for (int i = 0; i < columnCount; i++) {
+                String uuid = in.readUTF();
+                th.columns.put(uuid, ColumnHistory.read(in));
+            }
+            return th;
+        }
+    }
+
+    /**
+     * The profiling history of one column. A column is only in the snapshots
+     * its table was profiled in while it existed and profiled without error,
+     * so its series may be shorter than its table's.
+     */
+    public static class ColumnHistory {
+
+        private LongSeries snapshots = new LongSeries();
+        private LongSeries times = new LongSeries();
+        private LongSeries nullCounts = new LongSeries();
+        private LongSeries distinctCounts = new LongSeries();
+        private LongSeries minLengths = new LongSeries();
+        private LongSeries maxLengths = new LongSeries();
+        private DoubleSeries avgLengths = new DoubleSeries();
+        private DoubleSeries minValues = new DoubleSeries();
+        private DoubleSeries maxValues = new DoubleSeries();
+        private DoubleSeries avgValues = new DoubleSeries();
+
+        /**
+         * Returns the numbers of the table snapshots this column is in.
+         */
+        public synchronized long[] getSnapshots() {
+            return snapshots.toArray();
+        }
+
+        public synchronized long[] getTimes() {
+            return times.toArray();
+        }
+
+        public synchronized long[] getNullCounts() {
+            return nullCounts.toArray();
+        }
+
+        public synchronized long[] getDistinctCounts() {
+            return distinctCounts.toArray();
+        }
+
+        public synchronized long[] getMinLengths() {
+            return minLengths.toArray();
+        }
+
+        public synchronized long[] getMaxLengths() {
+            return maxLengths.toArray();
+        }
+
+        public synchronized double[] getAvgLengths() {
+            return avgLengths.toArray();
+        }
+
+        public synchronized double[] getMinValues() {
+            return minValues.toArray();
+        }
+
+        public synchronized double[] getMaxValues() {
+            return maxValues.toArray();
+        }
+
+        public synchronized double[] getAvgValues() {
+            return avgValues.toArray();
+        }
+
+        synchronized int getEncodedLength() {
+            return snapshots.getEncodedLength() + times.getEncodedLength() +
+                nullCounts.getEncodedLength() + distinctCounts.getEncodedLength() +
+                minLengths.getEncodedLength() + maxLengths.getEncodedLength() +
+                avgLengths.getEncodedLength() + minValues.getEncodedLength() +
+                maxValues.getEncodedLength() + avgValues.getEncodedLength();
+        }
+
+        private synchronized void record(int snapshot, long time, ColumnProfileResult cpr) {
+            snapshots.add(snapshot);
+            times.add(time);
+            nullCounts.add(cpr.getNullCount());
+            distinctCounts.add(cpr.getDistinctValueCount());
+            minLengths.add(cpr.getMinLength());
+            maxLengths.add(cpr.getMaxLength());
+            avgLengths.add(cpr.getAvgLength());
+            minValues.add(toDouble(cpr.getMinValue()));
+            maxValues.add(toDouble(cpr.getMaxValue()));
+            avgValues.add(toDouble(cpr.getAvgValue()));
+        }
+
+        private synchronized void write(DataOutputStream out) throws IOException {
+            snapshots.write(out);
+            times.write(out);
+            nullCounts.write(out);
+            distinctCounts.write(out);
+            minLengths.write(out);
+            maxLengths.write(out);
+            avgLengths.write(out);
+            minValues.write(out);
+            maxValues.write(out);
+            avgValues.write(out);
+        }
+
+        private static ColumnHistory read(DataInputStream in) throws IOException {
+            ColumnHistory ch = new ColumnHistory();
+            ch.snapshots = LongSeries.read(in);
+            ch.times = LongSeries.read(in);
+            ch.nullCounts = LongSeries.read(in);
+            ch.distinctCounts = LongSeries.read(in);
+            ch.minLengths = LongSeries.read(in);
+            ch.maxLengths = LongSeries.read(in);
+            ch.avgLengths = DoubleSeries.read(in);
+            ch.minValues = DoubleSeries.read(in);
+            ch.maxValues = DoubleSeries.read(in);
+            ch.avgValues = DoubleSeries.read(in);
+            return ch;
+        }
+    }
+
+    /**
+     * The history of each table, keyed by the table's UUID.
+     */
+    private final Map<String, TableHistory> tables = new HashMap<String, TableHistory>();
+
+    /**
+     * Returns the file the history of the given project file is saved in.
+     */
+    public static File fileFor(File projectFile) {
+        return new File(projectFile.getPath() + FILE_EXTENSION);
+    }
+
+    /**
+     * Adds a snapshot of the given profile result to its table's history.
+     * Failed profiles, and profiles that did not start after the table's
+     * latest snapshot, are not recorded.
+     *
+     * @return true if a snapshot was added.
+     */
+    public boolean record(TableProfileResult tpr) {
+        if (tpr.getException() != null) return false;
+        TableHistory th;
+        synchronized (this) {
+            String uuid = tpr.getProfiledObject().getUUID();
+            th = tables.get(uuid);
+            if (th == null) {
+                th = new TableHistory();
+                tables.put(uuid, th);
+            }
+        }
+        return th.record(tpr);
+    }
+
+    /**
+     * Records a snapshot of each of the given profile results, oldest first.
+     * This is used to start a history from the profiles of a project that
+     * didn't have one.
+     */
+    public void recordAll(List<TableProfileResult> results) {
+        List<TableProfileResult> sorted = new ArrayList<TableProfileResult>(results);
+        Collections.sort(sorted, new Comparator<TableProfileResult>() {
+            public int compare(TableProfileResult o1, TableProfileResult o2) {
+                return Long.valueOf(o1.getCreateStartTime()).compareTo(o2.getCreateStartTime());
+            }
+        });
+        for (TableProfileResult tpr : sorted) {
+            if (tpr.getProgressMonitor().isFinished()) {
+                record(tpr);
+            }
+        }
+    }
+
+    /**
+     * Returns the history of the given table, or null if it has never been
+     * recorded.
+     */
+    public synchronized TableHistory getTableHistory(SQLTable table) {
+        return tables.get(table.getUUID());
+    }
+
+    /**
+     * Returns the history of the given column, or null if it has never been
+     * recorded.
+     */
+    public ColumnHistory getColumnHistory(SQLColumn col) {
+        if (col.getParent() == null) return null;
+        TableHistory th = getTableHistory(col.getParent());
+        return th == null ? null : th.getColumnHistory(col);
+    }
+
+    /**
+     * Forgets the history of the given table.
+     */
+    public synchronized void remove(SQLTable table) {
+        tables.remove(table.getUUID());
+    }
+
+    public synchronized boolean isEmpty() {
+        return tables.isEmpty();
+    }
+
+    /**
+     * Saves this history to the given file. The history is written to a
+     * temporary file first so a failure part way through leaves the old file
+     * intact.
+     */
+    public void save(File file) throws IOException {
+        File tempFile = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            Map<String, TableHistory> snapshot;
+            synchronized (this) {
+                snapshot = new HashMap<String, TableHistory>(tables);
+            }
+            out.writeInt(snapshot.size());
+            for (Map.Entry<String, TableHistory> entry : snapshot.entrySet()) {
+                out.writeUTF(entry.getKey());
+                entry.getValue().write(out);
+            }
+        } finally {
+            out.close();
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Couldn't replace profile history " + file);
+        }
+        if (!tempFile.renameTo(file)) {
+            throw new IOException("Couldn't rename " + tempFile + " to " + file);
+        }
+    }
+
+    /**
+     * Replaces the contents of this history with the history saved in the
+     * given file.
+     */
+    public void load(File file) throws IOException {
+        Map<String, TableHistory> loaded = new HashMap<String, TableHistory>();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a profile history");
+            }
+            int version = in.readInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported profile history version " + version + " in " + file);
+            }
+            int tableCount = in.readInt();
+            for (int i = 0; i < tableCount; i++) {
+                String uuid = in.readUTF();
+                loaded.put(uuid, TableHistory.read(in));
+            }
+        } finally {
+            in.close();
+        }
+        synchronized (this) {
+            tables.clear();
+            tables.putAll(loaded);
+        }
+    }
+
+    private static double toDouble(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        } else if (value instanceof java.util.Date) {
+            return ((java.util.Date) value).getTime();
+        } else {
+            return Double.NaN;
+        }
+    }
+}
@@ -21,6 +21,7 @@ package ca.sqlpower.architect.profile;
 import java.sql.SQLException;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Future;
 
 import ca.sqlpower.architect.profile.event.ProfileChangeListener;
@@ -75,12 +76,21 @@ public interface ProfileManager extends SPObject {
     /**
      * Creates TableProfileResult objects for each of the tables in the
      * given list, then adds them to this ProfileManager in an unpopulated
-     * state.  Then starts a new worker thread which will populate the results
-     * one after the other.  It is likely that none of the profiles will be
-     * populated yet by the time this method returns.
+     * state.  Then schedules the results to be populated on worker threads,
+     * several at a time if the profile settings allow it.  It is likely that
+     * none of the profiles will be populated yet by the time this method returns.
      */
     public Collection<Future<TableProfileResult>> asynchCreateProfiles(Collection<SQLTable> tables);
 
+    /**
+     * Does the same as {@link #asynchCreateProfiles(Collection)}, and also
+     * adds each returned future to the given queue once its profile is done.
+     * Taking the futures from the queue gives the profiles in the order they
+     * finished, so each one can be used as soon as it is ready.
+     */
+    public Collection<Future<TableProfileResult>> asynchCreateProfiles(Collection<SQLTable> tables,
+            BlockingQueue<Future<TableProfileResult>> completionQueue);
+
     /**
      * Schedules a profile to be populated on a separate worker thread. You will
      * not normally need to call this method, since it is done for you by
@@ -137,7 +147,8 @@ public interface ProfileManager extends SPObject {
     public void setProcessingOrder(List<TableProfileResult> tpr);
     
     /**
-     * Closes the Executor service. This stops it from running any further jobs.
+     * Closes the Executor service. This stops it from running any further jobs;
+     * profiles that were scheduled but not yet started are cancelled.
      */
     public void close();
 
@@ -158,4 +169,27 @@ public interface ProfileManager extends SPObject {
      * @param tpc the profile creator to use, must not be null.
      */
     public void setCreator(TableProfileCreator tpc);
+
+    /**
+     * Returns the store that column profile results are evicted to when too
+     * many are in memory, or null if they are always kept in memory.
+     */
+    public ProfileResultStore getResultStore();
+
+    /**
+     * Sets the store that the column profile results of all of this
+     * manager's profiles, present and future, are evicted to. The previous
+     * store, if any, is closed after the results that were in it have been
+     * read back.
+     * 
+     * @param store
+     *            The new store, or null to keep all results in memory.
+     */
+    public void setResultStore(ProfileResultStore store);
+
+    /**
+     * Returns the history of every profiling run this manager has completed,
+     * which outlives the profile results themselves.
+     */
+    public ProfileHistory getHistory();
 }
@@ -18,15 +18,16 @@
  */
 package ca.sqlpower.architect.profile;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
 import org.apache.log4j.Logger;
@@ -47,6 +48,7 @@ import ca.sqlpower.object.annotation.NonBound;
 import ca.sqlpower.object.annotation.NonProperty;
 import ca.sqlpower.object.annotation.Transient;
 import ca.sqlpower.sql.DataSourceCollection;
+import ca.sqlpower.sql.JDBCDataSource;
 import ca.sqlpower.sql.PlDotIni;
 import ca.sqlpower.sql.SPDataSource;
 import ca.sqlpower.sqlobject.SQLColumn;
@@ -65,7 +67,9 @@ import ca.sqlpower.util.UserPrompterFactory.UserPromptType;
 
 /**
  * The default ProfileManager implementation. Creates profiles of tables,
- * optionally using a separate worker thread.
+ * optionally using a pool of worker threads. The number of tables profiled at
+ * once, in total and per data source, is governed by the
+ * {@link ProfileSettings} of this manager.
  * 
  * @version $Id$
  */
@@ -147,15 +151,30 @@ public class ProfileManagerImpl extends AbstractSPObject implements ProfileManag
     private ProfileSettings defaultProfileSettings = new ProfileSettings();
 
     /**
-     * The Profile Executor manages the thread that actually does the work
-     * of creating the profiles.
+     * The Profile Executor manages the threads that actually do the work
+     * of creating the profiles. Its limits are refreshed from the default
+     * profile settings every time a profile is scheduled.
      */
-    private ExecutorService profileExecutor = Executors.newSingleThreadExecutor();
+    private final ProfileTaskScheduler profileExecutor = new ProfileTaskScheduler(
+            defaultProfileSettings.getMaxConcurrentProfiles(),
+            defaultProfileSettings.getMaxConcurrentProfilesPerDataSource());
 
     /**
      * The creator that will be used to create profiles.
      */
     private TableProfileCreator creator = new RemoteDatabaseProfileCreator(getDefaultProfileSettings());
+
+    /**
+     * The store column profile results are evicted to, or null if they are
+     * kept in memory.
+     */
+    private ProfileResultStore resultStore;
+
+    /**
+     * The statistics of every completed profile, kept after the profile
+     * results are removed.
+     */
+    private final ProfileHistory history = new ProfileHistory();
     
     /**
      * Watches for database removals and updates the manager accordingly.
@@ -226,6 +245,11 @@ public class ProfileManagerImpl extends AbstractSPObject implements ProfileManag
                 ProfileManager backgroundPM = new ProfileManagerImpl();
                 backgroundPM.setUUID(actualTPR.getParent().getUUID());
                 tempTPR.setParent(backgroundPM);
+                
+                TableProfileResult previous = findPreviousResult(actualTPR);
+                if (previous != null) {
+                    tempTPR.setPreviousResult(new TableProfileResult(previous, table));
+                }
             } catch (Exception e) {
                 //If an exception is thrown during setup define the profile to have an exception on
                 //it and handle appropriately when doing the profile.
@@ -267,6 +291,9 @@ public class ProfileManagerImpl extends AbstractSPObject implements ProfileManag
                     eventCreator.persistObject(tpr, 
                             actualTPR.getParent().getChildren(TableProfileResult.class).indexOf(actualTPR),
                             false);
+                    if (tpr.getException() == null && history.record(actualTPR)) {
+                        removeOldProfiles(actualTPR);
+                    }
                 }
             };
             try {
@@ -311,6 +338,7 @@ public class ProfileManagerImpl extends AbstractSPObject implements ProfileManag
     public void addTableProfileResult(TableProfileResult child) {
         results.add(child);
         child.setParent(this);
+        child.setResultStore(resultStore);
         fireProfilesAdded(Collections.singletonList(child));
     }
     
@@ -327,6 +355,7 @@ public class ProfileManagerImpl extends AbstractSPObject implements ProfileManag
         results.addAll(newResults);
         for (TableProfileResult tpr : newResults) {
             tpr.setParent(this);
+            tpr.setResultStore(resultStore);
         }
         fireProfilesAdded(newResults);
         for (TableProfileResult newResult : newResults) {
@@ -344,7 +373,7 @@ public class ProfileManagerImpl extends AbstractSPObject implements ProfileManag
         addResults(Collections.singletonList(tpr), false);
         
         try {
-            profileExecutor.submit(new ProfileResultCallable(tpr)).get();
+            scheduleProfile(tpr).get();
             assert (tpr.getProgressMonitor().isFinished());
         } catch (InterruptedException ex) {
             logger.info("Profiling was interrupted (likely because this manager is being shut down)");
@@ -357,6 +386,12 @@ public class ProfileManagerImpl extends AbstractSPObject implements ProfileManag
 
     /* docs inherited from interface */
     public Collection<Future<TableProfileResult>> asynchCreateProfiles(Collection<SQLTable> tables) {
+        return asynchCreateProfiles(tables, null);
+    }
+
+    /* docs inherited from interface */
+    public Collection<Future<TableProfileResult>> asynchCreateProfiles(Collection<SQLTable> tables,
+            BlockingQueue<Future<TableProfileResult>> completionQueue) {
         
         List<TableProfileResult> profiles = new ArrayList<TableProfileResult>();
         for (SQLTable t : tables) {
@@ -367,20 +402,101 @@ public class ProfileManagerImpl extends AbstractSPObject implements ProfileManag
         
         List<Future<TableProfileResult>> results = new ArrayList<Future<TableProfileResult>>();
         for (TableProfileResult tpr : profiles) {
-            results.add(scheduleProfile(tpr));
+            results.add(scheduleProfile(tpr, completionQueue));
         }
         return results;
     }
 
     /* docs inherited from interface */
     public Future<TableProfileResult> scheduleProfile(TableProfileResult result) {
-        return profileExecutor.submit(new ProfileResultCallable(result));
+        return scheduleProfile(result, null);
+    }
+
+    /**
+     * Schedules the given profile like {@link #scheduleProfile(TableProfileResult)},
+     * adding its future to the given queue, if not null, once it is done.
+     */
+    private Future<TableProfileResult> scheduleProfile(TableProfileResult result,
+            BlockingQueue<Future<TableProfileResult>> completionQueue) {
+        ProfileSettings settings = getDefaultProfileSettings();
+        profileExecutor.setLimits(
+                Math.max(1, settings.getMaxConcurrentProfiles()),
+                Math.max(1, settings.getMaxConcurrentProfilesPerDataSource()));
+        return profileExecutor.submit(dataSourceKey(result), 
+                new ProfileResultCallable(result), result.getProgressMonitor(), completionQueue);
+    }
+
+    /**
+     * Returns the latest complete profile of the same table as the given
+     * result that incremental profiling can compare against, or null if the
+     * result's settings don't ask for incremental profiling or there is no
+     * such profile.
+     */
+    private TableProfileResult findPreviousResult(TableProfileResult result) {
+        if (result.getSettings() == null || !result.getSettings().isIncrementalProfiling()) {
+            return null;
+        }
+        TableProfileResult latest = null;
+        for (TableProfileResult tpr : getResults(result.getProfiledObject())) {
+            if (tpr == result || tpr.getException() != null || tpr.getChangeSignature() == null
+                    || !tpr.getProgressMonitor().isFinished() || tpr.getProgressMonitor().isCancelled()) {
+                continue;
+            }
+            if (latest == null || tpr.getCreateStartTime() > latest.getCreateStartTime()) {
+                latest = tpr;
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * Removes the oldest finished profiles of the given result's table that
+     * are beyond the number the default settings say to keep. Their
+     * statistics have already been recorded in the history.
+     */
+    private void removeOldProfiles(TableProfileResult latest) {
+        int keep = getDefaultProfileSettings().getMaxProfilesPerTable();
+        if (keep <= 0) return;
+        List<TableProfileResult> finished = new ArrayList<TableProfileResult>();
+        for (TableProfileResult tpr : getResults(latest.getProfiledObject())) {
+            if (tpr.getProgressMonitor().isFinished() || tpr == latest) {
+                finished.add(tpr);
+            }
+        }
+        Collections.sort(finished, new Comparator<TableProfileResult>() {
+            public int compare(TableProfileResult o1, TableProfileResult o2) {
+                return Long.valueOf(o1.getCreateStartTime()).compareTo(o2.getCreateStartTime());
+            }
+        });
+        for (int i = 0; i < finished.size() - keep; i++) {
+            if (finished.get(i) != latest) {
+                removeProfile(finished.get(i));
+            }
+        }
+    }
+
+    /**
+     * Returns the object that identifies the data source the given profile
+     * will connect to. Profiles with the same key share the per data source
+     * concurrency limit.
+     */
+    private static Object dataSourceKey(TableProfileResult result) {
+        SQLDatabase db = result.getProfiledObject().getParentDatabase();
+        if (db == null) return result.getProfiledObject();
+        JDBCDataSource ds = db.getDataSource();
+        if (ds == null) return db;
+        return ds;
     }
     
     /* docs inherited from interface */
     public void clear() {
         List<TableProfileResult> oldResults = new ArrayList<TableProfileResult>(results);
         results.clear();
+        if (resultStore != null) {
+            for (TableProfileResult oldResult : oldResults) {
+                resultStore.remove(oldResult);
+            }
+        }
         fireProfilesRemoved(oldResults);
         int index = 0;
         try {
@@ -425,6 +541,9 @@ public class ProfileManagerImpl extends AbstractSPObject implements ProfileManag
         int index = results.indexOf(victim);
         boolean removed = results.remove(victim);
         if (removed) {
+            if (resultStore != null) {
+                resultStore.remove(victim);
+            }
             fireChildRemoved(TableProfileResult.class, victim, index);
             fireProfilesRemoved(Collections.singletonList(victim));
         }
@@ -535,6 +654,47 @@ public class ProfileManagerImpl extends AbstractSPObject implements ProfileManag
 
     public void close() {
         profileExecutor.shutdown();
+        if (resultStore != null) {
+            try {
+                resultStore.close();
+            } catch (IOException ex) {
+                logger.error("Couldn't close profile store " + resultStore.getDataFile(), ex);
+            }
+        }
+    }
+
+    @NonBound
+    public ProfileHistory getHistory() {
+        return history;
+    }
+
+    @NonBound
+    public ProfileResultStore getResultStore() {
+        return resultStore;
+    }
+
+    @NonBound
+    public void setResultStore(ProfileResultStore store) {
+        ProfileResultStore oldStore = resultStore;
+        if (oldStore == store) return;
+        if (oldStore != null) {
+            oldStore.setMaxLoadedResults(Integer.MAX_VALUE);
+        }
+        for (TableProfileResult tpr : results) {
+            if (oldStore != null) {
+                // reads the results back from the old store while it's still open
+                tpr.getColumnProfileResults();
+            }
+            tpr.setResultStore(store);
+        }
+        resultStore = store;
+        if (oldStore != null) {
+            try {
+                oldStore.close();
+            } catch (IOException ex) {
+                logger.error("Couldn't close profile store " + oldStore.getDataFile(), ex);
+            }
+        }
     }
 
     @NonBound
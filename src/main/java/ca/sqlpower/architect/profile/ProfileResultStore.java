@@ -0,0 +1,592 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.sqlpower.architect.profile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLObjectException;
+
+/**
+ * Keeps the column profile results of table profiles in a file beside the
+ * project file, so they don't have to be held in memory or written into the
+ * project file. A table profile whose column results are in the store loads
+ * them the first time they are asked for (see
+ * {@link TableProfileResult#getColumnProfileResults()}), and the store
+ * writes the column results of the least recently used table profiles back
+ * out and drops them from memory once more than a set number are loaded.
+ * <p>
+ * The store is made of two files: a data file that records are only ever
+ * appended to, and an index file that maps the UUID of each table profile to
+ * the position of its latest record in the data file. The index is read
+ * entirely when the store is opened; it holds only a few numbers per table
+ * profile. Records that have been replaced or removed are dropped by
+ * {@link #compact()}.
+ * <p>
+ * This class is thread safe. It never calls into a table profile result
+ * while holding its own lock, so profile results may call into the store
+ * while holding theirs.
+ */
+public class ProfileResultStore {
+
+    private static final Logger logger = Logger.getLogger(ProfileResultStore.class);
+
+    /**
+     * The file name extension added to a project file's name to get the name
+     * of its profile store's data file.
+     */
+    public static final String FILE_EXTENSION = ".profiles";
+
+    private static final int INDEX_MAGIC = 0x50524958;
+    private static final int FORMAT_VERSION = 2;
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_BIG_DECIMAL = 2;
+    private static final byte TYPE_TIMESTAMP = 3;
+    private static final byte TYPE_DATE = 4;
+    private static final byte TYPE_LONG = 5;
+    private static final byte TYPE_INTEGER = 6;
+    private static final byte TYPE_DOUBLE = 7;
+
+    private final File dataFile;
+    private final File indexFile;
+
+    /**
+     * The data file, open for reading and appending.
+     */
+    private RandomAccessFile data;
+
+    /**
+     * The position and length of the latest record of each table profile,
+     * keyed by the table profile's UUID.
+     */
+    private final Map<String, long[]> index = new HashMap<String, long[]>();
+
+    /**
+     * The number of bytes in the data file taken by records that are no
+     * longer in the index.
+     */
+    private long garbage;
+
+    /**
+     * The table profiles whose column results are in memory, least recently
+     * used first.
+     */
+    private final LinkedHashMap<TableProfileResult, Boolean> loaded =
+        new LinkedHashMap<TableProfileResult, Boolean>(16, 0.75f, true);
+
+    private int maxLoadedResults;
+
+    /**
+     * Opens the store that keeps its data in the given file, creating the
+     * file if it doesn't exist.
+     *
+     * @param dataFile
+     *            The data file. The index is kept in a file of the same name
+     *            with ".idx" added.
+     * @param maxLoadedResults
+     *            The number of table profiles whose column results may be in
+     *            memory at once.
+     */
+    public ProfileResultStore(File dataFile, int maxLoadedResults) throws IOException {
+        this.dataFile = dataFile;
+        this.indexFile = new File(dataFile.getPath() + ".idx");
+        this.maxLoadedResults = maxLoadedResults;
+        data = new RandomAccessFile(dataFile, "rw");
+        if (indexFile.exists()) {
+            readIndex();
+        } else if (data.length() > 0) {
+            logger.warn("Profile store index " + indexFile + " is missing, starting an empty store");
+            data.setLength(0);
+        }
+    }
+
+    /**
+     * Returns the data file of the store for the given project file.
+     */
+    public static File storeFileFor(File projectFile) {
+        return new File(projectFile.getPath() + FILE_EXTENSION);
+    }
+
+    /**
+     * Deletes the data and index files of the store kept in the given data
+     * file. The store must not be open.
+     */
+    public static void delete(File dataFile) throws IOException {
+        File indexFile = new File(dataFile.getPath() + ".idx");
+        if (indexFile.exists() && !indexFile.delete()) {
+            throw new IOException("Couldn't delete profile store index " + indexFile);
+        }
+        if (dataFile.exists() && !dataFile.delete()) {
+            throw new IOException("Couldn't delete profile store " + dataFile);
+        }
+    }
+
+    public File getDataFile() {
+        return dataFile;
+    }
+
+    public synchronized void setMaxLoadedResults(int maxLoadedResults) {
+        this.maxLoadedResults = maxLoadedResults;
+    }
+
+    /**
+     * Returns true if the store has column results for the given table
+     * profile.
+     */
+    public synchronized boolean contains(TableProfileResult tpr) {
+        return index.containsKey(tpr.getUUID());
+    }
+
+    /**
+     * Writes the column results of the given table profile to the store,
+     * replacing any that were there before. The index file is not updated
+     * until {@link #flush()} is called.
+     */
+    public void write(TableProfileResult tpr) throws IOException {
+        write(tpr, tpr.getColumnProfileResults());
+    }
+
+    /**
+     * Writes the given column results as those of the given table profile.
+     * This is used by the table profile itself, which must not be asked for
+     * its column results while it is evicting them.
+     */
+    void write(TableProfileResult tpr, List<ColumnProfileResult> columnResults) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeUTF(tpr.getUUID());
+        out.writeInt(columnResults.size());
+        for (ColumnProfileResult cpr : columnResults) {
+            writeColumnResult(out, cpr);
+        }
+        out.flush();
+        byte[] record = buffer.toByteArray();
+
+        synchronized (this) {
+            long position = data.length();
+            data.seek(position);
+            data.write(record);
+            long[] old = index.put(tpr.getUUID(), new long[] { position, record.length });
+            if (old != null) {
+                garbage += old[1];
+            }
+        }
+    }
+
+    /**
+     * Reads the column results of the given table profile from the store.
+     * The results are not added to the table profile. Results for columns
+     * the table no longer has are skipped.
+     *
+     * @return The column results, or an empty list if the store has none for
+     *         the table profile.
+     */
+    public List<ColumnProfileResult> read(TableProfileResult tpr) throws IOException, SQLObjectException {
+        byte[] record;
+        synchronized (this) {
+            long[] entry = index.get(tpr.getUUID());
+            if (entry == null) return new ArrayList<ColumnProfileResult>();
+            record = new byte[(int) entry[1]];
+            data.seek(entry[0]);
+            data.readFully(record);
+        }
+
+        Map<String, SQLColumn> columns = new HashMap<String, SQLColumn>();
+        for (SQLColumn col : tpr.getProfiledObject().getColumns()) {
+            columns.put(col.getUUID(), col);
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        String uuid = in.readUTF();
+        if (!uuid.equals(tpr.getUUID())) {
+            throw new IOException("Profile store is corrupt: expected record for " + tpr.getUUID() +
+                    " but found " + uuid);
+        }
+        int count = in.readInt();
+        List<ColumnProfileResult> results = new ArrayList<ColumnProfileResult>(count);
+        for (int i = 0; i < count; i++) {
+            ColumnProfileResult cpr = readColumnResult(in, columns);
+            if (cpr != null) {
+                results.add(cpr);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Forgets the column results of the given table profile.
+     */
+    public void remove(TableProfileResult tpr) {
+        synchronized (this) {
+            long[] old = index.remove(tpr.getUUID());
+            if (old != null) {
+                garbage += old[1];
+            }
+            loaded.remove(tpr);
+        }
+    }
+
+    /**
+     * Records that the column results of the given table profile are in
+     * memory and were just used. If that makes more table profiles loaded
+     * than allowed, the least recently used ones that are not being
+     * profiled are returned; the caller is expected to evict them with
+     * {@link TableProfileResult#evictColumnResults()}.
+     */
+    public synchronized List<TableProfileResult> touch(TableProfileResult tpr) {
+        loaded.put(tpr, Boolean.TRUE);
+        List<TableProfileResult> victims = new ArrayList<TableProfileResult>();
+        int excess = loaded.size() - Math.max(1, maxLoadedResults);
+        for (Iterator<TableProfileResult> it = loaded.keySet().iterator(); excess > 0 && it.hasNext(); ) {
+            TableProfileResult candidate = it.next();
+            if (candidate != tpr && candidate.getProgressMonitor().isFinished()) {
+                it.remove();
+                victims.add(candidate);
+                excess--;
+            }
+        }
+        return victims;
+    }
+
+    /**
+     * Records that the column results of the given table profile are no
+     * longer in memory.
+     */
+    synchronized void unloaded(TableProfileResult tpr) {
+        loaded.remove(tpr);
+    }
+
+    /**
+     * Writes the index file so the store can be opened again later. The
+     * index is written to a temporary file first so a failure part way
+     * through leaves the old index intact.
+     */
+    public synchronized void flush() throws IOException {
+        data.getFD().sync();
+        File tempFile = new File(indexFile.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+        try {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(data.length());
+            out.writeLong(garbage);
+            out.writeInt(index.size());
+            for (Map.Entry<String, long[]> entry : index.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue()[0]);
+                out.writeLong(entry.getValue()[1]);
+            }
+        } finally {
+            out.close();
+        }
+        if (indexFile.exists() && !indexFile.delete()) {
+            throw new IOException("Couldn't replace profile store index " + indexFile);
+        }
+        if (!tempFile.renameTo(indexFile)) {
+            throw new IOException("Couldn't rename " + tempFile + " to " + indexFile);
+        }
+    }
+
+    /**
+     * Rewrites the data file without the records that have been replaced or
+     * removed, if they take up more than half of it, then flushes the index.
+     * If the data file can't be replaced the store keeps using the original
+     * one.
+     */
+    public synchronized void compact() throws IOException {
+        if (garbage * 2 > data.length()) {
+            logger.debug("Compacting profile store " + dataFile + ", " + garbage + " of " +
+                    data.length() + " bytes are unused");
+            File tempFile = new File(dataFile.getPath() + ".tmp");
+            // the index is only changed once the compacted file replaced the original
+            Map<long[], Long> newPositions = new HashMap<long[], Long>();
+            RandomAccessFile compacted = new RandomAccessFile(tempFile, "rw");
+            boolean copied = false;
+            try {
+                compacted.setLength(0);
+                byte[] buffer = new byte[8192];
+                for (long[] entry : index.values()) {
+                    newPositions.put(entry, compacted.getFilePointer());
+                    data.seek(entry[0]);
+                    long remaining = entry[1];
+                    while (remaining > 0) {
+                        int n = (int) Math.min(buffer.length, remaining);
+                        data.readFully(buffer, 0, n);
+                        compacted.write(buffer, 0, n);
+                        remaining -= n;
+                    }
+                }
+                copied = true;
+            } finally {
+                compacted.close();
+                if (!copied) {
+                    tempFile.delete();
+                }
+            }
+            replaceDataFile(tempFile);
+            for (Map.Entry<long[], Long> entry : newPositions.entrySet()) {
+                entry.getKey()[0] = entry.getValue();
+            }
+            garbage = 0;
+        }
+        flush();
+    }
+
+    /**
+     * Replaces the data file with the given file and opens it. The original
+     * data file is moved aside until the new one is in place, and if that
+     * fails the original is put back and opened again before the exception is
+     * thrown.
+     */
+    private void replaceDataFile(File newFile) throws IOException {
+        File oldFile = new File(dataFile.getPath() + ".old");
+        oldFile.delete();
+        data.close();
+        if (!dataFile.renameTo(oldFile)) {
+            data = new RandomAccessFile(dataFile, "rw");
+            newFile.delete();
+            throw new IOException("Couldn't move profile store " + dataFile + " to " + oldFile);
+        }
+        if (!newFile.renameTo(dataFile)) {
+            if (!oldFile.renameTo(dataFile)) {
+                logger.error("Couldn't move profile store " + oldFile + " back to " + dataFile);
+                data = new RandomAccessFile(oldFile, "rw");
+            } else {
+                data = new RandomAccessFile(dataFile, "rw");
+            }
+            newFile.delete();
+            throw new IOException("Couldn't replace profile store " + dataFile + " with " + newFile);
+        }
+        data = new RandomAccessFile(dataFile, "rw");
+        if (!oldFile.delete()) {
+            logger.warn("Couldn't delete old profile store " + oldFile);
+        }
+    }
+
+    /**
+     * Flushes the index and closes the data file.
+     */
+    public synchronized void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            data.close();
+        }
+    }
+
+    private void readIndex() throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+        try {
+            if (in.readInt() != INDEX_MAGIC) {
+                throw new IOException(indexFile + " is not a profile store index");
+            }
+            int version = in.readInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported profile store version " + version + " in " + indexFile);
+            }
+            long dataLength = in.readLong();
+            garbage = in.readLong();
+            if (data.length() < dataLength) {
+                throw new IOException("Profile store " + dataFile + " is shorter than its index expects");
+            }
+            // anything after the indexed length was written after the last flush and is unreachable
+            garbage += data.length() - dataLength;
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String uuid = in.readUTF();
+                index.put(uuid, new long[] { in.readLong(), in.readLong() });
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void writeColumnResult(DataOutputStream out, ColumnProfileResult cpr) throws IOException {
+        out.writeUTF(cpr.getProfiledObject().getUUID());
+        out.writeUTF(cpr.getUUID());
+        out.writeLong(cpr.getCreateStartTime());
+        out.writeLong(cpr.getCreateEndTime());
+        writeNullableString(out, cpr.getNotes());
+        Exception ex = cpr.getException();
+        writeNullableString(out, ex == null ? null : ex.getClass().getName() + ": " + ex.getMessage());
+        out.writeInt(cpr.getDistinctValueCount());
+        out.writeInt(cpr.getDistinctValueCountError());
+        out.writeInt(cpr.getNullCount());
+        out.writeInt(cpr.getNullCountError());
+        out.writeInt(cpr.getMinLength());
+        out.writeInt(cpr.getMaxLength());
+        out.writeDouble(cpr.getAvgLength());
+        out.writeInt(cpr.getTopValueCountError());
+        writeNullableString(out, cpr.getColumnSignature());
+        writeValue(out, cpr.getMinValue());
+        writeValue(out, cpr.getMaxValue());
+        writeValue(out, cpr.getAvgValue());
+        List<ColumnValueCount> valueCounts = cpr.getValueCount();
+        out.writeInt(valueCounts.size());
+        for (ColumnValueCount cvc : valueCounts) {
+            writeValue(out, cvc.getValue());
+            out.writeInt(cvc.getCount());
+            out.writeDouble(cvc.getPercent());
+            out.writeBoolean(cvc.isOtherValues());
+        }
+    }
+
+    /**
+     * Reads one column result. The whole record is always consumed, but null
+     * is returned if the column is not in the given map.
+     */
+    private static ColumnProfileResult readColumnResult(DataInputStream in, Map<String, SQLColumn> columns)
+            throws IOException {
+        SQLColumn col = columns.get(in.readUTF());
+        ColumnProfileResult cpr = new ColumnProfileResult(col);
+        cpr.setUUID(in.readUTF());
+        cpr.setCreateStartTime(in.readLong());
+        cpr.setCreateEndTime(in.readLong());
+        String notes = readNullableString(in);
+        if (notes != null) cpr.setNotes(notes);
+        String exception = readNullableString(in);
+        if (exception != null) cpr.setException(new Exception(exception));
+        cpr.setDistinctValueCount(in.readInt());
+        cpr.setDistinctValueCountError(in.readInt());
+        cpr.setNullCount(in.readInt());
+        cpr.setNullCountError(in.readInt());
+        cpr.setMinLength(in.readInt());
+        cpr.setMaxLength(in.readInt());
+        cpr.setAvgLength(in.readDouble());
+        cpr.setTopValueCountError(in.readInt());
+        cpr.setColumnSignature(readNullableString(in));
+        cpr.setMinValue(readValue(in));
+        cpr.setMaxValue(readValue(in));
+        cpr.setAvgValue(readValue(in));
+        int valueCount = in.readInt();
+        for (int i = 0; i < valueCount; i++) {
+            Object value = readValue(in);
+            int count = in.readInt();
+            double percent = in.readDouble();
+            boolean otherValues = in.readBoolean();
+            cpr.addValueCount(new ColumnValueCount(value, count, percent, otherValues));
+        }
+        return col == null ? null : cpr;
+    }
+
+    private static void writeNullableString(DataOutputStream out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) writeLongString(out, s);
+    }
+
+    private static String readNullableString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? readLongString(in) : null;
+    }
+
+    /**
+     * Writes a profiled value, keeping its type for the types JDBC drivers
+     * usually return. Values of other types are kept as strings, which is
+     * what the project file does too.
+     */
+    static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(TYPE_NULL);
+        } else if (value instanceof BigDecimal) {
+            out.writeByte(TYPE_BIG_DECIMAL);
+            out.writeUTF(value.toString());
+        } else if (value instanceof Timestamp) {
+            out.writeByte(TYPE_TIMESTAMP);
+            out.writeLong(((Timestamp) value).getTime());
+            out.writeInt(((Timestamp) value).getNanos());
+        } else if (value instanceof java.util.Date) {
+            out.writeByte(TYPE_DATE);
+            out.writeLong(((java.util.Date) value).getTime());
+        } else if (value instanceof Long) {
+            out.writeByte(TYPE_LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            out.writeByte(TYPE_INTEGER);
+            out.writeInt(((Number) value).intValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            out.writeByte(TYPE_DOUBLE);
+            out.writeDouble(((Number) value).doubleValue());
+        } else {
+            out.writeByte(TYPE_STRING);
+            writeLongString(out, value.toString());
+        }
+    }
+
+    static Object readValue(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+        case TYPE_NULL:
+            return null;
+        case TYPE_BIG_DECIMAL:
+            return new BigDecimal(in.readUTF());
+        case TYPE_TIMESTAMP:
+            Timestamp ts = new Timestamp(in.readLong());
+            ts.setNanos(in.readInt());
+            return ts;
+        case TYPE_DATE:
+            return new java.sql.Date(in.readLong());
+        case TYPE_LONG:
+            return in.readLong();
+        case TYPE_INTEGER:
+            return in.readInt();
+        case TYPE_DOUBLE:
+            return in.readDouble();
+        case TYPE_STRING:
+            return readLongString(in);
+        default:
+            throw new IOException("Unknown value type " + type + " in profile store");
+        }
+    }
+
+    /**
+     * Writes a string that may be longer than {@link DataOutputStream#writeUTF(String)}
+     * allows.
+     */
+    private static void writeLongString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readLongString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+}
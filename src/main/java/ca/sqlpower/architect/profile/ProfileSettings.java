@@ -44,6 +44,52 @@ public class ProfileSettings extends AbstractSPObject {
      * IMPORTANT!: When changing this, ensure you maintain the order specified by {@link #getChildren()}
      */
     public static final List<Class<? extends SPObject>> allowedChildTypes = Collections.emptyList();
+
+    /**
+     * The ways a profile creator can limit the rows it profiles. When a
+     * random sample is taken, counts are scaled up to the whole table and
+     * given confidence intervals.
+     */
+    public enum SamplingMode {
+        
+        /**
+         * Read every row.
+         */
+        NONE,
+        
+        /**
+         * Profile {@link ProfileSettings#getSampleRows()} rows picked at
+         * random from a scan of the whole table. When the table's row count
+         * is known or estimated from the catalog statistics, the rows are
+         * picked one at a time with the probability that gives about that
+         * many rows, so none of them need to be kept. This is the default.
+         */
+        FIXED_ROWS,
+        
+        /**
+         * Profile about {@link ProfileSettings#getSamplePercentage()} percent
+         * of the rows, picked at random from a scan of the whole table.
+         */
+        PERCENTAGE,
+        
+        /**
+         * Read rows until {@link ProfileSettings#getSampleTimeBudgetSeconds()}
+         * seconds have passed. The rows read are the first ones the scan
+         * returns rather than a random sample, so the results describe only
+         * those rows and are not scaled up.
+         */
+        TIME_BUDGET,
+        
+        /**
+         * Have the database pick {@link ProfileSettings#getSamplePercentage()}
+         * percent of the table's rows at random using its own sampling clause
+         * (TABLESAMPLE or SAMPLE), which avoids reading the whole table. The
+         * sample is scaled up to the table's row count from the catalog
+         * statistics. Falls back to {@link #PERCENTAGE} on platforms without
+         * a sampling clause.
+         */
+        TABLESAMPLE
+    }
     
     private boolean findingMin = true;
 
@@ -65,6 +111,130 @@ public class ProfileSettings extends AbstractSPObject {
 
     private int topNCount = 10;
 
+    /**
+     * If true, profile creators that support it estimate distinct counts and
+     * the most frequent values with fixed-size sketches instead of counting
+     * every value exactly. See {@link ColumnProfileResult#getDistinctValueCountError()}
+     * and {@link ColumnProfileResult#getTopValueCountError()}. Remote profiles
+     * only estimate distinct counts, with the database's own approximate
+     * function where it has one.
+     * <p>
+     * This is on by default so that profiling a large table uses a bounded
+     * amount of memory. Exact distinct counts remember every distinct value,
+     * and even then stop being exact past
+     * {@link ColumnProfileAccumulator#MAX_EXACT_DISTINCT_VALUES} values.
+     */
+    private boolean usingApproximateCounts = true;
+
+    /**
+     * How the profile creators that support sampling limit the rows they
+     * read. A fixed number of rows by default, which bounds the time and
+     * memory taken to profile a large table.
+     */
+    private SamplingMode samplingMode = SamplingMode.FIXED_ROWS;
+
+    /**
+     * The number of rows read by {@link SamplingMode#FIXED_ROWS}.
+     */
+    private int sampleRows = 50000;
+
+    /**
+     * The percentage of rows read by {@link SamplingMode#PERCENTAGE} and
+     * {@link SamplingMode#TABLESAMPLE}.
+     */
+    private double samplePercentage = 10.0;
+
+    /**
+     * The number of seconds {@link SamplingMode#TIME_BUDGET} reads rows for.
+     */
+    private int sampleTimeBudgetSeconds = 60;
+
+    /**
+     * If true, a table that was profiled before is only profiled again if
+     * its change signature differs from the one of its latest profile, and
+     * only the columns whose definitions changed are profiled again. See
+     * {@link ProfileChangeDetector}.
+     */
+    private boolean incrementalProfiling = false;
+
+    /**
+     * A comma separated list of the names of audit or timestamp columns whose
+     * largest value shows when a table's data was last changed. They are only
+     * read when {@link #scanningForChanges} is set.
+     */
+    private String changeTrackingColumns = "LAST_UPDATE_DATE,LAST_UPDATED,LAST_MODIFIED,MODIFIED_DATE,UPDATED_AT,UPDATE_TS";
+
+    /**
+     * If true, the change signature of a table also counts its rows and finds
+     * the largest values of its change tracking columns, and of ORA_ROWSCN on
+     * Oracle, which reads the whole table. Otherwise the signature only comes
+     * from the modification statistics in the database's catalog, and tables
+     * on platforms without them are always profiled again.
+     */
+    private boolean scanningForChanges = false;
+
+    /**
+     * The maximum number of tables the profile manager will profile at the
+     * same time.
+     */
+    private int maxConcurrentProfiles = 8;
+
+    /**
+     * The maximum number of tables from a single data source the profile
+     * manager will profile at the same time. Each table being profiled holds
+     * a connection to its data source.
+     */
+    private int maxConcurrentProfilesPerDataSource = 4;
+
+    /**
+     * The number of columns the remote database profiler aggregates in each
+     * query. 1 means every column gets its own queries.
+     */
+    private int remoteColumnsPerQuery = 1;
+
+    /**
+     * The number of connections the remote database profiler may use at the
+     * same time while profiling one table. The connections still count
+     * against {@link #maxConcurrentProfilesPerDataSource}, so a table gets
+     * fewer when the other tables of its data source hold the rest.
+     */
+    private int remoteConnectionsPerTable = 1;
+
+    /**
+     * The number of primary key ranges the remote database profiler splits a
+     * large table into. The aggregates of each range are queried separately
+     * and merged. 1 means tables are never split.
+     */
+    private int remotePartitionCount = 1;
+
+    /**
+     * The smallest row count of a table the remote database profiler will
+     * split into primary key ranges.
+     */
+    private int remotePartitionMinRows = 1000000;
+
+    /**
+     * If true, saving the project keeps the column profile results in a
+     * {@link ProfileResultStore} beside the project file instead of in the
+     * project file, and only {@link #maxLoadedProfiles} table profiles keep
+     * their column results in memory.
+     */
+    private boolean usingProfileStore = false;
+
+    /**
+     * The number of table profiles whose column results may be in memory at
+     * once when a profile store is used.
+     */
+    private int maxLoadedProfiles = 100;
+
+    /**
+     * The number of full profile results kept for each table. When a table
+     * is profiled again, its oldest results beyond this number are removed;
+     * their statistics live on in the {@link ProfileHistory}. 0 keeps every
+     * result.
+     */
+    private int maxProfilesPerTable = 0;
+
     public ProfileSettings() {
         setName("Profile Settings");
     }
@@ -194,6 +364,210 @@ public class ProfileSettings extends AbstractSPObject {
         setTopNCount(Integer.valueOf(topNCount));
     }
 
+    @Accessor
+    public boolean isUsingApproximateCounts() {
+        return usingApproximateCounts;
+    }
+
+    @Mutator
+    public void setUsingApproximateCounts(boolean usingApproximateCounts) {
+        boolean oldValue = this.usingApproximateCounts;
+        this.usingApproximateCounts = usingApproximateCounts;
+        firePropertyChange("usingApproximateCounts", oldValue, usingApproximateCounts);
+    }
+
+    @Accessor
+    public SamplingMode getSamplingMode() {
+        return samplingMode;
+    }
+
+    @Mutator
+    public void setSamplingMode(SamplingMode samplingMode) {
+        SamplingMode oldValue = this.samplingMode;
+        this.samplingMode = samplingMode;
+        firePropertyChange("samplingMode", oldValue, samplingMode);
+    }
+
+    @Accessor
+    public int getSampleRows() {
+        return sampleRows;
+    }
+
+    @Mutator
+    public void setSampleRows(int sampleRows) {
+        int oldValue = this.sampleRows;
+        this.sampleRows = sampleRows;
+        firePropertyChange("sampleRows", oldValue, sampleRows);
+    }
+
+    @Accessor
+    public double getSamplePercentage() {
+        return samplePercentage;
+    }
+
+    @Mutator
+    public void setSamplePercentage(double samplePercentage) {
+        double oldValue = this.samplePercentage;
+        this.samplePercentage = samplePercentage;
+        firePropertyChange("samplePercentage", oldValue, samplePercentage);
+    }
+
+    @Accessor
+    public int getSampleTimeBudgetSeconds() {
+        return sampleTimeBudgetSeconds;
+    }
+
+    @Mutator
+    public void setSampleTimeBudgetSeconds(int sampleTimeBudgetSeconds) {
+        int oldValue = this.sampleTimeBudgetSeconds;
+        this.sampleTimeBudgetSeconds = sampleTimeBudgetSeconds;
+        firePropertyChange("sampleTimeBudgetSeconds", oldValue, sampleTimeBudgetSeconds);
+    }
+
+    @Accessor
+    public boolean isIncrementalProfiling() {
+        return incrementalProfiling;
+    }
+
+    @Mutator
+    public void setIncrementalProfiling(boolean incrementalProfiling) {
+        boolean oldValue = this.incrementalProfiling;
+        this.incrementalProfiling = incrementalProfiling;
+        firePropertyChange("incrementalProfiling", oldValue, incrementalProfiling);
+    }
+
+    @Accessor
+    public String getChangeTrackingColumns() {
+        return changeTrackingColumns;
+    }
+
+    @Mutator
+    public void setChangeTrackingColumns(String changeTrackingColumns) {
+        String oldValue = this.changeTrackingColumns;
+        this.changeTrackingColumns = changeTrackingColumns;
+        firePropertyChange("changeTrackingColumns", oldValue, changeTrackingColumns);
+    }
+
+    @Accessor
+    public boolean isScanningForChanges() {
+        return scanningForChanges;
+    }
+
+    @Mutator
+    public void setScanningForChanges(boolean scanningForChanges) {
+        boolean oldValue = this.scanningForChanges;
+        this.scanningForChanges = scanningForChanges;
+        firePropertyChange("scanningForChanges", oldValue, scanningForChanges);
+    }
+
+    @Accessor
+    public int getMaxConcurrentProfiles() {
+        return maxConcurrentProfiles;
+    }
+
+    @Mutator
+    public void setMaxConcurrentProfiles(int maxConcurrentProfiles) {
+        int oldCount = this.maxConcurrentProfiles;
+        this.maxConcurrentProfiles = maxConcurrentProfiles;
+        firePropertyChange("maxConcurrentProfiles", oldCount, maxConcurrentProfiles);
+    }
+
+    @Accessor
+    public int getMaxConcurrentProfilesPerDataSource() {
+        return maxConcurrentProfilesPerDataSource;
+    }
+
+    @Mutator
+    public void setMaxConcurrentProfilesPerDataSource(int maxConcurrentProfilesPerDataSource) {
+        int oldCount = this.maxConcurrentProfilesPerDataSource;
+        this.maxConcurrentProfilesPerDataSource = maxConcurrentProfilesPerDataSource;
+        firePropertyChange("maxConcurrentProfilesPerDataSource", oldCount, maxConcurrentProfilesPerDataSource);
+    }
+
+    @Accessor
+    public int getRemoteColumnsPerQuery() {
+        return remoteColumnsPerQuery;
+    }
+
+    @Mutator
+    public void setRemoteColumnsPerQuery(int remoteColumnsPerQuery) {
+        int oldCount = this.remoteColumnsPerQuery;
+        this.remoteColumnsPerQuery = remoteColumnsPerQuery;
+        firePropertyChange("remoteColumnsPerQuery", oldCount, remoteColumnsPerQuery);
+    }
+
+    @Accessor
+    public int getRemoteConnectionsPerTable() {
+        return remoteConnectionsPerTable;
+    }
+
+    @Mutator
+    public void setRemoteConnectionsPerTable(int remoteConnectionsPerTable) {
+        int oldCount = this.remoteConnectionsPerTable;
+        this.remoteConnectionsPerTable = remoteConnectionsPerTable;
+        firePropertyChange("remoteConnectionsPerTable", oldCount, remoteConnectionsPerTable);
+    }
+
+    @Accessor
+    public int getRemotePartitionCount() {
+        return remotePartitionCount;
+    }
+
+    @Mutator
+    public void setRemotePartitionCount(int remotePartitionCount) {
+        int oldCount = this.remotePartitionCount;
+        this.remotePartitionCount = remotePartitionCount;
+        firePropertyChange("remotePartitionCount", oldCount, remotePartitionCount);
+    }
+
+    @Accessor
+    public int getRemotePartitionMinRows() {
+        return remotePartitionMinRows;
+    }
+
+    @Mutator
+    public void setRemotePartitionMinRows(int remotePartitionMinRows) {
+        int oldCount = this.remotePartitionMinRows;
+        this.remotePartitionMinRows = remotePartitionMinRows;
+        firePropertyChange("remotePartitionMinRows", oldCount, remotePartitionMinRows);
+    }
+
+    @Accessor
+    public boolean isUsingProfileStore() {
+        return usingProfileStore;
+    }
+
+    @Mutator
+    public void setUsingProfileStore(boolean usingProfileStore) {
+        boolean oldValue = this.usingProfileStore;
+        this.usingProfileStore = usingProfileStore;
+        firePropertyChange("usingProfileStore", oldValue, usingProfileStore);
+    }
+
+    @Accessor
+    public int getMaxLoadedProfiles() {
+        return maxLoadedProfiles;
+    }
+
+    @Mutator
+    public void setMaxLoadedProfiles(int maxLoadedProfiles) {
+        int oldCount = this.maxLoadedProfiles;
+        this.maxLoadedProfiles = maxLoadedProfiles;
+        firePropertyChange("maxLoadedProfiles", oldCount, maxLoadedProfiles);
+    }
+
+    @Accessor
+    public int getMaxProfilesPerTable() {
+        return maxProfilesPerTable;
+    }
+
+    @Mutator
+    public void setMaxProfilesPerTable(int maxProfilesPerTable) {
+        int oldCount = this.maxProfilesPerTable;
+        this.maxProfilesPerTable = maxProfilesPerTable;
+        firePropertyChange("maxProfilesPerTable", oldCount, maxProfilesPerTable);
+    }
+
     @Override
     protected boolean removeChildImpl(SPObject child) {
         return false;
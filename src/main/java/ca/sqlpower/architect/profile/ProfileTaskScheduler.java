@@ -0,0 +1,428 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.sqlpower.architect.profile;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.util.Monitorable;
+
+/**
+ * Runs profiling jobs on a bounded pool of worker threads. Jobs are queued
+ * per data source, and the queues are serviced round-robin so that a large
+ * batch of tables from one database cannot starve the tables of another.
+ * <p>
+ * Two limits are enforced: the total number of jobs running at once, and the
+ * number of jobs running at once against any single data source. The second
+ * limit is what keeps us from opening more connections to a database than it
+ * (or its DBA) is willing to give us, since every running profile holds one
+ * connection for most of its life.
+ * <p>
+ * A running job that wants more than its one connection, such as a remote
+ * profile that queries a table over several connections at once, asks for
+ * the extra ones with {@link #acquireExtraConnections(int)}. They come out
+ * of the same per data source limit, so they hold back other jobs against
+ * that data source until they are released.
+ * <p>
+ * Cancelling a {@link Future} returned by this scheduler also cancels the
+ * progress monitor of the job, so a job that is already running gets the
+ * chance to stop between queries instead of being interrupted in the middle
+ * of a JDBC call.
+ */
+public class ProfileTaskScheduler {
+
+    private static final Logger logger = Logger.getLogger(ProfileTaskScheduler.class);
+
+    /**
+     * The job running on the current thread, if the thread is one of the
+     * workers of a scheduler.
+     */
+    private static final ThreadLocal<ProfileTask<?>> currentTask = new ThreadLocal<ProfileTask<?>>();
+
+    /**
+     * A queued or running job. When a running job returns, its slot is handed
+     * back to the scheduler and the next eligible job is started. A job that
+     * is cancelled while still queued is simply dropped from its queue.
+     */
+    private class ProfileTask<T> extends FutureTask<T> {
+
+        /**
+         * The data source this job will be connecting to.
+         */
+        private final Object dataSourceKey;
+
+        /**
+         * The progress monitor that will be cancelled if this job is cancelled.
+         * Can be null.
+         */
+        private final Monitorable monitor;
+
+        /**
+         * The queue this job is added to once it is done, or null.
+         */
+        private final BlockingQueue<? super Future<T>> completionQueue;
+
+        /**
+         * Set to true once this job has been handed to a worker thread. Only
+         * read and modified while holding the scheduler's lock.
+         */
+        private boolean dispatched;
+
+        /**
+         * The number of connections this job holds beyond its own slot. Only
+         * read and modified while holding the scheduler's lock.
+         */
+        private int extraConnections;
+
+        ProfileTask(Object dataSourceKey, Callable<T> job, Monitorable monitor,
+                BlockingQueue<? super Future<T>> completionQueue) {
+            super(job);
+            this.dataSourceKey = dataSourceKey;
+            this.monitor = monitor;
+            this.completionQueue = completionQueue;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            if (monitor != null) {
+                monitor.setCancelled(true);
+            }
+            return super.cancel(mayInterruptIfRunning);
+        }
+
+        @Override
+        public void run() {
+            currentTask.set(this);
+            try {
+                super.run();
+            } finally {
+                currentTask.remove();
+                taskFinished(this);
+            }
+        }
+
+        ProfileTaskScheduler getScheduler() {
+            return ProfileTaskScheduler.this;
+        }
+
+        @Override
+        protected void done() {
+            taskDone(this);
+            if (completionQueue != null) {
+                completionQueue.add(this);
+            }
+        }
+    }
+
+    /**
+     * The threads the profiling jobs run on. The pool itself is unbounded;
+     * the number of jobs handed to it is limited by {@link #dispatch()}.
+     */
+    private final ExecutorService workers;
+
+    /**
+     * The pending jobs for each data source, in the order they were submitted.
+     */
+    private final Map<Object, LinkedList<ProfileTask<?>>> pending = new HashMap<Object, LinkedList<ProfileTask<?>>>();
+
+    /**
+     * The data sources that have pending jobs, in the order they will next be
+     * serviced. A data source moves to the back of this list each time one of
+     * its jobs is started.
+     */
+    private final LinkedList<Object> rotation = new LinkedList<Object>();
+
+    /**
+     * The number of jobs currently running against each data source.
+     */
+    private final Map<Object, Integer> running = new HashMap<Object, Integer>();
+
+    /**
+     * The total number of jobs currently running.
+     */
+    private int runningCount;
+
+    /**
+     * The maximum number of jobs this scheduler will run at the same time.
+     */
+    private int maxConcurrentTasks;
+
+    /**
+     * The maximum number of jobs this scheduler will run at the same time
+     * against any one data source.
+     */
+    private int maxConcurrentTasksPerDataSource;
+
+    private boolean shutdown;
+
+    /**
+     * Creates a new scheduler with the given limits. No threads are started
+     * until the first job is submitted.
+     *
+     * @param maxConcurrentTasks
+     *            The maximum number of jobs to run at once. Must be at least 1.
+     * @param maxConcurrentTasksPerDataSource
+     *            The maximum number of jobs to run at once against a single
+     *            data source. Must be at least 1.
+     */
+    public ProfileTaskScheduler(int maxConcurrentTasks, int maxConcurrentTasksPerDataSource) {
+        setLimits(maxConcurrentTasks, maxConcurrentTasksPerDataSource);
+        workers = Executors.newCachedThreadPool(new ThreadFactory() {
+            private int threadCount = 0;
+            public synchronized Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "Profile Worker " + (++threadCount));
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Changes the concurrency limits of this scheduler. Jobs that are already
+     * running are not affected if the limits are lowered, but no new jobs
+     * will be started until the running count drops below the new limits.
+     */
+    public synchronized void setLimits(int maxConcurrentTasks, int maxConcurrentTasksPerDataSource) {
+        if (maxConcurrentTasks < 1 || maxConcurrentTasksPerDataSource < 1) {
+            throw new IllegalArgumentException("Profiling concurrency limits must be at least 1 (got " +
+                    maxConcurrentTasks + ", " + maxConcurrentTasksPerDataSource + ")");
+        }
+        this.maxConcurrentTasks = maxConcurrentTasks;
+        this.maxConcurrentTasksPerDataSource = maxConcurrentTasksPerDataSource;
+        dispatch();
+    }
+
+    /**
+     * Queues the given job to run once a worker and a connection slot for its
+     * data source are available.
+     *
+     * @param dataSourceKey
+     *            Identifies the data source the job will connect to. Jobs with
+     *            equal keys share the per data source limit.
+     * @param job
+     *            The work to do.
+     * @param monitor
+     *            The progress monitor of the job, which will be cancelled if
+     *            the returned future is cancelled. Can be null.
+     */
+    public <T> Future<T> submit(Object dataSourceKey, Callable<T> job, Monitorable monitor) {
+        return submit(dataSourceKey, job, monitor, null);
+    }
+
+    /**
+     * Queues the given job like {@link #submit(Object, Callable, Monitorable)},
+     * and adds its future to the given queue once it is done, whether it
+     * finished, failed or was cancelled. Taking the futures from the queue
+     * gives the results in the order the jobs finished, as a
+     * {@link java.util.concurrent.CompletionService} does.
+     *
+     * @param completionQueue
+     *            The queue the job's future is added to once it is done. Can
+     *            be null.
+     */
+    public synchronized <T> Future<T> submit(Object dataSourceKey, Callable<T> job, Monitorable monitor,
+            BlockingQueue<? super Future<T>> completionQueue) {
+        if (shutdown) {
+            throw new IllegalStateException("This profile scheduler has been shut down");
+        }
+        ProfileTask<T> task = new ProfileTask<T>(dataSourceKey, job, monitor, completionQueue);
+        LinkedList<ProfileTask<?>> queue = pending.get(dataSourceKey);
+        if (queue == null) {
+            queue = new LinkedList<ProfileTask<?>>();
+            pending.put(dataSourceKey, queue);
+            rotation.add(dataSourceKey);
+        }
+        queue.add(task);
+        dispatch();
+        return task;
+    }
+
+    /**
+     * Starts as many pending jobs as the limits allow, taking one job at a
+     * time from each data source in turn.
+     */
+    private synchronized void dispatch() {
+        if (shutdown) return;
+        boolean startedOne = true;
+        while (startedOne && runningCount < maxConcurrentTasks) {
+            startedOne = false;
+            for (Iterator<Object> it = rotation.iterator(); it.hasNext(); ) {
+                Object key = it.next();
+                if (runningCount(key) >= maxConcurrentTasksPerDataSource) continue;
+
+                LinkedList<ProfileTask<?>> queue = pending.get(key);
+                ProfileTask<?> task = queue.removeFirst();
+                it.remove();
+                if (queue.isEmpty()) {
+                    pending.remove(key);
+                } else {
+                    rotation.addLast(key);
+                }
+                if (task.isDone()) {
+                    // cancelled while it was waiting; it never took a slot
+                    startedOne = true;
+                    break;
+                }
+                task.dispatched = true;
+                running.put(key, runningCount(key) + 1);
+                runningCount++;
+                logger.debug("Starting profile task for " + key + " (" + runningCount + " running)");
+                workers.execute(task);
+                startedOne = true;
+                break;
+            }
+        }
+    }
+
+    /**
+     * Releases the slot held by the given job, which has just returned from
+     * its worker, and starts the next job. The slot is not released when a
+     * running job is cancelled, only once it has actually stopped, so the
+     * per data source limit holds even while cancelled jobs wind down.
+     */
+    private synchronized void taskFinished(ProfileTask<?> task) {
+        int count = runningCount(task.dataSourceKey) - 1 - task.extraConnections;
+        task.extraConnections = 0;
+        if (count <= 0) {
+            running.remove(task.dataSourceKey);
+        } else {
+            running.put(task.dataSourceKey, count);
+        }
+        runningCount--;
+        dispatch();
+    }
+
+    /**
+     * Drops the given job from its queue if it was cancelled before it was
+     * started.
+     */
+    private synchronized void taskDone(ProfileTask<?> task) {
+        if (task.dispatched) return;
+        LinkedList<ProfileTask<?>> queue = pending.get(task.dataSourceKey);
+        if (queue != null && queue.remove(task) && queue.isEmpty()) {
+            pending.remove(task.dataSourceKey);
+            rotation.remove(task.dataSourceKey);
+        }
+    }
+
+    /**
+     * Gives the job running on the current thread up to the given number of
+     * connections beyond its own, as far as the per data source limit allows.
+     * This never waits, since the jobs holding the other slots may be waiting
+     * for connections themselves. Code that is not running as a job of a
+     * scheduler is not limited and gets all it asks for.
+     *
+     * @param wanted
+     *            The number of extra connections the job would like to open.
+     * @return The number of extra connections the job may open, which it
+     *         must give back with {@link #releaseExtraConnections(int)}.
+     *         Those that are not given back are released when the job returns.
+     */
+    public static int acquireExtraConnections(int wanted) {
+        ProfileTask<?> task = currentTask.get();
+        if (task == null) return Math.max(0, wanted);
+        return task.getScheduler().acquireExtraConnections(task, wanted);
+    }
+
+    /**
+     * Gives back connections the job running on the current thread got from
+     * {@link #acquireExtraConnections(int)}, so other jobs against the same
+     * data source can start.
+     */
+    public static void releaseExtraConnections(int count) {
+        ProfileTask<?> task = currentTask.get();
+        if (task == null) return;
+        task.getScheduler().releaseExtraConnections(task, count);
+    }
+
+    private synchronized int acquireExtraConnections(ProfileTask<?> task, int wanted) {
+        int granted = Math.max(0, Math.min(wanted, 
+                maxConcurrentTasksPerDataSource - runningCount(task.dataSourceKey)));
+        if (granted > 0) {
+            running.put(task.dataSourceKey, runningCount(task.dataSourceKey) + granted);
+            task.extraConnections += granted;
+            logger.debug("Gave " + granted + " extra connection(s) to a profile task for " + task.dataSourceKey);
+        }
+        return granted;
+    }
+
+    private synchronized void releaseExtraConnections(ProfileTask<?> task, int count) {
+        count = Math.min(count, task.extraConnections);
+        if (count <= 0) return;
+        task.extraConnections -= count;
+        running.put(task.dataSourceKey, runningCount(task.dataSourceKey) - count);
+        dispatch();
+    }
+
+    private int runningCount(Object dataSourceKey) {
+        Integer count = running.get(dataSourceKey);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Returns the number of jobs that are currently running.
+     */
+    public synchronized int getRunningCount() {
+        return runningCount;
+    }
+
+    /**
+     * Returns the number of jobs that are waiting for a free slot.
+     */
+    public synchronized int getPendingCount() {
+        int count = 0;
+        for (List<ProfileTask<?>> queue : pending.values()) {
+            count += queue.size();
+        }
+        return count;
+    }
+
+    /**
+     * Cancels all jobs that have not started yet and lets the running jobs
+     * finish. No more jobs can be submitted after this method is called.
+     */
+    public void shutdown() {
+        List<ProfileTask<?>> cancelled = new ArrayList<ProfileTask<?>>();
+        synchronized (this) {
+            shutdown = true;
+            for (List<ProfileTask<?>> queue : pending.values()) {
+                cancelled.addAll(queue);
+            }
+            pending.clear();
+            rotation.clear();
+        }
+        for (ProfileTask<?> task : cancelled) {
+            task.cancel(false);
+        }
+        workers.shutdown();
+    }
+}
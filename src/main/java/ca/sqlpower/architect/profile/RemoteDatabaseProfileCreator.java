@@ -19,16 +19,30 @@
 
 package ca.sqlpower.architect.profile;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Blob;
+import java.sql.Clob;
 import java.sql.Connection;
+import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.log4j.Logger;
 
 import ca.sqlpower.architect.ddl.DDLUtils;
+import ca.sqlpower.architect.profile.ProfileSettings.SamplingMode;
 import ca.sqlpower.sql.JDBCDataSourceType;
 import ca.sqlpower.sqlobject.SQLObjectException;
 import ca.sqlpower.sqlobject.SQLColumn;
@@ -55,6 +69,21 @@ import ca.sqlpower.util.MonitorableImpl;
  * given SQLTable's data source.  See {@link #createProfileFunctions(JDBCDataSourceType)}
  * for details.
  * <p>
+ * By default every column is profiled with its own queries, one after the
+ * other. The profile settings can ask for the aggregates of several columns to
+ * be calculated in one query, for the queries of a table to be run over
+ * several connections at once, and for large tables to be split into primary
+ * key ranges that are aggregated separately and merged here. Counting distinct
+ * values and finding the most frequent values can't be merged across ranges,
+ * so those queries always run over the whole table.
+ * <p>
+ * When the settings ask for approximate counts, distinct values are counted
+ * with the database's own approximate distinct count function where it has
+ * one (see {@link #approximateCountDistinctFunction(String, int, int)}).
+ * Elsewhere the column's values are read into a {@link HyperLogLog} sketch
+ * here, which for a large table only reads a sample of its rows. The other
+ * aggregates are always exact.
+ * <p>
  * For a profiler better suited for use on large tables, see
  * {@link LocalReservoirProfileCreator}.
  */
@@ -62,12 +91,6 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
 
     private static final Logger logger = Logger.getLogger(RemoteDatabaseProfileCreator.class);
     
-    /**
-     * A map from data type names used in Architect to the database's actual
-     * data type stored in a profile function descriptor.
-     */
-    private Map<String, ProfileFunctionDescriptor> profileFunctionMap;
-    
     /**
      * This class is used to hold the specific start and end to a LENGTH
      * SQL command based on the database in use.
@@ -180,20 +203,186 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
     }
     
     /**
-     * An object to store the string length function for the database.
+     * The database specific profiling functions used while profiling one
+     * table. A new instance is created for each table so that this profile
+     * creator can be used to profile several tables at the same time.
      */
-    private StringLengthSQLFunction stringLengthSQLFunction;
-    
+    private class PlatformFunctions {
+        
+        /**
+         * A map from data type names used in Architect to the database's actual
+         * data type stored in a profile function descriptor.
+         */
+        private final Map<String, ProfileFunctionDescriptor> profileFunctionMap;
+        
+        /**
+         * An object to store the string length function for the database.
+         */
+        private final StringLengthSQLFunction stringLengthSQLFunction;
+        
+        /**
+         * An object to store the average function for the database.
+         */
+        private final AverageSQLFunction averageSQLFunction;
+        
+        /**
+         * An object to store the case when null function for the database.
+         */
+        private final CaseWhenNullSQLFunction caseWhenNullSQLFunction;
+        
+        PlatformFunctions(Map<String, ProfileFunctionDescriptor> profileFunctionMap,
+                StringLengthSQLFunction stringLengthSQLFunction,
+                AverageSQLFunction averageSQLFunction,
+                CaseWhenNullSQLFunction caseWhenNullSQLFunction) {
+            this.profileFunctionMap = profileFunctionMap;
+            this.stringLengthSQLFunction = stringLengthSQLFunction;
+            this.averageSQLFunction = averageSQLFunction;
+            this.caseWhenNullSQLFunction = caseWhenNullSQLFunction;
+        }
+    }
+
     /**
-     * An object to store the average function for the database.
+     * The aggregates of one column that came back from one query. When a table
+     * is split into key ranges, the aggregates of each range are merged into
+     * the aggregates of the whole column. Null fields were not calculated.
      */
-    private AverageSQLFunction averageSQLFunction;
+    private static class ColumnAggregates {
+        
+        private Integer distinctCount;
+        
+        /**
+         * The half-width of the 95% confidence interval of an approximate
+         * distinct count, or null if the distinct count is exact.
+         */
+        private Integer distinctCountError;
+        
+        private Object minValue;
+        private Object maxValue;
+        private Object avgValue;
+        private Integer minLength;
+        private Integer maxLength;
+        private Double avgLength;
+        private Integer nullCount;
+        
+        /**
+         * The number of non-null values the averages were taken over. This is
+         * only calculated for key ranges, so their averages can be weighted
+         * when they are merged.
+         */
+        private Long nonNullCount;
+        
+        /**
+         * Set when the averages of two ranges could not be combined, so the
+         * average of the column is unknown.
+         */
+        private boolean avgValueLost;
+        
+        /**
+         * The most frequent values and their counts, most frequent first.
+         */
+        private List<Object> topValues;
+        private List<Integer> topCounts;
+        
+        /**
+         * The reason the aggregates could not be calculated.
+         */
+        private Exception exception;
+        
+        /**
+         * Folds the aggregates of another query of the same column into these.
+         */
+        @SuppressWarnings("unchecked")
+        void merge(ColumnAggregates other) {
+            if (exception == null) exception = other.exception;
+            if (other.distinctCount != null) {
+                distinctCount = other.distinctCount;
+                distinctCountError = other.distinctCountError;
+            }
+            if (other.topValues != null) {
+                topValues = other.topValues;
+                topCounts = other.topCounts;
+            }
+            if (other.minValue != null && (minValue == null ||
+                    (minValue instanceof Comparable && ((Comparable) other.minValue).compareTo(minValue) < 0))) {
+                minValue = other.minValue;
+            }
+            if (other.maxValue != null && (maxValue == null ||
+                    (maxValue instanceof Comparable && ((Comparable) other.maxValue).compareTo(maxValue) > 0))) {
+                maxValue = other.maxValue;
+            }
+            if (other.minLength != null && (minLength == null || other.minLength < minLength)) {
+                minLength = other.minLength;
+            }
+            if (other.maxLength != null && (maxLength == null || other.maxLength > maxLength)) {
+                maxLength = other.maxLength;
+            }
+            if (other.nullCount != null) {
+                nullCount = (nullCount == null ? 0 : nullCount) + other.nullCount;
+            }
+            if (other.nonNullCount == null) {
+                if (other.avgValue != null) avgValue = other.avgValue;
+                if (other.avgLength != null) avgLength = other.avgLength;
+            } else {
+                long n = nonNullCount == null ? 0 : nonNullCount;
+                long m = other.nonNullCount;
+                if (other.avgValue == null || m == 0) {
+                    // nothing to add
+                } else if (avgValue == null || n == 0) {
+                    avgValue = other.avgValue;
+                } else if (avgValue instanceof Number && other.avgValue instanceof Number) {
+                    avgValue = (((Number) avgValue).doubleValue() * n +
+                            ((Number) other.avgValue).doubleValue() * m) / (n + m);
+                } else {
+                    // averages of non-numbers (such as dates on some platforms) can't be weighted
+                    avgValueLost = true;
+                }
+                if (other.avgLength == null || m == 0) {
+                    // nothing to add
+                } else if (avgLength == null || n == 0) {
+                    avgLength = other.avgLength;
+                } else {
+                    avgLength = (avgLength * n + other.avgLength * m) / (n + m);
+                }
+                nonNullCount = n + m;
+            }
+        }
+        
+        /**
+         * Stores these aggregates in the given column profile result. The
+         * result's parent must already have its row count set.
+         */
+        void populate(ColumnProfileResult cpr) {
+            if (distinctCount != null) cpr.setDistinctValueCount(distinctCount);
+            if (distinctCountError != null) cpr.setDistinctValueCountError(distinctCountError);
+            if (minValue != null) cpr.setMinValue(minValue);
+            if (maxValue != null) cpr.setMaxValue(maxValue);
+            if (avgValue != null && !avgValueLost) cpr.setAvgValue(avgValue);
+            if (minLength != null) cpr.setMinLength(minLength);
+            if (maxLength != null) cpr.setMaxLength(maxLength);
+            if (avgLength != null) cpr.setAvgLength(avgLength);
+            if (nullCount != null) cpr.setNullCount(nullCount);
+            if (topValues != null) {
+                int topNSum = 0;
+                for (int n = 0; n < topValues.size(); n++) {
+                    cpr.addValueCount(topValues.get(n), topCounts.get(n));
+                    topNSum += topCounts.get(n);
+                }
+                int remainingCount = cpr.getParent().getRowCount() - topNSum;
+                if (remainingCount > 0) {
+                    cpr.addValueCount(ColumnValueCount.OTHER_VALUE_OBJECT, remainingCount);
+                }
+            }
+        }
+    }
     
     /**
-     * An object to store the case when null function for the database.
+     * The relative error reported for the distinct counts of the databases'
+     * approximate distinct count functions. They are all HyperLogLog sketches;
+     * SQL Server documents an error of at most 2% 97% of the time, and the
+     * others are at least as accurate with their default settings.
      */
-    private CaseWhenNullSQLFunction caseWhenNullSQLFunction;
-
+    static final double APPROXIMATE_COUNT_DISTINCT_ERROR = 0.02;
+    
     /**
      * The settings for this profile creator.
      */
@@ -206,16 +395,20 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
     public boolean doProfileImpl(TableProfileResult tpr) {
         MonitorableImpl pm = (MonitorableImpl) tpr.getProgressMonitor();
         try {
-            
             doTableProfile(tpr);
             
             SQLTable table = tpr.getProfiledObject();
             JDBCDataSourceType dsType = table.getParentDatabase().getDataSource().getParentType();
-            createProfileFunctions(dsType);
-            for (SQLColumn col : table.getColumns()) {
+            PlatformFunctions functions = createProfileFunctions(dsType);
+            if (settings.getRemoteColumnsPerQuery() > 1 || settings.getRemoteConnectionsPerTable() > 1
+                    || settings.getRemotePartitionCount() > 1) {
+                doBatchedColumnProfiles(tpr, functions, pm);
+                return !pm.isCancelled();
+            }
+            for (SQLColumn col : getColumnsToProfile(tpr)) {
                 ColumnProfileResult columnResult = new ColumnProfileResult(col);
                 tpr.addColumnProfileResult(columnResult);
-                doColumnProfile(columnResult, pm);
+                doColumnProfile(columnResult, functions, pm);
                 pm.setProgress(pm.getProgress() + 1);
             }
 
@@ -241,7 +434,13 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
         ResultSet rs = null;
         try {
             SQLTable table = tpr.getProfiledObject();
-            pm.setJobSize(table.getColumns().size() + 1);
+            pm.setJobSize(getColumnsToProfile(tpr).size() + 1);
+            long knownRowCount = getKnownRowCount(tpr);
+            if (knownRowCount >= 0) {
+                tpr.setRowCount((int) Math.min(Integer.MAX_VALUE, knownRowCount));
+                pm.setProgress(pm.getProgress() + 1);
+                return;
+            }
             SQLDatabase db = table.getParentDatabase();
             conn = db.getConnection();
             String databaseIdentifierQuoteString = null;
@@ -299,6 +498,7 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
      * aggregate functions differ by platform).
      * @param col The column to perform the profiling on.
      * @param con The connection to use to the database <tt>col</tt> is in.
+     * @param functions The database specific SQL functions for <tt>col</tt>'s database.
      * @param pm The progress monitor for this operation.  It will be polled to see if the current
      * profiling operation has been cancelled.  It will not be manipulated in any other way.
      * @throws SQLException If profiling fails.  This is most likely due to an incorrect
@@ -309,186 +509,729 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
             ProfileFunctionDescriptor pfd,
             SQLColumn col,
             Connection con,
+            PlatformFunctions functions,
             Monitorable pm) throws SQLException {
 
         logger.debug("Starting execProfileFunctions for " + col);
         long createStartTime = System.currentTimeMillis();
-        final int i = 0;
+        List<ColumnProfileResult> columns = Collections.singletonList(cpr);
+        Map<ColumnProfileResult, ProfileFunctionDescriptor> descriptors = 
+            Collections.singletonMap(cpr, pfd);
+        cpr.setCreateStartTime(createStartTime);
+
+        if (pm.isCancelled()) return;
+        ColumnAggregates aggregates = execAggregates(columns, descriptors, con, functions, 
+                null, true, true, false)[0];
+        if (pm.isCancelled()) return;
+
+        if (settings.isFindingTopTen() && pfd.isCountDist()) {
+            aggregates.merge(execTopValues(col, con));
+        }
+        aggregates.populate(cpr);
+
+        cpr.setCreateEndTime(System.currentTimeMillis());
+    }
+
+    /**
+     * Appends the aggregate functions the settings ask for and the descriptor
+     * allows to the select list of a profiling query. The result columns are
+     * suffixed with <tt>i</tt> so several columns can be profiled by one
+     * query.
+     * 
+     * @param includeDistinct
+     *            True if the distinct count should be included.
+     * @param distinctFunction
+     *            The opening of the function that counts distinct values, up
+     *            to the column name, such as <tt>COUNT(DISTINCT </tt>.
+     * @param includeOthers
+     *            True if the min, max, average, length and null count
+     *            aggregates should be included.
+     * @param includeNonNullCount
+     *            True if the number of non-null values should be included,
+     *            which is needed to merge the averages of key ranges.
+     * @return The number of aggregates appended.
+     */
+    private int appendAggregateFunctions(StringBuffer sql, int i, SQLColumn col, 
+            ProfileFunctionDescriptor pfd, PlatformFunctions functions, String quote,
+            boolean includeDistinct, String distinctFunction, boolean includeOthers, 
+            boolean includeNonNullCount) {
+        String quotedName = quote + col.getName() + quote;
+        int tryCount = 0;
+        if (includeDistinct && settings.isFindingDistinctCount() && pfd.isCountDist() ) {
+            sql.append(",\n ").append(distinctFunction).append(quotedName).append(") AS DISTINCTCOUNT_"+i);
+            tryCount++;
+        }
+        if (!includeOthers) return tryCount;
+        if (settings.isFindingMin() && pfd.isMinValue() ) {
+            sql.append(",\n MIN(").append(quotedName).append(") AS MINVALUE_"+i);
+            tryCount++;
+        }
+        if (settings.isFindingMax() && pfd.isMaxValue() ) {
+            sql.append(",\n MAX(").append(quotedName).append(") AS MAXVALUE_"+i);
+            tryCount++;
+        }
+        if (settings.isFindingAvg() && pfd.isAvgValue() ) {
+            sql.append(",\n ");
+            sql.append(functions.averageSQLFunction.getAverageSQLFunction(quotedName));
+            sql.append(" AS AVGVALUE_"+i);
+            tryCount++;
+        }
+        if (settings.isFindingMinLength() && pfd.isMinLength() ) {
+            sql.append(",\n MIN(");
+            sql.append(functions.stringLengthSQLFunction.getStringLengthSQLFunction(quotedName));
+            sql.append(") AS MINLENGTH_"+i);
+            tryCount++;
+        }
+        if (settings.isFindingMaxLength() && pfd.isMaxLength() ) {
+            sql.append(",\n MAX(");
+            sql.append(functions.stringLengthSQLFunction.getStringLengthSQLFunction(quotedName));
+            sql.append(") AS MAXLENGTH_"+i);
+            tryCount++;
+        }
+        if (settings.isFindingAvgLength() && pfd.isAvgLength() ) {
+            sql.append(",\n AVG(");
+            sql.append(functions.stringLengthSQLFunction.getStringLengthSQLFunction(quotedName));
+            sql.append(") AS AVGLENGTH_"+i);
+            tryCount++;
+        }
+        if (settings.isFindingNullCount() && pfd.isSumDecode() ) {
+            sql.append(",\n SUM(");
+            sql.append(functions.caseWhenNullSQLFunction.getCaseWhenNullSQLFunction(quotedName, "1"));
+            sql.append(") AS NULLCOUNT_"+i);
+            tryCount++;
+        }
+        if (includeNonNullCount && tryCount > 0) {
+            sql.append(",\n COUNT(").append(quotedName).append(") AS NONNULLCOUNT_"+i);
+        }
+        return tryCount;
+    }
+
+    /**
+     * Reads the aggregates appended by
+     * {@link #appendAggregateFunctions(StringBuffer, int, SQLColumn, ProfileFunctionDescriptor, PlatformFunctions, String, boolean, String, boolean, boolean)}
+     * back from the current row of the given result set.
+     */
+    private ColumnAggregates readAggregates(ResultSet rs, int i, ProfileFunctionDescriptor pfd,
+            boolean includeDistinct, boolean includeOthers, boolean includeNonNullCount) throws SQLException {
+        ColumnAggregates aggregates = new ColumnAggregates();
+        if (includeDistinct && settings.isFindingDistinctCount() && pfd.isCountDist() ) {
+            aggregates.distinctCount = rs.getInt("DISTINCTCOUNT_"+i);
+        }
+        if (!includeOthers) return aggregates;
+        boolean anyOthers = false;
+        if (settings.isFindingMin() && pfd.isMinValue() ) {
+            aggregates.minValue = rs.getObject("MINVALUE_"+i);
+            anyOthers = true;
+        }
+        if (settings.isFindingMax() && pfd.isMaxValue() ) {
+            aggregates.maxValue = rs.getObject("MAXVALUE_"+i);
+            anyOthers = true;
+        }
+        if (settings.isFindingAvg() && pfd.isAvgValue() ) {
+            aggregates.avgValue = rs.getObject("AVGVALUE_"+i);
+            anyOthers = true;
+        }
+        if (settings.isFindingMinLength() && pfd.isMinLength() ) {
+            aggregates.minLength = rs.getInt("MINLENGTH_"+i);
+            anyOthers = true;
+        }
+        if (settings.isFindingMaxLength() && pfd.isMaxLength() ) {
+            aggregates.maxLength = rs.getInt("MAXLENGTH_"+i);
+            anyOthers = true;
+        }
+        if (settings.isFindingAvgLength() && pfd.isAvgLength() ) {
+            aggregates.avgLength = rs.getDouble("AVGLENGTH_"+i);
+            anyOthers = true;
+        }
+        if (settings.isFindingNullCount() && pfd.isSumDecode() ) {
+            aggregates.nullCount = rs.getInt("NULLCOUNT_"+i);
+            anyOthers = true;
+        }
+        if (includeNonNullCount && anyOthers) {
+            aggregates.nonNullCount = rs.getLong("NONNULLCOUNT_"+i);
+        }
+        return aggregates;
+    }
+
+    /**
+     * Calculates the aggregates of the given columns of one table in a single
+     * query.
+     * 
+     * @param columns
+     *            The columns to aggregate. They must all belong to the same
+     *            table.
+     * @param descriptors
+     *            The profile function descriptor of each column.
+     * @param predicate
+     *            A condition that limits the query to a range of the table's
+     *            rows, or null to aggregate the whole table.
+     * @return The aggregates of each column, in the same order as the
+     *         columns.
+     * @throws SQLException
+     *             If the query fails.
+     */
+    private ColumnAggregates[] execAggregates(List<ColumnProfileResult> columns,
+            Map<ColumnProfileResult, ProfileFunctionDescriptor> descriptors,
+            Connection con, PlatformFunctions functions, String predicate,
+            boolean includeDistinct, boolean includeOthers, boolean includeNonNullCount) throws SQLException {
+        String quote = con.getMetaData().getIdentifierQuoteString();
+        SQLTable table = columns.get(0).getProfiledObject().getParent();
+        
+        String distinctFunction = "COUNT(DISTINCT ";
+        boolean sketchingDistinct = false;
+        if (includeDistinct && settings.isUsingApproximateCounts()) {
+            DatabaseMetaData dbmd = con.getMetaData();
+            String approximateFunction = approximateCountDistinctFunction(dbmd.getDatabaseProductName(),
+                    dbmd.getDatabaseMajorVersion(), dbmd.getDatabaseMinorVersion());
+            if (approximateFunction == null) {
+                sketchingDistinct = true;
+            } else {
+                distinctFunction = approximateFunction;
+            }
+        }
+        
         StringBuffer sql = new StringBuffer();
+        sql.append("SELECT 1");
+        int tryCount = 0;
+        for (int i = 0; i < columns.size(); i++) {
+            ColumnProfileResult cpr = columns.get(i);
+            tryCount += appendAggregateFunctions(sql, i, cpr.getProfiledObject(), descriptors.get(cpr),
+                    functions, quote, includeDistinct && !sketchingDistinct, distinctFunction, 
+                    includeOthers, includeNonNullCount);
+        }
+        
+        ColumnAggregates[] aggregates = new ColumnAggregates[columns.size()];
+        if (tryCount == 0) {
+            for (int i = 0; i < aggregates.length; i++) {
+                aggregates[i] = new ColumnAggregates();
+            }
+        } else {
+            execAggregateQuery(sql, table, quote, predicate, con, columns, descriptors, aggregates,
+                    includeDistinct && !sketchingDistinct, includeOthers, includeNonNullCount);
+            if (includeDistinct && !sketchingDistinct && settings.isUsingApproximateCounts()) {
+                for (ColumnAggregates columnAggregates : aggregates) {
+                    if (columnAggregates.distinctCount == null) continue;
+                    columnAggregates.distinctCountError = (int) Math.ceil(
+                            columnAggregates.distinctCount * APPROXIMATE_COUNT_DISTINCT_ERROR);
+                }
+            }
+        }
+        
+        if (sketchingDistinct && settings.isFindingDistinctCount()) {
+            for (int i = 0; i < columns.size(); i++) {
+                if (!descriptors.get(columns.get(i)).isCountDist()) continue;
+                aggregates[i].merge(execDistinctSketch(columns.get(i).getProfiledObject(), con, predicate));
+            }
+        }
+        return aggregates;
+    }
+
+    /**
+     * Runs a profiling query built by
+     * {@link #execAggregates(List, Map, Connection, PlatformFunctions, String, boolean, boolean, boolean)}
+     * and reads the aggregates of each column into the given array.
+     */
+    private void execAggregateQuery(StringBuffer sql, SQLTable table, String quote, String predicate,
+            Connection con, List<ColumnProfileResult> columns, 
+            Map<ColumnProfileResult, ProfileFunctionDescriptor> descriptors, ColumnAggregates[] aggregates,
+            boolean includeDistinct, boolean includeOthers, boolean includeNonNullCount) throws SQLException {
+
+        sql.append("\n FROM ");
+        sql.append(DDLUtils.toQualifiedName(table.getCatalogName(),
+                table.getSchemaName(),
+                table.getName(),
+                quote,
+                quote));
+        if (predicate != null) {
+            sql.append("\n WHERE ").append(predicate);
+        }
+        
+        String lastSQL = sql.toString();
         Statement stmt = null;
         ResultSet rs = null;
-        String lastSQL = null;
-        String columnName = null;
-        String databaseIdentifierQuoteString = null;
-        cpr.setCreateStartTime(createStartTime);
+        try {
+            stmt = con.createStatement();
+            stmt.setEscapeProcessing(false);
+            rs = stmt.executeQuery(lastSQL);
+            if (!rs.next()) {
+                throw new IllegalStateException("Query executed, but returns no rows:\n" + lastSQL);
+            }
+            for (int i = 0; i < columns.size(); i++) {
+                aggregates[i] = readAggregates(rs, i, descriptors.get(columns.get(i)),
+                        includeDistinct, includeOthers, includeNonNullCount);
+            }
+        } catch (SQLException ex) {
+            logger.error("Profiling query failed.  Will throw exception.  Query was:");
+            logger.error(lastSQL);
+            throw ex;
+        } finally {
+            try {
+                if (rs != null)
+                    rs.close();
+                if (stmt != null)
+                    stmt.close();
+            } catch (SQLException ex) {
+                logger.error("Couldn't clean up result set", ex);
+            }
+        }
+    }
+
+    /**
+     * Estimates the number of distinct values in the given column by reading
+     * them into a {@link HyperLogLog} sketch, for databases with no
+     * approximate distinct count function. Unless the settings' sampling mode
+     * is {@link SamplingMode#NONE}, only the first
+     * {@link ProfileSettings#getSampleRows()} rows the database returns are
+     * read, so the count of a larger table is the count of those rows. Like
+     * the distinct count of a sampled local profile, that is a lower bound.
+     */
+    private ColumnAggregates execDistinctSketch(SQLColumn col, Connection con, String predicate) 
+            throws SQLException {
+        String quote = con.getMetaData().getIdentifierQuoteString();
         SQLTable table = col.getParent();
+        StringBuffer sql = new StringBuffer();
+        sql.append("SELECT ").append(quote).append(col.getName()).append(quote);
+        sql.append("\n FROM ");
+        sql.append(DDLUtils.toQualifiedName(table.getCatalogName(),
+                table.getSchemaName(),
+                table.getName(),
+                quote,
+                quote));
+        if (predicate != null) {
+            sql.append("\n WHERE ").append(predicate);
+        }
 
+        String lastSQL = sql.toString();
+        Statement stmt = null;
+        ResultSet rs = null;
         try {
-            databaseIdentifierQuoteString = con.getMetaData().getIdentifierQuoteString();
-            sql.append("SELECT 1");
-            int tryCount = 0;
-            if (settings.isFindingDistinctCount() && pfd.isCountDist() ) {
-                sql.append(",\n COUNT(DISTINCT ");
-                sql.append(databaseIdentifierQuoteString);
-                sql.append(col.getName());
-                sql.append(databaseIdentifierQuoteString);
-                sql.append(") AS DISTINCTCOUNT_"+i);
-                tryCount++;
-            }
-            if (settings.isFindingMin() && pfd.isMinValue() ) {
-                sql.append(",\n MIN(");
-                sql.append(databaseIdentifierQuoteString);
-                sql.append(col.getName());
-                sql.append(databaseIdentifierQuoteString);
-                sql.append(") AS MINVALUE_"+i);
-                tryCount++;
-            }
-            if (settings.isFindingMax() && pfd.isMaxValue() ) {
-                sql.append(",\n MAX(");
-                sql.append(databaseIdentifierQuoteString);
-                sql.append(col.getName());
-                sql.append(databaseIdentifierQuoteString);
-                sql.append(") AS MAXVALUE_"+i);
-                tryCount++;
-            }
-            if (settings.isFindingAvg() && pfd.isAvgValue() ) {
-                sql.append(",\n ");
-                sql.append(averageSQLFunction.getAverageSQLFunction(databaseIdentifierQuoteString+
-                        col.getName()+
-                        databaseIdentifierQuoteString));
-                sql.append(" AS AVGVALUE_"+i);
-                tryCount++;
-            }
-            if (settings.isFindingMinLength() && pfd.isMinLength() ) {
-                sql.append(",\n MIN(");
-                sql.append(stringLengthSQLFunction.getStringLengthSQLFunction(databaseIdentifierQuoteString+
-                        col.getName()+databaseIdentifierQuoteString));
-                sql.append(") AS MINLENGTH_"+i);
-                tryCount++;
-            }
-            if (settings.isFindingMaxLength() && pfd.isMaxLength() ) {
-                sql.append(",\n MAX(");
-                sql.append(stringLengthSQLFunction.getStringLengthSQLFunction(databaseIdentifierQuoteString+
-                        col.getName()+databaseIdentifierQuoteString));
-                sql.append(") AS MAXLENGTH_"+i);
-                tryCount++;
-            }
-            if (settings.isFindingAvgLength() && pfd.isAvgLength() ) {
-                sql.append(",\n AVG(");
-                sql.append(stringLengthSQLFunction.getStringLengthSQLFunction(databaseIdentifierQuoteString+
-                        col.getName()+databaseIdentifierQuoteString));
-                sql.append(") AS AVGLENGTH_"+i);
-                tryCount++;
-            }
-
-            if (settings.isFindingNullCount() && pfd.isSumDecode() ) {
-                sql.append(",\n SUM(");
-                sql.append(caseWhenNullSQLFunction.getCaseWhenNullSQLFunction(
-                        databaseIdentifierQuoteString+
-                        col.getName()+
-                        databaseIdentifierQuoteString,
-                "1"));
-                sql.append(") AS NULLCOUNT_"+i);
-                tryCount++;
-            }
-
-            if ( tryCount > 0 && !pm.isCancelled() ) {
-                sql.append("\n FROM ");
-
-                sql.append(DDLUtils.toQualifiedName(table.getCatalogName(),
-                        table.getSchemaName(),
-                        table.getName(),
-                        databaseIdentifierQuoteString,
-                        databaseIdentifierQuoteString));
-
-                stmt = con.createStatement();
-                stmt.setEscapeProcessing(false);
-
-                lastSQL = sql.toString();
-                
-                if (pm.isCancelled()) return;
-                rs = stmt.executeQuery(lastSQL);
-                if (pm.isCancelled()) return;
-
-                if (rs.next()) {
-                    if (settings.isFindingDistinctCount() && pfd.isCountDist() ) {
-                        columnName = "DISTINCTCOUNT_"+i;
-                        cpr.setDistinctValueCount(rs.getInt(columnName));
-                    }
-                    if (settings.isFindingMin() && pfd.isMinValue() ) {
-                        columnName = "MINVALUE_"+i;
-                        cpr.setMinValue(rs.getObject(columnName));
-                    }
-                    if (settings.isFindingMax() && pfd.isMaxValue() ) {
-                        columnName = "MAXVALUE_"+i;
-                        cpr.setMaxValue(rs.getObject(columnName));
-                    }
-                    if (settings.isFindingAvg() && pfd.isAvgValue() ) {
-                        columnName = "AVGVALUE_"+i;
-                        cpr.setAvgValue(rs.getObject(columnName));
-                    }
-                    if (settings.isFindingMinLength() && pfd.isMinLength() ) {
-                        columnName = "MINLENGTH_"+i;
-                        cpr.setMinLength(rs.getInt(columnName));
-                    }
-                    if (settings.isFindingMaxLength() && pfd.isMaxLength() ) {
-                        columnName = "MAXLENGTH_"+i;
-                        cpr.setMaxLength(rs.getInt(columnName));
-                    }
-                    if (settings.isFindingAvgLength() && pfd.isAvgLength() ) {
-                        columnName = "AVGLENGTH_"+i;
-                        cpr.setAvgLength(rs.getDouble(columnName));
-                    }
+            stmt = con.createStatement();
+            stmt.setEscapeProcessing(false);
+            if (settings.getSamplingMode() != SamplingMode.NONE) {
+                stmt.setMaxRows(Math.max(1, settings.getSampleRows()));
+            }
+            rs = stmt.executeQuery(lastSQL);
+            HyperLogLog sketch = new HyperLogLog();
+            long valueCount = 0;
+            while (rs.next()) {
+                Object value = rs.getObject(1);
+                if (value == null) continue;
+                if (value instanceof Blob || value instanceof Clob) {
+                    // the databases can't count distinct large objects either
+                    throw new SQLException("Can't count the distinct values of large object column " + 
+                            col.getName());
+                }
+                sketch.offer(value);
+                valueCount++;
+            }
+            ColumnAggregates aggregates = new ColumnAggregates();
+            aggregates.distinctCount = (int) Math.min(sketch.estimate(), valueCount);
+            aggregates.distinctCountError = (int) sketch.getErrorBound();
+            return aggregates;
+        } catch (SQLException ex) {
+            logger.error("Profiling query failed.  Will throw exception.  Query was:");
+            logger.error(lastSQL);
+            throw ex;
+        } finally {
+            try {
+                if (rs != null)
+                    rs.close();
+                if (stmt != null)
+                    stmt.close();
+            } catch (SQLException ex) {
+                logger.error("Couldn't clean up result set", ex);
+            }
+        }
+    }
 
-                    if (settings.isFindingNullCount() && pfd.isSumDecode() ) {
-                        columnName = "NULLCOUNT_"+i;
-                        cpr.setNullCount(rs.getInt(columnName));
-                    }
+    /**
+     * Returns the opening of the given database's approximate distinct count
+     * function, up to the column name, or null if the database has none. The
+     * database is identified by its JDBC product name and version.
+     */
+    static String approximateCountDistinctFunction(String productName, int majorVersion, int minorVersion) {
+        if (productName == null) return null;
+        String name = productName.toLowerCase();
+        if (name.startsWith("oracle")) {
+            // added in 12.1.0.2, which can't be told apart from 12.1.0.1 here
+            return majorVersion > 12 || (majorVersion == 12 && minorVersion >= 2) ? 
+                    "APPROX_COUNT_DISTINCT(" : null;
+        } else if (name.startsWith("microsoft sql server")) {
+            // SQL Server 2019
+            return majorVersion >= 15 ? "APPROX_COUNT_DISTINCT(" : null;
+        } else if (name.startsWith("snowflake")) {
+            return "APPROX_COUNT_DISTINCT(";
+        } else if (name.startsWith("vertica")) {
+            return "APPROXIMATE_COUNT_DISTINCT(";
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Finds the most frequent values of the given column, as many as the
+     * settings ask for.
+     */
+    private ColumnAggregates execTopValues(SQLColumn col, Connection con) throws SQLException {
+        String quote = con.getMetaData().getIdentifierQuoteString();
+        SQLTable table = col.getParent();
+        StringBuffer sql = new StringBuffer();
+        sql.append("SELECT ").append(quote);
+        sql.append(col.getName()).append(quote);
+        sql.append(" AS MYVALUE, COUNT(*) AS COUNT1 FROM ");
+        sql.append(DDLUtils.toQualifiedName(table.getCatalogName(),
+                table.getSchemaName(),
+                table.getName(),
+                quote,
+                quote));
+        sql.append(" GROUP BY ").append(quote);
+        sql.append(col.getName()).append(quote);
+        sql.append(" ORDER BY COUNT1 DESC");
+
+        String lastSQL = sql.toString();
+        Statement stmt = null;
+        ResultSet rs = null;
+        try {
+            stmt = con.createStatement();
+            stmt.setEscapeProcessing(false);
+            rs = stmt.executeQuery(lastSQL);
+            ColumnAggregates aggregates = new ColumnAggregates();
+            aggregates.topValues = new ArrayList<Object>();
+            aggregates.topCounts = new ArrayList<Integer>();
+            int topNCount = settings.getTopNCount();
+            for (int n = 0; n < topNCount && rs.next(); n++) {
+                aggregates.topValues.add(rs.getObject("MYVALUE"));
+                aggregates.topCounts.add(rs.getInt("COUNT1"));
+            }
+            return aggregates;
+        } catch (SQLException ex) {
+            logger.error("Profiling query failed.  Will throw exception.  Query was:");
+            logger.error(lastSQL);
+            throw ex;
+        } finally {
+            try {
+                if (rs != null)
+                    rs.close();
+                if (stmt != null)
+                    stmt.close();
+            } catch (SQLException ex) {
+                logger.error("Couldn't clean up result set", ex);
+            }
+        }
+    }
+    
+    /**
+     * A query run by {@link #doBatchedColumnProfiles(TableProfileResult, PlatformFunctions, MonitorableImpl)}
+     * on its own connection. It returns one set of aggregates per column it
+     * covers; a failure is recorded in the aggregates of the column it
+     * belongs to rather than thrown, so one column can't spoil the profile of
+     * the others.
+     */
+    private abstract class ColumnQuery implements Callable<ColumnAggregates[]> {
+        
+        protected final List<ColumnProfileResult> columns;
+        private final SQLDatabase db;
+        private final MonitorableImpl pm;
+        
+        ColumnQuery(List<ColumnProfileResult> columns, SQLDatabase db, MonitorableImpl pm) {
+            this.columns = columns;
+            this.db = db;
+            this.pm = pm;
+        }
+        
+        public ColumnAggregates[] call() throws Exception {
+            if (pm.isCancelled()) return null;
+            Connection con = null;
+            try {
+                con = openQueryConnection(db);
+                return execute(con);
+            } finally {
+                if (con != null) {
+                    con.close();
                 }
-                else {
-                    throw new IllegalStateException("Query executed, but returns no rows:\n" +
-                            lastSQL + "\nColumn Name: " + columnName );
+                synchronized (pm) {
+                    pm.setProgress(pm.getProgress() + 1);
                 }
-                rs.close();
-                rs = null;
-            }
-
-            if (settings.isFindingTopTen() && pfd.isCountDist() && !pm.isCancelled() ) {
-                sql = new StringBuffer();
-                sql.append("SELECT ").append(databaseIdentifierQuoteString);
-                sql.append(col.getName()).append(databaseIdentifierQuoteString);
-                sql.append(" AS MYVALUE, COUNT(*) AS COUNT1 FROM ");
-                sql.append(DDLUtils.toQualifiedName(table.getCatalogName(),
-                        table.getSchemaName(),
-                        table.getName(),
-                        databaseIdentifierQuoteString,
-                        databaseIdentifierQuoteString));
-                sql.append(" GROUP BY ").append(databaseIdentifierQuoteString);
-                sql.append(col.getName()).append(databaseIdentifierQuoteString);
-                sql.append(" ORDER BY COUNT1 DESC");
-
-                lastSQL = sql.toString();
-                rs = stmt.executeQuery(lastSQL);
-                int topNCount = settings.getTopNCount();
-                int topNSum = 0;
-                for (int n = 0; rs.next() && n < topNCount; n++) {
-                    cpr.addValueCount(rs.getObject("MYVALUE"), rs.getInt("COUNT1"));
-                    topNSum += rs.getInt("COUNT1");
+            }
+        }
+        
+        protected abstract ColumnAggregates[] execute(Connection con) throws SQLException;
+    }
+    
+    /**
+     * Opens the connection one of the queries of
+     * {@link #doBatchedColumnProfiles(TableProfileResult, PlatformFunctions, MonitorableImpl)}
+     * runs on. Tests override this to watch how many are open at once.
+     */
+    Connection openQueryConnection(SQLDatabase db) throws SQLObjectException {
+        return db.getConnection();
+    }
+    
+    /**
+     * Profiles the columns of the given table, several columns per query and
+     * over several connections at once as the settings allow. If the table is
+     * large enough and the settings say to, the aggregates that can be merged
+     * are calculated per primary key range.
+     */
+    private void doBatchedColumnProfiles(TableProfileResult tpr, final PlatformFunctions functions,
+            final MonitorableImpl pm) throws SQLException, SQLObjectException, InterruptedException {
+        SQLTable table = tpr.getProfiledObject();
+        SQLDatabase db = table.getParentDatabase();
+        long profileStartTime = System.currentTimeMillis();
+        
+        List<ColumnProfileResult> columnResults = new ArrayList<ColumnProfileResult>();
+        final Map<ColumnProfileResult, ProfileFunctionDescriptor> descriptors = 
+            new HashMap<ColumnProfileResult, ProfileFunctionDescriptor>();
+        List<String> partitions;
+        Connection con = null;
+        try {
+            con = db.getConnection();
+            for (SQLColumn col : getColumnsToProfile(tpr)) {
+                ColumnProfileResult cpr = new ColumnProfileResult(col);
+                tpr.addColumnProfileResult(cpr);
+                columnResults.add(cpr);
+                ProfileFunctionDescriptor pfd = functions.profileFunctionMap.get(col.getSourceDataTypeName());
+                if (pfd == null) {
+                    logger.debug(col.getName()+ " Unknown DataType:(" +
+                            col.getSourceDataTypeName() + ").");
+                    pfd = discoverProfileFunctionDescriptor(col, con, functions, pm);
+                    if (pfd == null) return;
+                    functions.profileFunctionMap.put(col.getSourceDataTypeName(), pfd);
                 }
-                int remainingCount = cpr.getParent().getRowCount() - topNSum;
-                if (remainingCount > 0) {
-                    cpr.addValueCount(ColumnValueCount.OTHER_VALUE_OBJECT, remainingCount);
+                descriptors.put(cpr, pfd);
+            }
+            partitions = findPartitions(table, con, tpr.getRowCount());
+        } finally {
+            if (con != null) {
+                con.close();
+            }
+        }
+        
+        final boolean partitioned = partitions.size() > 1;
+        int batchSize = Math.max(1, settings.getRemoteColumnsPerQuery());
+        List<ColumnQuery> queries = new ArrayList<ColumnQuery>();
+        for (int start = 0; start < columnResults.size(); start += batchSize) {
+            final List<ColumnProfileResult> batch = 
+                columnResults.subList(start, Math.min(columnResults.size(), start + batchSize));
+            for (final String predicate : partitions) {
+                queries.add(new ColumnQuery(batch, db, pm) {
+                    protected ColumnAggregates[] execute(Connection con) throws SQLException {
+                        return execAggregatesOrSplit(columns, descriptors, con, functions, 
+                                predicate, !partitioned, true, partitioned);
+                    }
+                });
+            }
+            if (partitioned && settings.isFindingDistinctCount()) {
+                queries.add(new ColumnQuery(batch, db, pm) {
+                    protected ColumnAggregates[] execute(Connection con) throws SQLException {
+                        return execAggregatesOrSplit(columns, descriptors, con, functions, 
+                                null, true, false, false);
+                    }
+                });
+            }
+            if (settings.isFindingTopTen()) {
+                for (final ColumnProfileResult cpr : batch) {
+                    if (!descriptors.get(cpr).isCountDist()) continue;
+                    queries.add(new ColumnQuery(Collections.singletonList(cpr), db, pm) {
+                        protected ColumnAggregates[] execute(Connection con) {
+                            ColumnAggregates aggregates;
+                            try {
+                                aggregates = execTopValues(cpr.getProfiledObject(), con);
+                            } catch (SQLException ex) {
+                                aggregates = new ColumnAggregates();
+                                aggregates.exception = ex;
+                            }
+                            return new ColumnAggregates[] { aggregates };
+                        }
+                    });
                 }
-                rs.close();
-                rs = null;
             }
+        }
+        logger.debug("Profiling " + columnResults.size() + " columns of " + table + " with " + 
+                queries.size() + " queries over " + partitions.size() + " key range(s)");
+        
+        pm.setJobSize(queries.size() + 1);
+        Map<ColumnProfileResult, ColumnAggregates> results = 
+            new HashMap<ColumnProfileResult, ColumnAggregates>();
+        for (ColumnProfileResult cpr : columnResults) {
+            results.put(cpr, new ColumnAggregates());
+        }
+        
+        // the connections beyond this table's own come out of the scheduler's
+        // per data source limit, so other tables may leave us fewer than asked
+        int wanted = Math.min(Math.max(1, settings.getRemoteConnectionsPerTable()), queries.size());
+        int connections = 1 + ProfileTaskScheduler.acquireExtraConnections(wanted - 1);
+        if (connections <= 1) {
+            for (ColumnQuery query : queries) {
+                mergeResults(query, runQuery(query), results);
+            }
+        } else {
+            ExecutorService executor = Executors.newFixedThreadPool(connections);
+            try {
+                List<Future<ColumnAggregates[]>> futures = executor.invokeAll(queries);
+                for (int i = 0; i < queries.size(); i++) {
+                    ColumnAggregates[] aggregates;
+                    try {
+                        aggregates = futures.get(i).get();
+                    } catch (ExecutionException ex) {
+                        aggregates = failedAggregates(queries.get(i), ex.getCause());
+                    }
+                    mergeResults(queries.get(i), aggregates, results);
+                }
+            } finally {
+                executor.shutdownNow();
+                ProfileTaskScheduler.releaseExtraConnections(connections - 1);
+            }
+        }
+        
+        if (pm.isCancelled()) return;
+        long profileEndTime = System.currentTimeMillis();
+        for (ColumnProfileResult cpr : columnResults) {
+            ColumnAggregates aggregates = results.get(cpr);
+            cpr.setCreateStartTime(profileStartTime);
+            if (aggregates.exception != null) {
+                cpr.setException(aggregates.exception);
+                logger.error("Error in Column Profiling of " + cpr.getProfiledObject(), aggregates.exception);
+            } else {
+                aggregates.populate(cpr);
+            }
+            cpr.setCreateEndTime(profileEndTime);
+        }
+    }
+
+    /**
+     * Runs the given query on the calling thread, turning a failure into
+     * failed aggregates for its columns.
+     */
+    private ColumnAggregates[] runQuery(ColumnQuery query) {
+        try {
+            return query.call();
+        } catch (Exception ex) {
+            return failedAggregates(query, ex);
+        }
+    }
 
-            cpr.setCreateEndTime(System.currentTimeMillis());
+    private ColumnAggregates[] failedAggregates(ColumnQuery query, Throwable cause) {
+        ColumnAggregates[] aggregates = new ColumnAggregates[query.columns.size()];
+        for (int i = 0; i < aggregates.length; i++) {
+            aggregates[i] = new ColumnAggregates();
+            aggregates[i].exception = cause instanceof Exception ? 
+                    (Exception) cause : new RuntimeException(cause);
+        }
+        return aggregates;
+    }
 
+    private void mergeResults(ColumnQuery query, ColumnAggregates[] aggregates, 
+            Map<ColumnProfileResult, ColumnAggregates> results) {
+        if (aggregates == null) return;
+        for (int i = 0; i < aggregates.length; i++) {
+            results.get(query.columns.get(i)).merge(aggregates[i]);
+        }
+    }
+
+    /**
+     * Calculates the aggregates of several columns in one query. If the query
+     * fails, each column is retried on its own so the failure only affects
+     * the columns that caused it.
+     */
+    private ColumnAggregates[] execAggregatesOrSplit(List<ColumnProfileResult> columns,
+            Map<ColumnProfileResult, ProfileFunctionDescriptor> descriptors,
+            Connection con, PlatformFunctions functions, String predicate,
+            boolean includeDistinct, boolean includeOthers, boolean includeNonNullCount) {
+        try {
+            return execAggregates(columns, descriptors, con, functions, predicate,
+                    includeDistinct, includeOthers, includeNonNullCount);
+        } catch (Exception ex) {
+            ColumnAggregates[] aggregates = new ColumnAggregates[columns.size()];
+            if (columns.size() == 1) {
+                aggregates[0] = new ColumnAggregates();
+                aggregates[0].exception = ex;
+                return aggregates;
+            }
+            logger.debug("Batched profile query failed, retrying one column at a time", ex);
+            for (int i = 0; i < columns.size(); i++) {
+                aggregates[i] = execAggregatesOrSplit(columns.subList(i, i + 1), descriptors, con, 
+                        functions, predicate, includeDistinct, includeOthers, includeNonNullCount)[0];
+            }
+            return aggregates;
+        }
+    }
+
+    /**
+     * Splits the given table into the number of primary key ranges the
+     * settings ask for. The table is only split if it has at least as many rows
+     * as the settings' minimum and a single column primary key with integral
+     * values. Each range is returned as a condition for a WHERE clause.
+     * 
+     * @return The conditions selecting each range, or a list containing only
+     *         null if the table should not be split.
+     */
+    List<String> findPartitions(SQLTable table, Connection con, int rowCount) throws SQLException {
+        List<String> wholeTable = Collections.singletonList(null);
+        int partitionCount = settings.getRemotePartitionCount();
+        if (partitionCount <= 1 || rowCount < settings.getRemotePartitionMinRows()) {
+            return wholeTable;
+        }
+        
+        String keyColumn = null;
+        int keyColumnCount = 0;
+        ResultSet rs = null;
+        Statement stmt = null;
+        String lastSQL = null;
+        try {
+            rs = con.getMetaData().getPrimaryKeys(table.getCatalogName(), table.getSchemaName(), table.getName());
+            while (rs.next()) {
+                keyColumn = rs.getString("COLUMN_NAME");
+                keyColumnCount++;
+            }
+            rs.close();
+            rs = null;
+            if (keyColumnCount != 1) {
+                logger.debug("Not splitting " + table + ", it has " + keyColumnCount + " primary key columns");
+                return wholeTable;
+            }
+            
+            String quote = con.getMetaData().getIdentifierQuoteString();
+            String quotedKey = quote + keyColumn + quote;
+            lastSQL = "SELECT MIN(" + quotedKey + ") AS MINKEY, MAX(" + quotedKey + ") AS MAXKEY\n FROM " +
+                DDLUtils.toQualifiedName(table.getCatalogName(), table.getSchemaName(), table.getName(), 
+                        quote, quote);
+            stmt = con.createStatement();
+            stmt.setEscapeProcessing(false);
+            rs = stmt.executeQuery(lastSQL);
+            if (!rs.next()) return wholeTable;
+            Object min = rs.getObject("MINKEY");
+            Object max = rs.getObject("MAXKEY");
+            if (!(min instanceof Number) || !(max instanceof Number)) {
+                logger.debug("Not splitting " + table + ", its primary key is not numeric");
+                return wholeTable;
+            }
+            
+            BigInteger low = toBigInteger((Number) min);
+            BigInteger span = toBigInteger((Number) max).subtract(low);
+            if (span.compareTo(BigInteger.valueOf(partitionCount)) < 0) {
+                return wholeTable;
+            }
+            List<String> partitions = new ArrayList<String>();
+            BigInteger previous = null;
+            for (int i = 1; i <= partitionCount; i++) {
+                if (i == partitionCount) {
+                    partitions.add(quotedKey + " >= " + previous);
+                    break;
+                }
+                BigInteger bound = low.add(span.multiply(BigInteger.valueOf(i))
+                        .divide(BigInteger.valueOf(partitionCount)));
+                if (previous == null) {
+                    partitions.add(quotedKey + " < " + bound);
+                } else {
+                    partitions.add(quotedKey + " >= " + previous + " AND " + quotedKey + " < " + bound);
+                }
+                previous = bound;
+            }
+            return partitions;
         } catch (SQLException ex) {
-            logger.error("Profiling query failed.  Will throw exception.  Query was:");
-            logger.error(lastSQL);
-            throw ex;
+            logger.error("Couldn't find key ranges, profiling the whole table at once. Query was: " + lastSQL, ex);
+            return wholeTable;
         } finally {
             try {
                 if (rs != null)
@@ -499,7 +1242,18 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
                 logger.error("Couldn't clean up result set", ex);
             }
         }
+    }
 
+    /**
+     * Rounds the given key value down to an integer.
+     */
+    private static BigInteger toBigInteger(Number n) {
+        if (n instanceof BigInteger) return (BigInteger) n;
+        if (n instanceof BigDecimal) return ((BigDecimal) n).toBigInteger();
+        if (n instanceof Double || n instanceof Float) {
+            return BigDecimal.valueOf(Math.floor(n.doubleValue())).toBigInteger();
+        }
+        return BigInteger.valueOf(n.longValue());
     }
     
     /**
@@ -507,10 +1261,12 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
      * the column referenced by <tt>cpr</tt>.
      * 
      * @param cpr The profile result to populate
+     * @param functions The database specific SQL functions to profile with
      * @param pm The progress monitor.  This progress monitor is only used for checking
      * if the operation is canceled; it is not updated with progress information.
      */
-    protected void doColumnProfile(ColumnProfileResult cpr, MonitorableImpl pm) throws SQLException, SQLObjectException {
+    private void doColumnProfile(ColumnProfileResult cpr, PlatformFunctions functions, 
+            MonitorableImpl pm) throws SQLException, SQLObjectException {
         logger.debug("Doing profile for column " + cpr.getProfiledObject().getName());
         if (pm.isCancelled()) {
             return;
@@ -527,19 +1283,19 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
             stmt = con.createStatement();
             stmt.setEscapeProcessing(false);
             
-            ProfileFunctionDescriptor pfd = profileFunctionMap.get(col.getSourceDataTypeName());
+            ProfileFunctionDescriptor pfd = functions.profileFunctionMap.get(col.getSourceDataTypeName());
             long profileStartTime = System.currentTimeMillis();
 
             if (pfd == null) {
                 logger.debug(col.getName()+ " Unknown DataType:(" +
                         col.getSourceDataTypeName() + ").");
-                logger.debug("Known data types are: " + profileFunctionMap.keySet());
-                pfd = discoverProfileFunctionDescriptor(col, con, pm);
-                profileFunctionMap.put(col.getSourceDataTypeName(), pfd);
+                logger.debug("Known data types are: " + functions.profileFunctionMap.keySet());
+                pfd = discoverProfileFunctionDescriptor(col, con, functions, pm);
+                functions.profileFunctionMap.put(col.getSourceDataTypeName(), pfd);
             }
 
             try {
-                execProfileFunctions(cpr, pfd, col, con, pm);
+                execProfileFunctions(cpr, pfd, col, con, functions, pm);
             } catch (Exception ex) {
                 cpr.setCreateStartTime(profileStartTime);
                 cpr.setException(ex);
@@ -565,7 +1321,7 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
     }
 
     /**
-     * This creates and sets up the map from data type names used in Architect
+     * This creates and returns the map from data type names used in Architect
      * to the database's actual data type stored in a profile function
      * descriptor. The data mapping and SQL functions are only set up if the
      * manager is not null. A null manager means that we will not be connecting
@@ -578,9 +1334,9 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
      * function, and case when null SQL function as they are also database
      * specific.
      */
-    private void createProfileFunctions(JDBCDataSourceType dsType) {
+    private PlatformFunctions createProfileFunctions(JDBCDataSourceType dsType) {
         
-        profileFunctionMap = new HashMap<String, ProfileFunctionDescriptor>();
+        Map<String, ProfileFunctionDescriptor> profileFunctionMap = new HashMap<String, ProfileFunctionDescriptor>();
         logger.debug("The property to retrieve is " + ProfileFunctionDescriptor.class.getName() + "_(number)");
         
         for (int dataTypeCount = 0;; dataTypeCount += 1) {
@@ -601,7 +1357,7 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
                 "Current setting for your database is '" + function + "'"
                 );
         }
-        stringLengthSQLFunction = new StringLengthSQLFunction(functionParts[0], functionParts[1]);
+        StringLengthSQLFunction stringLengthSQLFunction = new StringLengthSQLFunction(functionParts[0], functionParts[1]);
         
         function = dsType.getProperty(propName(AverageSQLFunction.class));
         functionParts = function.split(":");
@@ -612,7 +1368,7 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
                 "Current setting for your database is '" + function + "'"
                 );
         }
-        averageSQLFunction = new AverageSQLFunction(functionParts[0], functionParts[1]);
+        AverageSQLFunction averageSQLFunction = new AverageSQLFunction(functionParts[0], functionParts[1]);
         
         function = dsType.getProperty(propName(CaseWhenNullSQLFunction.class));
         functionParts = function.split(":");
@@ -623,8 +1379,10 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
                 "Current setting for your database is '" + function + "'"
                 );
         }
-        caseWhenNullSQLFunction = new CaseWhenNullSQLFunction(functionParts[0], functionParts[1], functionParts[2]);
+        CaseWhenNullSQLFunction caseWhenNullSQLFunction = new CaseWhenNullSQLFunction(functionParts[0], functionParts[1], functionParts[2]);
         
+        return new PlatformFunctions(profileFunctionMap, stringLengthSQLFunction, 
+                averageSQLFunction, caseWhenNullSQLFunction);
     }
 
     /**
@@ -636,7 +1394,8 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
      * @return A ProfileFunctionDescriptor that is properly configured for the data
      * type of col.
      */
-    private ProfileFunctionDescriptor discoverProfileFunctionDescriptor(SQLColumn col, Connection conn, Monitorable pm) {
+    private ProfileFunctionDescriptor discoverProfileFunctionDescriptor(SQLColumn col, Connection conn, 
+            PlatformFunctions functions, Monitorable pm) {
         ProfileFunctionDescriptor pfd = new ProfileFunctionDescriptor(col.getSourceDataTypeName(),
                 col.getType(),false,false,false,false,false,false,false,false);
 
@@ -651,7 +1410,7 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
         
         try {
             pfd.setCountDist(true);
-            execProfileFunctions(dummy, pfd, col, conn, pm);
+            execProfileFunctions(dummy, pfd, col, conn, functions, pm);
             logger.debug("countDist worked");
         } catch (Exception e) {
             logger.debug("countDist failed", e);
@@ -663,7 +1422,7 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
         try {
             pfd.setMaxValue(true);
             pfd.setMinValue(true);
-            execProfileFunctions(dummy, pfd, col, conn, pm);
+            execProfileFunctions(dummy, pfd, col, conn, functions, pm);
             logger.debug("min/max worked");
         } catch (Exception e) {
             logger.debug("min/max failed", e);
@@ -675,7 +1434,7 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
 
         try {
             pfd.setAvgValue(true);
-            execProfileFunctions(dummy, pfd, col, conn, pm);
+            execProfileFunctions(dummy, pfd, col, conn, functions, pm);
             logger.debug("avg worked");
         } catch (Exception e) {
             logger.debug("avg failed", e);
@@ -688,7 +1447,7 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
             pfd.setMaxLength(true);
             pfd.setMinLength(true);
             pfd.setAvgLength(true);
-            execProfileFunctions(dummy, pfd, col, conn, pm);
+            execProfileFunctions(dummy, pfd, col, conn, functions, pm);
             logger.debug("min/max/avg length worked");
         } catch (Exception e) {
             logger.debug("min/max/avg length failed", e);
@@ -701,7 +1460,7 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
 
         try {
             pfd.setSumDecode(true);
-            execProfileFunctions(dummy, pfd, col, conn, pm);
+            execProfileFunctions(dummy, pfd, col, conn, functions, pm);
             logger.debug("sumDecode worked");
         } catch (Exception e) {
             logger.debug("sumDecode failed", e);
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.sqlpower.architect.profile;
+
+import java.util.Random;
+
+/**
+ * Picks a simple random sample of the rows of a scan as they stream past, so
+ * counts taken from the sample can be scaled up with {@link SampleEstimate}.
+ * <p>
+ * A reservoir sampler keeps a fixed number of rows, each row of the scan
+ * being equally likely to end up in the reservoir (Vitter's algorithm R). A
+ * Bernoulli sampler keeps each row with a fixed probability and needs no
+ * storage, so its rows can be profiled as they arrive. Either way the whole
+ * scan is read, which also gives the exact number of rows in the table.
+ */
+class RowSampler {
+
+    private final int reservoirSize;
+
+    private final double fraction;
+
+    private final Random random;
+
+    private long rowsSeen;
+
+    private RowSampler(int reservoirSize, double fraction, Random random) {
+        this.reservoirSize = reservoirSize;
+        this.fraction = fraction;
+        this.random = random;
+    }
+
+    /**
+     * Creates a sampler that keeps a reservoir of the given number of rows.
+     */
+    static RowSampler reservoir(int size, Random random) {
+        if (size < 1) {
+            throw new IllegalArgumentException("The reservoir must hold at least one row, not " + size);
+        }
+        return new RowSampler(size, 1.0, random);
+    }
+
+    /**
+     * Creates a sampler that keeps each row with the given probability.
+     */
+    static RowSampler bernoulli(double fraction, Random random) {
+        if (fraction <= 0.0 || fraction > 1.0) {
+            throw new IllegalArgumentException("The fraction of rows to keep must be in (0, 1], not " + fraction);
+        }
+        return new RowSampler(0, fraction, random);
+    }
+
+    /**
+     * Decides whether the next row of the scan is part of the sample. For a
+     * reservoir sampler, returns the slot of the reservoir the row fills or
+     * replaces; for a Bernoulli sampler, returns 0 for each row to keep.
+     * Returns -1 for rows that are not part of the sample.
+     */
+    int nextRow() {
+        rowsSeen++;
+        if (reservoirSize > 0) {
+            if (rowsSeen <= reservoirSize) return (int) (rowsSeen - 1);
+            long slot = (long) (random.nextDouble() * rowsSeen);
+            return slot < reservoirSize ? (int) slot : -1;
+        }
+        if (fraction >= 1.0 || random.nextDouble() < fraction) return 0;
+        return -1;
+    }
+
+    /**
+     * Returns true if this sampler keeps a reservoir of rows.
+     */
+    boolean isReservoir() {
+        return reservoirSize > 0;
+    }
+
+    /**
+     * Returns the number of rows of the scan offered so far.
+     */
+    long getRowsSeen() {
+        return rowsSeen;
+    }
+}
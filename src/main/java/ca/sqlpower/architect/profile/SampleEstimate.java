@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.sqlpower.architect.profile;
+
+/**
+ * Scales counts taken from a sample of a table's rows up to the whole table,
+ * and gives the 95% confidence interval of the scaled counts. The sample is
+ * treated as a simple random sample drawn without replacement, so the
+ * intervals shrink to nothing as the sample approaches the whole table.
+ */
+public class SampleEstimate {
+
+    /**
+     * The number of standard errors on each side of an estimate that make a
+     * 95% confidence interval.
+     */
+    private static final double Z_95 = 1.96;
+
+    private SampleEstimate() {
+        // static utility class
+    }
+
+    /**
+     * Returns the estimated number of rows of the whole table that have some
+     * property, given the number of rows of the sample that had it.
+     *
+     * @param count
+     *            The number of sampled rows with the property.
+     * @param sampleSize
+     *            The number of rows sampled.
+     * @param populationSize
+     *            The number of rows in the table. If this is not larger than
+     *            the sample, the count is returned unchanged.
+     */
+    public static long scale(long count, long sampleSize, long populationSize) {
+        if (sampleSize <= 0 || populationSize <= sampleSize) return count;
+        return Math.round((double) count * populationSize / sampleSize);
+    }
+
+    /**
+     * Returns the half-width of the 95% confidence interval of
+     * {@link #scale(long, long, long)}. This is 0 when the whole table was
+     * read. When none or all of the sampled rows had the property, the
+     * "rule of three" bound is used instead of the normal approximation, which
+     * would claim no uncertainty at all.
+     */
+    public static long errorBound(long count, long sampleSize, long populationSize) {
+        if (sampleSize <= 0 || populationSize <= sampleSize) return 0;
+        double finiteCorrection = (double) (populationSize - sampleSize) / (populationSize - 1);
+        if (count <= 0 || count >= sampleSize) {
+            return (long) Math.ceil(populationSize * 3.0 / sampleSize * finiteCorrection);
+        }
+        double p = (double) count / sampleSize;
+        double standardError = populationSize * Math.sqrt(p * (1.0 - p) / sampleSize * finiteCorrection);
+        return (long) Math.ceil(Z_95 * standardError);
+    }
+}
@@ -18,6 +18,7 @@
  */
 package ca.sqlpower.architect.profile;
 
+import java.io.IOException;
 import java.text.DateFormat;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -40,6 +41,7 @@ import ca.sqlpower.object.annotation.Transient;
 import ca.sqlpower.sql.JDBCDataSource;
 import ca.sqlpower.sqlobject.SQLColumn;
 import ca.sqlpower.sqlobject.SQLObjectException;
+import ca.sqlpower.sqlobject.SQLObjectRuntimeException;
 import ca.sqlpower.sqlobject.SQLTable;
 import ca.sqlpower.util.Monitorable;
 import ca.sqlpower.util.MonitorableImpl;
@@ -63,12 +65,51 @@ public class TableProfileResult extends AbstractProfileResult<SQLTable> {
 
     private int rowCount;
     
+    /**
+     * The number of rows the column results were calculated from when only a
+     * sample of the table was read, or 0 if every row was read.
+     */
+    private int sampledRowCount;
+    
+    /**
+     * The signature of the table's data when it was profiled, as given by
+     * {@link ProfileChangeDetector#computeTableSignature(SQLTable)}. Null if it
+     * was not computed or the table has no signature.
+     */
+    private String changeSignature;
+    
+    /**
+     * An earlier profile of the same table that may be reused by incremental
+     * profiling. Null if this profile should be made from scratch.
+     */
+    private TableProfileResult previousResult;
+    
     /**
      * The "children" of this profile result: the profile results for the columns
      * of this table.
      */
     private List<ColumnProfileResult> columnProfileResults = new ArrayList<ColumnProfileResult>();
 
+    /**
+     * The store this result's column results are written to when they are
+     * evicted from memory. Null if they are always kept in memory.
+     */
+    private ProfileResultStore resultStore;
+
+    /**
+     * True if the column results are in the result store and have not been
+     * read back into {@link #columnProfileResults} yet.
+     */
+    private boolean columnResultsInStore;
+
+    /**
+     * The number of column results, and of those without an exception, when
+     * they were last evicted. Used by {@link #toString()} so that listing
+     * profiles doesn't read them all back from the store.
+     */
+    private int storedColumnCount;
+    private int storedSuccessfulColumnCount;
+
     private Monitorable progressMonitor = new MonitorableImpl();
     
     /**
@@ -109,6 +150,8 @@ public class TableProfileResult extends AbstractProfileResult<SQLTable> {
         super(tprToCopy, table);
         setName("New Table Profile");
         this.rowCount = tprToCopy.rowCount;
+        this.sampledRowCount = tprToCopy.sampledRowCount;
+        this.changeSignature = tprToCopy.changeSignature;
         this.progressMonitor = tprToCopy.progressMonitor;
         for (SQLColumn col : table.getColumns()) {
             for (ColumnProfileResult cpr : tprToCopy.getColumnProfileResults()) {
@@ -146,6 +189,147 @@ public class TableProfileResult extends AbstractProfileResult<SQLTable> {
         firePropertyChange("rowCount", oldCount, rowCount);
     }
 
+    /**
+     * Returns the number of rows the column results were calculated from if
+     * only a sample of the table was read, or 0 if every row was read. Counts
+     * in the column results of a sampled table have been scaled up to
+     * {@link #getRowCount()} rows.
+     */
+    @Accessor
+    public int getSampledRowCount() {
+        return sampledRowCount;
+    }
+
+    @Mutator
+    public void setSampledRowCount(int sampledRowCount) {
+        int oldCount = this.sampledRowCount;
+        this.sampledRowCount = sampledRowCount;
+        firePropertyChange("sampledRowCount", oldCount, sampledRowCount);
+    }
+
+    /**
+     * Returns the signature of the profiled table's data at the time it was
+     * profiled, or null if it is not known.
+     */
+    @Accessor
+    public String getChangeSignature() {
+        return changeSignature;
+    }
+
+    @Mutator
+    public void setChangeSignature(String changeSignature) {
+        String oldSignature = this.changeSignature;
+        this.changeSignature = changeSignature;
+        firePropertyChange("changeSignature", oldSignature, changeSignature);
+    }
+
+    /**
+     * Returns the earlier profile of the same table that the profile creator
+     * may reuse parts of, or null if this profile is made from scratch.
+     */
+    @Transient @Accessor
+    public TableProfileResult getPreviousResult() {
+        return previousResult;
+    }
+
+    @Transient @Mutator
+    public void setPreviousResult(TableProfileResult previousResult) {
+        this.previousResult = previousResult;
+    }
+
+    /**
+     * Returns the store the column results of this profile are kept in when
+     * they are not in memory, or null if they are always in memory.
+     */
+    @Transient @Accessor
+    public ProfileResultStore getResultStore() {
+        return resultStore;
+    }
+
+    @Transient @Mutator
+    public synchronized void setResultStore(ProfileResultStore resultStore) {
+        this.resultStore = resultStore;
+    }
+
+    /**
+     * Returns true if the column results of this profile are in its result
+     * store and will be read from it the next time they are asked for.
+     */
+    @Transient @Accessor
+    public synchronized boolean isColumnResultsInStore() {
+        return columnResultsInStore;
+    }
+
+    /**
+     * Marks the column results of this profile as being in its result store.
+     * This is set by the project loader for profiles whose column results
+     * were not saved in the project file.
+     */
+    @Transient @Mutator
+    public synchronized void setColumnResultsInStore(boolean columnResultsInStore) {
+        this.columnResultsInStore = columnResultsInStore;
+    }
+
+    /**
+     * Reads the column results back from the result store if they were
+     * evicted, and tells the store they were just used. No events are fired
+     * for the column results read back; as far as listeners are concerned they
+     * never left.
+     */
+    private void ensureColumnResultsLoaded() {
+        ProfileResultStore store;
+        synchronized (this) {
+            store = resultStore;
+            if (store == null) return;
+            if (columnResultsInStore) {
+                try {
+                    for (ColumnProfileResult cpr : store.read(this)) {
+                        columnProfileResults.add(cpr);
+                        cpr.setParent(this);
+                    }
+                } catch (IOException ex) {
+                    throw new SQLObjectRuntimeException(new SQLObjectException(
+                            "Couldn't read the column profiles of " + getProfiledObject() +
+                            " from " + store.getDataFile(), ex));
+                } catch (SQLObjectException ex) {
+                    throw new SQLObjectRuntimeException(ex);
+                }
+                columnResultsInStore = false;
+            }
+        }
+        // evicting takes the victims' locks, so it must be done without holding ours
+        for (TableProfileResult victim : store.touch(this)) {
+            victim.evictColumnResults();
+        }
+    }
+
+    /**
+     * Writes the column results of this profile to its result store and
+     * drops them from memory. They will be read back the next time they are
+     * asked for. Does nothing if this profile has no result store or is still
+     * being profiled.
+     */
+    public synchronized void evictColumnResults() {
+        if (resultStore == null || columnResultsInStore || !progressMonitor.isFinished()) return;
+        try {
+            resultStore.write(this, columnProfileResults);
+        } catch (IOException ex) {
+            logger.error("Couldn't write the column profiles of " + getProfiledObject() +
+                    " to " + resultStore.getDataFile() + ", keeping them in memory", ex);
+            return;
+        }
+        storedColumnCount = columnProfileResults.size();
+        storedSuccessfulColumnCount = 0;
+        for (ColumnProfileResult cpr : columnProfileResults) {
+            if (cpr.getException() == null) {
+                storedSuccessfulColumnCount++;
+            }
+        }
+        columnProfileResults.clear();
+        columnResultsInStore = true;
+        resultStore.unloaded(this);
+    }
+
     /**
      * This printf format string is used in our toString() but is also
      * made public for use in UI controls that need an approximation
@@ -158,13 +342,22 @@ public class TableProfileResult extends AbstractProfileResult<SQLTable> {
         DateFormat df = DateFormat.getDateTimeInstance();
         Date date = new Date(getCreateStartTime());
         int successfulColCount = 0;
-        for (ColumnProfileResult cpr : columnProfileResults) {
-            if (cpr.getException() == null) {
-                successfulColCount++;
+        int colCount;
+        synchronized (this) {
+            if (columnResultsInStore) {
+                successfulColCount = storedSuccessfulColumnCount;
+                colCount = storedColumnCount;
+            } else {
+                for (ColumnProfileResult cpr : columnProfileResults) {
+                    if (cpr.getException() == null) {
+                        successfulColCount++;
+                    }
+                }
+                colCount = columnProfileResults.size();
             }
         }
         return String.format(TOSTRING_FORMAT,
-                rowCount, df.format(date), formatCreateTime(), successfulColCount, columnProfileResults.size());
+                rowCount, df.format(date), formatCreateTime(), successfulColCount, colCount);
     }
     
     /**
@@ -212,6 +405,7 @@ public class TableProfileResult extends AbstractProfileResult<SQLTable> {
      */
     @NonProperty
     public List<ColumnProfileResult> getColumnProfileResults() {
+        ensureColumnResultsLoaded();
         return Collections.unmodifiableList(columnProfileResults);
     }
 
@@ -223,6 +417,7 @@ public class TableProfileResult extends AbstractProfileResult<SQLTable> {
      */
     @NonProperty
     public Collection<ColumnProfileResult> getColumnProfileResult(SQLColumn c) {
+        ensureColumnResultsLoaded();
         Collection<ColumnProfileResult> retCollection = new ArrayList<ColumnProfileResult>();
         for (ColumnProfileResult result : columnProfileResults) {
             if (c == result.getProfiledObject()) {
@@ -258,7 +453,7 @@ public class TableProfileResult extends AbstractProfileResult<SQLTable> {
      * Adds a new column profile result to the end of the result list.
      */
     public void addColumnProfileResult(ColumnProfileResult profileResult) {
-        addColumnProfileResult(profileResult, columnProfileResults.size());
+        addColumnProfileResult(profileResult, getColumnProfileResults().size());
     }
     
     @Override
@@ -271,8 +466,12 @@ public class TableProfileResult extends AbstractProfileResult<SQLTable> {
         }
     }
 
-    private void addColumnProfileResult(ColumnProfileResult child, int index) {
-        columnProfileResults.add(child);
+    /**
+     * Adds a column profile result at the given position of the result list.
+     */
+    public void addColumnProfileResult(ColumnProfileResult child, int index) {
+        ensureColumnResultsLoaded();
+        columnProfileResults.add(index, child);
         child.setParent(this);
         fireChildAdded(ColumnProfileResult.class, child, index);        
     }
@@ -280,6 +479,7 @@ public class TableProfileResult extends AbstractProfileResult<SQLTable> {
     @Override
     protected boolean removeChildImpl(SPObject child) {
         if (child instanceof ColumnProfileResult) {
+            ensureColumnResultsLoaded();
             int index = columnProfileResults.indexOf(child);
             if (columnProfileResults.remove(child)) {
                 fireChildRemoved(ColumnProfileResult.class, child, index);
@@ -296,6 +496,7 @@ public class TableProfileResult extends AbstractProfileResult<SQLTable> {
 
     @NonProperty
     public List<? extends SPObject> getChildren() {
+        ensureColumnResultsLoaded();
         List<SPObject> children = new ArrayList<SPObject>();
         children.addAll(columnProfileResults);
         return children;
@@ -0,0 +1,287 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.sqlpower.architect.profile;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the most frequent values of a stream using a fixed number of
+ * counters, following the Space-Saving algorithm of Metwally, Agrawal and El
+ * Abbadi. While the stream has no more distinct values than there are
+ * counters, the counts are exact. Once a new value arrives and all counters
+ * are taken, the counter with the smallest count is given to the new value,
+ * and the count it had becomes the possible overestimate ({@link Entry#getError()})
+ * of the new value's count.
+ * <p>
+ * Counters built over separate parts of a stream (for example, partitions of
+ * a table) can be combined with {@link #merge(TopNValueCounter)}.
+ * <p>
+ * Null is counted like any other value.
+ * <p>
+ * This class is not thread safe.
+ */
+public class TopNValueCounter {
+
+    /**
+     * A value and its (possibly overestimated) count.
+     */
+    public static class Entry {
+
+        private Object value;
+        private long count;
+        private long error;
+
+        /**
+         * The position of this entry in the heap of its counter.
+         */
+        private int heapIndex;
+
+        private Entry(Object value, long count, long error) {
+            this.value = value;
+            this.count = count;
+            this.error = error;
+        }
+
+        /**
+         * The value being counted. May be null.
+         */
+        public Object getValue() {
+            return value == NULL_VALUE ? null : value;
+        }
+
+        /**
+         * The number of times the value was seen. This is an upper bound; the
+         * true count is at least <code>getCount() - getError()</code>.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * The maximum amount by which {@link #getCount()} overestimates the
+         * true count. Zero means the count is exact.
+         */
+        public long getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return getValue() + "=" + count + (error > 0 ? "(+/-" + error + ")" : "");
+        }
+    }
+
+    /**
+     * Orders entries from most to least frequent.
+     */
+    private static final Comparator<Entry> DESCENDING_COUNT = new Comparator<Entry>() {
+        public int compare(Entry o1, Entry o2) {
+            if (o1.count > o2.count) return -1;
+            if (o1.count < o2.count) return 1;
+            return 0;
+        }
+    };
+
+    /**
+     * Stands in for null in the counter map.
+     */
+    private static final Object NULL_VALUE = new Object();
+
+    /**
+     * The counters, keyed by value.
+     */
+    private final Map<Object, Entry> counters;
+
+    /**
+     * A binary min-heap of the counters by count, so the smallest counter
+     * can be found and replaced in constant time.
+     */
+    private final Entry[] heap;
+
+    private int size;
+
+    /**
+     * The total number of values offered to this counter.
+     */
+    private long total;
+
+    /**
+     * The most times a value that is not being tracked could have occurred
+     * when there are free counters. This is only ever non-zero after a merge.
+     */
+    private long floor;
+
+    /**
+     * Creates a counter that tracks at most <tt>capacity</tt> values. The
+     * more counters compared to the number of values wanted, the more
+     * accurate the counts of the top values will be.
+     */
+    public TopNValueCounter(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1, was " + capacity);
+        }
+        heap = new Entry[capacity];
+        counters = new HashMap<Object, Entry>(capacity * 4 / 3 + 1);
+    }
+
+    /**
+     * Counts one occurrence of the given value.
+     */
+    public void offer(Object value) {
+        Object key = (value == null ? NULL_VALUE : value);
+        total++;
+        Entry e = counters.get(key);
+        if (e != null) {
+            e.count++;
+            siftDown(e.heapIndex);
+        } else if (size < heap.length) {
+            e = new Entry(key, floor + 1, floor);
+            counters.put(key, e);
+            e.heapIndex = size;
+            heap[size++] = e;
+            siftUp(e.heapIndex);
+        } else {
+            e = heap[0];
+            counters.remove(e.value);
+            e.value = key;
+            e.error = e.count;
+            e.count++;
+            counters.put(key, e);
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Folds the counts of the given counter into this one. A value tracked by
+     * only one of the counters is assumed to have occurred as often as the
+     * least frequent value tracked by the other, and that assumption is added
+     * to its error, so the merged counts remain upper bounds. If the merged
+     * counters track more values than this counter has room for, the least
+     * frequent ones are dropped.
+     */
+    public void merge(TopNValueCounter other) {
+        long thisMin = getMinimumCount();
+        long otherMin = other.getMinimumCount();
+        List<Entry> merged = new ArrayList<Entry>(size + other.size);
+        for (int i = 0; i < size; i++) {
+            Entry e = heap[i];
+            Entry o = other.counters.get(e.value);
+            if (o != null) {
+                merged.add(new Entry(e.value, e.count + o.count, e.error + o.error));
+            } else {
+                merged.add(new Entry(e.value, e.count + otherMin, e.error + otherMin));
+            }
+        }
+        for (int i = 0; i < other.size; i++) {
+            Entry o = other.heap[i];
+            if (!counters.containsKey(o.value)) {
+                merged.add(new Entry(o.value, o.count + thisMin, o.error + thisMin));
+            }
+        }
+        Collections.sort(merged, DESCENDING_COUNT);
+
+        counters.clear();
+        size = 0;
+        for (Entry e : merged) {
+            if (size == heap.length) break;
+            counters.put(e.value, e);
+            e.heapIndex = size;
+            heap[size++] = e;
+            siftUp(e.heapIndex);
+        }
+        for (int i = size; i < heap.length; i++) {
+            heap[i] = null;
+        }
+        floor = thisMin + otherMin;
+        total += other.total;
+    }
+
+    /**
+     * Returns the total number of values offered to this counter.
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Returns the number of distinct values currently being tracked.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the most times a value that is not being tracked could have
+     * occurred. This is 0 until all the counters have been used.
+     */
+    public long getMinimumCount() {
+        if (size < heap.length) return floor;
+        return Math.max(floor, heap[0].count);
+    }
+
+    /**
+     * Returns up to <tt>n</tt> of the most frequent values, most frequent
+     * first.
+     */
+    public List<Entry> getTop(int n) {
+        List<Entry> entries = new ArrayList<Entry>(Arrays.asList(heap).subList(0, size));
+        Collections.sort(entries, DESCENDING_COUNT);
+        if (entries.size() > n) {
+            return new ArrayList<Entry>(entries.subList(0, n));
+        }
+        return entries;
+    }
+
+    private void siftUp(int i) {
+        Entry e = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (heap[parent].count <= e.count) break;
+            heap[i] = heap[parent];
+            heap[i].heapIndex = i;
+            i = parent;
+        }
+        heap[i] = e;
+        e.heapIndex = i;
+    }
+
+    private void siftDown(int i) {
+        Entry e = heap[i];
+        int half = size / 2;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int right = child + 1;
+            if (right < size && heap[right].count < heap[child].count) {
+                child = right;
+            }
+            if (e.count <= heap[child].count) break;
+            heap[i] = heap[child];
+            heap[i].heapIndex = i;
+            i = child;
+        }
+        heap[i] = e;
+        e.heapIndex = i;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+package ca.sqlpower.architect.profile.output;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import ca.sqlpower.architect.profile.ColumnProfileResult;
+import ca.sqlpower.architect.profile.ProfileResult;
+import ca.sqlpower.architect.profile.TableProfileResult;
+
+/**
+ * Implements the list and iterator based ways of formatting profile results
+ * in terms of the table at a time methods of {@link StreamingProfileFormat}.
+ */
+public abstract class AbstractStreamingProfileFormat implements StreamingProfileFormat {
+
+    /**
+     * Formats a list of profile results in which each table result is
+     * followed by the results of the columns of it that should be formatted,
+     * as made by the profile export actions. Each table is formatted as soon
+     * as its column results have been collected.
+     */
+    public void format(OutputStream out, List<ProfileResult> profileResults) throws Exception {
+        startFormat(out);
+        TableProfileResult tableResult = null;
+        List<ColumnProfileResult> columnResults = new ArrayList<ColumnProfileResult>();
+        for (ProfileResult result : profileResults) {
+            if (result instanceof TableProfileResult) {
+                if (tableResult != null) {
+                    formatTable(tableResult, columnResults);
+                }
+                tableResult = (TableProfileResult) result;
+                columnResults = new ArrayList<ColumnProfileResult>();
+            } else if (result instanceof ColumnProfileResult) {
+                ColumnProfileResult columnResult = (ColumnProfileResult) result;
+                if (columnResult.getParent() != tableResult) {
+                    // a column whose table result wasn't in the list
+                    if (tableResult != null) {
+                        formatTable(tableResult, columnResults);
+                    }
+                    tableResult = columnResult.getParent();
+                    columnResults = new ArrayList<ColumnProfileResult>();
+                }
+                columnResults.add(columnResult);
+            }
+        }
+        if (tableResult != null) {
+            formatTable(tableResult, columnResults);
+        }
+        finishFormat();
+    }
+
+    /**
+     * Formats each of the given table results with all of its column results.
+     * The iterator is only advanced once the previous table has been written,
+     * so it may load each table result when it is asked for it.
+     */
+    public void format(OutputStream out, Iterator<TableProfileResult> tableResults) throws Exception {
+        startFormat(out);
+        while (tableResults.hasNext()) {
+            TableProfileResult tableResult = tableResults.next();
+            formatTable(tableResult, tableResult.getColumnProfileResults());
+        }
+        finishFormat();
+    }
+}
@@ -28,7 +28,6 @@ import java.util.List;
 import au.com.bytecode.opencsv.CSVWriter;
 import ca.sqlpower.architect.ddl.GenericDDLGenerator;
 import ca.sqlpower.architect.profile.ColumnProfileResult;
-import ca.sqlpower.architect.profile.ProfileResult;
 import ca.sqlpower.architect.profile.TableProfileResult;
 import ca.sqlpower.sqlobject.SQLColumn;
 import ca.sqlpower.sqlobject.SQLTable;
@@ -36,14 +35,20 @@ import ca.sqlpower.swingui.table.DateTableCellRenderer;
 import ca.sqlpower.swingui.table.DecimalTableCellRenderer;
 import ca.sqlpower.swingui.table.PercentTableCellRenderer;
 
-public class ProfileCSVFormat implements ProfileFormat {
+public class ProfileCSVFormat extends AbstractStreamingProfileFormat {
+
+    private PrintWriter out;
+    private CSVWriter csvWriter;
+    private GenericDDLGenerator gddl;
+    private Format dateFormat;
+    private Format decFormat;
+    private Format pctFormat;
 
     /** The desired CSV column list is published in the ProfileColumn enum.
-     * @see ca.sqlpower.architect.profile.output.ProfileFormat#format(java.io.OutputStream, java.util.List, ca.sqlpower.architect.profile.TableProfileManager)
+     * @see ca.sqlpower.architect.profile.output.StreamingProfileFormat#startFormat(java.io.OutputStream)
      */
-    public void format(OutputStream nout, List<ProfileResult> profileResult) 
-                                                                throws Exception {
-        PrintWriter out = new PrintWriter(nout);
+    public void startFormat(OutputStream nout) throws Exception {
+        out = new PrintWriter(nout);
 
         // Print a header
         ProfileColumn[] columns = ProfileColumn.values();
@@ -51,23 +56,27 @@ public class ProfileCSVFormat implements ProfileFormat {
         for (int i = 0; i < columns.length; i++) {
             columnNames[i] = columns[i].toString();
         }
-        CSVWriter csvWriter = new CSVWriter(out);
+        csvWriter = new CSVWriter(out);
         csvWriter.writeNext(columnNames);
         
-        GenericDDLGenerator gddl = new GenericDDLGenerator();
+        gddl = new GenericDDLGenerator();
         
-        Format dateFormat = new DateTableCellRenderer().getFormat();
-        Format decFormat =  new DecimalTableCellRenderer().getFormat();
-        Format pctFormat =  new PercentTableCellRenderer().getFormat();
-        // Now print column profile
-        for ( ProfileResult result : profileResult ) {
+        dateFormat = new DateTableCellRenderer().getFormat();
+        decFormat =  new DecimalTableCellRenderer().getFormat();
+        pctFormat =  new PercentTableCellRenderer().getFormat();
+    }
 
-            if ( !(result instanceof ColumnProfileResult) )
-                continue;
+    /**
+     * Prints a row for each of the given column results. The rows are flushed
+     * so nothing is kept for the table once it has been formatted.
+     */
+    public void formatTable(TableProfileResult tpr, List<ColumnProfileResult> columnResults)
+                                                                throws Exception {
+        ProfileColumn[] columns = ProfileColumn.values();
+        SQLTable t = tpr.getProfiledObject();
+        for ( ColumnProfileResult result : columnResults ) {
 
-            SQLColumn c = (SQLColumn) result.getProfiledObject();
-            SQLTable t = c.getParent();
-            TableProfileResult tpr = ((ColumnProfileResult)result).getParent();
+            SQLColumn c = result.getProfiledObject();
             List<String> commonData = new ArrayList<String>();
 
             for ( ProfileColumn pc : columns ) {
@@ -98,36 +107,36 @@ public class ProfileCSVFormat implements ProfileFormat {
                     commonData.add(gddl.columnType(c));
                     break;
                 case NULL_COUNT:
-                    commonData.add(Integer.toString(((ColumnProfileResult) result).getNullCount()));
+                    commonData.add(Integer.toString(result.getNullCount()));
                     break;
                 case PERCENT_NULL:
                     if ( tpr.getRowCount() == 0 )
                         commonData.add("n/a");
                     else
                         commonData.add( pctFormat.format(
-                            ((ColumnProfileResult) result).getNullCount() / (double)tpr.getRowCount()));
+                            result.getNullCount() / (double)tpr.getRowCount()));
                     break;
                 case UNIQUE_COUNT:
-                    commonData.add(Integer.toString(((ColumnProfileResult) result).getDistinctValueCount()));
+                    commonData.add(Integer.toString(result.getDistinctValueCount()));
                     break;
                 case PERCENT_UNIQUE:
                     if ( tpr.getRowCount() == 0 )
                         commonData.add("n/a");
                     else
                         commonData.add( pctFormat.format(
-                            ((ColumnProfileResult) result).getDistinctValueCount() / (double)tpr.getRowCount()));
+                            result.getDistinctValueCount() / (double)tpr.getRowCount()));
                     break;
                 case MIN_LENGTH:
-                    commonData.add(Integer.toString(((ColumnProfileResult) result).getMinLength()));
+                    commonData.add(Integer.toString(result.getMinLength()));
                     break;
                 case MAX_LENGTH:
-                    commonData.add(Integer.toString(((ColumnProfileResult) result).getMaxLength()));
+                    commonData.add(Integer.toString(result.getMaxLength()));
                     break;
                 case AVERAGE_LENGTH:
-                    commonData.add(decFormat.format(((ColumnProfileResult) result).getAvgLength()));
+                    commonData.add(decFormat.format(result.getAvgLength()));
                     break;
                 case MIN_VALUE:
-                    Object minValue = ((ColumnProfileResult) result).getMinValue();
+                    Object minValue = result.getMinValue();
                     if (minValue == null) {
                         commonData.add("");
                     } else {
@@ -135,7 +144,7 @@ public class ProfileCSVFormat implements ProfileFormat {
                     }
                     break;
                 case MAX_VALUE:
-                    Object maxValue = ((ColumnProfileResult) result).getMaxValue();
+                    Object maxValue = result.getMaxValue();
                     if (maxValue == null) {
                         commonData.add("");
                     } else {
@@ -145,7 +154,7 @@ public class ProfileCSVFormat implements ProfileFormat {
                 case AVERAGE_VALUE:
 
                     String formattedValue;
-                    Object value = ((ColumnProfileResult) result).getAvgValue();
+                    Object value = result.getAvgValue();
                     if (value == null) {
                         formattedValue = "";
                     } else if (value instanceof Number) {
@@ -165,8 +174,14 @@ public class ProfileCSVFormat implements ProfileFormat {
             }
             csvWriter.writeNext(commonData.toArray(new String[commonData.size()]));
         }
+        out.flush();
+    }
+
+    public void finishFormat() throws Exception {
         csvWriter.close();
         out.close();
+        csvWriter = null;
+        out = null;
     }
 
 }
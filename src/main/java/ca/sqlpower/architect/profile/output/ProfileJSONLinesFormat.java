@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+package ca.sqlpower.architect.profile.output;
+
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Date;
+import java.util.List;
+
+import ca.sqlpower.architect.ddl.GenericDDLGenerator;
+import ca.sqlpower.architect.profile.ColumnProfileResult;
+import ca.sqlpower.architect.profile.ColumnValueCount;
+import ca.sqlpower.architect.profile.TableProfileResult;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLTable;
+
+/**
+ * Writes profile results as JSON lines: one JSON object per profiled column,
+ * each on its own line, so other tools can read the output one record at a
+ * time. Numbers are written as JSON numbers and dates as milliseconds since
+ * the epoch; minimum, maximum, average and top values are written as their
+ * string values. A table that failed to profile without any column results
+ * gets one line with a null column name and the error.
+ */
+public class ProfileJSONLinesFormat extends AbstractStreamingProfileFormat {
+
+    private PrintWriter out;
+    private GenericDDLGenerator gddl;
+
+    public void startFormat(OutputStream nout) throws Exception {
+        out = new PrintWriter(new OutputStreamWriter(nout, "UTF-8"));
+        gddl = new GenericDDLGenerator();
+    }
+
+    public void formatTable(TableProfileResult tpr, List<ColumnProfileResult> columnResults)
+                                                                throws Exception {
+        if (columnResults.isEmpty() && tpr.getException() != null) {
+            StringBuilder line = new StringBuilder();
+            appendTable(line, tpr);
+            appendField(line, "column", null);
+            appendField(line, "error", tpr.getException().toString());
+            out.println(line.append('}'));
+        }
+        for (ColumnProfileResult cpr : columnResults) {
+            SQLColumn c = cpr.getProfiledObject();
+            StringBuilder line = new StringBuilder();
+            appendTable(line, tpr);
+            appendField(line, "column", c.getName());
+            appendField(line, "dataType", gddl.columnType(c));
+            if (cpr.getException() != null) {
+                appendField(line, "error", cpr.getException().toString());
+            } else {
+                appendNumber(line, "nullCount", cpr.getNullCount());
+                appendNumber(line, "distinctCount", cpr.getDistinctValueCount());
+                appendNumber(line, "minLength", cpr.getMinLength());
+                appendNumber(line, "maxLength", cpr.getMaxLength());
+                appendNumber(line, "avgLength", cpr.getAvgLength());
+                appendField(line, "minValue", cpr.getMinValue());
+                appendField(line, "maxValue", cpr.getMaxValue());
+                appendField(line, "avgValue", cpr.getAvgValue());
+                line.append(",\"topValues\":[");
+                boolean first = true;
+                for (ColumnValueCount cvc : cpr.getValueCount()) {
+                    if (!first) line.append(',');
+                    first = false;
+                    line.append("{\"value\":");
+                    if (cvc.isOtherValues()) {
+                        line.append(quote(ColumnValueCount.OTHER_VALUE_OBJECT));
+                        line.append(",\"otherValues\":true");
+                    } else {
+                        line.append(quote(cvc.getValue() == null ? null : cvc.getValue().toString()));
+                    }
+                    line.append(",\"count\":").append(cvc.getCount()).append('}');
+                }
+                line.append(']');
+            }
+            out.println(line.append('}'));
+        }
+        out.flush();
+    }
+
+    public void finishFormat() throws Exception {
+        out.close();
+        out = null;
+    }
+
+    /**
+     * Starts a JSON object with the fields that describe the given table
+     * result. The object is left open for the column's fields.
+     */
+    private void appendTable(StringBuilder line, TableProfileResult tpr) {
+        SQLTable t = tpr.getProfiledObject();
+        line.append('{');
+        line.append("\"database\":").append(quote(t.getParentDatabase() == null ? null : t.getParentDatabase().getName()));
+        appendField(line, "catalog", t.getCatalog() == null ? null : t.getCatalog().getName());
+        appendField(line, "schema", t.getSchema() == null ? null : t.getSchema().getName());
+        appendField(line, "table", t.getName());
+        appendNumber(line, "runDate", tpr.getCreateStartTime());
+        appendNumber(line, "rowCount", tpr.getRowCount());
+        appendNumber(line, "sampledRowCount", tpr.getSampledRowCount());
+    }
+
+    private static void appendField(StringBuilder line, String name, Object value) {
+        line.append(",\"").append(name).append("\":");
+        if (value instanceof Date) {
+            line.append(((Date) value).getTime());
+        } else {
+            line.append(quote(value == null ? null : value.toString()));
+        }
+    }
+
+    private static void appendNumber(StringBuilder line, String name, double value) {
+        line.append(",\"").append(name).append("\":");
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            line.append("null");
+        } else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            line.append((long) value);
+        } else {
+            line.append(value);
+        }
+    }
+
+    /**
+     * Returns the given string as a JSON string literal, or null as the JSON
+     * null literal.
+     */
+    static String quote(String s) {
+        if (s == null) return "null";
+        StringBuilder sb = new StringBuilder(s.length() + 2);
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            switch (ch) {
+            case '"':  sb.append("\\\""); break;
+            case '\\': sb.append("\\\\"); break;
+            case '\n': sb.append("\\n"); break;
+            case '\r': sb.append("\\r"); break;
+            case '\t': sb.append("\\t"); break;
+            case '\b': sb.append("\\b"); break;
+            case '\f': sb.append("\\f"); break;
+            default:
+                if (ch < 0x20) {
+                    sb.append(String.format("\\u%04x", (int) ch));
+                } else {
+                    sb.append(ch);
+                }
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
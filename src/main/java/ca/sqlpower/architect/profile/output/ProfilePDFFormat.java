@@ -27,7 +27,6 @@ import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.LinkedList;
 import java.util.List;
 
 import org.apache.log4j.Logger;
@@ -60,7 +59,7 @@ import com.lowagie.text.pdf.PdfPageEventHelper;
 import com.lowagie.text.pdf.PdfTemplate;
 import com.lowagie.text.pdf.PdfWriter;
 
-public class ProfilePDFFormat implements ProfileFormat {
+public class ProfilePDFFormat extends AbstractStreamingProfileFormat {
     
     /**
      * The approximate border length of a pdfBorder. This is hard coded here
@@ -105,6 +104,44 @@ public class ProfilePDFFormat implements ProfileFormat {
      */
     private double truncateLength = -1;
 
+    /*
+     * Page layout, in points.
+     */
+    private final int minRowsTogether = 1;  // counts smaller than this are considered orphan/widow
+    private final int mtop = 50;  // margin at top of page (in points)
+    private final int mbot = 50;  // margin at bottom of page (page numbers are below this)
+    private final int mlft = 50;  // margin at left side of page
+    private final int mrgt = 50;  // margin at right side of page
+    private final Rectangle pagesize = PageSize.LETTER.rotate();
+    private final float fsize = 6f; // the font size to use in the table body
+
+    /**
+     * The subject to put in the document's metadata. It is only known when
+     * the whole list of results is given to {@link #format(OutputStream, List)}.
+     */
+    private String subject = "Tables";
+
+    /*
+     * The state of the document being written, between startFormat() and
+     * finishFormat().
+     */
+    private Document document;
+    private PdfWriter writer;
+    private PdfContentByte cb;
+    private BaseFont bf;
+    private Font f;
+
+    /**
+     * The vertical position where the next element should start (bottom is
+     * 0; top is pagesize.height()).
+     */
+    private float pos;
+
+    /**
+     * True when nothing has been written on the current page yet.
+     */
+    private boolean newPageInd;
+
     public ProfilePDFFormat() {
         super();
         totalColumn = headings.length;
@@ -116,39 +153,38 @@ public class ProfilePDFFormat implements ProfileFormat {
     /**
      * Outputs a PDF file report of the data in drs to the given
      * output stream.
-     * @throws SQLObjectException
-     * @throws IllegalAccessException
-     * @throws InstantiationException
      */
-    public void format(OutputStream out, List<ProfileResult> profileResults)
-                throws DocumentException, IOException, SQLException,
-                    SQLObjectException, InstantiationException,
-                    IllegalAccessException, ClassNotFoundException {
+    @Override
+    public void format(OutputStream out, List<ProfileResult> profileResults) throws Exception {
+        subject = "Tables: " + profileResults;
+        try {
+            super.format(out, profileResults);
+        } finally {
+            subject = "Tables";
+        }
+    }
 
-        final int minRowsTogether = 1;  // counts smaller than this are considered orphan/widow
-        final int mtop = 50;  // margin at top of page (in points)
-        final int mbot = 50;  // margin at bottom of page (page numbers are below this)
-//        final int pbot = 20;  // padding between bottom margin and bottom of body text
-        final int mlft = 50;  // margin at left side of page
-        final int mrgt = 50;  // margin at right side of page
-        final Rectangle pagesize = PageSize.LETTER.rotate();
-        final Document document = new Document(pagesize, mlft, mrgt, mtop, mbot);
-        final PdfWriter writer = PdfWriter.getInstance(document, out);
-
-        final float fsize = 6f; // the font size to use in the table body
-        final BaseFont bf = BaseFont.createFont(BaseFont.HELVETICA, BaseFont.WINANSI, BaseFont.NOT_EMBEDDED);
+    /**
+     * Opens the document on the given stream and writes the title. Each page
+     * is written to the stream as soon as the tables on it have been laid
+     * out, so only the page being filled is kept in memory.
+     */
+    public void startFormat(OutputStream out) throws DocumentException, IOException {
+        document = new Document(pagesize, mlft, mrgt, mtop, mbot);
+        writer = PdfWriter.getInstance(document, out);
+
+        bf = BaseFont.createFont(BaseFont.HELVETICA, BaseFont.WINANSI, BaseFont.NOT_EMBEDDED);
+        f = new Font(bf, fsize);
         document.addTitle("Table Profiling Report");
-        document.addSubject("Tables: " + profileResults);
+        document.addSubject(subject);
         document.addAuthor(System.getProperty("user.name"));
         document.addCreator("Power*Architect version "+ArchitectVersion.APP_FULL_VERSION);
 
         document.open();
 
-        // vertical position where next element should start
-        //   (bottom is 0; top is pagesize.height())
-        float pos = pagesize.height() - mtop;
-
-        final PdfContentByte cb = writer.getDirectContent();
+        cb = writer.getDirectContent();
+        final PdfContentByte cb = this.cb;
+        final BaseFont bf = this.bf;
         final PdfTemplate nptemplate = cb.createTemplate(50, 50);
         writer.setPageEvent(new PdfPageEventHelper() {
                 // prints the "page N of <template>" footer
@@ -176,32 +212,34 @@ public class ProfilePDFFormat implements ProfileFormat {
         document.add(new Paragraph("Generated "+new java.util.Date()
                                    +" by "+System.getProperty("user.name")));
 
-        float[] widths = new float[totalColumn];  // widths of widest cells per row in pdf table
-        LinkedList<ProfileTableStructure> profiles = new LinkedList<ProfileTableStructure>(); // 1 table per profile result
+        pos = writer.getVerticalPosition(true) - fsize;
+        logger.debug("Starting at pos="+pos);
+        newPageInd = true;
+    }
 
-        Font f = new Font(bf, fsize);
+    /**
+     * Lays out the given table and writes it to the document. The table is
+     * built twice: once to measure the natural width of each column, which
+     * decides how much the value columns have to be truncated by, and once
+     * more with the truncation applied. Each table gets the column widths
+     * that suit its own contents.
+     */
+    public void formatTable(TableProfileResult tableResult, List<ColumnProfileResult> columnResults)
+                throws DocumentException, IOException, SQLException,
+                    SQLObjectException, InstantiationException,
+                    IllegalAccessException, ClassNotFoundException {
 
-        // This ddl generator is set to the appropriate ddl generator for the source database
-        // every time we encounter a table profile result in the list.
-        DDLGenerator ddlg = null;
-        
-        PdfPTable pdfTable = null;
-        for (ProfileResult result : profileResults ) {
-            if ( result instanceof TableProfileResult ) {
-                TableProfileResult tableResult = (TableProfileResult) result;
-                pdfTable = new PdfPTable(widths.length);
-                pdfTable.setWidthPercentage(100f);
-                ProfileTableStructure oneProfile = makeNextTable(
-                        tableResult, pdfTable, bf, fsize, widths);
-                profiles.add(oneProfile);
-                ddlg = tableResult.getDDLGenerator();
-            } else if ( result instanceof ColumnProfileResult ) {
-                final ColumnProfileResult columnResult = (ColumnProfileResult) result;
-                TableProfileResult tResult = columnResult.getParent();
-                addBodyRow(tResult,columnResult, ddlg, pdfTable, bf, f, fsize, widths);
-            }
+        DDLGenerator ddlg = tableResult.getDDLGenerator();
+
+        truncateLength = -1;
+        float[] widths = new float[totalColumn];  // widths of widest cells per row in pdf table
+        PdfPTable pdfTable = new PdfPTable(widths.length);
+        pdfTable.setWidthPercentage(100f);
+        makeNextTable(tableResult, pdfTable, bf, fsize, widths);
+        for (ColumnProfileResult columnResult : columnResults) {
+            addBodyRow(tableResult, columnResult, ddlg, pdfTable, bf, f, fsize, widths);
         }
-        
+
         double allowedTableSize = pagesize.width() - mrgt - mlft;
         double totalWidths = 0;
         for (int i = 0; i < headings.length; i++) {
@@ -212,105 +250,105 @@ public class ProfilePDFFormat implements ProfileFormat {
         }
         truncateLength = (allowedTableSize - totalWidths - (PIXELS_PER_BORDER * (columnsToTruncate.size()))) / columnsToTruncate.size();
         logger.debug("Truncate length is " + truncateLength);
-        widths = new float[totalColumn]; 
-        
-        profiles = new LinkedList<ProfileTableStructure>(); // 1 table per profile result
-        for (ProfileResult result : profileResults ) {
-            if ( result instanceof TableProfileResult ) {
-                TableProfileResult tableResult = (TableProfileResult) result;
-                pdfTable = new PdfPTable(widths.length);
-                pdfTable.setWidthPercentage(100f);
-                ProfileTableStructure oneProfile = makeNextTable(
-                        tableResult, pdfTable, bf, fsize, widths);
-                profiles.add(oneProfile);
-                ddlg = tableResult.getDDLGenerator();
-            } else if ( result instanceof ColumnProfileResult ) {
-                final ColumnProfileResult columnResult = (ColumnProfileResult) result;
-                TableProfileResult tResult = columnResult.getParent();
-                addBodyRow(tResult,columnResult, ddlg, pdfTable, bf, f, fsize, widths);
-            }
+        widths = new float[totalColumn];
+
+        pdfTable = new PdfPTable(widths.length);
+        pdfTable.setWidthPercentage(100f);
+        ProfileTableStructure profile = makeNextTable(
+                tableResult, pdfTable, bf, fsize, widths);
+        for (ColumnProfileResult columnResult : columnResults) {
+            addBodyRow(tableResult, columnResult, ddlg, pdfTable, bf, f, fsize, widths);
         }
-        
+
         for (int i = 0; i < headings.length; i++) {
             widths[i] += PIXELS_PER_BORDER;
         }
 
-        // add the PdfPTables to the document; try to avoid orphan and widow rows
-        pos = writer.getVerticalPosition(true) - fsize;
-        logger.debug("Starting at pos="+pos);
-        boolean newPageInd = true;
+        writeTable(profile, widths);
+    }
 
-        for ( ProfileTableStructure profile : profiles) {
+    /**
+     * Adds the given table to the document at {@link #pos}, starting new
+     * pages as needed; tries to avoid orphan and widow rows.
+     */
+    private void writeTable(ProfileTableStructure profile, float[] widths) throws DocumentException {
+        PdfPTable pdfTable = profile.getMainTable();
+        pdfTable.setTotalWidth(pagesize.width() - mrgt - mlft);
+        pdfTable.setWidths(widths);
+        resetHeaderWidths(profile,widths);
+
+        int startrow = pdfTable.getHeaderRows();
+        int endrow = startrow; // current page will contain header+startrow..endrow
+
+        /* no other rows in the table, just the header, and the header may
+         * contain error message
+         */
+        if (endrow == pdfTable.size()) {
+            pos = pdfTable.writeSelectedRows(0, pdfTable.getHeaderRows(), mlft, pos, cb);
+            return;
+        }
 
-            pdfTable = profile.getMainTable();
-            pdfTable.setTotalWidth(pagesize.width() - mrgt - mlft);
-            pdfTable.setWidths(widths);
-            resetHeaderWidths(profile,widths);
+        while (endrow < pdfTable.size()) {
 
-            int startrow = pdfTable.getHeaderRows();
-            int endrow = startrow; // current page will contain header+startrow..endrow
+            // figure out how many body rows fit nicely on the page
+            float endpos = pos - calcHeaderHeight(pdfTable);
 
-            /* no other rows in the table, just the header, and the header may
-             * contain error message
-             */
-            if (endrow == pdfTable.size()) {
-                pos = pdfTable.writeSelectedRows(0, pdfTable.getHeaderRows(), mlft, pos, cb);
-                continue;
+            // y position of page number# = (mbot/2+fsize)
+            while ( (endpos-pdfTable.getRowHeight(endrow)) >= (mbot/2+fsize+2) &&
+                    endrow < pdfTable.size() ) {
+                endpos -= pdfTable.getRowHeight(endrow);
+                endrow++;
             }
 
-            while (endrow < pdfTable.size()) {
-
-                // figure out how many body rows fit nicely on the page
-                float endpos = pos - calcHeaderHeight(pdfTable);
 
-                // y position of page number# = (mbot/2+fsize)
-                while ( (endpos-pdfTable.getRowHeight(endrow)) >= (mbot/2+fsize+2) &&
-                        endrow < pdfTable.size() ) {
-                    endpos -= pdfTable.getRowHeight(endrow);
-                    endrow++;
-                }
-
-
-                // adjust for orphan rows. Might create widows or make
-                // endrow < startrow, which is handled later by deferring the table
-                if (endrow < pdfTable.size() && endrow + minRowsTogether >= pdfTable.size()) {
+            // adjust for orphan rows. Might create widows or make
+            // endrow < startrow, which is handled later by deferring the table
+            if (endrow < pdfTable.size() && endrow + minRowsTogether >= pdfTable.size()) {
 
-                    // page # maybe fall into table area, but usually that's column of
-                    // min value, usually that's enough space for both, or we should
-                    // disable page # on this page
-                    if (endrow + 1 == pdfTable.size() &&
-                        endpos - pdfTable.getRowHeight(endrow) > 10 ) {
+                // page # maybe fall into table area, but usually that's column of
+                // min value, usually that's enough space for both, or we should
+                // disable page # on this page
+                if (endrow + 1 == pdfTable.size() &&
+                    endpos - pdfTable.getRowHeight(endrow) > 10 ) {
 
-                        // short by 1 row.. just squeeze it in
-                        endrow = pdfTable.size();
-                    } else {
-                        // more than 1 row remains: shorten this page so orphans aren't lonely
-                        endrow = pdfTable.size() - minRowsTogether;
-                    }
-                }
-
-                if (endrow == pdfTable.size() || endrow - startrow >= minRowsTogether) {
-                    // this is the end of the table, or we have enough rows to bother printing
-                    pos = pdfTable.writeSelectedRows(0, pdfTable.getHeaderRows(), mlft, pos, cb);
-                    pos = pdfTable.writeSelectedRows(startrow, endrow, mlft, pos, cb);
-                    startrow = endrow;
-                    newPageInd = false;
+                    // short by 1 row.. just squeeze it in
+                    endrow = pdfTable.size();
                 } else {
-                    // not the end of the table and not enough rows to print out
-                    if ( newPageInd )
-                        throw new IllegalStateException("PDF Page is not large engouh to display "+minRowsTogether+" row(s)");
-                    endrow = startrow;
+                    // more than 1 row remains: shorten this page so orphans aren't lonely
+                    endrow = pdfTable.size() - minRowsTogether;
                 }
+            }
 
-                // new page if necessary (that is, when we aren't finished the table yet)
-                if (endrow != pdfTable.size()) {
-                    document.newPage();
-                    pos = pagesize.height() - mtop;
-                    newPageInd = true;
-                }
+            if (endrow == pdfTable.size() || endrow - startrow >= minRowsTogether) {
+                // this is the end of the table, or we have enough rows to bother printing
+                pos = pdfTable.writeSelectedRows(0, pdfTable.getHeaderRows(), mlft, pos, cb);
+                pos = pdfTable.writeSelectedRows(startrow, endrow, mlft, pos, cb);
+                startrow = endrow;
+                newPageInd = false;
+            } else {
+                // not the end of the table and not enough rows to print out
+                if ( newPageInd )
+                    throw new IllegalStateException("PDF Page is not large engouh to display "+minRowsTogether+" row(s)");
+                endrow = startrow;
+            }
+
+            // new page if necessary (that is, when we aren't finished the table yet)
+            if (endrow != pdfTable.size()) {
+                document.newPage();
+                pos = pagesize.height() - mtop;
+                newPageInd = true;
             }
         }
+    }
+
+    /**
+     * Finishes the document, which closes the stream it was written to.
+     */
+    public void finishFormat() {
         document.close();
+        document = null;
+        writer = null;
+        cb = null;
     }
 
     /**
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+package ca.sqlpower.architect.profile.output;
+
+import java.io.OutputStream;
+import java.util.List;
+
+import ca.sqlpower.architect.profile.ColumnProfileResult;
+import ca.sqlpower.architect.profile.TableProfileResult;
+
+/**
+ * A profile format that can write its output one table at a time, so the
+ * profile results of a large schema never have to be held in memory, or
+ * formatted in memory, all at once. The caller pushes tables to the format:
+ * <pre>
+ * format.startFormat(out);
+ * for (each table result) {
+ *     format.formatTable(tableResult, tableResult.getColumnProfileResults());
+ * }
+ * format.finishFormat();
+ * </pre>
+ * A format instance can only write one output at a time.
+ */
+public interface StreamingProfileFormat extends ProfileFormat {
+
+    /**
+     * Writes whatever comes before the first table to the given stream. The
+     * stream is not closed until {@link #finishFormat()}.
+     */
+    public void startFormat(OutputStream out) throws Exception;
+
+    /**
+     * Writes the given table result and the given results of its columns,
+     * and lets go of everything that was built to format them.
+     * 
+     * @param tableResult
+     *            The result of the table to write.
+     * @param columnResults
+     *            The column results of the table to write, in the order they
+     *            should appear. These may be a subset of the table result's
+     *            column results.
+     */
+    public void formatTable(TableProfileResult tableResult, List<ColumnProfileResult> columnResults) throws Exception;
+
+    /**
+     * Writes whatever comes after the last table and closes the stream given
+     * to {@link #startFormat(OutputStream)}.
+     */
+    public void finishFormat() throws Exception;
+}
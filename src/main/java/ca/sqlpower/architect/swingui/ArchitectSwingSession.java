@@ -37,6 +37,7 @@ import ca.sqlpower.architect.enterprise.ArchitectClientSideSession;
 import ca.sqlpower.architect.etl.kettle.KettleJob;
 import ca.sqlpower.architect.olap.OLAPRootObject;
 import ca.sqlpower.architect.olap.OLAPSession;
+import ca.sqlpower.architect.swingui.critic.ValidationScheduler;
 import ca.sqlpower.architect.swingui.olap.OLAPEditSession;
 import ca.sqlpower.architect.undo.ArchitectUndoManager;
 import ca.sqlpower.sqlobject.SQLObjectException;
@@ -354,6 +355,12 @@ public interface ArchitectSwingSession extends ArchitectSession, SwingWorkerRegi
     
     ArchitectStatusBar getStatusInformation();
 
+    /**
+     * Returns the scheduler that validates this session's play pen in the
+     * background while it is edited.
+     */
+    ValidationScheduler getValidationScheduler();
+
     void setSaveBehaviour(Saver saveBehaviour);
 
     public Saver getSaveBehaviour();
@@ -49,6 +49,7 @@ import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JProgressBar;
 import javax.swing.JScrollPane;
+import javax.swing.JSplitPane;
 import javax.swing.ProgressMonitor;
 import javax.swing.SwingUtilities;
 import javax.swing.ToolTipManager;
@@ -75,6 +76,8 @@ import ca.sqlpower.architect.swingui.action.AddDataSourceAction;
 import ca.sqlpower.architect.swingui.action.NewDataSourceAction;
 import ca.sqlpower.architect.swingui.action.OpenProjectAction;
 import ca.sqlpower.architect.swingui.action.PreferencesAction;
+import ca.sqlpower.architect.swingui.critic.CriticSwingUtil;
+import ca.sqlpower.architect.swingui.critic.ValidationScheduler;
 import ca.sqlpower.architect.swingui.dbtree.DBTreeCellRenderer;
 import ca.sqlpower.architect.swingui.olap.OLAPEditSession;
 import ca.sqlpower.architect.swingui.olap.OLAPSchemaManager;
@@ -268,6 +271,11 @@ public class ArchitectSwingSessionImpl implements ArchitectSwingSession {
      * The Preferences editor for this application.
      */
     private final PreferencesEditor prefsEditor;
+
+    /**
+     * Validates the play pen in the background once the GUI is up.
+     */
+    private final ValidationScheduler validationScheduler;
     
     /**
      * This factory just passes the request through to the {@link ASUtils#showDbcsDialog(Window, SPDataSource, Runnable)}
@@ -453,6 +461,7 @@ public class ArchitectSwingSessionImpl implements ArchitectSwingSession {
         
         getWorkspace().getCriticManager().registerStartingCritics();
         
+        validationScheduler = new ValidationScheduler(this);
     }
 
     /**
@@ -479,7 +488,11 @@ public class ArchitectSwingSessionImpl implements ArchitectSwingSession {
             playPenScrollPane = new JScrollPane(playPen);
             projectPanel = new JPanel();
             projectPanel.setLayout(new BorderLayout());
-            projectPanel.add(playPenScrollPane, BorderLayout.CENTER);
+            JSplitPane validationSplitPane = new JSplitPane(JSplitPane.VERTICAL_SPLIT, playPenScrollPane,
+                    CriticSwingUtil.createValidationPanel(this, validationScheduler.getCriticismBucket()));
+            validationSplitPane.setResizeWeight(1.0);
+            validationSplitPane.setOneTouchExpandable(true);
+            projectPanel.add(validationSplitPane, BorderLayout.CENTER);
         }
         
         profileDialog = new JDialog(frame, Messages.getString("ArchitectSwingSessionImpl.profilesDialogTitle")); //$NON-NLS-1$
@@ -496,6 +509,8 @@ public class ArchitectSwingSessionImpl implements ArchitectSwingSession {
         macOSXRegistration(frame);
 
         profileDialog.setLocationRelativeTo(frame);
+        
+        validationScheduler.start();
     }
     
     public SwingUIProjectLoader getProjectLoader() {
@@ -739,6 +754,8 @@ public class ArchitectSwingSessionImpl implements ArchitectSwingSession {
         // XXX this could/should be done by the profile manager with a session closing listener
         delegateSession.getProfileManager().clear();
 
+        validationScheduler.cleanup();
+
         fireSessionClosing();
         
         return true;
@@ -1303,6 +1320,10 @@ public class ArchitectSwingSessionImpl implements ArchitectSwingSession {
         return frame.getStatusBar();
     }
 
+    public ValidationScheduler getValidationScheduler() {
+        return validationScheduler;
+    }
+
     @Override
     public Runnable createUpdateSnapshotRunnable(SPObjectSnapshot<?> snapshot) {
         return delegateSession.createUpdateSnapshotRunnable(snapshot);
@@ -22,7 +22,6 @@ package ca.sqlpower.architect.swingui;
 import java.awt.Color;
 import java.awt.Dialog;
 import java.io.File;
-import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -38,8 +37,11 @@ import javax.swing.text.StyleConstants;
 import org.apache.log4j.Logger;
 
 import ca.sqlpower.architect.ddl.DDLGenerator;
+import ca.sqlpower.architect.ddl.DDLStatement;
 import ca.sqlpower.architect.ddl.LiquibaseDDLGenerator;
+import ca.sqlpower.architect.ddl.MigrationPlanner;
 import ca.sqlpower.architect.diff.ArchitectDiffException;
+import ca.sqlpower.architect.diff.DiffScriptGenerator;
 import ca.sqlpower.architect.swingui.CompareDMPanel.SourceOrTargetStuff;
 import ca.sqlpower.architect.swingui.CompareDMSettings.SourceOrTargetSettings;
 import ca.sqlpower.diff.DiffChunk;
@@ -47,9 +49,7 @@ import ca.sqlpower.diff.DiffInfo;
 import ca.sqlpower.diff.DiffType;
 import ca.sqlpower.diff.PropertyChange;
 import ca.sqlpower.sqlobject.SQLCatalog;
-import ca.sqlpower.sqlobject.SQLColumn;
 import ca.sqlpower.sqlobject.SQLDatabase;
-import ca.sqlpower.sqlobject.SQLIndex;
 import ca.sqlpower.sqlobject.SQLObject;
 import ca.sqlpower.sqlobject.SQLObjectException;
 import ca.sqlpower.sqlobject.SQLObjectUtils;
@@ -170,24 +170,12 @@ public class CompareDMFormatter {
 			    throw new IllegalStateException("Don't know what kind of SQL script to generate");
 			}
 
-            List<DiffChunk<SQLObject>> addRelationships = new ArrayList<DiffChunk<SQLObject>>();
-            List<DiffChunk<SQLObject>> dropRelationships = new ArrayList<DiffChunk<SQLObject>>();
-            List<DiffChunk<SQLObject>> nonRelationship = new ArrayList<DiffChunk<SQLObject>>();
-            for (DiffChunk<SQLObject> d : diff) {
-                if (logger.isDebugEnabled()) logger.debug(d);
-                if (d.getData() instanceof SQLRelationship) {
-                    if (d.getType() == DiffType.LEFTONLY) {
-                        dropRelationships.add(d);
-                    } else if (d.getType() == DiffType.RIGHTONLY) {
-                        addRelationships.add(d);
-                    }
-                } else {
-                    nonRelationship.add(d);
+            if (logger.isDebugEnabled()) {
+                for (DiffChunk<SQLObject> d : diff) {
+                    logger.debug(d);
                 }
             }
-            sqlScriptGenerator(DIFF_STYLES, dropRelationships, gen);
-            sqlScriptGenerator(DIFF_STYLES, nonRelationship, gen);
-            sqlScriptGenerator(DIFF_STYLES, addRelationships, gen);
+            DiffScriptGenerator.generate(diff, gen);
 
             // get the title string for the compareDMFrame
             String titleString = "Generated SQL Script to turn "+ toTitleText(true, left)
@@ -203,8 +191,22 @@ public class CompareDMFormatter {
                 db = source.getDatabase();
             logger.debug("We got to place #2");
 
+            List<DDLStatement> statements = gen.getDdlStatements();
+            if (!(gen instanceof LiquibaseDDLGenerator)) {
+                // order and merge the changes so big tables are locked as briefly as possible
+                List<MigrationPlanner.Step> plan = new MigrationPlanner(gen).plan(statements);
+                statements = MigrationPlanner.getStatements(plan);
+                int rebuilds = 0;
+                for (MigrationPlanner.Step step : plan) {
+                    if (step.getLock() == MigrationPlanner.TableLock.REBUILD) rebuilds++;
+                }
+                if (rebuilds > 0) {
+                    titleString += " (" + rebuilds + " of " + plan.size() + " statements rebuild a table)";
+                }
+            }
+
             SQLScriptDialog ssd = new SQLScriptDialog(dialogOwner,
-                    "Compare DM", titleString, false, gen, db == null?null:db.getDataSource(),
+                    "Compare DM", titleString, false, statements, db == null?null:db.getDataSource(),
                             false, session);
             ssd.setVisible(true);
 
@@ -214,10 +216,6 @@ public class CompareDMFormatter {
         } catch (SQLObjectException exp) {
             ASUtils.showExceptionDialog(session, "StartCompareAction failed", exp);
             logger.error("StartCompareAction failed", exp);
-        } catch (BadLocationException ex) {
-            ASUtils.showExceptionDialog(session,
-                    "Could not create document for results", ex);
-            logger.error("Could not create document for results", ex);
         } catch (Exception ex) {
             ASUtils.showExceptionDialog(session, "Unxepected Exception!", ex);
             logger.error("Unxepected Exception!", ex);
@@ -226,98 +224,6 @@ public class CompareDMFormatter {
 
     }
 
-    private void sqlScriptGenerator(Map<DiffType, AttributeSet> styles, List<DiffChunk<SQLObject>> diff,
-            DDLGenerator gen) throws ArchitectDiffException, SQLException, SQLObjectException, BadLocationException,
-            InstantiationException, IllegalAccessException {
-        for (DiffChunk<SQLObject> chunk : diff) {
-            if (chunk.getType() == DiffType.KEY_CHANGED) {
-                if(chunk.getData() instanceof SQLTable) {
-                    SQLTable t = (SQLTable) chunk.getData();
-                    if (hasKey(t)) {
-                        gen.addPrimaryKey(t);
-                    }
-                }
-            } else if (chunk.getType() == DiffType.DROP_KEY) {
-                if(chunk.getData() instanceof SQLTable) {
-                    SQLTable t = (SQLTable) chunk.getData();
-                    if (hasKey(t)) {
-                        gen.dropPrimaryKey(t);
-                    }
-                }
-            } else if (chunk.getType() == DiffType.LEFTONLY) {
-                if (chunk.getData() instanceof SQLTable) {
-                    SQLTable t = (SQLTable) chunk.getData();
-                    gen.dropTable(t);
-                } else if (chunk.getData() instanceof SQLColumn) {
-                    SQLColumn c = (SQLColumn) chunk.getData();
-                    gen.dropColumn(c);
-                } else if (chunk.getData() instanceof SQLRelationship) {
-                    SQLRelationship r = (SQLRelationship)chunk.getData();
-                    gen.dropRelationship(r);
-                } else if (chunk.getData() instanceof SQLIndex) {
-                    SQLIndex i = (SQLIndex)chunk.getData();
-                    gen.dropIndex(i);
-                } else {
-                    throw new IllegalStateException("DiffChunk is an unexpected type.");
-                }
-
-            } else if (chunk.getType() == DiffType.RIGHTONLY) {
-                if (chunk.getData() instanceof SQLTable) {
-                    SQLTable t = (SQLTable) chunk.getData();
-                    if (t == null ) throw new NullPointerException();
-                    if (t.getObjectType().equals("TABLE")) {
-                        gen.addTable(t);
-                    }
-                } else if (chunk.getData() instanceof SQLColumn) {
-                    SQLColumn c = (SQLColumn) chunk.getData();
-                    gen.addColumn(c);
-                } else if (chunk.getData() instanceof SQLRelationship) {
-                    SQLRelationship r = (SQLRelationship)chunk.getData();
-                    gen.addRelationship(r);
-                } else if (chunk.getData() instanceof SQLIndex) {
-                    SQLIndex i = (SQLIndex)chunk.getData();
-                    gen.addIndex(i);
-                } else {
-                    throw new IllegalStateException("DiffChunk is an unexpected type.");
-                }
-            } else if (chunk.getType() == DiffType.MODIFIED) {
-                // do nothing because it has not been modified enough (see next case)
-            } else if (chunk.getType() == DiffType.SQL_MODIFIED) {
-                if (chunk.getData() instanceof SQLColumn) {
-                    SQLColumn c = (SQLColumn) chunk.getData();
-                    gen.modifyColumn(c, chunk);
-                }
-                for (PropertyChange change : chunk.getPropertyChanges()) {
-                    if (change.getPropertyName().equals("remarks")) {
-                        gen.modifyComment(chunk.getData());
-                        break;
-                    }
-                }
-            } else if (chunk.getType() == DiffType.SAME) {
-                //do nothing when they're the same
-            } else if (chunk.getType() == DiffType.NAME_CHANGED) {
-                if (chunk.getData() instanceof SQLTable) {
-                    SQLTable newTable = (SQLTable)chunk.getData();
-                    SQLTable oldTable = (SQLTable)chunk.getOriginalData();
-                    gen.renameTable(oldTable, newTable);
-                } else if (chunk.getData() instanceof SQLColumn) {
-                    SQLColumn newCol = (SQLColumn)chunk.getData();
-                    SQLColumn oldCol = (SQLColumn)chunk.getOriginalData();
-                    gen.renameColumn(oldCol, newCol);
-                } else if (chunk.getData() instanceof SQLIndex) {
-                    SQLIndex newIndex = (SQLIndex)chunk.getData();
-                    SQLIndex oldIndex= (SQLIndex)chunk.getOriginalData();
-                    gen.renameIndex(oldIndex, newIndex);
-                } else {
-                    throw new IllegalStateException("DiffChunk is an unexpected type.");
-                }
-            } else {
-                throw new IllegalStateException("DiffChunk is an invalid type.");
-            }
-        }
-    }
-
-
     /**
      * This method generates english descriptions by taking in the diff list
      * and putting the appropiate statements in the returned document.  It will iterate
@@ -463,16 +369,6 @@ public class CompareDMFormatter {
     }
 
 
-    private boolean hasKey(SQLTable t) throws SQLObjectException {
-        for (SQLColumn c : t.getColumns()) {
-            if (c.isPrimaryKey()) {
-                return true;
-            }
-        }
-        return false;
-    }
-
-
     private List<DiffChunk<DiffInfo>> convertToDiffInfo(List<DiffChunk<SQLObject>> diff) {
 
 
@@ -64,10 +64,12 @@ import org.apache.log4j.Logger;
 import ca.sqlpower.architect.ddl.DDLGenerator;
 import ca.sqlpower.architect.ddl.DDLUtils;
 import ca.sqlpower.architect.diff.CompareSQL;
+import ca.sqlpower.architect.diff.SchemaSnapshot;
 import ca.sqlpower.architect.swingui.CompareDMPanel.SourceOrTargetStuff.CatalogPopulator;
 import ca.sqlpower.architect.swingui.CompareDMPanel.SourceOrTargetStuff.SchemaPopulator;
 import ca.sqlpower.architect.swingui.CompareDMSettings.DatastoreType;
 import ca.sqlpower.architect.swingui.CompareDMSettings.SourceOrTargetSettings;
+import ca.sqlpower.architect.swingui.action.SaveSchemaSnapshotAction;
 import ca.sqlpower.diff.DiffChunk;
 import ca.sqlpower.sql.DataSourceCollection;
 import ca.sqlpower.sql.JDBCDataSource;
@@ -288,6 +290,7 @@ public class CompareDMPanel extends JPanel {
 		private Action chooseFileAction = new AbstractAction(Messages.getString("CompareDMPanel.chooseFileActionName")) { //$NON-NLS-1$
 			public void actionPerformed(ActionEvent e) {
 				JFileChooser chooser = new JFileChooser(session.getRecentMenu().getMostRecentFile());
+				chooser.addChoosableFileFilter(SaveSchemaSnapshotAction.SNAPSHOT_FILE_FILTER);
 				chooser.addChoosableFileFilter(SPSUtils.ARCHITECT_FILE_FILTER);
 				int returnVal = chooser.showOpenDialog(CompareDMPanel.this);
 				if (returnVal == JFileChooser.APPROVE_OPTION) {
@@ -809,7 +812,8 @@ public class CompareDMPanel extends JPanel {
 		}
 
 		public boolean isModelWithUUID() {
-			return playPenRadio.isSelected() || loadRadio.isSelected();
+			return playPenRadio.isSelected() ||
+			    (loadRadio.isSelected() && !SchemaSnapshot.isSnapshot(new File(loadFilePath.getText())));
 		}
 
 		/**
@@ -840,6 +844,14 @@ public class CompareDMPanel extends JPanel {
 			} else if (loadRadio.isSelected()) {
 				File f = new File(loadFilePath.getText());
 				InputStream in = new BufferedInputStream(new FileInputStream(f));
+
+				if (SchemaSnapshot.isSnapshot(f)) {
+				    try {
+				        return SchemaSnapshot.read(in);
+				    } finally {
+				        in.close();
+				    }
+				}
                 
                 // XXX: this will take a non-trivial amount of time, so ideally would be done with a progress bar.
                 // we might be able to use OpenProjectAction.loadAsynchronously() for this, but it would need a flag for not showing the GUI
@@ -1283,10 +1295,12 @@ public class CompareDMPanel extends JPanel {
 				        session.getCompareDMSettings().getSuppressSimilarities(),
 						useUUID);
                 sourceComp.setCompareIndices(includeIndexes.isSelected());
+                sourceComp.setComparisonThreads(Runtime.getRuntime().availableProcessors());
 				targetComp = new CompareSQL(targetTables, sourceTables, 
 				        session.getCompareDMSettings().getSuppressSimilarities(),
 						useUUID);
                 targetComp.setCompareIndices(includeIndexes.isSelected());
+                targetComp.setComparisonThreads(Runtime.getRuntime().availableProcessors());
 
 			} catch (SQLObjectException ex) {
 			    reenableGUIComponents();
@@ -65,6 +65,7 @@ import ca.sqlpower.architect.swingui.action.DatabaseConnectionManagerAction;
 import ca.sqlpower.architect.swingui.action.NewDataSourceAction;
 import ca.sqlpower.architect.swingui.action.RefreshAction;
 import ca.sqlpower.architect.swingui.action.RemoveSourceDBAction;
+import ca.sqlpower.architect.swingui.action.SaveSchemaSnapshotAction;
 import ca.sqlpower.architect.swingui.action.ShowTableContentsAction;
 import ca.sqlpower.architect.swingui.dbtree.DBTreeCellRenderer;
 import ca.sqlpower.architect.swingui.dbtree.DBTreeModel;
@@ -591,6 +592,7 @@ public class DBTree extends JTree implements DragSourceListener {
 			    
 			    JMenuItem profile = new JMenuItem(session.getArchitectFrame().getProfileAction());
 			    newMenu.add(profile);
+			    newMenu.add(new JMenuItem(new SaveSchemaSnapshotAction(session, tempDB)));
 
                 JMenuItem setAsDB = new JMenuItem(new SetConnAsTargetDB(tempDB.getDataSource()));
                 newMenu.add(setAsDB);
@@ -606,6 +608,7 @@ public class DBTree extends JTree implements DragSourceListener {
                 
                 JMenuItem profile = new JMenuItem(session.getArchitectFrame().getProfileAction());
                 newMenu.add(profile);
+                newMenu.add(new JMenuItem(new SaveSchemaSnapshotAction(session, (SQLObject) p.getLastPathComponent())));
                 newMenu.addSeparator();
             } else if (p.getLastPathComponent() instanceof SQLCatalog) {
                 SQLCatalog catalog = (SQLCatalog)p.getLastPathComponent();
@@ -625,6 +628,7 @@ public class DBTree extends JTree implements DragSourceListener {
                 
                 JMenuItem profile = new JMenuItem(session.getArchitectFrame().getProfileAction());
                 newMenu.add(profile);
+                newMenu.add(new JMenuItem(new SaveSchemaSnapshotAction(session, catalog)));
                 newMenu.addSeparator();
             } else if (p.getLastPathComponent() instanceof SQLTable) {
                 JMenuItem profile = new JMenuItem(session.getArchitectFrame().getProfileAction());
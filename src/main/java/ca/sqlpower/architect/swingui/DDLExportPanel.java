@@ -64,6 +64,13 @@ public class DDLExportPanel implements DataEntryPanel {
      */
     private JComboBox dbType;
 	private JCheckBox liquibaseCheckbox;
+
+	/**
+	 * Set to write the script straight to a file as it is generated instead
+	 * of showing it first, which keeps the memory used by very large models
+	 * down.
+	 */
+	private JCheckBox saveToFileCheckbox;
 	private JLabel catalogLabel;
 	private JTextField catalogField;
 
@@ -152,7 +159,7 @@ public class DDLExportPanel implements DataEntryPanel {
         mainPanel.add(newTargetDB);
 
         mainPanel.add(liquibaseCheckbox = new JCheckBox(Messages.getString("DDLExportPanel.liqubaseScript"))); //$NON-NLS-1$
-		mainPanel.add(new JPanel()); //dummy component to keep the two-column layout
+		mainPanel.add(saveToFileCheckbox = new JCheckBox(Messages.getString("DDLExportPanel.saveScriptToFile"))); //$NON-NLS-1$
 
 
 		liquibaseCheckbox.addActionListener(new ActionListener() {
@@ -316,6 +323,14 @@ public class DDLExportPanel implements DataEntryPanel {
 		return panel;
 	}
 
+    /**
+     * Returns true if the script should be written straight to a file
+     * instead of being shown in the script dialog.
+     */
+    public boolean isSavingScriptToFile() {
+        return saveToFileCheckbox.isSelected();
+    }
+
     public JDBCDataSource getTargetDB(){
         return (JDBCDataSource)targetDB.getSelectedItem();
     }
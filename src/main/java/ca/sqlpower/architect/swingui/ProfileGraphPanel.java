@@ -30,6 +30,7 @@ import javax.swing.BorderFactory;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
+import javax.swing.JTabbedPane;
 import javax.swing.JTextArea;
 import javax.swing.ScrollPaneConstants;
 
@@ -43,11 +44,15 @@ import org.jfree.data.DefaultKeyedValues;
 import org.jfree.data.category.CategoryToPieDataset;
 import org.jfree.data.category.DefaultCategoryDataset;
 import org.jfree.data.general.DefaultPieDataset;
+import org.jfree.data.time.FixedMillisecond;
+import org.jfree.data.time.TimeSeries;
+import org.jfree.data.time.TimeSeriesCollection;
 import org.jfree.util.TableOrder;
 
 import ca.sqlpower.architect.ArchitectSession;
 import ca.sqlpower.architect.profile.ColumnProfileResult;
 import ca.sqlpower.architect.profile.ColumnValueCount;
+import ca.sqlpower.architect.profile.ProfileHistory;
 import ca.sqlpower.architect.profile.TableProfileResult;
 import ca.sqlpower.architect.swingui.table.FreqValueCountTableModel;
 import ca.sqlpower.architect.swingui.table.FreqValueTable;
@@ -126,6 +131,22 @@ public class ProfileGraphPanel {
 
     private ChartPanel chartPanel;
 
+    /**
+     * Charts the counts of the column over every time its table was profiled.
+     */
+    private ChartPanel countTrendChartPanel;
+
+    /**
+     * Charts the minimum, maximum and average values of the column over every
+     * time its table was profiled.
+     */
+    private ChartPanel valueTrendChartPanel;
+
+    /**
+     * Holds the top N chart and the trend charts.
+     */
+    private JTabbedPane chartTabs;
+
     private static final Logger logger = Logger.getLogger(ProfileGraphPanel.class);
 
     private JTextArea notesField;
@@ -195,6 +216,12 @@ public class ProfileGraphPanel {
                 false, false, false);
         chartPanel = new ChartPanel(createPieChart);
         chartPanel.setPreferredSize(new Dimension(300, 300));
+        countTrendChartPanel = new ChartPanel(createCountTrendChart(null, null, ""));
+        valueTrendChartPanel = new ChartPanel(createValueTrendChart(null, ""));
+        chartTabs = new JTabbedPane();
+        chartTabs.addTab("Top Values", chartPanel);
+        chartTabs.addTab("Count Trend", countTrendChartPanel);
+        chartTabs.addTab("Value Trend", valueTrendChartPanel);
 
         if (panel.getProfileManager().getWorkspaceContainer() instanceof ArchitectSession &&
                 ((ArchitectSession) panel.getProfileManager().getWorkspaceContainer()).isEnterpriseSession()) {
@@ -210,11 +237,11 @@ public class ProfileGraphPanel {
             pb.appendRow("fill:4dlu:grow");
             pb.appendRow("4dlu");
 
-            pb.add(chartPanel, cc.xy(6, row + 1));
+            pb.add(chartTabs, cc.xy(6, row + 1));
         } else {
             pb.appendRow("fill:4dlu:grow");
             pb.appendRow("4dlu");
-            pb.add(chartPanel, cc.xywh(6, 4, 1, row - 2));
+            pb.add(chartTabs, cc.xywh(6, 4, 1, row - 2));
         }
         
         invalidResultsPanel = new JPanel(new BorderLayout());
@@ -326,7 +353,11 @@ public class ProfileGraphPanel {
     private void displayValidProfile(final ColumnProfileResult cr) {
         TableProfileResult tr = (TableProfileResult) cr.getParent();
         rowCount = tr.getRowCount();
-        rowCountDisplay.setText(Integer.toString(rowCount));
+        if (tr.getSampledRowCount() > 0) {
+            rowCountDisplay.setText(rowCount + " (sampled " + tr.getSampledRowCount() + ")"); //$NON-NLS-1$ //$NON-NLS-2$
+        } else {
+            rowCountDisplay.setText(Integer.toString(rowCount));
+        }
 
         StringBuffer sb = new StringBuffer();
         SQLColumn c = cr.getProfiledObject();
@@ -338,11 +369,23 @@ public class ProfileGraphPanel {
         nullableLabel.setText(Boolean.toString(c.isDefinitelyNullable()));
 
         chartPanel.setChart(createTopNChart(cr, rowCount));
-        nullCountLabel.setText(Integer.toString(cr.getNullCount()));
+        ProfileHistory history = profilePanel.getProfileManager().getHistory();
+        countTrendChartPanel.setChart(createCountTrendChart(history.getTableHistory(tr.getProfiledObject()),
+                history.getColumnHistory(c), c.getName()));
+        valueTrendChartPanel.setChart(createValueTrendChart(history.getColumnHistory(c), c.getName()));
+        if (cr.getNullCountError() > 0) {
+            nullCountLabel.setText(cr.getNullCount() + " \u00b1 " + cr.getNullCountError()); //$NON-NLS-1$
+        } else {
+            nullCountLabel.setText(Integer.toString(cr.getNullCount()));
+        }
         int nullsInRecords = cr.getNullCount();
         double ratio = rowCount > 0 ? nullsInRecords * 100D / rowCount : 0;
         nullPercentLabel.setText(format(ratio));
-        uniqueCountLabel.setText(Integer.toString(cr.getDistinctValueCount()));
+        if (cr.getDistinctValueCountError() > 0) {
+            uniqueCountLabel.setText(cr.getDistinctValueCount() + " \u00b1 " + cr.getDistinctValueCountError()); //$NON-NLS-1$
+        } else {
+            uniqueCountLabel.setText(Integer.toString(cr.getDistinctValueCount()));
+        }
         double uniqueRatio = rowCount > 0 ? cr.getDistinctValueCount() * 100D / rowCount : 0;
         uniquePercentLabel.setText(format(uniqueRatio));
         minLengthLabel.setText(Integer.toString(cr.getMinLength()));
@@ -406,6 +449,71 @@ public class ProfileGraphPanel {
         return chart;
     }
 
+    /**
+     * Creates a chart of the row count of the table and the null and unique
+     * value counts of the column over every time they were profiled.
+     * 
+     * @param tableHistory
+     *            The history of the column's table. May be null.
+     * @param columnHistory
+     *            The history of the column. May be null.
+     */
+    public static JFreeChart createCountTrendChart(ProfileHistory.TableHistory tableHistory,
+            ProfileHistory.ColumnHistory columnHistory, String columnName) {
+        TimeSeriesCollection dataset = new TimeSeriesCollection();
+        if (tableHistory != null) {
+            dataset.addSeries(createTimeSeries("Row Count", tableHistory.getTimes(), toDoubles(tableHistory.getRowCounts())));
+        }
+        if (columnHistory != null) {
+            long[] times = columnHistory.getTimes();
+            dataset.addSeries(createTimeSeries("Null Count", times, toDoubles(columnHistory.getNullCounts())));
+            dataset.addSeries(createTimeSeries("Unique Values", times, toDoubles(columnHistory.getDistinctCounts())));
+        }
+        return ChartFactory.createTimeSeriesChart(columnName + " counts", "Profiled", "Count",
+                dataset, true, true, false);
+    }
+
+    /**
+     * Creates a chart of the minimum, maximum and average values of the
+     * column over every time it was profiled. Only numeric and date values
+     * are charted.
+     * 
+     * @param columnHistory
+     *            The history of the column. May be null.
+     */
+    public static JFreeChart createValueTrendChart(ProfileHistory.ColumnHistory columnHistory, String columnName) {
+        TimeSeriesCollection dataset = new TimeSeriesCollection();
+        if (columnHistory != null) {
+            long[] times = columnHistory.getTimes();
+            dataset.addSeries(createTimeSeries("Minimum Value", times, columnHistory.getMinValues()));
+            dataset.addSeries(createTimeSeries("Maximum Value", times, columnHistory.getMaxValues()));
+            dataset.addSeries(createTimeSeries("Average Value", times, columnHistory.getAvgValues()));
+        }
+        return ChartFactory.createTimeSeriesChart(columnName + " values", "Profiled", "Value",
+                dataset, true, true, false);
+    }
+
+    /**
+     * Makes a time series of the given values, skipping the ones that are NaN.
+     */
+    private static TimeSeries createTimeSeries(String name, long[] times, double[] values) {
+        TimeSeries series = new TimeSeries(name, FixedMillisecond.class);
+        for (int i = 0; i < times.length; i++) {
+            if (!Double.isNaN(values[i])) {
+                series.add(new FixedMillisecond(times[i]), values[i]);
+            }
+        }
+        return series;
+    }
+
+    private static double[] toDoubles(long[] values) {
+        double[] doubles = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            doubles[i] = values[i];
+        }
+        return doubles;
+    }
+
     private String format(double d) {
         return String.format("%6.2f", d);
     }
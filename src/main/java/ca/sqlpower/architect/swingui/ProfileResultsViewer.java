@@ -465,6 +465,8 @@ public class ProfileResultsViewer {
                     .addFixed(new JButton(new SaveProfileAction(frame, Messages
                             .getString("ProfileResultsViewer.HTMLExport"), viewTable,
                             SaveProfileAction.SaveableFileType.HTML)));
+            tableButtons.addFixed(new JButton(new SaveProfileAction(frame, Messages
+                    .getString("ProfileResultsViewer.JSONExport"), viewTable, SaveProfileAction.SaveableFileType.JSONL)));
             tableButtons.addFixed(new JButton(closeAction));
             tableViewPane.add(tableButtons.getPanel(), BorderLayout.SOUTH);
             tabPane.addTab(Messages.getString("ProfileResultsViewer.tableViewTab"), tableViewPane); //$NON-NLS-1$
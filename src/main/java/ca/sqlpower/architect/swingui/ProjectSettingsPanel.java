@@ -30,6 +30,7 @@ import org.apache.log4j.Logger;
 
 import ca.sqlpower.architect.ProjectSettings;
 import ca.sqlpower.architect.ProjectSettings.ColumnVisibility;
+import ca.sqlpower.architect.profile.ProfileSettings;
 import ca.sqlpower.architect.profile.TableProfileCreator;
 import ca.sqlpower.swingui.DataEntryPanel;
 
@@ -62,6 +63,86 @@ public class ProjectSettingsPanel extends JPanel implements DataEntryPanel {
      * A profile manager setting: Which profile creator to use.
      */
     private JComboBox profileMode;
+    
+    /**
+     * A profile manager setting: Whether to estimate distinct counts and top
+     * values instead of counting them exactly.
+     */
+    private JCheckBox usingApproximateCounts;
+    
+    /**
+     * A profile manager setting: How profile creators that support sampling
+     * limit the rows they read, and the limits for each mode.
+     */
+    private JComboBox samplingMode;
+    private JTextField sampleRows;
+    private JTextField samplePercentage;
+    private JTextField sampleTimeBudgetSeconds;
+    
+    /**
+     * A profile manager setting: Whether to skip re-profiling tables that
+     * haven't changed since their last profile.
+     */
+    private JCheckBox incrementalProfiling;
+    
+    /**
+     * A profile manager setting: The audit or timestamp columns that show
+     * when a table's data last changed.
+     */
+    private JTextField changeTrackingColumns;
+    
+    /**
+     * A profile manager setting: Whether finding out if a table changed may
+     * read the whole table.
+     */
+    private JCheckBox scanningForChanges;
+    
+    /**
+     * A profile manager setting: How many tables to profile at once.
+     */
+    private JTextField maxConcurrentProfiles;
+    
+    /**
+     * A profile manager setting: How many tables from one data source to
+     * profile at once.
+     */
+    private JTextField maxConcurrentProfilesPerDataSource;
+    
+    /**
+     * A profile manager setting: How many columns the remote database
+     * profiler aggregates in one query.
+     */
+    private JTextField remoteColumnsPerQuery;
+    
+    /**
+     * A profile manager setting: How many connections the remote database
+     * profiler uses for one table.
+     */
+    private JTextField remoteConnectionsPerTable;
+    
+    /**
+     * A profile manager setting: How many key ranges the remote database
+     * profiler splits large tables into.
+     */
+    private JTextField remotePartitionCount;
+    
+    /**
+     * A profile manager setting: Whether column profiles are saved in a
+     * profile store beside the project file.
+     */
+    private JCheckBox usingProfileStore;
+    
+    /**
+     * A profile manager setting: How many table profiles keep their column
+     * profiles in memory when a profile store is used.
+     */
+    private JTextField maxLoadedProfiles;
+    
+    /**
+     * A profile manager setting: How many full profiles are kept for each
+     * table once newer ones are made.
+     */
+    private JTextField maxProfilesPerTable;
 
     private JRadioButton rectilinearRelationships;
     private JRadioButton directRelationships;
@@ -105,6 +186,54 @@ public class ProjectSettingsPanel extends JPanel implements DataEntryPanel {
         
         fb.append(Messages.getString("ProjectSettingsPanel.profileMode"), profileMode = new JComboBox(session.getProfileManager().getProfileCreators().toArray())); //$NON-NLS-1$
         fb.nextLine();
+        
+        fb.append(Messages.getString("ProjectSettingsPanel.approximateProfileCounts"), usingApproximateCounts = new JCheckBox()); //$NON-NLS-1$
+        fb.nextLine();
+        
+        fb.append(Messages.getString("ProjectSettingsPanel.incrementalProfiling"), incrementalProfiling = new JCheckBox()); //$NON-NLS-1$
+        fb.nextLine();
+        
+        fb.append(Messages.getString("ProjectSettingsPanel.samplingMode"), samplingMode = new JComboBox(ProfileSettings.SamplingMode.values())); //$NON-NLS-1$
+        fb.nextLine();
+        
+        fb.append(Messages.getString("ProjectSettingsPanel.sampleRows"), sampleRows = new JTextField("",6)); //$NON-NLS-1$
+        fb.nextLine();
+        
+        fb.append(Messages.getString("ProjectSettingsPanel.samplePercentage"), samplePercentage = new JTextField("",6)); //$NON-NLS-1$
+        fb.nextLine();
+        
+        fb.append(Messages.getString("ProjectSettingsPanel.sampleTimeBudgetSeconds"), sampleTimeBudgetSeconds = new JTextField("",6)); //$NON-NLS-1$
+        fb.nextLine();
+        
+        fb.append(Messages.getString("ProjectSettingsPanel.changeTrackingColumns"), changeTrackingColumns = new JTextField("",30)); //$NON-NLS-1$
+        fb.nextLine();
+        
+        fb.append(Messages.getString("ProjectSettingsPanel.scanningForChanges"), scanningForChanges = new JCheckBox()); //$NON-NLS-1$
+        fb.nextLine();
+        
+        fb.append(Messages.getString("ProjectSettingsPanel.maxConcurrentProfiles"), maxConcurrentProfiles = new JTextField("",6)); //$NON-NLS-1$
+        fb.nextLine();
+        
+        fb.append(Messages.getString("ProjectSettingsPanel.maxConcurrentProfilesPerDataSource"), maxConcurrentProfilesPerDataSource = new JTextField("",6)); //$NON-NLS-1$
+        fb.nextLine();
+        
+        fb.append(Messages.getString("ProjectSettingsPanel.remoteColumnsPerQuery"), remoteColumnsPerQuery = new JTextField("",6)); //$NON-NLS-1$
+        fb.nextLine();
+        
+        fb.append(Messages.getString("ProjectSettingsPanel.remoteConnectionsPerTable"), remoteConnectionsPerTable = new JTextField("",6)); //$NON-NLS-1$
+        fb.nextLine();
+        
+        fb.append(Messages.getString("ProjectSettingsPanel.remotePartitionCount"), remotePartitionCount = new JTextField("",6)); //$NON-NLS-1$
+        fb.nextLine();
+        
+        fb.append(Messages.getString("ProjectSettingsPanel.usingProfileStore"), usingProfileStore = new JCheckBox()); //$NON-NLS-1$
+        fb.nextLine();
+        
+        fb.append(Messages.getString("ProjectSettingsPanel.maxLoadedProfiles"), maxLoadedProfiles = new JTextField("",6)); //$NON-NLS-1$
+        fb.nextLine();
+        
+        fb.append(Messages.getString("ProjectSettingsPanel.maxProfilesPerTable"), maxProfilesPerTable = new JTextField("",6)); //$NON-NLS-1$
+        fb.nextLine();
         fb.appendUnrelatedComponentsGapRow();
         fb.nextLine();
        
@@ -187,6 +316,22 @@ public class ProjectSettingsPanel extends JPanel implements DataEntryPanel {
         logger.debug("Reverting project options"); //$NON-NLS-1$
         numberOfFreqValues.setText(String.valueOf(session.getProfileManager().getDefaultProfileSettings().getTopNCount()));
         profileMode.setSelectedItem(session.getProfileManager().getCreator());
+        usingApproximateCounts.setSelected(session.getProfileManager().getDefaultProfileSettings().isUsingApproximateCounts());
+        incrementalProfiling.setSelected(session.getProfileManager().getDefaultProfileSettings().isIncrementalProfiling());
+        samplingMode.setSelectedItem(session.getProfileManager().getDefaultProfileSettings().getSamplingMode());
+        sampleRows.setText(String.valueOf(session.getProfileManager().getDefaultProfileSettings().getSampleRows()));
+        samplePercentage.setText(String.valueOf(session.getProfileManager().getDefaultProfileSettings().getSamplePercentage()));
+        sampleTimeBudgetSeconds.setText(String.valueOf(session.getProfileManager().getDefaultProfileSettings().getSampleTimeBudgetSeconds()));
+        changeTrackingColumns.setText(session.getProfileManager().getDefaultProfileSettings().getChangeTrackingColumns());
+        scanningForChanges.setSelected(session.getProfileManager().getDefaultProfileSettings().isScanningForChanges());
+        maxConcurrentProfiles.setText(String.valueOf(session.getProfileManager().getDefaultProfileSettings().getMaxConcurrentProfiles()));
+        maxConcurrentProfilesPerDataSource.setText(String.valueOf(session.getProfileManager().getDefaultProfileSettings().getMaxConcurrentProfilesPerDataSource()));
+        remoteColumnsPerQuery.setText(String.valueOf(session.getProfileManager().getDefaultProfileSettings().getRemoteColumnsPerQuery()));
+        remoteConnectionsPerTable.setText(String.valueOf(session.getProfileManager().getDefaultProfileSettings().getRemoteConnectionsPerTable()));
+        remotePartitionCount.setText(String.valueOf(session.getProfileManager().getDefaultProfileSettings().getRemotePartitionCount()));
+        usingProfileStore.setSelected(session.getProfileManager().getDefaultProfileSettings().isUsingProfileStore());
+        maxLoadedProfiles.setText(String.valueOf(session.getProfileManager().getDefaultProfileSettings().getMaxLoadedProfiles()));
+        maxProfilesPerTable.setText(String.valueOf(session.getProfileManager().getDefaultProfileSettings().getMaxProfilesPerTable()));
 		saveEntireSource.setSelected(session.isSavingEntireSource());
         if (session.getRelationshipLinesDirect()) {
             directRelationships.setSelected(true);
@@ -246,6 +391,75 @@ public class ProjectSettingsPanel extends JPanel implements DataEntryPanel {
         }
         
         session.getProfileManager().setCreator((TableProfileCreator) profileMode.getSelectedItem());
+        session.getProfileManager().getDefaultProfileSettings().setUsingApproximateCounts(usingApproximateCounts.isSelected());
+        session.getProfileManager().getDefaultProfileSettings().setIncrementalProfiling(incrementalProfiling.isSelected());
+        session.getProfileManager().getDefaultProfileSettings().setSamplingMode((ProfileSettings.SamplingMode) samplingMode.getSelectedItem());
+        
+        try {
+            int rows = Integer.parseInt(sampleRows.getText());
+            double percentage = Double.parseDouble(samplePercentage.getText());
+            int seconds = Integer.parseInt(sampleTimeBudgetSeconds.getText());
+            if (rows > 0 && percentage > 0 && percentage <= 100 && seconds > 0) {
+                session.getProfileManager().getDefaultProfileSettings().setSampleRows(rows);
+                session.getProfileManager().getDefaultProfileSettings().setSamplePercentage(percentage);
+                session.getProfileManager().getDefaultProfileSettings().setSampleTimeBudgetSeconds(seconds);
+            }
+        } catch ( NumberFormatException e ) {
+            ASUtils.showExceptionDialogNoReport(this,
+                    "Number Format Error", e); //$NON-NLS-1$
+        }
+        session.getProfileManager().getDefaultProfileSettings().setChangeTrackingColumns(changeTrackingColumns.getText());
+        session.getProfileManager().getDefaultProfileSettings().setScanningForChanges(scanningForChanges.isSelected());
+        
+        try {
+            int maxProfiles = Integer.parseInt(maxConcurrentProfiles.getText());
+            int maxProfilesPerDataSource = Integer.parseInt(maxConcurrentProfilesPerDataSource.getText());
+            if (maxProfiles > 0 && maxProfilesPerDataSource > 0) {
+                session.getProfileManager().getDefaultProfileSettings().setMaxConcurrentProfiles(maxProfiles);
+                session.getProfileManager().getDefaultProfileSettings().setMaxConcurrentProfilesPerDataSource(maxProfilesPerDataSource);
+            }
+        } catch ( NumberFormatException e ) {
+            ASUtils.showExceptionDialogNoReport(this,
+                    "Number Format Error", e); //$NON-NLS-1$
+        }
+        
+        try {
+            int columnsPerQuery = Integer.parseInt(remoteColumnsPerQuery.getText());
+            int connectionsPerTable = Integer.parseInt(remoteConnectionsPerTable.getText());
+            int partitionCount = Integer.parseInt(remotePartitionCount.getText());
+            if (columnsPerQuery > 0 && connectionsPerTable > 0 && partitionCount > 0) {
+                session.getProfileManager().getDefaultProfileSettings().setRemoteColumnsPerQuery(columnsPerQuery);
+                session.getProfileManager().getDefaultProfileSettings().setRemoteConnectionsPerTable(connectionsPerTable);
+                session.getProfileManager().getDefaultProfileSettings().setRemotePartitionCount(partitionCount);
+            }
+        } catch ( NumberFormatException e ) {
+            ASUtils.showExceptionDialogNoReport(this,
+                    "Number Format Error", e); //$NON-NLS-1$
+        }
+        
+        session.getProfileManager().getDefaultProfileSettings().setUsingProfileStore(usingProfileStore.isSelected());
+        try {
+            int maxLoaded = Integer.parseInt(maxLoadedProfiles.getText());
+            if (maxLoaded > 0) {
+                session.getProfileManager().getDefaultProfileSettings().setMaxLoadedProfiles(maxLoaded);
+                if (session.getProfileManager().getResultStore() != null) {
+                    session.getProfileManager().getResultStore().setMaxLoadedResults(maxLoaded);
+                }
+            }
+        } catch ( NumberFormatException e ) {
+            ASUtils.showExceptionDialogNoReport(this,
+                    "Number Format Error", e); //$NON-NLS-1$
+        }
+        
+        try {
+            int maxPerTable = Integer.parseInt(maxProfilesPerTable.getText());
+            if (maxPerTable >= 0) {
+                session.getProfileManager().getDefaultProfileSettings().setMaxProfilesPerTable(maxPerTable);
+            }
+        } catch ( NumberFormatException e ) {
+            ASUtils.showExceptionDialogNoReport(this,
+                    "Number Format Error", e); //$NON-NLS-1$
+        }
         
         if (directRelationships.isSelected()) {
             settings.setRelationshipLinesDirect(true);
@@ -30,10 +30,7 @@ import java.awt.event.ActionEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.lang.reflect.InvocationTargetException;
-import java.sql.Connection;
 import java.sql.SQLException;
-import java.sql.Statement;
-import java.util.Iterator;
 import java.util.List;
 
 import javax.swing.AbstractAction;
@@ -58,6 +55,7 @@ import org.apache.log4j.Logger;
 
 import ca.sqlpower.architect.ddl.DDLGenerator;
 import ca.sqlpower.architect.ddl.DDLStatement;
+import ca.sqlpower.architect.ddl.DDLStatementExecutor;
 import ca.sqlpower.sql.JDBCDataSource;
 import ca.sqlpower.sqlobject.SQLDatabase;
 import ca.sqlpower.sqlobject.SQLObjectException;
@@ -123,7 +121,6 @@ public class SQLScriptDialog extends JDialog {
      *            The DDL generator that supplies the SQL script. The script
      *            will be obtained by a call to
      *            {@link DDLGenerator#getDdlStatements()}.
-     *            XXX: this should be a List of DDLStatement instead
      * @param targetDataSource
      *            The database to execute the statements in. This can be null,
      *            in which case the execute button will not function. Save and
@@ -139,6 +136,23 @@ public class SQLScriptDialog extends JDialog {
 			DDLGenerator gen, JDBCDataSource targetDataSource,
 			boolean closeParent, ArchitectSwingSession session )
 			throws HeadlessException {
+	    this(owner, title, header, modal, gen.getDdlStatements(), targetDataSource, closeParent, session);
+	}
+
+    /**
+     * Creates and packs a new SQL script dialog that shows the given
+     * statements, but does not display it. See
+     * {@link #SQLScriptDialog(Dialog, String, String, boolean, DDLGenerator, JDBCDataSource, boolean, ArchitectSwingSession)}
+     * for the other parameters.
+     * 
+     * @param statements
+     *            The statements of the script, in the order they will be
+     *            shown and executed.
+     */
+	public SQLScriptDialog(Dialog owner, String title, String header, boolean modal,
+	        List<DDLStatement> statements, JDBCDataSource targetDataSource,
+	        boolean closeParent, ArchitectSwingSession session )
+	throws HeadlessException {
 		super(owner, title, modal);
         if (modal && owner == null) {
             JOptionPane.showMessageDialog(null,
@@ -147,7 +161,7 @@ public class SQLScriptDialog extends JDialog {
 		statusLabel = new JLabel();
 		parent = owner;
 		this.header = header;
-		this.statements = gen.getDdlStatements();
+		this.statements = statements;
 		this.targetDataSource = targetDataSource;
 		this.closeParent = closeParent;
         this.session = session;
@@ -332,6 +346,11 @@ public class SQLScriptDialog extends JDialog {
 
 		private int stmtsCompleted = 0;
 
+		/**
+		 * The executor running the statements, or null before they start.
+		 */
+		private volatile DDLStatementExecutor executor;
+
         public ExecuteSQLScriptWorker(ArchitectSwingSession session) {
 		    super(session);
 		    setMessage(null);
@@ -343,7 +362,10 @@ public class SQLScriptDialog extends JDialog {
 		}
 
 		/**
-		 * This method runs on a separate worker thread.
+		 * This method runs on a separate worker thread. The statements are
+		 * run by a {@link DDLStatementExecutor}, which runs independent
+		 * statements on several connections at once; the statements that
+		 * failed are listed once they have all been processed.
 		 */
 		public void doStuff() {
 
@@ -357,80 +379,41 @@ public class SQLScriptDialog extends JDialog {
 
 			logger.debug("the Target Database is: " + target.getDataSource()); //$NON-NLS-1$
 
-			Connection con;
-			Statement stmt;
-
+			executor = new DDLStatementExecutor(statements);
 			try {
-				con = target.getConnection();
+				executor.start(target);
 			} catch (SQLObjectException ex) {
 				setFinished(true);
 				throw new RuntimeException(
 						Messages.getString("SQLScriptDialog.couldNotConnectToTargetDb", ex.getMessage()), ex); //$NON-NLS-1$
+			} catch (SQLException ex) {
+				setFinished(true);
+				throw new RuntimeException(Messages.getString("SQLScriptDialog.couldNotGenerateDDL", ex.getMessage())); //$NON-NLS-1$
 			} catch (Exception ex) {
 				setFinished(true);
 				logger.error("Unexpected exception in DDL generation", ex); //$NON-NLS-1$
 				throw new RuntimeException(Messages.getString("SQLScriptDialog.specifyATargetDb")); //$NON-NLS-1$
 			}
 
-			try {
-				logger.debug("the connection thinks it is: " + con.getMetaData().getURL()); //$NON-NLS-1$
-				stmt = con.createStatement();
-			} catch (SQLException ex) {
-				setFinished(true);
-				throw new RuntimeException(Messages.getString("SQLScriptDialog.couldNotGenerateDDL", ex.getMessage())); //$NON-NLS-1$
-			}
-
 			try {
 				logger.info("Starting DDL Generation at " + new java.util.Date(System.currentTimeMillis())); //$NON-NLS-1$
 				logger.info("Database Target: " + target.getDataSource()); //$NON-NLS-1$
 				logger.info("Playpen Dump: " + target.getDataSource()); //$NON-NLS-1$
 				
 				SQLScriptDialog.this.executeButton.setEnabled(false);
-				Iterator<DDLStatement> it = statements.iterator();
-				while (it.hasNext() && !isFinished() && !isCancelled()) {
-					DDLStatement ddlStmt = it.next();
-					try {
-						increaseProgress();
-						logger.info("executing: " + ddlStmt.getSQLText()); //$NON-NLS-1$
-						stmt.executeUpdate(ddlStmt.getSQLText());
-						stmtsCompleted++;
-					} catch (final SQLException ex) {
-						final String fsql = ddlStmt.getSQLText() == null ? null : ddlStmt.getSQLText().trim();
-						logger.info("sql statement failed: " + ex.getMessage()); //$NON-NLS-1$
-						try {
-							SwingUtilities.invokeAndWait(new Runnable() {
-								public void run() {
-									JTextArea jta = new JTextArea(fsql);
-									jta.setOpaque(false);
-									jta.setEditable(false);
-									JPanel jp = new JPanel(new BorderLayout(0, 10));
-									jp.add(new JLabel(Messages.getString("SQLScriptDialog.sqlStatementFailed", ex.getMessage())), BorderLayout.NORTH);
-									jp.add(jta, BorderLayout.CENTER);
-									jp.add(new JLabel(Messages.getString("SQLScriptDialog.continuePrompt")), BorderLayout.SOUTH);
-									int decision = JOptionPane.showConfirmDialog(
-									        SQLScriptDialog.this,
-									        jp,
-									        Messages.getString("SQLScriptDialog.sqlFailure"), //$NON-NLS-1$
-									        JOptionPane.YES_NO_OPTION);
-									if (decision == JOptionPane.NO_OPTION) {
-										logger.info("Export cancelled by user."); //$NON-NLS-1$
-										cancelJob();
-									}
-								}
-							});
-						} catch (InterruptedException ex2) {
-							logger.warn("DDL Worker was interrupted during InvokeAndWait", ex2); //$NON-NLS-1$
-						} catch (InvocationTargetException ex2) {
-							throw new RuntimeException(ex2);
-						}
-
-						if (isCancelled()) {
-							setFinished(true);
-							// don't return, we might as well display how many statements ended up being processed...
-						}
+				while (!executor.awaitCompletion(200)) {
+					setProgress(executor.getProcessedCount());
+					if (isCancelled()) {
+						executor.cancel();
 					}
 				}
+				setProgress(executor.getProcessedCount());
+				stmtsCompleted = executor.getExecutedCount();
 
+				List<DDLStatementExecutor.Failure> failures = executor.getFailures();
+				if (!failures.isEmpty()) {
+					showFailures(failures);
+				}
 			} catch (Exception exc){
 				logger.info("Caught Unexpected Exception " + exc); //$NON-NLS-1$
 				ASUtils.showExceptionDialog(
@@ -443,22 +426,48 @@ public class SQLScriptDialog extends JDialog {
 						Messages.getString("SQLScriptDialog.successfullyExecuted", String.valueOf(stmtsCompleted), String.valueOf(getProgress()))); //$NON-NLS-1$
 				logger.info(resultsMessage);
 				JOptionPane.showMessageDialog(SQLScriptDialog.this, resultsMessage);
-				// flush and close the LogWriter
-				try {
-					if (stmt != null) stmt.close();
-				} catch (SQLException ex) {
-					logger.error("SQLException while closing statement", ex); //$NON-NLS-1$
-				}
-				try {
-					if (con != null) con.close();
-				} catch (SQLException ex) {
-					logger.error("Couldn't close connection", ex); //$NON-NLS-1$
-				}
 				SQLScriptDialog.this.executeButton.setEnabled(true);
 			}
 
 		}
 
+		/**
+		 * Lists the statements that failed, with their errors, and the
+		 * statements that were skipped because of them.
+		 */
+		private void showFailures(final List<DDLStatementExecutor.Failure> failures) {
+			try {
+				SwingUtilities.invokeAndWait(new Runnable() {
+					public void run() {
+						int failedCount = 0;
+						StringBuilder text = new StringBuilder();
+						for (DDLStatementExecutor.Failure failure : failures) {
+							String sql = failure.getStatement().getSQLText() == null ? "" : failure.getStatement().getSQLText().trim(); //$NON-NLS-1$
+							if (failure.isSkipped()) {
+								text.append("-- ").append(Messages.getString("SQLScriptDialog.skippedStatement")).append("\n"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+							} else {
+								failedCount++;
+								text.append("-- ").append(failure.getException().getMessage()).append("\n"); //$NON-NLS-1$ //$NON-NLS-2$
+							}
+							text.append(sql).append("\n\n"); //$NON-NLS-1$
+						}
+						JTextArea jta = new JTextArea(text.toString(), 15, 60);
+						jta.setEditable(false);
+						JPanel jp = new JPanel(new BorderLayout(0, 10));
+						jp.add(new JLabel(Messages.getString("SQLScriptDialog.statementsFailed", //$NON-NLS-1$
+								String.valueOf(failedCount), String.valueOf(failures.size() - failedCount))), BorderLayout.NORTH);
+						jp.add(new JScrollPane(jta), BorderLayout.CENTER);
+						JOptionPane.showMessageDialog(SQLScriptDialog.this, jp,
+								Messages.getString("SQLScriptDialog.sqlFailure"), JOptionPane.ERROR_MESSAGE); //$NON-NLS-1$
+					}
+				});
+			} catch (InterruptedException ex) {
+				logger.warn("DDL Worker was interrupted during InvokeAndWait", ex); //$NON-NLS-1$
+			} catch (InvocationTargetException ex) {
+				throw new RuntimeException(ex);
+			}
+		}
+
 		/**
 		 * Displays error messages or invokes the next process in the chain on a new
 		 * thread. The run method asks swing to invoke this method on the event dispatch
@@ -475,6 +484,9 @@ public class SQLScriptDialog extends JDialog {
 		public void cancelJob() {
 			this.setCancelled(true);
 			setFinished(true);
+			if (executor != null) {
+				executor.cancel();
+			}
 		}
 
 	}
@@ -68,7 +68,10 @@ import ca.sqlpower.architect.olap.MondrianModel.VirtualCube;
 import ca.sqlpower.architect.profile.ColumnProfileResult;
 import ca.sqlpower.architect.profile.ColumnValueCount;
 import ca.sqlpower.architect.profile.ProfileManager;
+import ca.sqlpower.architect.profile.ProfileHistory;
 import ca.sqlpower.architect.profile.ProfileResult;
+import ca.sqlpower.architect.profile.ProfileResultStore;
+import ca.sqlpower.architect.profile.ProfileSettings;
 import ca.sqlpower.architect.profile.TableProfileResult;
 import ca.sqlpower.architect.swingui.CompareDMSettings.SourceOrTargetSettings;
 import ca.sqlpower.architect.swingui.olap.CubePane;
@@ -1316,9 +1319,12 @@ public class SwingUIProjectLoader extends ProjectLoader {
      * Save all of the profiling information.
      * @param out
      */
-    private void saveProfiles(PrintWriter out) {
+    private void saveProfiles(PrintWriter out) throws IOException {
         ProfileManager profmgr = getSession().getProfileManager();
-        ioo.println(out, "<profiles topNCount=\""+profmgr.getDefaultProfileSettings().getTopNCount()+"\">"); //$NON-NLS-1$ //$NON-NLS-2$
+        ProfileResultStore store = prepareProfileStore(profmgr);
+        ioo.print(out, "<profiles"); //$NON-NLS-1$
+        printProfileSettings(out, profmgr.getDefaultProfileSettings());
+        ioo.niprintln(out, ">"); //$NON-NLS-1$
         ioo.indent++;
 
         List<TableProfileResult> tableResults = profmgr.getResults();
@@ -1335,11 +1341,25 @@ public class SwingUIProjectLoader extends ProjectLoader {
             ioo.print(out, "<table-profile-result"); //$NON-NLS-1$
             printCommonItems(out, tableResult, profiledObjectId);
             ioo.niprint(out, " rowCount=\"" + tableResult.getRowCount() + "\""); //$NON-NLS-1$ //$NON-NLS-2$
+            ioo.niprint(out, " sampledRowCount=\"" + tableResult.getSampledRowCount() + "\""); //$NON-NLS-1$ //$NON-NLS-2$
+            if (tableResult.getChangeSignature() != null) {
+                ioo.niprint(out, " changeSignature=\"" + SQLPowerUtils.escapeXML(tableResult.getChangeSignature()) + "\""); //$NON-NLS-1$ //$NON-NLS-2$
+            }
             ioo.niprint(out, " UUID=\"" + tableResult.getUUID() + "\"");
+            
+            List<ColumnProfileResult> columnProfileResults;
+            if (store != null) {
+                if (!tableResult.isColumnResultsInStore()) {
+                    store.write(tableResult);
+                }
+                ioo.niprint(out, " columnResultsInStore=\"true\""); //$NON-NLS-1$
+                columnProfileResults = Collections.emptyList();
+            } else {
+                columnProfileResults = tableResult.getColumnProfileResults();
+            }
             ioo.niprintln(out, ">"); //$NON-NLS-1$
             ioo.indent++;
-            
-            List<ColumnProfileResult> columnProfileResults = tableResult.getColumnProfileResults();
+
             for (ColumnProfileResult cpr : columnProfileResults) {
                 String profiledColumnObjectId = sqlObjectSaveIdMap.get(cpr.getProfiledObject());
                 if (profiledColumnObjectId == null) {
@@ -1356,7 +1376,13 @@ public class SwingUIProjectLoader extends ProjectLoader {
                 ioo.niprint(out, " minLength=\"" + cpr.getMinLength() + "\""); //$NON-NLS-1$ //$NON-NLS-2$
                 ioo.niprint(out, " maxLength=\"" + cpr.getMaxLength() + "\""); //$NON-NLS-1$ //$NON-NLS-2$
                 ioo.niprint(out, " nullCount=\"" + cpr.getNullCount() + "\""); //$NON-NLS-1$ //$NON-NLS-2$
+                ioo.niprint(out, " nullCountError=\"" + cpr.getNullCountError() + "\""); //$NON-NLS-1$ //$NON-NLS-2$
                 ioo.niprint(out, " distinctValueCount=\"" + cpr.getDistinctValueCount() + "\""); //$NON-NLS-1$ //$NON-NLS-2$
+                ioo.niprint(out, " distinctValueCountError=\"" + cpr.getDistinctValueCountError() + "\""); //$NON-NLS-1$ //$NON-NLS-2$
+                ioo.niprint(out, " topValueCountError=\"" + cpr.getTopValueCountError() + "\""); //$NON-NLS-1$ //$NON-NLS-2$
+                if (cpr.getColumnSignature() != null) {
+                    ioo.niprint(out, " columnSignature=\"" + SQLPowerUtils.escapeXML(cpr.getColumnSignature()) + "\""); //$NON-NLS-1$ //$NON-NLS-2$
+                }
                 ioo.niprint(out, " UUID=\"" + cpr.getUUID() + "\"");
                 ioo.niprintln(out, ">"); //$NON-NLS-1$
 
@@ -1408,6 +1434,68 @@ public class SwingUIProjectLoader extends ProjectLoader {
         }
         ioo.println(out, "</profiles>"); //$NON-NLS-1$
         ioo.indent--;
+        if (store != null) {
+            store.compact();
+        }
+        if (file != null && !profmgr.getHistory().isEmpty()) {
+            profmgr.getHistory().save(ProfileHistory.fileFor(file));
+        }
+    }
+
+    /**
+     * Prints the default profile settings as attributes of the profiles
+     * element. The project loader reads them back.
+     */
+    private void printProfileSettings(PrintWriter out, ProfileSettings settings) {
+        ioo.niprint(out, " topNCount=\"" + settings.getTopNCount() + "\""); //$NON-NLS-1$ //$NON-NLS-2$
+        ioo.niprint(out, " maxConcurrentProfiles=\"" + settings.getMaxConcurrentProfiles() + "\""); //$NON-NLS-1$ //$NON-NLS-2$
+        ioo.niprint(out, " maxConcurrentProfilesPerDataSource=\"" + settings.getMaxConcurrentProfilesPerDataSource() + "\""); //$NON-NLS-1$ //$NON-NLS-2$
+        ioo.niprint(out, " usingApproximateCounts=\"" + settings.isUsingApproximateCounts() + "\""); //$NON-NLS-1$ //$NON-NLS-2$
+        ioo.niprint(out, " remoteColumnsPerQuery=\"" + settings.getRemoteColumnsPerQuery() + "\""); //$NON-NLS-1$ //$NON-NLS-2$
+        ioo.niprint(out, " remoteConnectionsPerTable=\"" + settings.getRemoteConnectionsPerTable() + "\""); //$NON-NLS-1$ //$NON-NLS-2$
+        ioo.niprint(out, " remotePartitionCount=\"" + settings.getRemotePartitionCount() + "\""); //$NON-NLS-1$ //$NON-NLS-2$
+        ioo.niprint(out, " remotePartitionMinRows=\"" + settings.getRemotePartitionMinRows() + "\""); //$NON-NLS-1$ //$NON-NLS-2$
+        ioo.niprint(out, " incrementalProfiling=\"" + settings.isIncrementalProfiling() + "\""); //$NON-NLS-1$ //$NON-NLS-2$
+        if (settings.getChangeTrackingColumns() != null) {
+            ioo.niprint(out, " changeTrackingColumns=\"" + SQLPowerUtils.escapeXML(settings.getChangeTrackingColumns()) + "\""); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        ioo.niprint(out, " scanningForChanges=\"" + settings.isScanningForChanges() + "\""); //$NON-NLS-1$ //$NON-NLS-2$
+        if (settings.getSamplingMode() != null) {
+            ioo.niprint(out, " samplingMode=\"" + settings.getSamplingMode().name() + "\""); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        ioo.niprint(out, " sampleRows=\"" + settings.getSampleRows() + "\""); //$NON-NLS-1$ //$NON-NLS-2$
+        ioo.niprint(out, " samplePercentage=\"" + settings.getSamplePercentage() + "\""); //$NON-NLS-1$ //$NON-NLS-2$
+        ioo.niprint(out, " sampleTimeBudgetSeconds=\"" + settings.getSampleTimeBudgetSeconds() + "\""); //$NON-NLS-1$ //$NON-NLS-2$
+        ioo.niprint(out, " usingProfileStore=\"" + settings.isUsingProfileStore() + "\""); //$NON-NLS-1$ //$NON-NLS-2$
+        ioo.niprint(out, " maxLoadedProfiles=\"" + settings.getMaxLoadedProfiles() + "\""); //$NON-NLS-1$ //$NON-NLS-2$
+        ioo.niprint(out, " maxProfilesPerTable=\"" + settings.getMaxProfilesPerTable() + "\""); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    /**
+     * Returns the profile store the column profile results should be saved
+     * to, or null if they should be saved in the project file. A store is
+     * used if the profile settings ask for one or if the profiles already
+     * have one. If the existing store belongs to a different project file (as
+     * after "save as") its results are moved to a new store beside this
+     * project's file.
+     */
+    private ProfileResultStore prepareProfileStore(ProfileManager profmgr) throws IOException {
+        ProfileResultStore store = profmgr.getResultStore();
+        if (file == null) {
+            // the results are read back from the store as they are saved
+            return null;
+        }
+        if (store == null && !profmgr.getDefaultProfileSettings().isUsingProfileStore()) {
+            return null;
+        }
+        File storeFile = ProfileResultStore.storeFileFor(file);
+        if (store != null && store.getDataFile().getAbsoluteFile().equals(storeFile.getAbsoluteFile())) {
+            return store;
+        }
+        ProfileResultStore.delete(storeFile);
+        store = new ProfileResultStore(storeFile, profmgr.getDefaultProfileSettings().getMaxLoadedProfiles());
+        profmgr.setResultStore(store);
+        return store;
     }
 
     private void printCommonItems(PrintWriter out, ProfileResult<?> profileResult, String profiledObjectId) {
@@ -20,14 +20,21 @@ package ca.sqlpower.architect.swingui.action;
 
 import java.awt.Dimension;
 import java.awt.event.ActionEvent;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Callable;
 
 import javax.swing.AbstractAction;
 import javax.swing.JButton;
 import javax.swing.JDialog;
+import javax.swing.JFileChooser;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
@@ -40,8 +47,12 @@ import org.apache.log4j.Logger;
 import ca.sqlpower.architect.ddl.ConflictResolver;
 import ca.sqlpower.architect.ddl.DDLGenerator;
 import ca.sqlpower.architect.ddl.DDLStatement;
+import ca.sqlpower.architect.ddl.DDLStatementCache;
+import ca.sqlpower.architect.ddl.LiquibaseDDLGenerator;
+import ca.sqlpower.architect.ddl.SchemaMetadataCache;
 import ca.sqlpower.architect.ddl.critic.CriticFix;
 import ca.sqlpower.architect.ddl.critic.Criticism;
+import ca.sqlpower.architect.ddl.critic.CriticManager;
 import ca.sqlpower.architect.ddl.critic.CriticismBucket;
 import ca.sqlpower.architect.ddl.critic.CriticFix.FixType;
 import ca.sqlpower.architect.swingui.ASUtils;
@@ -53,6 +64,7 @@ import ca.sqlpower.architect.swingui.critic.CriticSwingUtil;
 import ca.sqlpower.sqlobject.SQLDatabase;
 import ca.sqlpower.sqlobject.SQLObjectException;
 import ca.sqlpower.swingui.DataEntryPanelBuilder;
+import ca.sqlpower.swingui.SPSUtils;
 import ca.sqlpower.swingui.SPSwingWorker;
 import ca.sqlpower.swingui.table.TableUtils;
 
@@ -69,6 +81,19 @@ public class ExportDDLAction extends AbstractArchitectAction {
 	
 	private JDialog d;
 
+	/**
+	 * The tables and foreign keys of the target schemas, kept between
+	 * exports so checking the same target again doesn't read them again.
+	 */
+	private final SchemaMetadataCache metadataCache = new SchemaMetadataCache();
+
+	/**
+	 * The statements generated for the tables of the current session's target
+	 * database, kept until the tables change so exporting again only
+	 * generates the changed tables.
+	 */
+	private DDLStatementCache statementCache;
+
 	public ExportDDLAction(final ArchitectFrame frame) {
 		super(frame, Messages.getString("ExportDDLAction.name"), Messages.getString("ExportDDLAction.description"), "fwdSQL"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
 	}
@@ -83,6 +108,8 @@ public class ExportDDLAction extends AbstractArchitectAction {
 
                     DDLGenerator ddlg = ddlPanel.getGenerator();
                     ddlg.setTargetSchema(ddlPanel.getSchemaField().getText());
+                    ddlg.setGenerationThreads(Runtime.getRuntime().availableProcessors());
+                    ddlg.setStatementCache(getStatementCache());
 
                     checkErrorsAndGenerateDDL(ddlg);
 
@@ -101,8 +128,44 @@ public class ExportDDLAction extends AbstractArchitectAction {
              * generateAndDisplayDDL method.
              */
             private void checkErrorsAndGenerateDDL(final DDLGenerator ddlg) {
-                List<Criticism> criticisms = getSession().getWorkspace().getCriticManager().
-                    criticize(ddlg.getClass());
+                // stops a background pass after its current batch instead of
+                // waiting for all of it
+                getSession().getValidationScheduler().schedule();
+                final CriticManager criticManager = getSession().getWorkspace().getCriticManager();
+                // the critics wait for the background pass to stop, so they
+                // run off the Swing thread and the warnings are shown after
+                SPSwingWorker criticWorker = new SPSwingWorker(getSession()) {
+                    private List<Criticism> criticisms;
+
+                    @Override
+                    public void doStuff() throws Exception {
+                        criticisms = criticManager.getIncrementalCriticizer().criticize(
+                                ddlg.getClass(), Runtime.getRuntime().availableProcessors(), null, null);
+                    }
+
+                    @Override
+                    public void cleanup() throws Exception {
+                        if (getDoStuffException() != null) {
+                            ASUtils.showExceptionDialog(getSession(),
+                                    Messages.getString("ExportDDLAction.errorCriticizing"), getDoStuffException()); //$NON-NLS-1$
+                            return;
+                        }
+                        showErrorsAndGenerateDDL(ddlg, criticisms);
+                    }
+                };
+                new Thread(criticWorker).start();
+            }
+
+            /**
+             * Displays a dialog containing the given criticisms, if there are
+             * any, or generates the DDL script using the generateAndDisplayDDL
+             * method. This must be called on the Swing thread.
+             */
+            private void showErrorsAndGenerateDDL(final DDLGenerator ddlg, List<Criticism> criticisms) {
+                // the warnings below show the session's validation results,
+                // brought up to date with the criticisms just made
+                final CriticismBucket bucket = getSession().getValidationScheduler().getCriticismBucket();
+                bucket.updateCriticismsToMatch(criticisms);
                 if (criticisms.isEmpty()) {
                     try {
                         generateAndDisplayDDL(ddlPanel, ddlg);
@@ -131,8 +194,6 @@ public class ExportDDLAction extends AbstractArchitectAction {
                     builder.appendRow("fill:pref:grow");
                     builder.nextLine();
                     
-                    final CriticismBucket bucket = new CriticismBucket();
-                    bucket.updateCriticismsToMatch(criticisms);
                     JTable errorTable = CriticSwingUtil.createCriticTable(getSession(), bucket);
                     builder.append(new JScrollPane(errorTable));
                     builder.nextLine();
@@ -141,7 +202,9 @@ public class ExportDDLAction extends AbstractArchitectAction {
                             new AbstractAction(Messages.getString("ExportDDLAction.quickFixAllOption")) {  //$NON-NLS-1$
                         public void actionPerformed(ActionEvent e) {
                             warningDialog.dispose();
-                            for (Criticism criticism : bucket.getCriticisms()) {
+                            // a copy, as the fixes change the model and so
+                            // the validation results
+                            for (Criticism criticism : new ArrayList<Criticism>(bucket.getCriticisms())) {
                                 if (!criticism.getFixes().isEmpty()) {
                                     for (CriticFix fix : criticism.getFixes()) {
                                         if (fix.getFixType().equals(FixType.QUICK_FIX)) {
@@ -202,10 +265,16 @@ public class ExportDDLAction extends AbstractArchitectAction {
             /**
              * This method is used for generating and displaying the DDL script
              * for the current target database using the given DDL generator.
+             * If the panel is set to save the script to a file it is written
+             * there as it is generated instead of being displayed.
              */
             private void generateAndDisplayDDL(final DDLExportPanel ddlPanel, DDLGenerator ddlg) throws SQLException,
-            SQLObjectException {
-                ddlg.generateDDLScript(getSession().getTargetDatabase().getTables());
+            SQLObjectException, IOException {
+                if (ddlPanel.isSavingScriptToFile()) {
+                    saveDDLScript(ddlg);
+                    return;
+                }
+                ddlg.generateDDLStatements(getSession().getTargetDatabase().getTables());
 
                 SQLDatabase ppdb = new SQLDatabase(ddlPanel.getTargetDB());
                 SQLScriptDialog ssd =
@@ -222,6 +291,52 @@ public class ExportDDLAction extends AbstractArchitectAction {
                 ssd.setExecuteTask(cfp);
                 ssd.setVisible(true);
             }
+
+            /**
+             * Asks the user for a file and writes the script for the current
+             * target database to it with the given DDL generator. The script
+             * is streamed to the file table by table so the whole of it is
+             * never held in memory.
+             */
+            private void saveDDLScript(DDLGenerator ddlg) throws SQLException, SQLObjectException, IOException {
+                String extension = ddlg instanceof LiquibaseDDLGenerator ? ".xml" : ".sql"; //$NON-NLS-1$ //$NON-NLS-2$
+                JFileChooser chooser = new JFileChooser(getSession().getRecentMenu().getMostRecentFile());
+                chooser.addChoosableFileFilter(SPSUtils.SQL_FILE_FILTER);
+
+                File file = null;
+                while (true) {
+                    int response = chooser.showSaveDialog(d);
+
+                    if (response != JFileChooser.APPROVE_OPTION) {
+                        return;
+                    }
+                    file = chooser.getSelectedFile();
+                    String fileName = file.getName();
+
+                    if (!fileName.endsWith(extension)) {
+                        file = new File(file.getPath() + extension);
+                    }
+
+                    if (file.exists()) {
+                        response = JOptionPane.showConfirmDialog(
+                                d,
+                                Messages.getString("ExportDDLAction.fileAlreadyExists", file.getPath()), //$NON-NLS-1$
+                                Messages.getString("ExportDDLAction.fileAlreadyExistsDialogTitle"), JOptionPane.YES_NO_OPTION); //$NON-NLS-1$
+                        if (response == JOptionPane.YES_OPTION) {
+                            break;
+                        }
+                    } else {
+                        break;
+                    }
+                }
+
+                Writer out = new BufferedWriter(new FileWriter(file));
+                try {
+                    ddlg.writeDDLScript(getSession().getTargetDatabase().getTables(), out);
+                } finally {
+                    out.close();
+                }
+            }
         };
 
         cancelCall = new Callable<Boolean>() {
@@ -241,6 +356,21 @@ public class ExportDDLAction extends AbstractArchitectAction {
         d.setVisible(true);
     }
 
+	/**
+	 * Returns the statement cache of the current session's target database,
+	 * replacing the cache of the previous session if it has changed.
+	 */
+	private DDLStatementCache getStatementCache() {
+	    SQLDatabase target = getSession().getTargetDatabase();
+	    if (statementCache == null || statementCache.getDatabase() != target) {
+	        if (statementCache != null) {
+	            statementCache.cleanup();
+	        }
+	        statementCache = new DDLStatementCache(target);
+	    }
+	    return statementCache;
+	}
+
 	/**
 	 * The ConflictFinderProcess uses a ConflictResolver (which it monitors with
 	 * a progress bar) to locate objects in the target database which need to be
@@ -290,7 +420,7 @@ public class ExportDDLAction extends AbstractArchitectAction {
 			this.ddlg = ddlg;
 			this.statements = statements;
 
-			cr = new ConflictResolver(target, ddlg, statements);
+			cr = new ConflictResolver(target, ddlg, statements, metadataCache);
 		}
 
 		/**
@@ -442,6 +572,8 @@ public class ExportDDLAction extends AbstractArchitectAction {
 		public void doStuff() {
 			if (isCancelled())
 				return;
+			// the script is about to change the target
+			metadataCache.invalidate(conflictFinder.target);
 			if (conflictFinder.doesUserWantToDropConflicts()) {
 				cr = conflictFinder.getConflictResolver();
 				cr.aboutToCallDropConflicting();
@@ -44,6 +44,7 @@ import ca.sqlpower.architect.profile.TableProfileResult;
 import ca.sqlpower.architect.profile.output.ProfileCSVFormat;
 import ca.sqlpower.architect.profile.output.ProfileFormat;
 import ca.sqlpower.architect.profile.output.ProfileHTMLFormat;
+import ca.sqlpower.architect.profile.output.ProfileJSONLinesFormat;
 import ca.sqlpower.architect.profile.output.ProfilePDFFormat;
 import ca.sqlpower.architect.swingui.ASUtils;
 import ca.sqlpower.architect.swingui.table.ProfileJTable;
@@ -80,11 +81,27 @@ public class SaveProfileAction extends AbstractAction {
         }
     }
     
+    /**
+     * Matches JSON lines files, which have one JSON object per line.
+     */
+    public static final FileFilter JSONL_FILE_FILTER = new FileFilter() {
+        @Override
+        public boolean accept(File f) {
+            return f.isDirectory() || f.getName().toLowerCase().endsWith(".jsonl"); //$NON-NLS-1$
+        }
+
+        @Override
+        public String getDescription() {
+            return Messages.getString("SaveProfileAction.jsonLinesFileDescription"); //$NON-NLS-1$
+        }
+    };
+
     /** The set of valid file types for saving the report in */
     public enum SaveableFileType { 
         HTML(SPSUtils.HTML_FILE_FILTER), 
         PDF(SPSUtils.PDF_FILE_FILTER), 
-        CSV(SPSUtils.CSV_FILE_FILTER);
+        CSV(SPSUtils.CSV_FILE_FILTER),
+        JSONL(JSONL_FILE_FILTER);
         
         /**
          * A file filter that matches the type in the enum.
@@ -242,6 +259,11 @@ public class SaveProfileAction extends AbstractAction {
                         file = new File(file.getPath()+".csv"); //$NON-NLS-1$
                     }
                     type = SaveableFileType.CSV;
+                } else if (fileFilter == JSONL_FILE_FILTER){
+                    if (!fileName.endsWith(".jsonl")) { //$NON-NLS-1$
+                        file = new File(file.getPath()+".jsonl"); //$NON-NLS-1$
+                    }
+                    type = SaveableFileType.JSONL;
                 } else {
                     throw new IllegalStateException(Messages.getString("SaveProfileAction.unexpectedFileFilter")); //$NON-NLS-1$
                 }
@@ -280,6 +302,9 @@ public class SaveProfileAction extends AbstractAction {
                     case CSV:
                         prf = new ProfileCSVFormat();
                         break;
+                    case JSONL:
+                        prf = new ProfileJSONLinesFormat();
+                        break;
                     default:
                         throw new IllegalArgumentException(Messages.getString("SaveProfileAction.unknownType")); //$NON-NLS-1$
                     }
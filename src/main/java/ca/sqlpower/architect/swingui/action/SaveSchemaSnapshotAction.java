@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+package ca.sqlpower.architect.swingui.action;
+
+import java.awt.event.ActionEvent;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.JFileChooser;
+import javax.swing.filechooser.FileFilter;
+
+import ca.sqlpower.architect.diff.SchemaSnapshot;
+import ca.sqlpower.architect.swingui.ASUtils;
+import ca.sqlpower.architect.swingui.ArchitectSwingSession;
+import ca.sqlpower.sqlobject.SQLObject;
+import ca.sqlpower.sqlobject.SQLObjectUtils;
+import ca.sqlpower.sqlobject.SQLTable;
+import ca.sqlpower.swingui.SPSwingWorker;
+
+/**
+ * Saves the structure of the tables in a database, catalog or schema to a
+ * {@link SchemaSnapshot} file, which Compare DM can then compare against
+ * without connecting to the database.
+ */
+public class SaveSchemaSnapshotAction extends AbstractArchitectAction {
+
+    /**
+     * Matches schema snapshot files.
+     */
+    public static final FileFilter SNAPSHOT_FILE_FILTER = new FileFilter() {
+        @Override
+        public boolean accept(File f) {
+            return f.isDirectory() || f.getName().toLowerCase().endsWith("." + SchemaSnapshot.FILE_EXTENSION); //$NON-NLS-1$
+        }
+
+        @Override
+        public String getDescription() {
+            return Messages.getString("SaveSchemaSnapshotAction.fileDescription"); //$NON-NLS-1$
+        }
+    };
+
+    /**
+     * The database, catalog or schema whose tables will be saved.
+     */
+    private final SQLObject container;
+
+    public SaveSchemaSnapshotAction(ArchitectSwingSession session, SQLObject container) {
+        super(session, Messages.getString("SaveSchemaSnapshotAction.name"), Messages.getString("SaveSchemaSnapshotAction.description")); //$NON-NLS-1$ //$NON-NLS-2$
+        this.container = container;
+    }
+
+    public void actionPerformed(ActionEvent e) {
+        JFileChooser chooser = new JFileChooser(getSession().getRecentMenu().getMostRecentFile());
+        chooser.addChoosableFileFilter(SNAPSHOT_FILE_FILTER);
+        chooser.setFileFilter(SNAPSHOT_FILE_FILTER);
+        if (chooser.showSaveDialog(getSession().getArchitectFrame()) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File file = chooser.getSelectedFile();
+        if (!file.getName().contains(".")) { //$NON-NLS-1$
+            file = new File(file.getPath() + "." + SchemaSnapshot.FILE_EXTENSION); //$NON-NLS-1$
+        }
+        final File snapshotFile = file;
+
+        SPSwingWorker worker = new SPSwingWorker(getSession()) {
+            @Override
+            public void doStuff() throws Exception {
+                List<SQLTable> tables = SQLObjectUtils.findDescendentsByClass(container, SQLTable.class, new ArrayList<SQLTable>());
+                OutputStream out = new BufferedOutputStream(new FileOutputStream(snapshotFile));
+                try {
+                    SchemaSnapshot.write(tables, SQLObjectUtils.toQualifiedName(container), out);
+                } finally {
+                    out.close();
+                }
+            }
+
+            @Override
+            public void cleanup() throws Exception {
+                if (getDoStuffException() != null) {
+                    ASUtils.showExceptionDialogNoReport(getSession().getArchitectFrame(),
+                            Messages.getString("SaveSchemaSnapshotAction.saveFailed"), getDoStuffException()); //$NON-NLS-1$
+                }
+            }
+        };
+        new Thread(worker, "Schema snapshot").start(); //$NON-NLS-1$
+    }
+}
@@ -19,23 +19,34 @@
 
 package ca.sqlpower.architect.swingui.critic;
 
+import java.awt.BorderLayout;
+import java.awt.Dimension;
 import java.awt.Point;
 import java.awt.event.ActionEvent;
+import java.awt.event.HierarchyEvent;
+import java.awt.event.HierarchyListener;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.util.List;
 
 import javax.swing.AbstractAction;
 import javax.swing.ImageIcon;
+import javax.swing.JComponent;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
 import javax.swing.JPopupMenu;
+import javax.swing.JScrollPane;
 import javax.swing.JTable;
 import javax.swing.text.Document;
 
 import ca.sqlpower.architect.ddl.critic.CriticismBucket;
 import ca.sqlpower.architect.ddl.critic.CriticFix;
+import ca.sqlpower.architect.ddl.critic.CriticismEvent;
+import ca.sqlpower.architect.ddl.critic.CriticismListener;
 import ca.sqlpower.architect.ddl.critic.CriticAndSettings.Severity;
 import ca.sqlpower.architect.diff.SQLObjectComparator;
 import ca.sqlpower.architect.swingui.ArchitectSwingSession;
+import ca.sqlpower.architect.swingui.Messages;
 import ca.sqlpower.object.SPObject;
 import ca.sqlpower.swingui.SPSUtils;
 import ca.sqlpower.swingui.table.FancyExportableJTable;
@@ -89,6 +100,13 @@ public class CriticSwingUtil {
     public static FancyExportableJTable createCriticTable(ArchitectSwingSession session, CriticismBucket bucket, Document searchDoc) {
         final CriticismTableModel tableModel = new CriticismTableModel(session, bucket);
         final FancyExportableJTable errorTable = new FancyExportableJTable(tableModel, searchDoc);
+        errorTable.addHierarchyListener(new HierarchyListener() {
+            public void hierarchyChanged(HierarchyEvent e) {
+                if ((e.getChangeFlags() & HierarchyEvent.DISPLAYABILITY_CHANGED) != 0) {
+                    tableModel.setListening(errorTable.isDisplayable());
+                }
+            }
+        });
         errorTable.setDefaultRenderer(Severity.class, new SeverityTableCellRenderer());
         final QuickFixListCellRenderer renderer = new QuickFixListCellRenderer();
         errorTable.setDefaultRenderer(List.class, renderer);
@@ -128,4 +146,44 @@ public class CriticSwingUtil {
         });
         return errorTable;
     }
+
+    /**
+     * Returns a panel that shows the criticisms in the given bucket in a
+     * critic table, under a line counting its errors and warnings. The panel
+     * follows the bucket as it changes, so it gives continuous feedback when
+     * the bucket is the one the session's {@link ValidationScheduler}
+     * validates into.
+     */
+    public static JComponent createValidationPanel(ArchitectSwingSession session, final CriticismBucket bucket) {
+        final JLabel summary = new JLabel();
+        final JPanel panel = new JPanel(new BorderLayout());
+        final CriticismListener summaryUpdater = new CriticismListener() {
+            public void criticismsChanged(CriticismEvent e) {
+                summary.setText(Messages.getString("CriticSwingUtil.validationSummary", //$NON-NLS-1$
+                        String.valueOf(bucket.getCriticismsBySeverity(Severity.ERROR).size()),
+                        String.valueOf(bucket.getCriticismsBySeverity(Severity.WARNING).size())));
+                summary.setIcon(bucket.getCriticismsBySeverity(Severity.ERROR).isEmpty() ? 
+                        (bucket.getCriticismsBySeverity(Severity.WARNING).isEmpty() ? null : WARNING_ICON) 
+                        : ERROR_ICON);
+            }
+        };
+        summaryUpdater.criticismsChanged(null);
+        panel.addHierarchyListener(new HierarchyListener() {
+            public void hierarchyChanged(HierarchyEvent e) {
+                if ((e.getChangeFlags() & HierarchyEvent.DISPLAYABILITY_CHANGED) != 0) {
+                    if (panel.isDisplayable()) {
+                        bucket.addCriticismListener(summaryUpdater);
+                        summaryUpdater.criticismsChanged(null);
+                    } else {
+                        bucket.removeCriticismListener(summaryUpdater);
+                    }
+                }
+            }
+        });
+        panel.add(summary, BorderLayout.NORTH);
+        JScrollPane tableScrollPane = new JScrollPane(createCriticTable(session, bucket));
+        tableScrollPane.setPreferredSize(new Dimension(0, 120));
+        panel.add(tableScrollPane, BorderLayout.CENTER);
+        return panel;
+    }
 }
@@ -41,19 +41,43 @@ public class CriticismTableModel extends AbstractTableModel {
     
     private final CriticismListener criticListener = new CriticismListener() {
     
-        public void criticismRemoved(CriticismEvent e) {
-            fireTableRowsDeleted(e.getIndex(), e.getIndex());
-        }
-    
-        public void criticismAdded(CriticismEvent e) {
-            fireTableRowsInserted(e.getIndex(), e.getIndex());
+        public void criticismsChanged(CriticismEvent e) {
+            if (e.getRemoved().isEmpty()) {
+                // the new criticisms are added to the end of the bucket
+                int firstRow = e.getUnchanged().size();
+                fireTableRowsInserted(firstRow, firstRow + e.getAdded().size() - 1);
+            } else {
+                fireTableDataChanged();
+            }
         }
     };
 
 
+    /**
+     * True while this model listens to its bucket.
+     */
+    private boolean listening;
+
     public CriticismTableModel(ArchitectSwingSession session, CriticismBucket criticizer) {
         this.criticizer = criticizer;
-        criticizer.addCriticismListener(criticListener);
+        setListening(true);
+    }
+
+    /**
+     * Starts or stops following the changes of the bucket. A model that is
+     * not displayed should stop, so a bucket that outlives its tables, like
+     * the one the session validates into, does not keep them all alive.
+     * Starting again brings the model up to date with the bucket.
+     */
+    public void setListening(boolean listening) {
+        if (this.listening == listening) return;
+        this.listening = listening;
+        if (listening) {
+            criticizer.addCriticismListener(criticListener);
+            fireTableDataChanged();
+        } else {
+            criticizer.removeCriticismListener(criticListener);
+        }
     }
     
     public int getColumnCount() {
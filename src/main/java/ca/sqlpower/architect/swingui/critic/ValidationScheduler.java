@@ -0,0 +1,384 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Architect.
+ *
+ * SQL Power Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+package ca.sqlpower.architect.swingui.critic;
+
+import java.awt.Rectangle;
+import java.beans.PropertyChangeEvent;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.swing.SwingUtilities;
+
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.architect.ddl.DDLGenerator;
+import ca.sqlpower.architect.ddl.critic.CriticManager;
+import ca.sqlpower.architect.ddl.critic.Criticism;
+import ca.sqlpower.architect.ddl.critic.CriticismBucket;
+import ca.sqlpower.architect.swingui.ArchitectStatusBar;
+import ca.sqlpower.architect.swingui.ArchitectSwingSession;
+import ca.sqlpower.architect.swingui.Messages;
+import ca.sqlpower.architect.swingui.PlayPen;
+import ca.sqlpower.architect.swingui.TablePane;
+import ca.sqlpower.object.AbstractSPListener;
+import ca.sqlpower.object.SPChildEvent;
+import ca.sqlpower.object.SPListener;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.util.MonitorableImpl;
+import ca.sqlpower.util.SQLPowerUtils;
+
+/**
+ * Validates the play pen of a session in the background as it is edited, and
+ * keeps a {@link CriticismBucket} up to date with the results.
+ * <p>
+ * Each change to the play pen or the critic settings restarts a short delay,
+ * so a burst of edits leads to one pass of the critics once the edits stop.
+ * Passes run on a single low priority thread using the critic manager's
+ * {@link ca.sqlpower.architect.ddl.critic.IncrementalCriticizer}, so only
+ * the objects that changed are criticized again, and the tables visible in
+ * the play pen are criticized before the rest. A change made while a pass is
+ * running cancels the pass; what it criticized so far is kept and the rest is
+ * left for the next pass. Progress is shown on the session's status bar.
+ * <p>
+ * Nothing here waits on a pass from the Swing thread. The bucket is only
+ * updated on the Swing thread, once a pass has finished.
+ */
+public class ValidationScheduler {
+
+    private static final Logger logger = Logger.getLogger(ValidationScheduler.class);
+
+    /**
+     * The default number of milliseconds to wait after the last change before
+     * validating.
+     */
+    public static final long DEFAULT_DELAY = 500;
+
+    private final ArchitectSwingSession session;
+
+    private final CriticismBucket bucket = new CriticismBucket();
+
+    /**
+     * Runs the passes one at a time on a low priority daemon thread.
+     */
+    private final ScheduledExecutorService executor;
+
+    private final Object scheduleLock = new Object();
+
+    /**
+     * The pass waiting for its delay to run out, if any.
+     */
+    @GuardedBy("scheduleLock")
+    private ScheduledFuture<?> pendingPass;
+
+    /**
+     * The monitor of the pass that is running, if any. Cancelling it stops
+     * the pass after its current batch of tables.
+     */
+    @GuardedBy("scheduleLock")
+    private MonitorableImpl runningMonitor;
+
+    @GuardedBy("scheduleLock")
+    private boolean started;
+
+    @GuardedBy("scheduleLock")
+    private boolean shutdown;
+
+    private volatile long delay = DEFAULT_DELAY;
+
+    /**
+     * The play pen database being listened to. It changes if the children of
+     * the project's root object are replaced.
+     */
+    private SQLDatabase targetDatabase;
+
+    private final Runnable passTask = new Runnable() {
+        public void run() {
+            runPass();
+        }
+    };
+
+    /**
+     * Schedules a pass for each change to the play pen database or the
+     * critic settings.
+     */
+    private final SPListener changeListener = new AbstractSPListener() {
+        @Override
+        public void childAdded(SPChildEvent e) {
+            SQLPowerUtils.listenToHierarchy(e.getChild(), this);
+            schedule();
+        }
+
+        @Override
+        public void childRemoved(SPChildEvent e) {
+            SQLPowerUtils.unlistenToHierarchy(e.getChild(), this);
+            schedule();
+        }
+
+        @Override
+        public void propertyChanged(PropertyChangeEvent evt) {
+            schedule();
+        }
+    };
+
+    /**
+     * Follows the play pen database if the databases of the root object are
+     * replaced, as when a project is loaded.
+     */
+    private final SPListener rootListener = new AbstractSPListener() {
+        @Override
+        public void childAdded(SPChildEvent e) {
+            if (e.getChild() instanceof SQLDatabase) {
+                updateTargetDatabase();
+            }
+        }
+
+        @Override
+        public void childRemoved(SPChildEvent e) {
+            if (e.getChild() instanceof SQLDatabase) {
+                updateTargetDatabase();
+            }
+        }
+    };
+
+    public ValidationScheduler(ArchitectSwingSession session) {
+        this.session = session;
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "Validation Worker");
+                t.setDaemon(true);
+                t.setPriority(Thread.MIN_PRIORITY);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Starts listening to the session's project and schedules the first pass.
+     * Nothing is validated before this is called.
+     */
+    public void start() {
+        synchronized (scheduleLock) {
+            if (started || shutdown) return;
+            started = true;
+        }
+        session.getRootObject().addSPListener(rootListener);
+        SQLPowerUtils.listenToHierarchy(getCriticManager(), changeListener);
+        updateTargetDatabase();
+    }
+
+    /**
+     * Stops listening to the project, cancels any pass and stops the worker
+     * thread. This does not wait for a running pass to stop.
+     */
+    public void cleanup() {
+        synchronized (scheduleLock) {
+            if (shutdown) return;
+            shutdown = true;
+            cancelPasses();
+            executor.shutdownNow();
+            if (!started) return;
+        }
+        session.getRootObject().removeSPListener(rootListener);
+        SQLPowerUtils.unlistenToHierarchy(getCriticManager(), changeListener);
+        synchronized (this) {
+            if (targetDatabase != null) {
+                SQLPowerUtils.unlistenToHierarchy(targetDatabase, changeListener);
+                targetDatabase = null;
+            }
+        }
+    }
+
+    /**
+     * Schedules a pass to run once no change has been made for the delay,
+     * cancelling the running pass as its results are stale. Changes to the
+     * project call this, so it only needs to be called directly to validate
+     * again after something the project does not know about changed.
+     */
+    public void schedule() {
+        synchronized (scheduleLock) {
+            if (!started || shutdown) return;
+            cancelPasses();
+            pendingPass = executor.schedule(passTask, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Cancels the running pass, if any, and the pending one. Must be called
+     * while holding the schedule lock.
+     */
+    private void cancelPasses() {
+        if (runningMonitor != null) {
+            runningMonitor.setCancelled(true);
+        }
+        if (pendingPass != null) {
+            pendingPass.cancel(false);
+            pendingPass = null;
+        }
+    }
+
+    /**
+     * Sets the number of milliseconds to wait after the last change before
+     * validating. The default is {@link #DEFAULT_DELAY}.
+     */
+    public void setDelay(long delay) {
+        if (delay < 0) {
+            throw new IllegalArgumentException("The delay can not be negative, not " + delay);
+        }
+        this.delay = delay;
+    }
+
+    public long getDelay() {
+        return delay;
+    }
+
+    /**
+     * Returns the bucket holding the criticisms of the last finished pass.
+     * It is only updated on the Swing thread.
+     */
+    public CriticismBucket getCriticismBucket() {
+        return bucket;
+    }
+
+    private CriticManager getCriticManager() {
+        return session.getWorkspace().getCriticManager();
+    }
+
+    /**
+     * Moves the change listener to the current play pen database, if it
+     * changed, and schedules a pass.
+     */
+    private void updateTargetDatabase() {
+        SQLDatabase newTarget = null;
+        for (SQLDatabase db : session.getRootObject().getChildren(SQLDatabase.class)) {
+            if (db.isPlayPenDatabase()) {
+                newTarget = db;
+                break;
+            }
+        }
+        synchronized (this) {
+            if (newTarget == targetDatabase) return;
+            if (targetDatabase != null) {
+                SQLPowerUtils.unlistenToHierarchy(targetDatabase, changeListener);
+            }
+            targetDatabase = newTarget;
+            if (targetDatabase != null) {
+                SQLPowerUtils.listenToHierarchy(targetDatabase, changeListener);
+            }
+        }
+        schedule();
+    }
+
+    /**
+     * Runs one pass on the worker thread.
+     */
+    private void runPass() {
+        MonitorableImpl monitor;
+        synchronized (scheduleLock) {
+            if (shutdown) return;
+            pendingPass = null;
+            monitor = createMonitor();
+            runningMonitor = monitor;
+        }
+        try {
+            final Set<Object> visible = findVisibleObjects();
+            Comparator<Object> visibleFirst = new Comparator<Object>() {
+                public int compare(Object o1, Object o2) {
+                    return (visible.contains(o1) ? 0 : 1) - (visible.contains(o2) ? 0 : 1);
+                }
+            };
+            DDLGenerator generator = session.getDDLGenerator();
+            // one thread, so the whole pass stays on this low priority
+            // worker whatever thread count DDL export asks for
+            final List<Criticism> criticisms = getCriticManager().getIncrementalCriticizer().criticize(
+                    generator == null ? null : generator.getClass(), 1, visibleFirst, monitor);
+            if (criticisms == null) {
+                logger.debug("Validation pass was cancelled");
+                return;
+            }
+            SwingUtilities.invokeLater(new Runnable() {
+                public void run() {
+                    bucket.updateCriticismsToMatch(criticisms);
+                }
+            });
+        } catch (InterruptedException e) {
+            logger.debug("Validation pass was interrupted", e);
+        } catch (RuntimeException e) {
+            if (monitor.isCancelled()) {
+                // the play pen changed under the pass, and a new pass is
+                // already scheduled to look at it again
+                logger.debug("Validation pass failed after it was cancelled", e);
+            } else {
+                logger.error("Validation pass failed", e);
+            }
+        } finally {
+            synchronized (scheduleLock) {
+                if (runningMonitor == monitor) {
+                    runningMonitor = null;
+                }
+            }
+            monitor.setFinished(true);
+        }
+    }
+
+    /**
+     * Returns a progress monitor on the status bar, or one that is not
+     * displayed if the session has no status bar.
+     */
+    private MonitorableImpl createMonitor() {
+        ArchitectStatusBar statusBar = session.getStatusInformation();
+        MonitorableImpl monitor = statusBar == null ? new MonitorableImpl() : statusBar.createProgressMonitor();
+        monitor.setMessage(Messages.getString("ValidationScheduler.progressMessage")); //$NON-NLS-1$
+        return monitor;
+    }
+
+    /**
+     * Returns the tables that are at least partly visible in the play pen,
+     * looked up on the Swing thread.
+     */
+    private Set<Object> findVisibleObjects() throws InterruptedException {
+        final Set<Object> visible = new HashSet<Object>();
+        final PlayPen playPen = session.getPlayPen();
+        if (playPen == null) return Collections.emptySet();
+        try {
+            SwingUtilities.invokeAndWait(new Runnable() {
+                public void run() {
+                    Rectangle visibleRect = playPen.unzoomRect(playPen.getVisibleRect());
+                    for (TablePane tp : playPen.getContentPane().getChildren(TablePane.class)) {
+                        if (tp.getBounds().intersects(visibleRect)) {
+                            visible.add(tp.getModel());
+                        }
+                    }
+                }
+            });
+        } catch (InvocationTargetException e) {
+            throw new RuntimeException(e.getCause());
+        }
+        return visible;
+    }
+}